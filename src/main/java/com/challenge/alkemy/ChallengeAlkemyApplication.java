@@ -8,10 +8,13 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.crypto.password.NoOpPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 @SpringBootApplication
+// Volcado periodico de los votos acumulados en memoria
+@EnableScheduling
 @OpenAPIDefinition(info = @Info(title = "Alkemy ApiRest Challenge", version = "1.5", description = "API desarrollada en SpringBoot" +
 		" utilizando JWT para la seguridad, MySql para la persistencia de datos y OpenApi+Swagger para la documentación." +
 		" Los tests unitarios se realizaron con JUnit5 y Mockito."
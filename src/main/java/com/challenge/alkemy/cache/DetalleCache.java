@@ -0,0 +1,107 @@
+package com.challenge.alkemy.cache;
+
+import com.challenge.alkemy.entity.dto.cacheDto.response.EstadisticasCacheResponseDto;
+import com.challenge.alkemy.entity.dto.generoDto.response.GeneroResponseDto;
+import com.challenge.alkemy.entity.dto.peliculaDto.response.PeliculaConDetalleResponseDto;
+import com.challenge.alkemy.entity.dto.personajeDto.response.PersonajeConDetalleResponseDto;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Weigher;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.challenge.alkemy.utility.TransaccionUtility;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+// Cache de lectura de los DTO de detalle. Caffeine admite y desaloja con W-TinyLFU, asi un recorrido de ids
+// leidos una sola vez no desplaza a los detalles mas pedidos.
+// El peso de cada entrada es la cantidad de elementos anidados que tiene, no la cantidad de entradas.
+// Las invalidaciones pedidas dentro de una transaccion se aplican recien despues del commit: antes, un GET
+// concurrente todavia leeria la fila vieja y la volveria a guardar, y sin TTL quedaria hasta la proxima escritura
+@Component
+public class DetalleCache {
+
+    private final Cache<Long, PeliculaConDetalleResponseDto> peliculas;
+    private final Cache<Long, PersonajeConDetalleResponseDto> personajes;
+    private final Cache<Long, GeneroResponseDto> generos;
+
+    public DetalleCache(@Value("${cache.detalle.peso-maximo:10000}") long pesoMaximo) {
+        this.peliculas = crear(pesoMaximo, pelicula -> pelicula.getPersonajes().size());
+        this.personajes = crear(pesoMaximo, personaje -> personaje.getPeliculas().size());
+        this.generos = crear(pesoMaximo, genero -> genero.getPeliculas().size());
+    }
+
+    private static <V> Cache<Long, V> crear(long pesoMaximo, Function<V, Integer> anidados) {
+        Weigher<Long, V> weigher = (id, detalle) -> 1 + anidados.apply(detalle);
+        return Caffeine.newBuilder()
+                .maximumWeight(pesoMaximo)
+                .weigher(weigher)
+                .recordStats()
+                .build();
+    }
+
+    // Si el loader devuelve null (no existe) no se guarda nada y se devuelve null.
+    // Una invalidacion que llega durante la carga espera a que termine y la descarta: como la invalidacion corre
+    // despues del commit, un detalle leido antes del commit no queda guardado
+    public PeliculaConDetalleResponseDto pelicula(Long peliculaId, Function<Long, PeliculaConDetalleResponseDto> loader) {
+        return peliculas.get(peliculaId, loader);
+    }
+
+    public PersonajeConDetalleResponseDto personaje(Long personajeId, Function<Long, PersonajeConDetalleResponseDto> loader) {
+        return personajes.get(personajeId, loader);
+    }
+
+    public GeneroResponseDto genero(Long generoId, Function<Long, GeneroResponseDto> loader) {
+        return generos.get(generoId, loader);
+    }
+
+    public void invalidarPeliculas(Collection<Long> peliculaIds) {
+        List<Long> ids = new ArrayList<>(peliculaIds);
+        TransaccionUtility.despuesDelCommit(() -> peliculas.invalidateAll(ids));
+    }
+
+    public void invalidarPersonajes(Collection<Long> personajeIds) {
+        List<Long> ids = new ArrayList<>(personajeIds);
+        TransaccionUtility.despuesDelCommit(() -> personajes.invalidateAll(ids));
+    }
+
+    public void invalidarGenero(Long generoId) {
+        TransaccionUtility.despuesDelCommit(() -> generos.invalidate(generoId));
+    }
+
+    // Para cambios masivos (borrar un genero mueve todas sus peliculas): mas barato que averiguar cada detalle afectado
+    public void invalidarTodo() {
+        TransaccionUtility.despuesDelCommit(() -> {
+            peliculas.invalidateAll();
+            personajes.invalidateAll();
+            generos.invalidateAll();
+        });
+    }
+
+    public Map<String, EstadisticasCacheResponseDto> estadisticas() {
+
+        Map<String, EstadisticasCacheResponseDto> estadisticas = new LinkedHashMap<>();
+        estadisticas.put("peliculas", estadisticas(peliculas));
+        estadisticas.put("personajes", estadisticas(personajes));
+        estadisticas.put("generos", estadisticas(generos));
+        return estadisticas;
+    }
+
+    private static EstadisticasCacheResponseDto estadisticas(Cache<Long, ?> cache) {
+
+        CacheStats stats = cache.stats();
+        return EstadisticasCacheResponseDto.builder()
+                .aciertos(stats.hitCount())
+                .fallos(stats.missCount())
+                .desalojos(stats.evictionCount())
+                .tasaDeAciertos(stats.hitRate())
+                .entradas(cache.estimatedSize())
+                .build();
+    }
+}
@@ -0,0 +1,187 @@
+package com.challenge.alkemy.calificacion;
+
+import com.challenge.alkemy.repository.VolcadoVotosRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Acumula los votos en memoria y los deja en un log de solo agregado hasta que se vuelcan a VOTO y PELICULA.
+// Un voto no toca la base: queda como el ultimo voto de su usuario a esa pelicula (uno nuevo reemplaza al anterior)
+// y agrega una linea "peliculaId,usuario,valor" al segmento actual, con el usuario en Base64 para que no corte la linea.
+// El valor va al final: una linea cortada por una caida pierde siempre el valor y se descarta entera.
+// Cada volcado rota el segmento; el segmento viejo se borra recien cuando el UPDATE se confirmo.
+// El UPDATE guarda en su transaccion el numero del ultimo segmento que cubre (VOLCADO_VOTOS): al arrancar,
+// los segmentos que quedaron con numero mayor se vuelven a leer y los demas, ya aplicados en la base, se borran
+@Component
+public class AcumuladorVotos {
+
+    private static final String PREFIJO = "votos-";
+    private static final String EXTENSION = ".log";
+    private static final Base64.Encoder CODIFICADOR = Base64.getUrlEncoder();
+    private static final Base64.Decoder DECODIFICADOR = Base64.getUrlDecoder();
+
+    private final Path directorio;
+    // Pelicula -> usuario -> valor: cada pelicula tiene su propio mapa, asi los votos a peliculas distintas no compiten
+    private final Map<Long, Map<String, Integer>> pendientes = new ConcurrentHashMap<>();
+    // Los votos toman la lectura, compartida entre todos; la rotacion toma la escritura solo para cambiar de segmento
+    // y vaciar los pendientes, asi ningun voto queda tomado en un volcado y escrito en el segmento siguiente
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Segmentos cerrados cuyos votos todavia no se confirmaron en la base
+    private final List<Path> segmentosSinConfirmar = new ArrayList<>();
+    private FileChannel segmento;
+    private Path rutaSegmento;
+    private long numeroSegmento;
+
+    public AcumuladorVotos(@Value("${calificacion.registro.directorio:${java.io.tmpdir}/alkemy-votos}") String directorio,
+                           VolcadoVotosRepository volcadoVotosRepository) throws IOException {
+        this.directorio = Paths.get(directorio);
+        Files.createDirectories(this.directorio);
+        recuperar(volcadoVotosRepository.findUltimoSegmento());
+        abrirSegmento();
+    }
+
+    public void registrar(Long peliculaId, String usuario, int valor) throws IOException {
+        ByteBuffer linea = ByteBuffer.wrap((peliculaId + "," + CODIFICADOR.encodeToString(usuario.getBytes(StandardCharsets.UTF_8)) + "," + valor + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        lock.readLock().lock();
+        try {
+            // La linea se escribe dentro del compute: dos votos del mismo usuario a la misma pelicula quedan en el log
+            // en el mismo orden en que se reemplazan en memoria, y al recuperar gana el mismo
+            pendientes.computeIfAbsent(peliculaId, id -> new ConcurrentHashMap<>()).compute(usuario, (clave, anterior) -> {
+                try {
+                    // En modo APPEND cada write va completo al final del archivo, aunque escriban varios hilos a la vez
+                    segmento.write(linea);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return valor;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Cierra el segmento actual y devuelve el ultimo voto de cada (pelicula, usuario), ordenado por pelicula y usuario
+    public LoteDeVotos tomarPendientes() throws IOException {
+        lock.writeLock().lock();
+        try {
+            // Sin votos nuevos ni segmentos por confirmar no hay nada que rotar
+            if (pendientes.isEmpty() && segmentosSinConfirmar.isEmpty()) {
+                return new LoteDeVotos(new ArrayList<>(), new ArrayList<>(), 0);
+            }
+            segmento.close();
+            segmentosSinConfirmar.add(rutaSegmento);
+            long ultimoSegmento = numeroSegmento;
+            abrirSegmento();
+            List<VotoPendiente> votos = new ArrayList<>();
+            pendientes.forEach((peliculaId, porUsuario) ->
+                    porUsuario.forEach((usuario, valor) -> votos.add(new VotoPendiente(peliculaId, usuario, valor))));
+            pendientes.clear();
+            votos.sort(Comparator.comparing(VotoPendiente::getPeliculaId).thenComparing(VotoPendiente::getUsuario));
+            return new LoteDeVotos(votos, new ArrayList<>(segmentosSinConfirmar), ultimoSegmento);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // El volcado llego a la base: sus segmentos ya no hacen falta
+    public void confirmar(LoteDeVotos lote) throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (Path ruta : lote.getSegmentos()) {
+                Files.deleteIfExists(ruta);
+            }
+            segmentosSinConfirmar.removeAll(lote.getSegmentos());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // El volcado fallo: los votos vuelven a los pendientes y los segmentos se conservan para el proximo intento.
+    // Si el usuario volvio a votar mientras tanto, su voto nuevo es el que queda
+    public void devolver(LoteDeVotos lote) {
+        lock.readLock().lock();
+        try {
+            lote.getVotos().forEach(voto -> pendientes.computeIfAbsent(voto.getPeliculaId(), id -> new ConcurrentHashMap<>())
+                    .putIfAbsent(voto.getUsuario(), voto.getValor()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void cerrar() throws IOException {
+        segmento.close();
+    }
+
+    private void recuperar(long ultimoSegmentoAplicado) throws IOException {
+        List<Path> segmentos;
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            segmentos = archivos
+                    .filter(ruta -> ruta.getFileName().toString().matches(PREFIJO + "\\d+" + EXTENSION))
+                    .sorted(Comparator.comparingLong(this::numeroDe))
+                    .collect(Collectors.toList());
+        }
+        // La numeracion sigue despues del ultimo aplicado aunque ya no quede ningun archivo:
+        // un segmento nuevo con un numero ya aplicado se descartaria en el proximo arranque
+        numeroSegmento = ultimoSegmentoAplicado;
+        for (Path ruta : segmentos) {
+            // El volcado se confirmo pero la caida llego antes de borrarlo: ya esta aplicado en la base
+            if (numeroDe(ruta) <= ultimoSegmentoAplicado) {
+                Files.deleteIfExists(ruta);
+                continue;
+            }
+            try (Stream<String> lineas = Files.lines(ruta, StandardCharsets.UTF_8)) {
+                lineas.forEach(this::reproducir);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            segmentosSinConfirmar.add(ruta);
+            numeroSegmento = Math.max(numeroSegmento, numeroDe(ruta));
+        }
+    }
+
+    // Los segmentos se recorren en orden: el ultimo voto de cada usuario a una pelicula reemplaza a los anteriores
+    private void reproducir(String linea) {
+        String[] campos = linea.split(",");
+        // Una linea cortada por una caida a mitad de escritura se descarta
+        if (campos.length != 3 || !campos[0].matches("\\d+") || !campos[1].matches("[A-Za-z0-9_-]+=*") || !campos[2].matches("[1-5]")) {
+            return;
+        }
+        String usuario = new String(DECODIFICADOR.decode(campos[1]), StandardCharsets.UTF_8);
+        pendientes.computeIfAbsent(Long.valueOf(campos[0]), id -> new ConcurrentHashMap<>()).put(usuario, Integer.parseInt(campos[2]));
+    }
+
+    private void abrirSegmento() throws IOException {
+        numeroSegmento++;
+        rutaSegmento = directorio.resolve(PREFIJO + numeroSegmento + EXTENSION);
+        segmento = FileChannel.open(rutaSegmento, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private long numeroDe(Path ruta) {
+        String nombre = ruta.getFileName().toString();
+        return Long.parseLong(nombre.substring(PREFIJO.length(), nombre.length() - EXTENSION.length()));
+    }
+}
@@ -0,0 +1,17 @@
+package com.challenge.alkemy.calificacion;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.nio.file.Path;
+import java.util.List;
+
+// Lo que toma un volcado: el ultimo voto de cada (pelicula, usuario) y los segmentos del log que esos votos cubren.
+// Confirmado el volcado, todos los segmentos hasta ultimoSegmento estan aplicados en la base
+@Data
+@AllArgsConstructor
+public class LoteDeVotos {
+    private List<VotoPendiente> votos;
+    private List<Path> segmentos;
+    private long ultimoSegmento;
+}
@@ -0,0 +1,14 @@
+package com.challenge.alkemy.calificacion;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Cuanto cambian en un volcado los totales de una pelicula: la suma sube con cada voto nuevo y con la diferencia
+// de cada voto reemplazado; la cantidad sube solo con los usuarios que votan la pelicula por primera vez
+@Data
+@AllArgsConstructor
+public class TotalVotos {
+    private Long peliculaId;
+    private long suma;
+    private long cantidad;
+}
@@ -0,0 +1,13 @@
+package com.challenge.alkemy.calificacion;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Ultimo voto de un usuario a una pelicula desde el volcado anterior
+@Data
+@AllArgsConstructor
+public class VotoPendiente {
+    private Long peliculaId;
+    private String usuario;
+    private int valor;
+}
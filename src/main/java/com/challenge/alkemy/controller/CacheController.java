@@ -0,0 +1,34 @@
+package com.challenge.alkemy.controller;
+
+import com.challenge.alkemy.cache.DetalleCache;
+import com.challenge.alkemy.entity.dto.cacheDto.response.EstadisticasCacheResponseDto;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import lombok.AllArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@AllArgsConstructor
+public class CacheController {
+
+    private final DetalleCache detalleCache;
+
+    @Operation(summary = "Aciertos, fallos y desalojos de la cache de detalles")
+    @GetMapping("/cache/estadisticas")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Cache stats",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = EstadisticasCacheResponseDto.class))}),
+            @ApiResponse(responseCode = "403", description = "User not authenticated",
+                    content = @Content)
+    })
+    public ResponseEntity getEstadisticas() {
+
+        return ResponseEntity.ok(detalleCache.estadisticas());
+    }
+}
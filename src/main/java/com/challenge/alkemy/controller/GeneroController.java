@@ -5,7 +5,9 @@ import com.challenge.alkemy.entity.dto.generoDto.response.CreateGeneroResponseDt
 import com.challenge.alkemy.entity.dto.generoDto.response.GeneroResponseDto;
 import com.challenge.alkemy.error.genero.GeneroAlreadyInUseException;
 import com.challenge.alkemy.error.genero.GeneroNotFoundException;
+import com.challenge.alkemy.idempotencia.RegistroIdempotencia;
 import com.challenge.alkemy.service.GeneroService;
+import com.challenge.alkemy.utility.EtagUtility;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -13,6 +15,7 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -24,6 +27,7 @@ import javax.validation.Valid;
 public class GeneroController {
 
     private final GeneroService generoService;
+    private final RegistroIdempotencia registroIdempotencia;
 
     @Operation(summary = "Obtener todos los Generos")
     @GetMapping("/genero")
@@ -31,13 +35,20 @@ public class GeneroController {
             @ApiResponse(responseCode = "200", description = "Found Generos",
                     content = {@Content(mediaType = "application/json",
                             array = @ArraySchema(schema = @Schema(implementation = GeneroResponseDto.class)))}),
+            @ApiResponse(responseCode = "304", description = "Generos not modified",
+                    content = @Content),
             @ApiResponse(responseCode = "403", description = "User not authenticated",
                     content = @Content)
     })
-    public ResponseEntity getAllGeneros() {
+    public ResponseEntity getAllGeneros(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
         try {
-            return ResponseEntity.ok(generoService.getAllGeneros());
+            // El ETag sale de ids y versiones de generos y peliculas; si coincide no armamos el listado
+            String etag = generoService.getEtagGeneros();
+            if (EtagUtility.coincide(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+            return ResponseEntity.ok().eTag(etag).body(generoService.getAllGeneros());
         } catch (Exception e) {
             return new ResponseEntity<>("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -51,13 +62,21 @@ public class GeneroController {
                             array = @ArraySchema(schema = @Schema(implementation = GeneroResponseDto.class)))}),
             @ApiResponse(responseCode = "403", description = "User not authenticated",
                     content = @Content),
+            @ApiResponse(responseCode = "304", description = "Genero not modified",
+                    content = @Content),
             @ApiResponse(responseCode = "404", description = "Genero Not Found",
                     content = @Content)
     })
-    public ResponseEntity getGeneroById(@PathVariable("id") Long generoId) {
+    public ResponseEntity getGeneroById(@PathVariable("id") Long generoId, @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
         try {
-            return ResponseEntity.ok(generoService.getGeneroById(generoId));
+            String etag = generoService.getEtagGenero(generoId);
+            if (EtagUtility.coincide(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+            // El ETag de la respuesta es el del detalle entregado, que puede venir de la cache, y no el recien leido
+            GeneroResponseDto detalle = generoService.getGeneroById(generoId);
+            return ResponseEntity.ok().eTag(detalle.getEtag()).body(detalle);
         } catch (GeneroNotFoundException generoNotFoundException) {
             return new ResponseEntity<>("NO SE ENCONTRO GENERO CON ESE ID", HttpStatus.NOT_FOUND);
         } catch (Exception e) {
@@ -74,13 +93,14 @@ public class GeneroController {
             @ApiResponse(responseCode = "404", description = "Hero Not Found",
                     content = @Content)
     })
-    public ResponseEntity deleteGeneroById(@PathVariable("id") Long generoId) {
+    public ResponseEntity deleteGeneroById(@PathVariable("id") Long generoId, @RequestParam(value = "reasignarA", required = false) Long reasignarA) {
 
         try {
-            generoService.deleteGeneroById(generoId);
+            generoService.deleteGeneroById(generoId, reasignarA);
             return new ResponseEntity("GENERO ELIMINADO CON EXITO", HttpStatus.OK);
         } catch (GeneroNotFoundException generoNotFoundException) {
-            return new ResponseEntity("NO SE ENCONTRO GENERO A ELIMINAR CON ESE ID", HttpStatus.NOT_FOUND);
+            // Puede faltar el genero a eliminar o el genero al que se reasignan sus peliculas
+            return new ResponseEntity(generoNotFoundException.getMessage(), HttpStatus.NOT_FOUND);
         } catch (Exception e) {
             return new ResponseEntity("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -95,10 +115,14 @@ public class GeneroController {
             @ApiResponse(responseCode = "403", description = "User not authenticated",
                     content = @Content),
             @ApiResponse(responseCode = "400", description = "Genero already in use",
+                    content = @Content),
+            @ApiResponse(responseCode = "422", description = "Idempotency-Key already used with another request",
                     content = @Content)
     })
-    public ResponseEntity createGenero(@Valid @RequestBody CreateGeneroRequestDto genero) {
+    public ResponseEntity createGenero(@Valid @RequestBody CreateGeneroRequestDto genero,
+                                       @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
 
+        return registroIdempotencia.ejecutar(idempotencyKey, genero, () -> {
             try {
                 return ResponseEntity.ok(generoService.saveGenero(genero));
             } catch (GeneroAlreadyInUseException generoAlreadyInUseException) {
@@ -108,5 +132,6 @@ public class GeneroController {
             } catch (Exception e) {
                 return new ResponseEntity("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
             }
+        });
     }
 }
@@ -1,19 +1,30 @@
 package com.challenge.alkemy.controller;
 
 import com.challenge.alkemy.entity.dto.generoDto.response.GeneroResponseDto;
+import com.challenge.alkemy.entity.dto.peliculaDto.request.BuscarPeliculasRequestDto;
+import com.challenge.alkemy.entity.dto.peliculaDto.request.CalificarPeliculaRequestDto;
 import com.challenge.alkemy.entity.dto.peliculaDto.request.CreatePeliculaRequestDto;
+import com.challenge.alkemy.entity.dto.peliculaDto.request.PatchPeliculaRequestDto;
 import com.challenge.alkemy.entity.dto.peliculaDto.request.UpdatePeliculaRequestDto;
 import com.challenge.alkemy.entity.dto.peliculaDto.response.PeliculaBuscadaPorParametroResponseDto;
 import com.challenge.alkemy.entity.dto.peliculaDto.response.PeliculaConDetalleResponseDto;
+import com.challenge.alkemy.entity.dto.peliculaDto.response.ResultadoLoteResponseDto;
+import com.challenge.alkemy.entity.dto.paginaDto.response.PaginaResponseDto;
 import com.challenge.alkemy.error.genero.GeneroNotFoundException;
+import com.challenge.alkemy.error.pagina.CursorInvalidoException;
+import com.challenge.alkemy.error.pelicula.CalificacionInvalidaException;
 import com.challenge.alkemy.error.pelicula.PeliculaAlreadyExistsException;
 import com.challenge.alkemy.error.pelicula.PeliculaBuscadaPorParametroIncorrectoException;
+import com.challenge.alkemy.error.pelicula.PeliculaModificadaException;
 import com.challenge.alkemy.error.pelicula.PeliculaNotFoundException;
 import com.challenge.alkemy.error.personaje.PersonajeNotFoundException;
 import com.challenge.alkemy.error.personaje.PersonajeNotFoundInPeliculaException;
 import com.challenge.alkemy.error.personaje.PersonajeYaEnUsoException;
+import com.challenge.alkemy.idempotencia.RegistroIdempotencia;
+import com.challenge.alkemy.service.CalificacionService;
 import com.challenge.alkemy.service.GeneroService;
 import com.challenge.alkemy.service.PeliculaService;
+import com.challenge.alkemy.utility.EtagUtility;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -21,11 +32,17 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.security.Principal;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 @RestController
@@ -34,6 +51,8 @@ public class PeliculaController {
 
     private final PeliculaService peliculaService;
     private final GeneroService generoService;
+    private final CalificacionService calificacionService;
+    private final RegistroIdempotencia registroIdempotencia;
 
     @Operation(summary = "Obtener todas las peliculas")
     @GetMapping("/pelicula")
@@ -53,6 +72,24 @@ public class PeliculaController {
         }
     }
 
+    @Operation(summary = "Exportar todas las peliculas con detalle, una por linea (NDJSON)")
+    @GetMapping(value = "/pelicula", params = "stream=ndjson")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Peliculas exported",
+                    content = {@Content(mediaType = "application/x-ndjson",
+                            schema = @Schema(implementation = PeliculaConDetalleResponseDto.class))}),
+            @ApiResponse(responseCode = "403", description = "User not authenticated",
+                    content = @Content)
+    })
+    public ResponseEntity exportarPeliculas() {
+
+        // El cuerpo se escribe mientras se recorre la tabla, en otro hilo: la memoria no depende del tamanio del catalogo
+        StreamingResponseBody cuerpo = peliculaService::exportarPeliculas;
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(cuerpo);
+    }
+
     @Operation(summary = "Obtener una pelicula por Id")
     @GetMapping("/pelicula/{id}")
     @ApiResponses(value = {
@@ -61,13 +98,22 @@ public class PeliculaController {
                             array = @ArraySchema(schema = @Schema(implementation = PeliculaConDetalleResponseDto.class)))}),
             @ApiResponse(responseCode = "403", description = "User not authenticated",
                     content = @Content),
+            @ApiResponse(responseCode = "304", description = "Pelicula not modified",
+                    content = @Content),
             @ApiResponse(responseCode = "404", description = "Pelicula not found",
                     content = @Content)
     })
-    public ResponseEntity getPeliculaById(@PathVariable("id") Long peliculaId) {
+    public ResponseEntity getPeliculaById(@PathVariable("id") Long peliculaId, @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
         try {
-            return ResponseEntity.ok(peliculaService.getPeliculaById(peliculaId));
+            // Primero solo las versiones: si el cliente ya tiene esta, respondemos 304 sin cargar ni serializar el detalle
+            String etag = peliculaService.getEtagPelicula(peliculaId);
+            if (EtagUtility.coincide(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+            // El ETag de la respuesta es el del detalle entregado, que puede venir de la cache, y no el recien leido
+            PeliculaConDetalleResponseDto detalle = peliculaService.getPeliculaById(peliculaId);
+            return ResponseEntity.ok().eTag(detalle.getEtag()).body(detalle);
         } catch (PeliculaNotFoundException peliculaNotFoundException) {
             return new ResponseEntity<>("NO SE ENCONTRO PELICULA CON ESE ID", HttpStatus.NOT_FOUND);
         } catch (Exception e) {
@@ -88,18 +134,43 @@ public class PeliculaController {
             @ApiResponse(responseCode = "405", description = "Genero not found",
                     content = @Content),
             @ApiResponse(responseCode = "400", description = "Pelicula already exists",
+                    content = @Content),
+            @ApiResponse(responseCode = "422", description = "Idempotency-Key already used with another request",
+                    content = @Content)
+    })
+    public ResponseEntity createPelicula(@Valid @RequestBody CreatePeliculaRequestDto request,
+                                         @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+
+        // Un reintento con la misma clave recibe la respuesta original sin volver a validar duplicados
+        return registroIdempotencia.ejecutar(idempotencyKey, request, () -> {
+            try {
+                return ResponseEntity.ok(peliculaService.createPelicula(request));
+            } catch (PeliculaAlreadyExistsException peliculaAlreadyExistsException) {
+                return new ResponseEntity("LA PELICULA QUE QUIERES GUARDAR YA EXISTE", HttpStatus.BAD_REQUEST);
+            } catch (PersonajeNotFoundException personajeNotFoundException) {
+                // El mensaje ya trae la lista de ids que no existen
+                return new ResponseEntity(personajeNotFoundException.getMessage(), HttpStatus.NOT_FOUND);
+            } catch (NoSuchElementException noSuchElementException) {
+                return new ResponseEntity<>("NO SE ENCONTRO GENERO CON ESE ID", HttpStatus.NOT_FOUND);
+            } catch (Exception e) {
+                return new ResponseEntity<>("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+        });
+    }
+
+    @Operation(summary = "Crear peliculas en lote")
+    @PostMapping("/pelicula/bulk")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Peliculas created, with the errors of the rejected items",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = ResultadoLoteResponseDto.class))}),
+            @ApiResponse(responseCode = "403", description = "User not authenticated",
                     content = @Content)
     })
-    public ResponseEntity createPelicula(@Valid @RequestBody CreatePeliculaRequestDto request) throws PersonajeNotFoundException, PeliculaAlreadyExistsException, GeneroNotFoundException {
+    public ResponseEntity createPeliculasEnLote(@RequestBody List<CreatePeliculaRequestDto> request) {
 
         try {
-            return  ResponseEntity.ok(peliculaService.createPelicula(request));
-        } catch (PeliculaAlreadyExistsException peliculaAlreadyExistsException) {
-            return new ResponseEntity("LA PELICULA QUE QUIERES GUARDAR YA EXISTE", HttpStatus.BAD_REQUEST);
-        } catch (PersonajeNotFoundException personajeNotFoundException) {
-            return new ResponseEntity("NO SE ENCONTRARON PERSONAJES CON ESE ID", HttpStatus.NOT_FOUND);
-        } catch (NoSuchElementException noSuchElementException) {
-            return new ResponseEntity<>("NO SE ENCONTRO GENERO CON ESE ID", HttpStatus.NOT_FOUND);
+            return ResponseEntity.ok(peliculaService.crearPeliculasEnLote(request));
         } catch (Exception e) {
             return new ResponseEntity<>("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -145,11 +216,46 @@ public class PeliculaController {
         } catch (PeliculaNotFoundException peliculaNotFoundException) {
             return new ResponseEntity<>("NO SE ENCONTRO PELICULA CON ESE ID", HttpStatus.NOT_FOUND);
         } catch (PersonajeNotFoundException personajeNotFoundException) {
-            return new ResponseEntity<>("NO SE ENCONTRO PERSONAJE CON ESE ID", HttpStatus.NOT_FOUND);
+            return new ResponseEntity<>(personajeNotFoundException.getMessage(), HttpStatus.NOT_FOUND);
+        } catch (NoSuchElementException noSuchElementException) {
+            return new ResponseEntity<>("NO SE ENCONTRO GENERO CON ESE ID", HttpStatus.NOT_FOUND);
+        } catch (PeliculaAlreadyExistsException peliculaAlreadyExistsException) {
+            return new ResponseEntity<>("EL TITULO SOLICITADO YA ESTA EN USO", HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            return new ResponseEntity<>("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @Operation(summary = "Editar parcialmente una Pelicula por id")
+    @PatchMapping("/pelicula/{id}")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Pelicula updated",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = PeliculaConDetalleResponseDto.class))}),
+            @ApiResponse(responseCode = "403", description = "User not authenticated",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "One of the parameters not found",
+                    content = @Content),
+            @ApiResponse(responseCode = "400", description = "Pelicula already exists",
+                    content = @Content),
+            @ApiResponse(responseCode = "412", description = "Pelicula modified since the given ETag",
+                    content = @Content)})
+    public ResponseEntity patchPelicula(@PathVariable("id") Long peliculaId, @RequestBody PatchPeliculaRequestDto peliculaRequest,
+                                        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+
+        try {
+            return ResponseEntity.ok(peliculaService.patchPelicula(peliculaId, peliculaRequest, ifMatch));
+        } catch (PeliculaNotFoundException peliculaNotFoundException) {
+            return new ResponseEntity<>("NO SE ENCONTRO PELICULA CON ESE ID", HttpStatus.NOT_FOUND);
+        } catch (PersonajeNotFoundException personajeNotFoundException) {
+            return new ResponseEntity<>(personajeNotFoundException.getMessage(), HttpStatus.NOT_FOUND);
         } catch (NoSuchElementException noSuchElementException) {
             return new ResponseEntity<>("NO SE ENCONTRO GENERO CON ESE ID", HttpStatus.NOT_FOUND);
         } catch (PeliculaAlreadyExistsException peliculaAlreadyExistsException) {
             return new ResponseEntity<>("EL TITULO SOLICITADO YA ESTA EN USO", HttpStatus.BAD_REQUEST);
+        } catch (PeliculaModificadaException | ObjectOptimisticLockingFailureException e) {
+            // O el If-Match no coincide, o otra edicion se adelanto entre la lectura y el UPDATE condicionado por version
+            return new ResponseEntity<>("LA PELICULA FUE MODIFICADA, VUELVA A CONSULTARLA", HttpStatus.PRECONDITION_FAILED);
         } catch (Exception e) {
             return new ResponseEntity<>("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -160,53 +266,64 @@ public class PeliculaController {
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Found Pelicula",
                     content = {@Content(mediaType = "application/json",
-                            array = @ArraySchema(schema = @Schema(implementation = PeliculaBuscadaPorParametroResponseDto.class)))}),
+                            schema = @Schema(implementation = PaginaResponseDto.class))}),
             @ApiResponse(responseCode = "403", description = "User not authenticated",
                     content = @Content),
+            @ApiResponse(responseCode = "400", description = "Wrong cursor or parameter",
+                    content = @Content),
             @ApiResponse(responseCode = "404", description = "Pelicula not found",
                     content = @Content)})
-    public ResponseEntity getMoviesWithParameters(@Valid @RequestParam(required = false, name = "nombre") String nombre, @RequestParam(required = false, name = "genero") Long idGenero, @RequestParam(required = false, name = "orden") String orden
-    ) throws PeliculaNotFoundException {
-
-        if (nombre != null) {
-            try {
-                return ResponseEntity.ok(peliculaService.getPeliculaByTitulo(nombre));
-            } catch (PeliculaNotFoundException peliculaNotFoundException) {
-                return new ResponseEntity("NO SE ENCONTRO NINGUNA PELICULA CON EL TITULO INGRESADO", HttpStatus.NOT_FOUND);
-            } catch (Exception e) {
-                return new ResponseEntity("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
-            }
-        }
+    public ResponseEntity getMoviesWithParameters(@Valid @RequestParam(required = false, name = "nombre") String nombre, @RequestParam(required = false, name = "genero") Long idGenero, @RequestParam(required = false, name = "orden") String orden,
+                                                  @RequestParam(required = false, name = "cursor") String cursor, @RequestParam(required = false, name = "limit") Integer limit
+    ) {
 
-        if (orden != null) {
-            try {
-                return ResponseEntity.ok(peliculaService.getPeliculasByOrder(orden));
-            } catch (PeliculaNotFoundException peliculaNotFoundException) {
-                return new ResponseEntity("NO SE ENCONTRARON PELICULAS A ORDENAR", HttpStatus.NOT_FOUND);
-            } catch (PeliculaBuscadaPorParametroIncorrectoException peliculaBuscadaPorParametroIncorrectoException) {
-                return new ResponseEntity("EL PARAMETRO DE ORDENAMIENTO INGRESADO ES INCORRECTO", HttpStatus.BAD_REQUEST);
-            } catch (Exception e) {
-                return new ResponseEntity("ALGO SALIO MAL",HttpStatus.INTERNAL_SERVER_ERROR);
-            }
+        // Los parametros se combinan libremente: filtro por titulo y genero, orden y pagina se resuelven en una sola consulta
+        BuscarPeliculasRequestDto busqueda = BuscarPeliculasRequestDto.builder()
+                .titulo(nombre)
+                .generoId(idGenero)
+                .orden(orden)
+                .cursor(cursor)
+                .limit(limit)
+                .build();
+        try {
+            return ResponseEntity.ok(peliculaService.buscarPeliculas(busqueda));
+        } catch (PeliculaNotFoundException peliculaNotFoundException) {
+            return new ResponseEntity("NO SE ENCONTRO NINGUNA PELICULA CON EL TITULO INGRESADO", HttpStatus.NOT_FOUND);
+        } catch (GeneroNotFoundException generoNotFoundException) {
+            return new ResponseEntity("NO SE ENCONTRO GENERO CON ESE ID", HttpStatus.NOT_FOUND);
+        } catch (PeliculaBuscadaPorParametroIncorrectoException peliculaBuscadaPorParametroIncorrectoException) {
+            return new ResponseEntity("EL PARAMETRO DE ORDENAMIENTO INGRESADO ES INCORRECTO", HttpStatus.BAD_REQUEST);
+        } catch (CursorInvalidoException cursorInvalidoException) {
+            return new ResponseEntity("EL CURSOR INGRESADO ES INCORRECTO", HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            return new ResponseEntity("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
         }
+    }
 
-        if (idGenero != null) {
-            try {
-                return ResponseEntity.ok(peliculaService.getPeliculasByGeneroId(idGenero));
-            } catch (GeneroNotFoundException generoNotFoundException) {
-                return new ResponseEntity("NO SE ENCONTRO GENERO CON ESE ID", HttpStatus.NOT_FOUND);
-            } catch (Exception e) {
-                return new ResponseEntity("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
-            }
-        }
+    @Operation(summary = "Calificar una pelicula")
+    @PostMapping("/pelicula/{id}/rating")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Vote accepted",
+                    content = @Content),
+            @ApiResponse(responseCode = "403", description = "User not authenticated",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "Pelicula not found",
+                    content = @Content),
+            @ApiResponse(responseCode = "400", description = "Rating out of range",
+                    content = @Content)})
+    public ResponseEntity calificarPelicula(@PathVariable("id") Long peliculaId, @RequestBody CalificarPeliculaRequestDto calificacion, Principal usuario) {
 
-        // Si no se ingreso ningun parametro devolvemos la lista de peliculas completa
         try {
-            return ResponseEntity.ok(peliculaService.getPeliculasSinParametros());
+            // El voto es del usuario autenticado: si vuelve a votar, reemplaza su voto anterior
+            calificacionService.calificarPelicula(peliculaId, usuario.getName(), calificacion);
+            // El voto se aplica a CALIFICACION en el proximo volcado
+            return new ResponseEntity<>("VOTO REGISTRADO", HttpStatus.ACCEPTED);
+        } catch (CalificacionInvalidaException calificacionInvalidaException) {
+            return new ResponseEntity<>("LA CALIFICACION DEBE SER UN NUMERO DEL 1 AL 5", HttpStatus.BAD_REQUEST);
         } catch (PeliculaNotFoundException peliculaNotFoundException) {
-            return new ResponseEntity("NO SE ENCONTRARON PELICULAS EN LA DB", HttpStatus.NOT_FOUND);
+            return new ResponseEntity<>("NO SE ENCONTRO PELICULA CON ESE ID", HttpStatus.NOT_FOUND);
         } catch (Exception e) {
-            return new ResponseEntity("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
+            return new ResponseEntity<>("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
@@ -237,6 +354,56 @@ public class PeliculaController {
         }
     }
 
+    @Operation(summary = "Agregar varios personajes a una pelicula")
+    @PostMapping("/movies/{idMovie}/characters")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Personajes added to Pelicula",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = PeliculaConDetalleResponseDto.class))}),
+            @ApiResponse(responseCode = "403", description = "User not authenticated",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "Pelicula or Personajes not found",
+                    content = @Content)})
+    ResponseEntity addPersonajesToPelicula(
+            @PathVariable Long idMovie,
+            @RequestBody List<Long> personajesId
+    ) {
+        try {
+            return ResponseEntity.ok(peliculaService.addPersonajesToPelicula(idMovie, personajesId));
+        } catch (PersonajeNotFoundException personajeNotFoundException) {
+            return new ResponseEntity<>(personajeNotFoundException.getMessage(), HttpStatus.NOT_FOUND);
+        } catch (PeliculaNotFoundException peliculaNotFoundException) {
+            return new ResponseEntity<>("NO SE ENCONTRO PELICULA CON ESE ID", HttpStatus.NOT_FOUND);
+        } catch (Exception e) {
+            return new ResponseEntity<>("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @Operation(summary = "Eliminar varios personajes de una pelicula")
+    @DeleteMapping("/movies/{idMovie}/characters")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Personajes deleted of Pelicula",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = PeliculaConDetalleResponseDto.class))}),
+            @ApiResponse(responseCode = "403", description = "User not authenticated",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "Pelicula not found",
+                    content = @Content)})
+    ResponseEntity deletePersonajesDePelicula(
+            @PathVariable Long idMovie,
+            @RequestParam("ids") List<Long> personajesId
+    ) {
+        try {
+            return ResponseEntity.ok(peliculaService.deletePersonajesDePelicula(idMovie, personajesId));
+        } catch (PeliculaNotFoundException peliculaNotFoundException) {
+            return new ResponseEntity<>("NO SE ENCONTRO PELICULA CON ESE ID" ,HttpStatus.NOT_FOUND);
+        } catch (PersonajeNotFoundInPeliculaException personajeNotFoundInPeliculaException) {
+            return new ResponseEntity<>("NINGUNO DE LOS PERSONAJES ESTA EN LA PELICULA INDICADA" ,HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            return new ResponseEntity<>("ALGO SALIO MAL" ,HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     @Operation(summary = "Eliminar personaje de una pelicula por Id")
     @DeleteMapping("/movies/{idMovie}/characters/{idCharacter}")
     @ApiResponses(value = {
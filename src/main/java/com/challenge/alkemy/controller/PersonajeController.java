@@ -1,12 +1,22 @@
 package com.challenge.alkemy.controller;
 
+import com.challenge.alkemy.entity.dto.paginaDto.response.PaginaResponseDto;
 import com.challenge.alkemy.entity.dto.peliculaDto.response.PeliculaConDetalleResponseDto;
+import com.challenge.alkemy.entity.dto.personajeDto.request.BuscarPersonajesRequestDto;
 import com.challenge.alkemy.entity.dto.personajeDto.request.CreateOrUpdatePersonajeRequestDto;
+import com.challenge.alkemy.entity.dto.personajeDto.request.PatchPersonajeRequestDto;
 import com.challenge.alkemy.entity.dto.personajeDto.response.PersonajeBuscadoPorParametroResponseDto;
 import com.challenge.alkemy.entity.dto.personajeDto.response.PersonajeConDetalleResponseDto;
+import com.challenge.alkemy.entity.dto.personajeDto.response.SeparacionResponseDto;
+import com.challenge.alkemy.error.pagina.CursorInvalidoException;
+import com.challenge.alkemy.idempotencia.RegistroIdempotencia;
+import com.challenge.alkemy.error.personaje.PersonajeBuscadoPorParametroIncorrectoException;
+import com.challenge.alkemy.error.personaje.PersonajeModificadoException;
 import com.challenge.alkemy.error.personaje.PersonajeNotFoundException;
 import com.challenge.alkemy.error.personaje.PersonajeYaEnUsoException;
+import com.challenge.alkemy.error.personaje.PersonajesSinConexionException;
 import com.challenge.alkemy.service.PersonajeService;
+import com.challenge.alkemy.utility.EtagUtility;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -14,8 +24,10 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.*;
 
 import javax.validation.Valid;
@@ -26,6 +38,7 @@ import java.util.NoSuchElementException;
 public class PersonajeController {
 
     private final PersonajeService personajeService;
+    private final RegistroIdempotencia registroIdempotencia;
 
     @Operation(summary = "Obtener todos los personajes")
     @GetMapping("/personaje")
@@ -52,12 +65,20 @@ public class PersonajeController {
                             array = @ArraySchema(schema = @Schema(implementation = PersonajeConDetalleResponseDto.class)))}),
             @ApiResponse(responseCode = "403", description = "User not authenticated",
                     content = @Content),
+            @ApiResponse(responseCode = "304", description = "Personaje not modified",
+                    content = @Content),
             @ApiResponse(responseCode = "404", description = "Personaje not found",
                     content = @Content)})
-    public ResponseEntity getPersonajeById(@PathVariable("id") Long personajeId) {
+    public ResponseEntity getPersonajeById(@PathVariable("id") Long personajeId, @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
 
         try {
-            return ResponseEntity.ok(personajeService.getPersonajeById(personajeId));
+            String etag = personajeService.getEtagPersonaje(personajeId);
+            if (EtagUtility.coincide(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+            // El ETag de la respuesta es el del detalle entregado, que puede venir de la cache, y no el recien leido
+            PersonajeConDetalleResponseDto detalle = personajeService.getPersonajeById(personajeId);
+            return ResponseEntity.ok().eTag(detalle.getEtag()).body(detalle);
         } catch (PersonajeNotFoundException personajeNotFoundException) {
             return new ResponseEntity("NO SE ENCONTRO PERSONAJE CON EL ID INDICADO", HttpStatus.NOT_FOUND);
         }
@@ -75,17 +96,22 @@ public class PersonajeController {
             @ApiResponse(responseCode = "403", description = "User not authenticated",
                     content = @Content),
             @ApiResponse(responseCode = "400", description = "Personaje already exists",
+                    content = @Content),
+            @ApiResponse(responseCode = "422", description = "Idempotency-Key already used with another request",
                     content = @Content)})
-    public ResponseEntity createPersonaje(@Valid @RequestBody CreateOrUpdatePersonajeRequestDto personajeRequest) {
+    public ResponseEntity createPersonaje(@Valid @RequestBody CreateOrUpdatePersonajeRequestDto personajeRequest,
+                                          @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
 
-        try {
-            return ResponseEntity.ok(personajeService.savePersonaje(personajeRequest));
-        } catch (PersonajeYaEnUsoException personajeYaEnUsoException) {
-            return new ResponseEntity("EL PERSONAJE QUE DESEA CREAR YA EXISTE", HttpStatus.BAD_REQUEST);
-        }
-        catch (Exception e) {
-            return new ResponseEntity("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
-        }
+        return registroIdempotencia.ejecutar(idempotencyKey, personajeRequest, () -> {
+            try {
+                return ResponseEntity.ok(personajeService.savePersonaje(personajeRequest));
+            } catch (PersonajeYaEnUsoException personajeYaEnUsoException) {
+                return new ResponseEntity("EL PERSONAJE QUE DESEA CREAR YA EXISTE", HttpStatus.BAD_REQUEST);
+            }
+            catch (Exception e) {
+                return new ResponseEntity("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+        });
     }
 
     @Operation(summary = "Eliminar un personaje por Id")
@@ -130,67 +156,132 @@ public class PersonajeController {
         }
     }
 
+    @Operation(summary = "Editar parcialmente un personaje")
+    @PatchMapping("/personaje/{id}")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Personaje updated",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = PersonajeConDetalleResponseDto.class))}),
+            @ApiResponse(responseCode = "403", description = "User not authenticated",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "Personaje not found",
+                    content = @Content),
+            @ApiResponse(responseCode = "412", description = "Personaje modified since the given ETag",
+                    content = @Content)})
+    public ResponseEntity patchPersonaje(@PathVariable("id") Long personajeId, @RequestBody PatchPersonajeRequestDto personajeRequest,
+                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        try {
+            return ResponseEntity.ok(personajeService.patchPersonaje(personajeId, personajeRequest, ifMatch));
+        } catch (PersonajeNotFoundException personajeNotFoundException) {
+            return new ResponseEntity("NO SE ENCONTRO PERSONAJE A EDITAR CON ESE ID", HttpStatus.NOT_FOUND);
+        } catch (PersonajeModificadoException | ObjectOptimisticLockingFailureException e) {
+            // O el If-Match no coincide, o otra edicion se adelanto entre la lectura y el UPDATE condicionado por version
+            return new ResponseEntity("EL PERSONAJE FUE MODIFICADO, VUELVA A CONSULTARLO", HttpStatus.PRECONDITION_FAILED);
+        } catch (Exception e) {
+            return new ResponseEntity("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     @Operation(summary = "Busqueda de personajes con parametros")
     @GetMapping("/characters")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Personaje buscado con parametro",
                     content = {@Content(mediaType = "application/json",
-                            array = @ArraySchema(schema = @Schema(implementation = PersonajeBuscadoPorParametroResponseDto.class)))}),
+                            schema = @Schema(implementation = PaginaResponseDto.class))}),
             @ApiResponse(responseCode = "403", description = "User not authenticated",
                     content = @Content),
+            @ApiResponse(responseCode = "400", description = "Wrong cursor or parameter",
+                    content = @Content),
             @ApiResponse(responseCode = "404", description = "Not found",
                     content = @Content)})
     public ResponseEntity getPersonajesWithParameters(
             @RequestParam(required = false, name = "nombre") String nombre,
             @RequestParam(required = false, name = "edad") Integer edad,
+            @RequestParam(required = false, name = "edadMin") Integer edadMin,
+            @RequestParam(required = false, name = "edadMax") Integer edadMax,
             @RequestParam(required = false, name = "idMovie") Long idMovie,
-            @RequestParam(required = false, name = "peso") Double peso
+            @RequestParam(required = false, name = "peso") Double peso,
+            @RequestParam(required = false, name = "pesoMin") Double pesoMin,
+            @RequestParam(required = false, name = "pesoMax") Double pesoMax,
+            @RequestParam(required = false, name = "orden") String orden,
+            @RequestParam(required = false, name = "cursor") String cursor,
+            @RequestParam(required = false, name = "limit") Integer limit
             ) {
 
-        if (nombre != null) {
-            try {
-                return ResponseEntity.ok(personajeService.getPersonajeByNombre(nombre));
-            } catch (PersonajeNotFoundException personajeNotFoundException) {
-                return new ResponseEntity("NO SE ENCONTRO NINGUN PERSONAJE CON EL NOMBRE INGRESADO", HttpStatus.NOT_FOUND);
-            } catch (Exception e) {
-                return new ResponseEntity("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
-            }
+        // Los filtros se combinan libremente: nombre, rangos de edad y peso, pelicula, orden y pagina en una sola busqueda
+        BuscarPersonajesRequestDto busqueda = BuscarPersonajesRequestDto.builder()
+                .nombre(nombre)
+                .edad(edad)
+                .edadMin(edadMin)
+                .edadMax(edadMax)
+                .peso(peso)
+                .pesoMin(pesoMin)
+                .pesoMax(pesoMax)
+                .idMovie(idMovie)
+                .orden(orden)
+                .cursor(cursor)
+                .limit(limit)
+                .build();
+        try {
+            return ResponseEntity.ok(personajeService.buscarPersonajes(busqueda));
+        } catch (PersonajeNotFoundException personajeNotFoundException) {
+            return new ResponseEntity("NO SE ENCONTRO NINGUN PERSONAJE CON EL NOMBRE INGRESADO", HttpStatus.NOT_FOUND);
+        } catch (NoSuchElementException noSuchElementException) {
+            return new ResponseEntity("NO SE ENCONTRO PELICULA CON ESE ID", HttpStatus.NOT_FOUND);
+        } catch (PersonajeBuscadoPorParametroIncorrectoException personajeBuscadoPorParametroIncorrectoException) {
+            return new ResponseEntity("EL PARAMETRO DE ORDENAMIENTO INGRESADO ES INCORRECTO", HttpStatus.BAD_REQUEST);
+        } catch (CursorInvalidoException cursorInvalidoException) {
+            return new ResponseEntity("EL CURSOR INGRESADO ES INCORRECTO", HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            return new ResponseEntity("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
         }
+    }
 
-        if (edad != null) {
-            try {
-                return ResponseEntity.ok(personajeService.getPersonajeByEdad(edad));
-            } catch (PersonajeNotFoundException personajeNotFoundException) {
-                return new ResponseEntity("NO SE ENCONTRO NINGUN PERSONAJE CON LA EDAD INGRESADA", HttpStatus.NOT_FOUND);
-            } catch (Exception e) {
-                return new ResponseEntity("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
-            }
-        }
+    @Operation(summary = "Personajes que comparten alguna pelicula con el indicado")
+    @GetMapping("/characters/{id}/costars")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Costars found",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = PaginaResponseDto.class))}),
+            @ApiResponse(responseCode = "403", description = "User not authenticated",
+                    content = @Content),
+            @ApiResponse(responseCode = "400", description = "Wrong cursor",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "Personaje not found",
+                    content = @Content)})
+    public ResponseEntity getCoprotagonistas(@PathVariable("id") Long personajeId,
+                                             @RequestParam(required = false, name = "cursor") String cursor,
+                                             @RequestParam(required = false, name = "limit") Integer limit) {
 
-        if (peso != null) {
-            try {
-                return ResponseEntity.ok(personajeService.getPersonajeByPeso(peso));
-            } catch (PersonajeNotFoundException personajeNotFoundException) {
-                return new ResponseEntity("NO SE ENCONTRO NINGUN PERSONAJE CON EL PESO INGRESADO", HttpStatus.NOT_FOUND);
-            } catch (Exception e) {
-                return new ResponseEntity("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
-            }
+        try {
+            return ResponseEntity.ok(personajeService.getCoprotagonistas(personajeId, cursor, limit));
+        } catch (PersonajeNotFoundException personajeNotFoundException) {
+            return new ResponseEntity("NO SE ENCONTRO PERSONAJE CON ESE ID", HttpStatus.NOT_FOUND);
+        } catch (CursorInvalidoException cursorInvalidoException) {
+            return new ResponseEntity("EL CURSOR INGRESADO ES INCORRECTO", HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            return new ResponseEntity("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
         }
+    }
 
-        if (idMovie != null) {
-
-            try {
-                return ResponseEntity.ok(personajeService.getPersonajesByPeliculaId(idMovie));
-            } catch (NoSuchElementException noSuchElementException) {
-                return new ResponseEntity("NO SE ENCONTRO PELICULA CON ESE ID", HttpStatus.NOT_FOUND);
-            } catch (Exception e) {
-                return new ResponseEntity("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
-            }
-        }
+    @Operation(summary = "Grados de separacion entre dos personajes")
+    @GetMapping("/characters/{origen}/path/{destino}")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Shortest path found",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = SeparacionResponseDto.class))}),
+            @ApiResponse(responseCode = "403", description = "User not authenticated",
+                    content = @Content),
+            @ApiResponse(responseCode = "404", description = "Personaje not found or not connected",
+                    content = @Content)})
+    public ResponseEntity getSeparacion(@PathVariable("origen") Long origenId, @PathVariable("destino") Long destinoId) {
 
-        // Si no se ingreso ningun parametro devolvemos la lista de personajes completa.
         try {
-            return ResponseEntity.ok(personajeService.getPersonajes());
+            return ResponseEntity.ok(personajeService.getSeparacion(origenId, destinoId));
+        } catch (PersonajeNotFoundException personajeNotFoundException) {
+            return new ResponseEntity("NO SE ENCONTRO PERSONAJE CON ESE ID", HttpStatus.NOT_FOUND);
+        } catch (PersonajesSinConexionException personajesSinConexionException) {
+            return new ResponseEntity("NO HAY PELICULAS QUE CONECTEN A LOS PERSONAJES", HttpStatus.NOT_FOUND);
         } catch (Exception e) {
             return new ResponseEntity("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -0,0 +1,41 @@
+package com.challenge.alkemy.controller;
+
+import com.challenge.alkemy.entity.dto.sugerenciaDto.response.SugerenciasResponseDto;
+import com.challenge.alkemy.service.SugerenciaService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import lombok.AllArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@AllArgsConstructor
+public class SugerenciaController {
+
+    private final SugerenciaService sugerenciaService;
+
+    @Operation(summary = "Autocompletar: titulos y nombres de personajes y generos que empiezan con el texto ingresado")
+    @GetMapping("/suggest")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Suggestions found",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = SugerenciasResponseDto.class))}),
+            @ApiResponse(responseCode = "403", description = "User not authenticated",
+                    content = @Content)
+    })
+    public ResponseEntity getSugerencias(@RequestParam(name = "q") String prefijo,
+                                         @RequestParam(required = false, name = "limit") Integer limit) {
+
+        try {
+            return ResponseEntity.ok(sugerenciaService.sugerir(prefijo, limit));
+        } catch (Exception e) {
+            return new ResponseEntity("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+}
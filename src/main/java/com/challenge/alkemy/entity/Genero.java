@@ -1,9 +1,12 @@
 package com.challenge.alkemy.entity;
 
+import com.challenge.alkemy.utility.TextoUtility;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 
 import javax.persistence.*;
 import java.util.List;
@@ -13,20 +16,49 @@ import java.util.List;
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
-@Table(name = "GENERO")
+// NOMBRE_NORMALIZADO es unico: el control de duplicados es una busqueda en ese indice y no un LIKE sobre toda la tabla
+@Table(name = "GENERO", uniqueConstraints = {
+        @UniqueConstraint(name = "UK_GENERO_NOMBRE_NORMALIZADO", columnNames = "NOMBRE_NORMALIZADO")
+})
+@NamedEntityGraph(name = "Genero.peliculas", attributeNodes = @NamedAttributeNode("peliculas"))
 public class Genero {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "genero_seq")
+    @SequenceGenerator(name = "genero_seq", sequenceName = "GENERO_SEQ", allocationSize = 50)
     @Column(name = "GENERO_ID")
     private Long generoId;
 
     @Column(name = "NOMBRE")
     private String nombre;
 
+    // Lo mantiene la entidad: se recalcula en setNombre y en el builder, nunca se asigna a mano
+    @Setter(AccessLevel.NONE)
+    @Column(name = "NOMBRE_NORMALIZADO")
+    private String nombreNormalizado;
+
     @Column(name = "IMAGEN")
     private String imagen;
 
     @OneToMany(mappedBy = "genero")
     private List<Pelicula> peliculas;
+
+    // Version optimista, parte del ETag de /genero
+    @Version
+    @Column(name = "VERSION")
+    private Long version;
+
+    public void setNombre(String nombre) {
+        this.nombre = nombre;
+        this.nombreNormalizado = TextoUtility.normalizarTitulo(nombre);
+    }
+
+    public static class GeneroBuilder {
+
+        public GeneroBuilder nombre(String nombre) {
+            this.nombre = nombre;
+            this.nombreNormalizado = TextoUtility.normalizarTitulo(nombre);
+            return this;
+        }
+    }
 }
\ No newline at end of file
@@ -1,33 +1,63 @@
 package com.challenge.alkemy.entity;
 
+import com.challenge.alkemy.utility.TextoUtility;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.DynamicUpdate;
 
 import javax.persistence.*;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 import java.util.Date;
-import java.util.List;
+import java.util.Set;
 
 @Entity
+// El UPDATE lleva solo las columnas que cambiaron (mas la version), no la fila completa
+@DynamicUpdate
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
-@Table(name = "PELICULA")
+// Cada orden permitido en /movies tiene su indice (campo, ID): el top-K sale leyendo las primeras entradas del indice
+// TITULO_NORMALIZADO es unico: el control de duplicados es una busqueda en ese indice y no un LIKE sobre toda la tabla
+@Table(name = "PELICULA", uniqueConstraints = {
+        @UniqueConstraint(name = "UK_PELICULA_TITULO_NORMALIZADO", columnNames = "TITULO_NORMALIZADO")
+}, indexes = {
+        @Index(name = "IDX_PELICULA_TITULO", columnList = "TITULO, ID"),
+        @Index(name = "IDX_PELICULA_FECHA_DE_ESTRENO", columnList = "FECHA_DE_ESTRENO, ID"),
+        @Index(name = "IDX_PELICULA_CALIFICACION", columnList = "CALIFICACION, ID"),
+        // Listado de un genero: recorre solo el rango de ese genero_id, ya ordenado por ID
+        @Index(name = "IDX_PELICULA_GENERO", columnList = "genero_id, ID")
+})
+// Plan de carga para el detalle de la pelicula: genero y personajes en una sola consulta
+@NamedEntityGraph(name = "Pelicula.detalle", attributeNodes = {
+        @NamedAttributeNode("genero"),
+        @NamedAttributeNode("personajes")
+})
 public class Pelicula {
 
+    // Secuencia con pool de 50 ids: con IDENTITY Hibernate no puede agrupar los INSERT en batches JDBC
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "pelicula_seq")
+    @SequenceGenerator(name = "pelicula_seq", sequenceName = "PELICULA_SEQ", allocationSize = 50)
     @Column(name = "ID")
     private Long peliculaId;
 
     @Column(name = "TITULO")
     private String titulo;
 
+    // Lo mantiene la entidad: se recalcula en setTitulo y en el builder, nunca se asigna a mano
+    @Setter(AccessLevel.NONE)
+    @Column(name = "TITULO_NORMALIZADO")
+    private String tituloNormalizado;
+
     @Column(name = "IMAGEN")
     private String imagen;
 
@@ -40,7 +70,19 @@ public class Pelicula {
     @Column(name = "CALIFICACION")
     private int calificacion;
 
+    // Totales de los votos de los usuarios; CALIFICACION es su promedio redondeado y se recalcula en cada volcado
+    @Column(name = "SUMA_VOTOS")
+    private Long sumaVotos;
+
+    @Column(name = "CANTIDAD_VOTOS")
+    private Long cantidadVotos;
+
+    // Set y no List: Hibernate le da a PERSONAJES_PELICULAS la clave primaria (PELICULA_ID, PERSONAJE_ID)
+    // y cambia el reparto fila por fila en lugar de borrar y volver a insertar toda la bolsa
     @ManyToMany
+    @OrderBy("personajeId")
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     @JoinTable(
             name = "PERSONAJES_PELICULAS",
             joinColumns = @JoinColumn(
@@ -50,11 +92,29 @@ public class Pelicula {
                     name = "PERSONAJE_ID"
             )
     )
-    private List<Personaje> personajes;
+    private Set<Personaje> personajes;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name ="genero_id")
     private Genero genero;
 
+    // Se incrementa en cada UPDATE y tambien al cambiar el reparto (PELICULA es duenia de la tabla intermedia)
+    @Version
+    @Column(name = "VERSION")
+    private Long version;
+
+    public void setTitulo(String titulo) {
+        this.titulo = titulo;
+        this.tituloNormalizado = TextoUtility.normalizarTitulo(titulo);
+    }
+
+    public static class PeliculaBuilder {
+
+        public PeliculaBuilder titulo(String titulo) {
+            this.titulo = titulo;
+            this.tituloNormalizado = TextoUtility.normalizarTitulo(titulo);
+            return this;
+        }
+    }
 }
 
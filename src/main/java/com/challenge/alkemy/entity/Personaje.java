@@ -1,29 +1,61 @@
 package com.challenge.alkemy.entity;
 
+import com.challenge.alkemy.utility.TextoUtility;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.DynamicUpdate;
 
 import javax.persistence.*;
 import java.util.List;
+import java.util.Objects;
 
 @Entity
+// El UPDATE lleva solo las columnas que cambiaron (mas la version), no la fila completa
+@DynamicUpdate
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
-@Table(name = "PERSONAJE")
+// Cada filtro u orden de /characters que cae en la base tiene su indice (campo, ID): el rango y el keyset se leen del indice
+@Table(name = "PERSONAJE", indexes = {
+        @Index(name = "IDX_PERSONAJE_NOMBRE", columnList = "NOMBRE, ID"),
+        @Index(name = "IDX_PERSONAJE_EDAD", columnList = "EDAD, ID"),
+        @Index(name = "IDX_PERSONAJE_PESO", columnList = "PESO, ID"),
+        // El control de duplicados al crear es una busqueda exacta en este indice
+        @Index(name = "IDX_PERSONAJE_NOMBRE_NORMALIZADO", columnList = "NOMBRE_NORMALIZADO")
+})
+// Planes de carga: el listado trae las peliculas junto con el genero de cada una; el detalle ademas trae la historia
+@NamedEntityGraph(name = "Personaje.listado",
+        attributeNodes = @NamedAttributeNode(value = "peliculas", subgraph = "peliculas"),
+        subgraphs = @NamedSubgraph(name = "peliculas", attributeNodes = @NamedAttributeNode("genero"))
+)
+@NamedEntityGraph(name = "Personaje.detalle",
+        attributeNodes = {@NamedAttributeNode(value = "peliculas", subgraph = "peliculas"), @NamedAttributeNode("historia")},
+        subgraphs = @NamedSubgraph(name = "peliculas", attributeNodes = @NamedAttributeNode("genero"))
+)
 public class Personaje {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "personaje_seq")
+    @SequenceGenerator(name = "personaje_seq", sequenceName = "PERSONAJE_SEQ", allocationSize = 50)
     @Column(name = "ID")
     private long personajeId;
 
     @Column(name = "NOMBRE")
     private String nombre;
 
+    // Lo mantiene la entidad: se recalcula en setNombre y en el builder. Las busquedas con demasiadas
+    // coincidencias en el indice de nombres filtran con LIKE sobre esta columna en lugar de un IN gigante
+    @Setter(AccessLevel.NONE)
+    @Column(name = "NOMBRE_NORMALIZADO")
+    private String nombreNormalizado;
+
     @Column(name = "IMAGEN")
     private String imagen;
 
@@ -33,9 +65,71 @@ public class Personaje {
     @Column(name = "PESO")
     private double peso;
 
-    @Column(name = "HISTORIA")
-    private String historia;
+    // Lazy y en su propia tabla: solo la lee el detalle del personaje.
+    // Cambiarla mueve HISTORIA_ID, asi el UPDATE sube la version y el ETag la cubre
+    @OneToOne(fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
+    @JoinColumn(name = "HISTORIA_ID")
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    private PersonajeHistoria historia;
 
     @ManyToMany(mappedBy = "personajes")
+    @ToString.Exclude
     private List<Pelicula> peliculas;
+
+    // Version optimista; entra en el ETag de su detalle y en el de las peliculas donde aparece
+    @Version
+    @Column(name = "VERSION")
+    private Long version;
+
+    // Fuera de una sesion solo se puede leer si vino en el plan de carga "Personaje.detalle"
+    public String getHistoria() {
+        return historia == null ? null : historia.getTexto();
+    }
+
+    public void setNombre(String nombre) {
+        this.nombre = nombre;
+        this.nombreNormalizado = TextoUtility.normalizarTitulo(nombre);
+    }
+
+    public void setHistoria(String historia) {
+        if (!Objects.equals(getHistoria(), historia)) {
+            this.historia = historia == null ? null : new PersonajeHistoria(historia);
+        }
+    }
+
+    // El personaje vive dentro del Set de reparto de cada pelicula: la igualdad es solo por id, asi editar
+    // nombre, edad o peso no lo pierde dentro del Set. Sin id todavia (0) solo es igual a si mismo, y el hashCode
+    // es constante para no cambiar cuando el INSERT le asigna el id
+    @Override
+    public boolean equals(Object otro) {
+        if (this == otro) {
+            return true;
+        }
+        if (!(otro instanceof Personaje)) {
+            return false;
+        }
+        // getPersonajeId y no el campo: otro puede ser un proxy lazy de Hibernate
+        return personajeId != 0 && personajeId == ((Personaje) otro).getPersonajeId();
+    }
+
+    @Override
+    public int hashCode() {
+        return Personaje.class.hashCode();
+    }
+
+    public static class PersonajeBuilder {
+
+        public PersonajeBuilder nombre(String nombre) {
+            this.nombre = nombre;
+            this.nombreNormalizado = TextoUtility.normalizarTitulo(nombre);
+            return this;
+        }
+
+        public PersonajeBuilder historia(String historia) {
+            this.historia = historia == null ? null : new PersonajeHistoria(historia);
+            return this;
+        }
+    }
 }
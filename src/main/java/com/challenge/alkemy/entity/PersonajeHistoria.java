@@ -0,0 +1,34 @@
+package com.challenge.alkemy.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.*;
+
+// Historia de un personaje, fuera de la fila de PERSONAJE: es texto libre que puede ocupar varios KB.
+// Personaje la referencia de forma lazy, asi los listados y el reparto de cada pelicula no la leen.
+// No se edita: un cambio de historia inserta una fila nueva y borra la anterior
+@Entity
+@Immutable
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "PERSONAJE_HISTORIA")
+public class PersonajeHistoria {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "personaje_historia_seq")
+    @SequenceGenerator(name = "personaje_historia_seq", sequenceName = "PERSONAJE_HISTORIA_SEQ", allocationSize = 50)
+    @Column(name = "ID")
+    private Long historiaId;
+
+    @Lob
+    @Column(name = "TEXTO")
+    private String texto;
+
+    public PersonajeHistoria(String texto) {
+        this.texto = texto;
+    }
+}
@@ -0,0 +1,39 @@
+package com.challenge.alkemy.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+// Fila de la tabla intermedia del reparto, solo para lectura: la escribe Pelicula.personajes.
+// Permite filtrar personajes por pelicula contra PERSONAJES_PELICULAS sin pasar por PELICULA;
+// su clave primaria (PELICULA_ID, PERSONAJE_ID) es el indice que recorre el reparto de una pelicula
+@Entity
+@Immutable
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@IdClass(PersonajePelicula.Clave.class)
+@Table(name = "PERSONAJES_PELICULAS")
+public class PersonajePelicula {
+
+    @Id
+    @Column(name = "PELICULA_ID")
+    private Long peliculaId;
+
+    @Id
+    @Column(name = "PERSONAJE_ID")
+    private Long personajeId;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Clave implements Serializable {
+
+        private Long peliculaId;
+        private Long personajeId;
+    }
+}
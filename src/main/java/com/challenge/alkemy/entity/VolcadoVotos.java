@@ -0,0 +1,30 @@
+package com.challenge.alkemy.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+// Ultimo segmento del log de votos que ya se sumo a PELICULA. Se escribe en la misma transaccion que el UPDATE
+// de los votos, asi al arrancar se sabe que segmentos quedaron en disco solo porque no se llegaron a borrar
+@Entity
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "VOLCADO_VOTOS")
+public class VolcadoVotos {
+
+    // La tabla tiene una sola fila
+    public static final Long ID = 1L;
+
+    @Id
+    @Column(name = "ID")
+    private Long volcadoId;
+
+    @Column(name = "ULTIMO_SEGMENTO")
+    private long ultimoSegmento;
+}
@@ -0,0 +1,44 @@
+package com.challenge.alkemy.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+// Ultimo voto de un usuario a una pelicula: la clave (PELICULA_ID, USUARIO) hace que volver a votar reemplace
+// el voto anterior. SUMA_VOTOS y CANTIDAD_VOTOS de PELICULA son los totales de estas filas
+@Entity
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@IdClass(Voto.Clave.class)
+@Table(name = "VOTO")
+public class Voto {
+
+    @Id
+    @Column(name = "PELICULA_ID")
+    private Long peliculaId;
+
+    @Id
+    @Column(name = "USUARIO")
+    private String usuario;
+
+    @Column(name = "VALOR")
+    private int valor;
+
+    // Null hasta el INSERT: asi saveAll sabe que el voto es nuevo y lo persiste sin un SELECT previo
+    @Version
+    @Column(name = "VERSION")
+    private Long version;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Clave implements Serializable {
+
+        private Long peliculaId;
+        private String usuario;
+    }
+}
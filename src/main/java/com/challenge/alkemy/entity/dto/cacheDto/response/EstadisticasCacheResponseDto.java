@@ -0,0 +1,19 @@
+package com.challenge.alkemy.entity.dto.cacheDto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class EstadisticasCacheResponseDto {
+
+    private long aciertos;
+    private long fallos;
+    private long desalojos;
+    private double tasaDeAciertos;
+    private long entradas;
+}
@@ -16,6 +16,5 @@ public class CreateGeneroRequestDto {
     private String nombre;
     @NotBlank
     private String imagen;
-    @NotEmpty
     private List<Long> peliculasId;
 }
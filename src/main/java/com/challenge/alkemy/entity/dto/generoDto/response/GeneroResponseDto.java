@@ -1,8 +1,10 @@
 package com.challenge.alkemy.entity.dto.generoDto.response;
 
 import com.challenge.alkemy.entity.dto.peliculaDto.response.PeliculaBuscadaPorParametroResponseDto;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 
 import java.util.List;
 
@@ -13,4 +15,9 @@ public class GeneroResponseDto {
     private String nombre;
     private String imagen;
     private List<PeliculaBuscadaPorParametroResponseDto> peliculas;
+
+    // ETag de las versiones con las que se armo este detalle: viaja con el DTO dentro de la cache, no en el JSON
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private String etag;
 }
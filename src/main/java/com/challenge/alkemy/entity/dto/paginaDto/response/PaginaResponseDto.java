@@ -0,0 +1,19 @@
+package com.challenge.alkemy.entity.dto.paginaDto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PaginaResponseDto<T> {
+
+    private List<T> contenido;
+    // Cursor opaco para pedir la pagina siguiente, null si no hay mas resultados
+    private String next;
+}
@@ -1,5 +1,6 @@
 package com.challenge.alkemy.entity.dto.peliculaDto;
 
+import com.challenge.alkemy.entity.Genero;
 import com.challenge.alkemy.entity.Pelicula;
 import com.challenge.alkemy.entity.Personaje;
 import com.challenge.alkemy.entity.dto.generoDto.response.CreateGeneroResponseDto;
@@ -22,11 +23,7 @@ public class PeliculaMapper {
         return PeliculaConDetalleResponseDto.builder()
                 .calificacion(pelicula.getCalificacion())
                 .fechaEstreno(pelicula.getFechaEstreno())
-                .genero(CreateGeneroResponseDto.builder()
-                        .nombre(pelicula.getGenero().getNombre())
-                        .imagen(pelicula.getGenero().getImagen())
-                        .id(pelicula.getGenero().getGeneroId())
-                        .build())
+                .genero(mapGeneroToGeneroDto(pelicula.getGenero()))
                 .id(pelicula.getPeliculaId())
                 .titulo(pelicula.getTitulo())
                 .imagen(pelicula.getImagen())
@@ -42,6 +39,7 @@ public class PeliculaMapper {
                 .fechaEstreno(pelicula.getFechaEstreno())
                 .titulo(pelicula.getTitulo())
                 .imagen(pelicula.getImagen())
+                .id(pelicula.getPeliculaId())
                 .build();
     }
 
@@ -51,6 +49,7 @@ public class PeliculaMapper {
                 .titulo(pelicula.getTitulo())
                 .fechaEstreno(pelicula.getFechaEstreno())
                 .imagen(pelicula.getImagen())
+                .id(pelicula.getPeliculaId())
                 .build()).collect(Collectors.toList());
     }
 
@@ -59,9 +58,8 @@ public class PeliculaMapper {
                 .titulo(pelicula.getTitulo())
                 .fechaEstreno(pelicula.getFechaEstreno())
                 .imagen(pelicula.getImagen())
-                .calificacion(pelicula.getCalificacion())
-                .personajesId(List.of(pelicula.getPersonajes().get(0).getPersonajeId()))
-                .generoId(pelicula.getGenero().getGeneroId())
+                .personajesId(List.of(pelicula.getPersonajes().iterator().next().getPersonajeId()))
+                .generoId(pelicula.getGenero() == null ? null : pelicula.getGenero().getGeneroId())
                 .build();
     }
 
@@ -71,8 +69,20 @@ public class PeliculaMapper {
                 .fechaEstreno(pelicula.getFechaEstreno())
                 .imagen(pelicula.getImagen())
                 .calificacion(pelicula.getCalificacion())
-                .personajesId(List.of(pelicula.getPersonajes().get(0).getPersonajeId()))
-                .generoId(pelicula.getGenero().getGeneroId())
+                .personajesId(List.of(pelicula.getPersonajes().iterator().next().getPersonajeId()))
+                .generoId(pelicula.getGenero() == null ? null : pelicula.getGenero().getGeneroId())
+                .build();
+    }
+
+    // Al borrar un genero sus peliculas pueden quedar sin genero (genero_id en NULL)
+    private CreateGeneroResponseDto mapGeneroToGeneroDto(Genero genero) {
+        if (genero == null) {
+            return null;
+        }
+        return CreateGeneroResponseDto.builder()
+                .nombre(genero.getNombre())
+                .imagen(genero.getImagen())
+                .id(genero.getGeneroId())
                 .build();
     }
 
@@ -84,7 +94,6 @@ public class PeliculaMapper {
                 .nombre(personaje.getNombre())
                 .edad(personaje.getEdad())
                 .peso(personaje.getPeso())
-                .historia(personaje.getHistoria())
                 .build();
     }
 }
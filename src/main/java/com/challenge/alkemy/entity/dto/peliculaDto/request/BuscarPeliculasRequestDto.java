@@ -0,0 +1,19 @@
+package com.challenge.alkemy.entity.dto.peliculaDto.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BuscarPeliculasRequestDto {
+    // Todos los filtros son opcionales y se pueden combinar entre si
+    private String titulo;
+    private Long generoId;
+    private String orden; // campo[:asc|desc] separados por coma (titulo, fechaEstreno, calificacion); ASC o DESC solo ordena por titulo
+    private String cursor;
+    private Integer limit;
+}
@@ -0,0 +1,14 @@
+package com.challenge.alkemy.entity.dto.peliculaDto.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CalificarPeliculaRequestDto {
+    private Integer valor; // De 1 a 5
+}
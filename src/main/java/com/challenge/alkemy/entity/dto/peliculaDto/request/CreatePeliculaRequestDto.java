@@ -20,7 +20,7 @@ public class CreatePeliculaRequestDto {
     private String imagen;
     @NotNull( message = "Calification cannot be null")
     @Min(value = 1 , message = "Calification should be between 1 and 5")
-    @Max(value = 1 , message = "Calification should be between 1 and 5")
+    @Max(value = 5 , message = "Calification should be between 1 and 5")
     private int calificacion;
     @NotEmpty
     private List<Long> personajesId; // Lista de los ID de los personajes
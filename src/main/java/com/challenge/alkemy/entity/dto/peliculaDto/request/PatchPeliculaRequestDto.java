@@ -0,0 +1,24 @@
+package com.challenge.alkemy.entity.dto.peliculaDto.request;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+import java.util.List;
+
+// Edicion parcial: los campos en null no se tocan. La calificacion no se edita, sale de los votos
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PatchPeliculaRequestDto {
+    private String titulo;
+    @JsonFormat(pattern="dd-MM-yyyy")
+    private Date fechaEstreno;
+    private String imagen;
+    private List<Long> personajesId; // Si viene, reemplaza el reparto completo
+    private Long generoId;
+}
@@ -18,10 +18,7 @@ public class UpdatePeliculaRequestDto {
     private Date fechaEstreno;
     @NotBlank
     private String imagen; // Deberia ser de tipo URL
-    @NotNull( message = "Calification cannot be null")
-    @Min(value = 1 , message = "Calification should be between 1 and 5")
-    @Max(value = 1 , message = "Calification should be between 1 and 5")
-    private int calificacion;
+    // Sin calificacion: es el promedio de los votos y solo la cambia el volcado
     @NotEmpty
     private List<Long> personajesId; // Lista de los ID de los personajes
     @NotNull
@@ -0,0 +1,18 @@
+package com.challenge.alkemy.entity.dto.peliculaDto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ErrorEnLoteResponseDto {
+
+    // Posicion del item dentro del lote recibido
+    private int indice;
+    private String titulo;
+    private String error;
+}
@@ -1,6 +1,7 @@
 package com.challenge.alkemy.entity.dto.peliculaDto.response;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -20,5 +21,8 @@ public class PeliculaBuscadaPorParametroResponseDto {
     private String imagen;
     @JsonFormat(pattern="dd-MM-yyyy")
     private Date fechaEstreno;
+    // Solo se usa para armar el cursor de la pagina siguiente, no se expone en la respuesta
+    @JsonIgnore
+    private Long id;
 
 }
@@ -4,8 +4,10 @@ import com.challenge.alkemy.entity.dto.generoDto.response.CreateGeneroResponseDt
 import com.challenge.alkemy.entity.dto.personajeDto.response.PersonajeConDetalleResponseDto;
 import com.challenge.alkemy.entity.dto.personajeDto.response.PersonajeEnPeliculaResponseDto;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
@@ -32,5 +34,10 @@ public class PeliculaConDetalleResponseDto {
 
     private List<PersonajeEnPeliculaResponseDto> personajes;
 
+    // ETag de las versiones con las que se armo este detalle: viaja con el DTO dentro de la cache, no en el JSON
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private String etag;
+
 }
 
@@ -0,0 +1,19 @@
+package com.challenge.alkemy.entity.dto.peliculaDto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ResultadoLoteResponseDto {
+
+    // Ids de las peliculas creadas, en el orden en que venian en el lote
+    private List<Long> creadas;
+    private List<ErrorEnLoteResponseDto> errores;
+}
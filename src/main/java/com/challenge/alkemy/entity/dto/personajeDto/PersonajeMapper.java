@@ -20,6 +20,7 @@ public class PersonajeMapper {
         return PersonajeBuscadoPorParametroResponseDto.builder()
                 .nombre(personaje.getNombre())
                 .imagen(personaje.getImagen())
+                .id(personaje.getPersonajeId())
                 .build();
     }
 
@@ -28,9 +29,11 @@ public class PersonajeMapper {
         return personajes.stream().map(personaje -> PersonajeBuscadoPorParametroResponseDto.builder()
                 .nombre(personaje.getNombre())
                 .imagen(personaje.getImagen())
+                .id(personaje.getPersonajeId())
                 .build()).collect(Collectors.toList());
     }
 
+    // Listado: sin historia, que solo se carga en el detalle de cada personaje
     public List<PersonajeConDetalleResponseDto> personajeToPersonajeConDetalleResponseDto(List<Personaje> personajes) {
 
         return personajes.stream().map(personaje -> PersonajeConDetalleResponseDto.builder()
@@ -39,7 +42,6 @@ public class PersonajeMapper {
                 .imagen(personaje.getImagen())
                 .edad(personaje.getEdad())
                 .peso(personaje.getPeso())
-                .historia(personaje.getHistoria())
                 .peliculas(personaje.getPeliculas().stream()
                         .map(this::mapPeliculaToPeliculaDto)
                         .collect(Collectors.toList()))
@@ -67,7 +69,8 @@ public class PersonajeMapper {
                 .fechaEstreno(pelicula.getFechaEstreno())
                 .imagen(pelicula.getImagen())
                 .calificacion(pelicula.getCalificacion())
-                .genero(CreateGeneroResponseDto.builder()
+                // Las peliculas de un genero borrado quedan sin genero
+                .genero(pelicula.getGenero() == null ? null : CreateGeneroResponseDto.builder()
                         .id(pelicula.getGenero().getGeneroId())
                         .nombre(pelicula.getGenero().getNombre())
                         .imagen(pelicula.getGenero().getImagen())
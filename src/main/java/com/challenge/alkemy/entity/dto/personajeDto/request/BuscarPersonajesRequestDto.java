@@ -0,0 +1,25 @@
+package com.challenge.alkemy.entity.dto.personajeDto.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BuscarPersonajesRequestDto {
+    // Todos los filtros son opcionales y se pueden combinar entre si
+    private String nombre;
+    private Integer edad; // edad exacta, equivale a edadMin = edadMax
+    private Integer edadMin;
+    private Integer edadMax;
+    private Double peso; // peso exacto, equivale a pesoMin = pesoMax
+    private Double pesoMin;
+    private Double pesoMax;
+    private Long idMovie;
+    private String orden; // campo[:asc|desc] separados por coma (nombre, edad, peso)
+    private String cursor;
+    private Integer limit;
+}
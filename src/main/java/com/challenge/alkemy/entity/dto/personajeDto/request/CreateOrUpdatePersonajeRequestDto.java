@@ -4,8 +4,6 @@ import com.sun.istack.NotNull;
 import lombok.Builder;
 import lombok.Data;
 
-import javax.validation.constraints.NotBlank;
-
 @Data
 @Builder
 public class CreateOrUpdatePersonajeRequestDto {
@@ -18,6 +16,5 @@ public class CreateOrUpdatePersonajeRequestDto {
     private int edad;
     @NotNull
     private double peso;
-    @NotBlank
     private String historia;
 }
@@ -0,0 +1,19 @@
+package com.challenge.alkemy.entity.dto.personajeDto.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Edicion parcial: los campos en null no se tocan
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PatchPersonajeRequestDto {
+    private String nombre;
+    private String imagen;
+    private Integer edad;
+    private Double peso;
+    private String historia;
+}
@@ -1,11 +1,19 @@
 package com.challenge.alkemy.entity.dto.personajeDto.response;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 
 @Data
 @Builder
+@AllArgsConstructor
+@NoArgsConstructor
 public class PersonajeBuscadoPorParametroResponseDto {
     private String nombre;
     private String imagen;
+    // Solo se usa para armar el cursor de la pagina siguiente, no se expone en la respuesta
+    @JsonIgnore
+    private Long id;
 }
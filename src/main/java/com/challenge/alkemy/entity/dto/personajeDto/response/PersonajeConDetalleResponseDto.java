@@ -1,8 +1,10 @@
 package com.challenge.alkemy.entity.dto.personajeDto.response;
 
 import com.challenge.alkemy.entity.dto.peliculaDto.response.PeliculaEnPersonajeResponseDto;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 
 import java.util.List;
 
@@ -19,4 +21,9 @@ public class PersonajeConDetalleResponseDto {
 
     private List<PeliculaEnPersonajeResponseDto> peliculas;
 
+    // ETag de las versiones con las que se armo este detalle: viaja con el DTO dentro de la cache, no en el JSON
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private String etag;
+
 }
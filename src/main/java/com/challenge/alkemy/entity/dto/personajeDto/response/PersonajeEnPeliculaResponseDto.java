@@ -13,6 +13,5 @@ public class PersonajeEnPeliculaResponseDto {
     private String imagen;
     private int edad;
     private double peso;
-    private String historia;
 
 }
@@ -0,0 +1,22 @@
+package com.challenge.alkemy.entity.dto.personajeDto.response;
+
+import com.challenge.alkemy.entity.dto.peliculaDto.response.PeliculaBuscadaPorParametroResponseDto;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class SeparacionResponseDto {
+
+    // Cantidad de peliculas que separan a los dos personajes
+    private int grados;
+    // Del origen al destino; peliculas.get(i) une a personajes.get(i) con personajes.get(i + 1)
+    private List<PersonajeBuscadoPorParametroResponseDto> personajes;
+    private List<PeliculaBuscadaPorParametroResponseDto> peliculas;
+}
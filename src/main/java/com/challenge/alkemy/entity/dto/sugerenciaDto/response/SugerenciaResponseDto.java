@@ -0,0 +1,16 @@
+package com.challenge.alkemy.entity.dto.sugerenciaDto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class SugerenciaResponseDto {
+
+    private Long id;
+    private String texto;
+}
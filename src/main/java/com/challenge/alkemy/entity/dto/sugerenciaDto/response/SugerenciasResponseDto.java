@@ -0,0 +1,20 @@
+package com.challenge.alkemy.entity.dto.sugerenciaDto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class SugerenciasResponseDto {
+
+    // Cada lista va de mayor a menor popularidad: votos de la pelicula, peliculas del personaje y peliculas del genero
+    private List<SugerenciaResponseDto> peliculas;
+    private List<SugerenciaResponseDto> personajes;
+    private List<SugerenciaResponseDto> generos;
+}
@@ -0,0 +1,7 @@
+package com.challenge.alkemy.error.pagina;
+
+public class CursorInvalidoException extends Exception {
+    public CursorInvalidoException(String message) {
+        super(message);
+    }
+}
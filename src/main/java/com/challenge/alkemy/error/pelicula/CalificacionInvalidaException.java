@@ -0,0 +1,7 @@
+package com.challenge.alkemy.error.pelicula;
+
+public class CalificacionInvalidaException extends Exception {
+    public CalificacionInvalidaException(String message) {
+        super(message);
+    }
+}
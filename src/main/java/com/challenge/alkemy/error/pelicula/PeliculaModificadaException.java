@@ -0,0 +1,7 @@
+package com.challenge.alkemy.error.pelicula;
+
+public class PeliculaModificadaException extends Exception {
+    public PeliculaModificadaException(String message) {
+        super(message);
+    }
+}
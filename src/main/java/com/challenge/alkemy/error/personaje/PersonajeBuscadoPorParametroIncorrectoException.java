@@ -0,0 +1,7 @@
+package com.challenge.alkemy.error.personaje;
+
+public class PersonajeBuscadoPorParametroIncorrectoException extends Exception {
+    public PersonajeBuscadoPorParametroIncorrectoException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.challenge.alkemy.error.personaje;
+
+public class PersonajeModificadoException extends Exception {
+    public PersonajeModificadoException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.challenge.alkemy.error.personaje;
+
+public class PersonajesSinConexionException extends Exception {
+    public PersonajesSinConexionException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,104 @@
+package com.challenge.alkemy.idempotencia;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// Respuestas de los POST ya resueltos, por usuario y header Idempotency-Key.
+// Un reintento devuelve la respuesta guardada sin volver a ejecutar el alta, y un duplicado que llega mientras
+// la primera sigue en curso espera ese mismo resultado, hasta un maximo. Acotado en cantidad y con TTL desde que se guardo
+@Component
+public class RegistroIdempotencia {
+
+    private final Cache<String, SolicitudIdempotente> solicitudes;
+    private final Duration esperaMaxima;
+
+    public RegistroIdempotencia(@Value("${idempotencia.ttl-minutos:60}") long ttlMinutos,
+                                @Value("${idempotencia.maximo-entradas:10000}") long maximoEntradas,
+                                @Value("${idempotencia.espera-segundos:30}") long esperaSegundos) {
+        this.esperaMaxima = Duration.ofSeconds(esperaSegundos);
+        this.solicitudes = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMinutes(ttlMinutos))
+                .maximumSize(maximoEntradas)
+                .build();
+    }
+
+    // Sin clave se ejecuta como siempre. Los errores 5xx y las excepciones no se guardan: el reintento vuelve a ejecutar
+    public ResponseEntity ejecutar(String clave, Object solicitud, Supplier<ResponseEntity> operacion) {
+
+        if (clave == null || clave.isBlank()) {
+            return operacion.get();
+        }
+        String llave = usuarioActual() + ":" + clave;
+        SolicitudIdempotente nueva = new SolicitudIdempotente(solicitud);
+        SolicitudIdempotente previa = solicitudes.asMap().putIfAbsent(llave, nueva);
+
+        if (previa != null) {
+            // La misma clave con otro cuerpo es un error del cliente, no un reintento
+            if (!previa.mismaSolicitud(solicitud)) {
+                return new ResponseEntity("LA CLAVE DE IDEMPOTENCIA YA SE USO CON OTRA SOLICITUD", HttpStatus.UNPROCESSABLE_ENTITY);
+            }
+            return esperar(previa, clave, solicitud, operacion);
+        }
+
+        try {
+            ResponseEntity respuesta = operacion.get();
+            if (respuesta.getStatusCode().is5xxServerError()) {
+                solicitudes.asMap().remove(llave, nueva);
+            }
+            nueva.respuesta.complete(respuesta);
+            return respuesta;
+        } catch (RuntimeException e) {
+            solicitudes.asMap().remove(llave, nueva);
+            nueva.respuesta.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    // El duplicado no bloquea su hilo para siempre: pasado el maximo responde 409 y el cliente puede reintentar.
+    // Si la primera termino con una excepcion ya no esta registrada, asi que este duplicado ejecuta la operacion
+    private ResponseEntity esperar(SolicitudIdempotente previa, String clave, Object solicitud, Supplier<ResponseEntity> operacion) {
+
+        try {
+            return previa.respuesta.get(esperaMaxima.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return new ResponseEntity("LA SOLICITUD CON ESA CLAVE DE IDEMPOTENCIA SIGUE EN CURSO", HttpStatus.CONFLICT);
+        } catch (ExecutionException e) {
+            return ejecutar(clave, solicitud, operacion);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ResponseEntity("LA SOLICITUD CON ESA CLAVE DE IDEMPOTENCIA SIGUE EN CURSO", HttpStatus.CONFLICT);
+        }
+    }
+
+    private static String usuarioActual() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null ? "" : authentication.getName();
+    }
+
+    private static final class SolicitudIdempotente {
+
+        private final Object solicitud;
+        private final CompletableFuture<ResponseEntity> respuesta = new CompletableFuture<>();
+
+        private SolicitudIdempotente(Object solicitud) {
+            this.solicitud = solicitud;
+        }
+
+        private boolean mismaSolicitud(Object otra) {
+            return solicitud == null ? otra == null : solicitud.equals(otra);
+        }
+    }
+}
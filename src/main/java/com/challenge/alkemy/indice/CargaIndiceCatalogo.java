@@ -0,0 +1,31 @@
+package com.challenge.alkemy.indice;
+
+import com.challenge.alkemy.repository.GeneroRepository;
+import com.challenge.alkemy.repository.PeliculaRepository;
+import com.challenge.alkemy.repository.PersonajeRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+@Component
+@AllArgsConstructor
+public class CargaIndiceCatalogo {
+
+    private final IndiceCatalogo indiceCatalogo;
+    private final PeliculaRepository peliculaRepository;
+    private final PersonajeRepository personajeRepository;
+    private final GeneroRepository generoRepository;
+
+    // Se ejecuta una vez que la base ya fue inicializada, a partir de ahi los servicios mantienen los indices
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargar() {
+        indiceCatalogo.cargarPeliculas(peliculaRepository.findEntradasIndice());
+        indiceCatalogo.cargarPersonajes(personajeRepository.findEntradasIndice());
+        indiceCatalogo.cargarGeneros(generoRepository.findEntradasIndice());
+        indiceCatalogo.cargarMedidasPersonajes(personajeRepository.findMedidas());
+        indiceCatalogo.cargarReparto(peliculaRepository.findParesReparto());
+        indiceCatalogo.cargarVotos(peliculaRepository.findCantidadVotos());
+        indiceCatalogo.cargarGenerosDePeliculas(peliculaRepository.findGenerosDePeliculas());
+    }
+}
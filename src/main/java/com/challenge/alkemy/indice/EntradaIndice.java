@@ -0,0 +1,8 @@
+package com.challenge.alkemy.indice;
+
+// Proyeccion minima (id y texto) para cargar los indices sin hidratar entidades
+public interface EntradaIndice {
+    Long getId();
+
+    String getTexto();
+}
@@ -0,0 +1,8 @@
+package com.challenge.alkemy.indice;
+
+// Proyeccion del genero de cada pelicula, para contar las peliculas de cada genero al iniciar
+public interface GeneroDePelicula {
+    Long getPeliculaId();
+
+    Long getGeneroId();
+}
@@ -0,0 +1,485 @@
+package com.challenge.alkemy.indice;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Grafo de co-apariciones armado con los pares de PERSONAJES_PELICULAS. Es bipartito (personaje - pelicula)
+// y cada lado se guarda como CSR (compressed sparse row): los vecinos de un nodo son un tramo de un unico int[],
+// ordenados. Coprotagonistas y caminos recorren esos arrays primitivos sin ir a la base ni crear entidades.
+// Los ids se traducen a nodos int densos solo en los extremos de cada consulta.
+// Una escritura reemplaza la fila entera del nodo en una tabla aparte; cuando esas filas sueltas
+// superan una fraccion del grafo se vuelven a compactar en los arrays
+public class GrafoReparto {
+
+    private static final int[] VACIA = new int[0];
+    // Filas sueltas toleradas antes de compactar: este minimo o un octavo de los nodos, lo que sea mayor
+    private static final int MINIMO_PARA_COMPACTAR = 1024;
+
+    private final Nodos personajes = new Nodos();
+    private final Nodos peliculas = new Nodos();
+    private Adyacencia peliculasDePersonaje = new Adyacencia();
+    private Adyacencia repartoDePelicula = new Adyacencia();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Carga inicial: arma ambos CSR de una vez a partir de los pares (pelicula, personaje)
+    public void cargar(long[] peliculaIds, long[] personajeIds) {
+        lock.writeLock().lock();
+        try {
+            personajes.limpiar();
+            peliculas.limpiar();
+            int[] nodosPelicula = new int[peliculaIds.length];
+            int[] nodosPersonaje = new int[personajeIds.length];
+            for (int i = 0; i < nodosPelicula.length; i++) {
+                nodosPelicula[i] = peliculas.agregar(peliculaIds[i]);
+                nodosPersonaje[i] = personajes.agregar(personajeIds[i]);
+            }
+            repartoDePelicula = Adyacencia.armar(peliculas.cantidad, nodosPelicula, nodosPersonaje);
+            peliculasDePersonaje = Adyacencia.armar(personajes.cantidad, nodosPersonaje, nodosPelicula);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Deja el reparto de la pelicula igual a los ids recibidos
+    public void reemplazarReparto(long peliculaId, long[] personajeIds) {
+        lock.writeLock().lock();
+        try {
+            asignarReparto(peliculas.agregar(peliculaId), nodosDePersonajes(personajeIds));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void agregarAlReparto(long peliculaId, long[] personajeIds) {
+        lock.writeLock().lock();
+        try {
+            int pelicula = peliculas.agregar(peliculaId);
+            int[] reparto = repartoDePelicula.copiaDeFila(pelicula);
+            for (int personaje : nodosDePersonajes(personajeIds)) {
+                reparto = con(reparto, personaje);
+            }
+            asignarReparto(pelicula, reparto);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void quitarDelReparto(long peliculaId, long[] personajeIds) {
+        lock.writeLock().lock();
+        try {
+            int pelicula = peliculas.nodo(peliculaId);
+            if (pelicula < 0) {
+                return;
+            }
+            int[] reparto = repartoDePelicula.copiaDeFila(pelicula);
+            for (long personajeId : personajeIds) {
+                reparto = sin(reparto, personajes.nodo(personajeId));
+            }
+            asignarReparto(pelicula, reparto);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void eliminarPelicula(long peliculaId) {
+        lock.writeLock().lock();
+        try {
+            int pelicula = peliculas.nodo(peliculaId);
+            if (pelicula >= 0) {
+                asignarReparto(pelicula, VACIA);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void eliminarPersonaje(long personajeId) {
+        lock.writeLock().lock();
+        try {
+            int personaje = personajes.nodo(personajeId);
+            if (personaje < 0) {
+                return;
+            }
+            for (int pelicula : peliculasDePersonaje.copiaDeFila(personaje)) {
+                repartoDePelicula.reemplazar(pelicula, sin(repartoDePelicula.copiaDeFila(pelicula), personaje));
+            }
+            peliculasDePersonaje.reemplazar(personaje, VACIA);
+            compactarSiHaceFalta();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Ids del reparto actual de la pelicula
+    public long[] reparto(long peliculaId) {
+        lock.readLock().lock();
+        try {
+            int pelicula = peliculas.nodo(peliculaId);
+            if (pelicula < 0) {
+                return new long[0];
+            }
+            long[] ids = new long[repartoDePelicula.hasta(pelicula) - repartoDePelicula.desde(pelicula)];
+            int[] fila = repartoDePelicula.fila(pelicula);
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = personajes.id(fila[repartoDePelicula.desde(pelicula) + i]);
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // En cuantas peliculas aparece el personaje: el largo de su fila
+    public int cantidadDePeliculas(long personajeId) {
+        lock.readLock().lock();
+        try {
+            int personaje = personajes.nodo(personajeId);
+            return personaje < 0 ? 0 : peliculasDePersonaje.hasta(personaje) - peliculasDePersonaje.desde(personaje);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Ids de los personajes que comparten al menos una pelicula con el indicado (sin el mismo), de menor a mayor
+    public long[] coprotagonistas(long personajeId) {
+        lock.readLock().lock();
+        try {
+            int personaje = personajes.nodo(personajeId);
+            if (personaje < 0) {
+                return new long[0];
+            }
+            int[] encontrados = new int[16];
+            int cantidad = 0;
+            int[] filaPeliculas = peliculasDePersonaje.fila(personaje);
+            for (int i = peliculasDePersonaje.desde(personaje), fin = peliculasDePersonaje.hasta(personaje); i < fin; i++) {
+                int pelicula = filaPeliculas[i];
+                int[] filaReparto = repartoDePelicula.fila(pelicula);
+                for (int j = repartoDePelicula.desde(pelicula), finReparto = repartoDePelicula.hasta(pelicula); j < finReparto; j++) {
+                    if (filaReparto[j] == personaje) {
+                        continue;
+                    }
+                    if (cantidad == encontrados.length) {
+                        encontrados = Arrays.copyOf(encontrados, cantidad * 2);
+                    }
+                    encontrados[cantidad++] = filaReparto[j];
+                }
+            }
+            // Un coprotagonista de varias peliculas aparece una vez por pelicula: ordenamos y salteamos repetidos
+            Arrays.sort(encontrados, 0, cantidad);
+            long[] ids = new long[cantidad];
+            int distintos = 0;
+            for (int i = 0; i < cantidad; i++) {
+                if (i == 0 || encontrados[i] != encontrados[i - 1]) {
+                    ids[distintos++] = personajes.id(encontrados[i]);
+                }
+            }
+            ids = Arrays.copyOf(ids, distintos);
+            Arrays.sort(ids);
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Camino mas corto entre dos personajes como [personaje, pelicula, personaje, ..., personaje]; de uno a si mismo es [personaje].
+    // BFS bidireccional: cada vuelta expande un nivel completo del lado con la frontera mas chica.
+    // Devuelve un array vacio si alguno no esta en el grafo o no hay peliculas que los conecten
+    public long[] camino(long origenId, long destinoId) {
+        if (origenId == destinoId) {
+            return new long[]{origenId};
+        }
+        lock.readLock().lock();
+        try {
+            int origen = personajes.nodo(origenId);
+            int destino = personajes.nodo(destinoId);
+            if (origen < 0 || destino < 0) {
+                return new long[0];
+            }
+            Busqueda adelante = new Busqueda(personajes.cantidad, peliculas.cantidad, origen);
+            Busqueda atras = new Busqueda(personajes.cantidad, peliculas.cantidad, destino);
+            while (adelante.tamanio > 0 && atras.tamanio > 0) {
+                boolean avanzaOrigen = adelante.tamanio <= atras.tamanio;
+                int encuentro = avanzaOrigen ? expandir(adelante, atras) : expandir(atras, adelante);
+                if (encuentro >= 0) {
+                    return armarCamino(adelante, atras, encuentro);
+                }
+            }
+            return new long[0];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Expande un nivel de la busqueda. Corta en el primer personaje que ya alcanzo la otra busqueda:
+    // como ninguna se habia cruzado en los niveles anteriores, ese encuentro ya da un camino minimo
+    private int expandir(Busqueda lado, Busqueda otro) {
+        int[] siguiente = new int[Math.max(16, lado.tamanio)];
+        int cantidad = 0;
+        for (int i = 0; i < lado.tamanio; i++) {
+            int personaje = lado.frontera[i];
+            int[] filaPeliculas = peliculasDePersonaje.fila(personaje);
+            for (int j = peliculasDePersonaje.desde(personaje), fin = peliculasDePersonaje.hasta(personaje); j < fin; j++) {
+                int pelicula = filaPeliculas[j];
+                // Cada reparto se recorre una sola vez por lado: todo su elenco queda visto en ese mismo nivel
+                if (lado.peliculaVista[pelicula]) {
+                    continue;
+                }
+                lado.peliculaVista[pelicula] = true;
+                int[] filaReparto = repartoDePelicula.fila(pelicula);
+                for (int k = repartoDePelicula.desde(pelicula), finReparto = repartoDePelicula.hasta(pelicula); k < finReparto; k++) {
+                    int vecino = filaReparto[k];
+                    if (lado.padre[vecino] >= 0) {
+                        continue;
+                    }
+                    lado.padre[vecino] = personaje;
+                    lado.via[vecino] = pelicula;
+                    if (otro.padre[vecino] >= 0) {
+                        return vecino;
+                    }
+                    if (cantidad == siguiente.length) {
+                        siguiente = Arrays.copyOf(siguiente, cantidad * 2);
+                    }
+                    siguiente[cantidad++] = vecino;
+                }
+            }
+        }
+        lado.frontera = siguiente;
+        lado.tamanio = cantidad;
+        return -1;
+    }
+
+    private long[] armarCamino(Busqueda adelante, Busqueda atras, int encuentro) {
+        int pasosAdelante = adelante.pasosHastaRaiz(encuentro);
+        int pasosAtras = atras.pasosHastaRaiz(encuentro);
+        long[] camino = new long[2 * (pasosAdelante + pasosAtras) + 1];
+        int posicion = 2 * pasosAdelante;
+        camino[posicion] = personajes.id(encuentro);
+        // Hacia el origen se completa de derecha a izquierda y hacia el destino de izquierda a derecha
+        for (int nodo = encuentro, i = posicion; adelante.padre[nodo] != nodo; nodo = adelante.padre[nodo], i -= 2) {
+            camino[i - 1] = peliculas.id(adelante.via[nodo]);
+            camino[i - 2] = personajes.id(adelante.padre[nodo]);
+        }
+        for (int nodo = encuentro, i = posicion; atras.padre[nodo] != nodo; nodo = atras.padre[nodo], i += 2) {
+            camino[i + 1] = peliculas.id(atras.via[nodo]);
+            camino[i + 2] = personajes.id(atras.padre[nodo]);
+        }
+        return camino;
+    }
+
+    // Reemplaza el reparto de la pelicula y corrige solo las filas de los personajes que entran o salen
+    private void asignarReparto(int pelicula, int[] nuevo) {
+        int[] anterior = repartoDePelicula.copiaDeFila(pelicula);
+        int i = 0;
+        int j = 0;
+        while (i < anterior.length || j < nuevo.length) {
+            if (j == nuevo.length || (i < anterior.length && anterior[i] < nuevo[j])) {
+                int sale = anterior[i++];
+                peliculasDePersonaje.reemplazar(sale, sin(peliculasDePersonaje.copiaDeFila(sale), pelicula));
+            } else if (i == anterior.length || anterior[i] > nuevo[j]) {
+                int entra = nuevo[j++];
+                peliculasDePersonaje.reemplazar(entra, con(peliculasDePersonaje.copiaDeFila(entra), pelicula));
+            } else {
+                i++;
+                j++;
+            }
+        }
+        repartoDePelicula.reemplazar(pelicula, nuevo);
+        compactarSiHaceFalta();
+    }
+
+    private void compactarSiHaceFalta() {
+        if (peliculasDePersonaje.cantidadSueltas > Math.max(MINIMO_PARA_COMPACTAR, personajes.cantidad / 8)) {
+            peliculasDePersonaje = peliculasDePersonaje.compactar(personajes.cantidad);
+        }
+        if (repartoDePelicula.cantidadSueltas > Math.max(MINIMO_PARA_COMPACTAR, peliculas.cantidad / 8)) {
+            repartoDePelicula = repartoDePelicula.compactar(peliculas.cantidad);
+        }
+    }
+
+    private int[] nodosDePersonajes(long[] personajeIds) {
+        int[] nodos = new int[personajeIds.length];
+        for (int i = 0; i < nodos.length; i++) {
+            nodos[i] = personajes.agregar(personajeIds[i]);
+        }
+        Arrays.sort(nodos);
+        int distintos = 0;
+        for (int i = 0; i < nodos.length; i++) {
+            if (i == 0 || nodos[i] != nodos[i - 1]) {
+                nodos[distintos++] = nodos[i];
+            }
+        }
+        return Arrays.copyOf(nodos, distintos);
+    }
+
+    // Altas y bajas sobre una fila ordenada, devolviendo una fila nueva
+    private static int[] con(int[] fila, int nodo) {
+        int posicion = Arrays.binarySearch(fila, nodo);
+        if (posicion >= 0) {
+            return fila;
+        }
+        posicion = -posicion - 1;
+        int[] resultado = new int[fila.length + 1];
+        System.arraycopy(fila, 0, resultado, 0, posicion);
+        resultado[posicion] = nodo;
+        System.arraycopy(fila, posicion, resultado, posicion + 1, fila.length - posicion);
+        return resultado;
+    }
+
+    private static int[] sin(int[] fila, int nodo) {
+        int posicion = nodo < 0 ? -1 : Arrays.binarySearch(fila, nodo);
+        if (posicion < 0) {
+            return fila;
+        }
+        int[] resultado = new int[fila.length - 1];
+        System.arraycopy(fila, 0, resultado, 0, posicion);
+        System.arraycopy(fila, posicion + 1, resultado, posicion, fila.length - posicion - 1);
+        return resultado;
+    }
+
+    // Un lado del grafo. Los vecinos del nodo n son destinos[inicio[n]] .. destinos[inicio[n + 1] - 1],
+    // salvo que su fila se haya reemplazado despues del ultimo armado: entonces es sueltas[n] completa
+    private static final class Adyacencia {
+
+        private int[] inicio = new int[1];
+        private int[] destinos = VACIA;
+        private int[][] sueltas = new int[16][];
+        private int cantidadSueltas;
+
+        // Cuenta el grado de cada nodo, acumula los inicios y ubica cada par en su tramo
+        static Adyacencia armar(int nodos, int[] origenes, int[] vecinos) {
+            Adyacencia adyacencia = new Adyacencia();
+            adyacencia.inicio = new int[nodos + 1];
+            for (int origen : origenes) {
+                adyacencia.inicio[origen + 1]++;
+            }
+            for (int n = 0; n < nodos; n++) {
+                adyacencia.inicio[n + 1] += adyacencia.inicio[n];
+            }
+            adyacencia.destinos = new int[origenes.length];
+            int[] ocupados = Arrays.copyOf(adyacencia.inicio, nodos);
+            for (int i = 0; i < origenes.length; i++) {
+                adyacencia.destinos[ocupados[origenes[i]]++] = vecinos[i];
+            }
+            for (int n = 0; n < nodos; n++) {
+                Arrays.sort(adyacencia.destinos, adyacencia.inicio[n], adyacencia.inicio[n + 1]);
+            }
+            return adyacencia;
+        }
+
+        int[] fila(int nodo) {
+            int[] suelta = suelta(nodo);
+            return suelta != null ? suelta : destinos;
+        }
+
+        int desde(int nodo) {
+            return suelta(nodo) != null || nodo >= inicio.length - 1 ? 0 : inicio[nodo];
+        }
+
+        int hasta(int nodo) {
+            int[] suelta = suelta(nodo);
+            if (suelta != null) {
+                return suelta.length;
+            }
+            return nodo >= inicio.length - 1 ? 0 : inicio[nodo + 1];
+        }
+
+        int[] copiaDeFila(int nodo) {
+            return Arrays.copyOfRange(fila(nodo), desde(nodo), hasta(nodo));
+        }
+
+        void reemplazar(int nodo, int[] fila) {
+            if (nodo >= sueltas.length) {
+                sueltas = Arrays.copyOf(sueltas, Math.max(nodo + 1, sueltas.length * 2));
+            }
+            if (sueltas[nodo] == null) {
+                cantidadSueltas++;
+            }
+            sueltas[nodo] = fila;
+        }
+
+        // Vuelve a armar los arrays con todas las filas actuales y descarta las sueltas
+        Adyacencia compactar(int nodos) {
+            Adyacencia compacta = new Adyacencia();
+            compacta.inicio = new int[nodos + 1];
+            for (int n = 0; n < nodos; n++) {
+                compacta.inicio[n + 1] = compacta.inicio[n] + hasta(n) - desde(n);
+            }
+            compacta.destinos = new int[compacta.inicio[nodos]];
+            for (int n = 0; n < nodos; n++) {
+                System.arraycopy(fila(n), desde(n), compacta.destinos, compacta.inicio[n], hasta(n) - desde(n));
+            }
+            return compacta;
+        }
+
+        private int[] suelta(int nodo) {
+            return nodo < sueltas.length ? sueltas[nodo] : null;
+        }
+    }
+
+    // Traduccion entre ids de la base y nodos densos 0..cantidad-1
+    private static final class Nodos {
+
+        private final Map<Long, Integer> nodoPorId = new HashMap<>();
+        private long[] ids = new long[16];
+        private int cantidad;
+
+        int nodo(long id) {
+            Integer nodo = nodoPorId.get(id);
+            return nodo == null ? -1 : nodo;
+        }
+
+        int agregar(long id) {
+            Integer existente = nodoPorId.get(id);
+            if (existente != null) {
+                return existente;
+            }
+            if (cantidad == ids.length) {
+                ids = Arrays.copyOf(ids, cantidad * 2);
+            }
+            ids[cantidad] = id;
+            nodoPorId.put(id, cantidad);
+            return cantidad++;
+        }
+
+        long id(int nodo) {
+            return ids[nodo];
+        }
+
+        void limpiar() {
+            nodoPorId.clear();
+            ids = new long[16];
+            cantidad = 0;
+        }
+    }
+
+    // Estado de un lado del BFS bidireccional: padre y pelicula por la que se llego a cada personaje (-1 = no visto)
+    private static final class Busqueda {
+
+        private final int[] padre;
+        private final int[] via;
+        private final boolean[] peliculaVista;
+        private int[] frontera;
+        private int tamanio;
+
+        Busqueda(int personajes, int peliculas, int raiz) {
+            padre = new int[personajes];
+            Arrays.fill(padre, -1);
+            via = new int[personajes];
+            peliculaVista = new boolean[peliculas];
+            padre[raiz] = raiz;
+            frontera = new int[]{raiz};
+            tamanio = 1;
+        }
+
+        int pasosHastaRaiz(int nodo) {
+            int pasos = 0;
+            for (; padre[nodo] != nodo; nodo = padre[nodo]) {
+                pasos++;
+            }
+            return pasos;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.challenge.alkemy.indice;
+
+import com.challenge.alkemy.utility.TransaccionUtility;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+// Indices en memoria de titulos de peliculas, nombres de personajes, rangos de edad y peso de personajes,
+// el grafo de co-apariciones del reparto y las sugerencias por prefijo de titulos y nombres de personajes y generos.
+// Los servicios lo mantienen al dia en cada alta, edicion y baja. Dentro de una transaccion los cambios se aplican
+// recien despues del commit: si hay rollback el indice queda igual que la base. Las cargas de arranque son inmediatas
+@Component
+public class IndiceCatalogo {
+
+    private final IndiceTrigramas titulos = new IndiceTrigramas();
+    private final IndiceTrigramas nombres = new IndiceTrigramas();
+    private final IndiceRango edades = new IndiceRango();
+    private final IndiceRango pesos = new IndiceRango();
+    private final GrafoReparto reparto = new GrafoReparto();
+    // Popularidad: votos de la pelicula, peliculas en las que aparece el personaje, peliculas del genero
+    private final IndiceSugerencias sugerenciasPeliculas = new IndiceSugerencias();
+    private final IndiceSugerencias sugerenciasPersonajes = new IndiceSugerencias();
+    private final IndiceSugerencias sugerenciasGeneros = new IndiceSugerencias();
+    // Genero actual de cada pelicula, para mover la cuenta del genero cuando cambia
+    private final Map<Long, Long> generoPorPelicula = new HashMap<>();
+
+    public void indexarPelicula(Long peliculaId, String titulo) {
+        TransaccionUtility.despuesDelCommit(() -> {
+            titulos.indexar(peliculaId, titulo);
+            sugerenciasPeliculas.indexar(peliculaId, titulo);
+        });
+    }
+
+    public void cargarPeliculas(List<EntradaIndice> entradas) {
+        entradas.forEach(entrada -> titulos.indexar(entrada.getId(), entrada.getTexto()));
+        sugerenciasPeliculas.cargar(ids(entradas), textos(entradas));
+    }
+
+    public void eliminarPelicula(Long peliculaId) {
+        TransaccionUtility.despuesDelCommit(() -> {
+            titulos.eliminar(peliculaId);
+            sugerenciasPeliculas.eliminar(peliculaId);
+            long[] elenco = reparto.reparto(peliculaId);
+            reparto.eliminarPelicula(peliculaId);
+            actualizarApariciones(elenco);
+            aplicarGenero(peliculaId, null);
+        });
+    }
+
+    public NavigableSet<Long> buscarPeliculas(String titulo) {
+        return titulos.buscar(titulo);
+    }
+
+    // Existencia de una pelicula sin ir a la base: el indice tiene todos los ids
+    public boolean existePelicula(Long peliculaId) {
+        return titulos.contiene(peliculaId);
+    }
+
+    public void indexarPersonaje(Long personajeId, String nombre) {
+        TransaccionUtility.despuesDelCommit(() -> {
+            nombres.indexar(personajeId, nombre);
+            sugerenciasPersonajes.indexar(personajeId, nombre);
+        });
+    }
+
+    public void cargarPersonajes(List<EntradaIndice> entradas) {
+        entradas.forEach(entrada -> nombres.indexar(entrada.getId(), entrada.getTexto()));
+        sugerenciasPersonajes.cargar(ids(entradas), textos(entradas));
+    }
+
+    public void eliminarPersonaje(Long personajeId) {
+        TransaccionUtility.despuesDelCommit(() -> {
+            nombres.eliminar(personajeId);
+            sugerenciasPersonajes.eliminar(personajeId);
+            edades.eliminar(personajeId);
+            pesos.eliminar(personajeId);
+            reparto.eliminarPersonaje(personajeId);
+        });
+    }
+
+    // Existencia de un personaje sin ir a la base: el indice de nombres tiene todos los ids
+    public boolean existePersonaje(Long personajeId) {
+        return nombres.contiene(personajeId);
+    }
+
+    public void indexarMedidasPersonaje(Long personajeId, int edad, double peso) {
+        TransaccionUtility.despuesDelCommit(() -> {
+            edades.indexar(personajeId, IndiceRango.clave(edad));
+            pesos.indexar(personajeId, IndiceRango.clave(peso));
+        });
+    }
+
+    public void cargarMedidasPersonajes(List<MedidasPersonaje> medidas) {
+        long[] ids = new long[medidas.size()];
+        long[] clavesEdad = new long[ids.length];
+        long[] clavesPeso = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            MedidasPersonaje medida = medidas.get(i);
+            ids[i] = medida.getId();
+            clavesEdad[i] = IndiceRango.clave(medida.getEdad());
+            clavesPeso[i] = IndiceRango.clave(medida.getPeso());
+        }
+        edades.cargar(ids, clavesEdad);
+        pesos.cargar(ids, clavesPeso);
+    }
+
+    // Ids ordenados de los personajes con edad y peso dentro de los rangos (extremos incluidos)
+    public long[] buscarPersonajesPorEdad(int edadMin, int edadMax) {
+        return edades.buscar(IndiceRango.clave(edadMin), IndiceRango.clave(edadMax));
+    }
+
+    public long[] buscarPersonajesPorPeso(double pesoMin, double pesoMax) {
+        return pesos.buscar(IndiceRango.clave(pesoMin), IndiceRango.clave(pesoMax));
+    }
+
+    public NavigableSet<Long> buscarPersonajes(String nombre) {
+        return nombres.buscar(nombre);
+    }
+
+    // El reparto de la pelicula pasa a ser exactamente el indicado
+    // Los ids se copian al llamar: la coleccion puede cambiar antes del commit
+    public void indexarReparto(Long peliculaId, Collection<Long> personajeIds) {
+        long[] nuevo = aArray(personajeIds);
+        TransaccionUtility.despuesDelCommit(() -> {
+            long[] anterior = reparto.reparto(peliculaId);
+            reparto.reemplazarReparto(peliculaId, nuevo);
+            actualizarApariciones(anterior);
+            actualizarApariciones(nuevo);
+        });
+    }
+
+    public void agregarAlReparto(Long peliculaId, Collection<Long> personajeIds) {
+        long[] ids = aArray(personajeIds);
+        TransaccionUtility.despuesDelCommit(() -> {
+            reparto.agregarAlReparto(peliculaId, ids);
+            actualizarApariciones(ids);
+        });
+    }
+
+    public void quitarDelReparto(Long peliculaId, Collection<Long> personajeIds) {
+        long[] ids = aArray(personajeIds);
+        TransaccionUtility.despuesDelCommit(() -> {
+            reparto.quitarDelReparto(peliculaId, ids);
+            actualizarApariciones(ids);
+        });
+    }
+
+    public void cargarReparto(List<ParReparto> pares) {
+        long[] peliculaIds = new long[pares.size()];
+        long[] personajeIds = new long[peliculaIds.length];
+        for (int i = 0; i < peliculaIds.length; i++) {
+            peliculaIds[i] = pares.get(i).getPeliculaId();
+            personajeIds[i] = pares.get(i).getPersonajeId();
+        }
+        reparto.cargar(peliculaIds, personajeIds);
+        long[] conPeliculas = LongStream.of(personajeIds).distinct().toArray();
+        sugerenciasPersonajes.popularidades(conPeliculas, LongStream.of(conPeliculas).map(reparto::cantidadDePeliculas).toArray());
+    }
+
+    // Ids ordenados de quienes comparten alguna pelicula con el personaje
+    public long[] buscarCoprotagonistas(Long personajeId) {
+        return reparto.coprotagonistas(personajeId);
+    }
+
+    // [personaje, pelicula, personaje, ..., personaje] del camino mas corto; vacio si no estan conectados
+    public long[] buscarCamino(Long origenId, Long destinoId) {
+        return reparto.camino(origenId, destinoId);
+    }
+
+    public void indexarGenero(Long generoId, String nombre) {
+        TransaccionUtility.despuesDelCommit(() -> sugerenciasGeneros.indexar(generoId, nombre));
+    }
+
+    public void cargarGeneros(List<EntradaIndice> entradas) {
+        sugerenciasGeneros.cargar(ids(entradas), textos(entradas));
+    }
+
+    // Antes de eliminarlo, sus peliculas ya tienen que haber pasado a otro genero o quedado sin genero
+    public void eliminarGenero(Long generoId) {
+        TransaccionUtility.despuesDelCommit(() -> sugerenciasGeneros.eliminar(generoId));
+    }
+
+    // Genero actual de la pelicula (null si no tiene): pasa la pelicula de la cuenta del genero anterior a la del nuevo
+    public void asignarGenero(Long peliculaId, Long generoId) {
+        TransaccionUtility.despuesDelCommit(() -> aplicarGenero(peliculaId, generoId));
+    }
+
+    // Todas las peliculas de un genero pasan a otro, o quedan sin genero si el nuevo es null
+    public void reasignarGenero(Long generoId, Long nuevoGeneroId) {
+        TransaccionUtility.despuesDelCommit(() -> {
+            synchronized (generoPorPelicula) {
+                generoPorPelicula.entrySet().stream()
+                        .filter(entrada -> entrada.getValue().equals(generoId))
+                        .map(Map.Entry::getKey)
+                        .collect(Collectors.toList())
+                        .forEach(peliculaId -> aplicarGenero(peliculaId, nuevoGeneroId));
+            }
+        });
+    }
+
+    public void cargarGenerosDePeliculas(List<GeneroDePelicula> generos) {
+        synchronized (generoPorPelicula) {
+            generoPorPelicula.clear();
+            Map<Long, Long> peliculasPorGenero = new HashMap<>();
+            for (GeneroDePelicula genero : generos) {
+                generoPorPelicula.put(genero.getPeliculaId(), genero.getGeneroId());
+                peliculasPorGenero.merge(genero.getGeneroId(), 1L, Long::sum);
+            }
+            sugerenciasGeneros.popularidades(aArray(peliculasPorGenero.keySet()),
+                    peliculasPorGenero.values().stream().mapToLong(Long::longValue).toArray());
+        }
+    }
+
+    // Votos confirmados de una pelicula: suben su titulo en las sugerencias
+    public void sumarVotos(Long peliculaId, long cantidad) {
+        TransaccionUtility.despuesDelCommit(() -> sugerenciasPeliculas.sumarPopularidad(peliculaId, cantidad));
+    }
+
+    public void cargarVotos(List<Popularidad> votos) {
+        sugerenciasPeliculas.popularidades(votos.stream().mapToLong(Popularidad::getId).toArray(),
+                votos.stream().mapToLong(Popularidad::getValor).toArray());
+    }
+
+    public List<Sugerencia> sugerirPeliculas(String prefijo, int limite) {
+        return sugerenciasPeliculas.sugerir(prefijo, limite);
+    }
+
+    public List<Sugerencia> sugerirPersonajes(String prefijo, int limite) {
+        return sugerenciasPersonajes.sugerir(prefijo, limite);
+    }
+
+    public List<Sugerencia> sugerirGeneros(String prefijo, int limite) {
+        return sugerenciasGeneros.sugerir(prefijo, limite);
+    }
+
+    // Las acciones diferidas llaman a esta version y no a asignarGenero: dentro de afterCommit ya no se puede
+    // registrar otra sincronizacion y el cambio se perderia
+    private void aplicarGenero(Long peliculaId, Long generoId) {
+        synchronized (generoPorPelicula) {
+            Long anterior = generoId == null ? generoPorPelicula.remove(peliculaId) : generoPorPelicula.put(peliculaId, generoId);
+            if (anterior != null && anterior.equals(generoId)) {
+                return;
+            }
+            if (anterior != null) {
+                sugerenciasGeneros.sumarPopularidad(anterior, -1);
+            }
+            if (generoId != null) {
+                sugerenciasGeneros.sumarPopularidad(generoId, 1);
+            }
+        }
+    }
+
+    // La popularidad de un personaje es la cantidad de peliculas en las que aparece, segun el grafo
+    private void actualizarApariciones(long[] personajeIds) {
+        for (long personajeId : personajeIds) {
+            sugerenciasPersonajes.popularidad(personajeId, reparto.cantidadDePeliculas(personajeId));
+        }
+    }
+
+    private static long[] ids(List<EntradaIndice> entradas) {
+        return entradas.stream().mapToLong(EntradaIndice::getId).toArray();
+    }
+
+    private static String[] textos(List<EntradaIndice> entradas) {
+        return entradas.stream().map(EntradaIndice::getTexto).toArray(String[]::new);
+    }
+
+    private static long[] aArray(Collection<Long> ids) {
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+}
@@ -0,0 +1,147 @@
+package com.challenge.alkemy.indice;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Indice ordenado para consultas por rango sobre un atributo numerico.
+// Dos arrays primitivos paralelos ordenados por (clave, id): un rango es una busqueda binaria por extremo
+// y el tramo contiguo entre ambas, sin objetos por entrada ni recorrer la tabla.
+// Los enteros se guardan tal cual y los decimales con una codificacion de sus bits que respeta el orden (ver clave(double))
+public class IndiceRango {
+
+    private long[] claves = new long[16];
+    private long[] ids = new long[16];
+    private int tamanio;
+    // Solo para las escrituras: la clave actual de cada id, para encontrar la entrada a reemplazar
+    private final Map<Long, Long> clavePorId = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public static long clave(int valor) {
+        return valor;
+    }
+
+    // Los bits de un double positivo ya ordenan como un long; a los negativos les invertimos todo menos el signo.
+    // Sumar 0.0 unifica -0.0 con 0.0
+    public static long clave(double valor) {
+        long bits = Double.doubleToLongBits(valor + 0.0);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    // Carga inicial: ordena todo una sola vez en lugar de insertar de a una entrada
+    public void cargar(long[] nuevosIds, long[] nuevasClaves) {
+        Integer[] orden = new Integer[nuevosIds.length];
+        for (int i = 0; i < orden.length; i++) {
+            orden[i] = i;
+        }
+        Arrays.sort(orden, (a, b) -> comparar(nuevasClaves[a], nuevosIds[a], nuevasClaves[b], nuevosIds[b]));
+        lock.writeLock().lock();
+        try {
+            claves = new long[Math.max(16, orden.length)];
+            ids = new long[claves.length];
+            clavePorId.clear();
+            for (int i = 0; i < orden.length; i++) {
+                claves[i] = nuevasClaves[orden[i]];
+                ids[i] = nuevosIds[orden[i]];
+                clavePorId.put(ids[i], claves[i]);
+            }
+            tamanio = orden.length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Agrega la clave del id, o la reemplaza si ya estaba indexado
+    public void indexar(long id, long clave) {
+        lock.writeLock().lock();
+        try {
+            quitar(id);
+            int posicion = -buscarPosicion(clave, id) - 1;
+            if (tamanio == claves.length) {
+                claves = Arrays.copyOf(claves, tamanio * 2);
+                ids = Arrays.copyOf(ids, tamanio * 2);
+            }
+            System.arraycopy(claves, posicion, claves, posicion + 1, tamanio - posicion);
+            System.arraycopy(ids, posicion, ids, posicion + 1, tamanio - posicion);
+            claves[posicion] = clave;
+            ids[posicion] = id;
+            tamanio++;
+            clavePorId.put(id, clave);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void eliminar(long id) {
+        lock.writeLock().lock();
+        try {
+            quitar(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Ids con clave dentro de [desde, hasta], ordenados de menor a mayor id para paginar con el cursor
+    public long[] buscar(long desde, long hasta) {
+        long[] resultado;
+        lock.readLock().lock();
+        try {
+            if (desde > hasta) {
+                return new long[0];
+            }
+            int inicio = -buscarPosicion(desde, Long.MIN_VALUE) - 1;
+            int fin = -buscarPosicion(hasta, Long.MAX_VALUE) - 1;
+            resultado = Arrays.copyOfRange(ids, inicio, fin);
+        } finally {
+            lock.readLock().unlock();
+        }
+        Arrays.sort(resultado);
+        return resultado;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return tamanio;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void quitar(long id) {
+        Long anterior = clavePorId.remove(id);
+        if (anterior == null) {
+            return;
+        }
+        int posicion = buscarPosicion(anterior, id);
+        System.arraycopy(claves, posicion + 1, claves, posicion, tamanio - posicion - 1);
+        System.arraycopy(ids, posicion + 1, ids, posicion, tamanio - posicion - 1);
+        tamanio--;
+    }
+
+    // Como Arrays.binarySearch pero sobre el par (clave, id): si no esta devuelve -(punto de insercion) - 1.
+    // Con id = Long.MIN_VALUE o Long.MAX_VALUE da el primer o el ultimo lugar de esa clave
+    private int buscarPosicion(long clave, long id) {
+        int bajo = 0;
+        int alto = tamanio - 1;
+        while (bajo <= alto) {
+            int medio = (bajo + alto) >>> 1;
+            int comparacion = comparar(claves[medio], ids[medio], clave, id);
+            if (comparacion < 0) {
+                bajo = medio + 1;
+            } else if (comparacion > 0) {
+                alto = medio - 1;
+            } else {
+                return medio;
+            }
+        }
+        return -(bajo + 1);
+    }
+
+    private static int comparar(long claveA, long idA, long claveB, long idB) {
+        int porClave = Long.compare(claveA, claveB);
+        return porClave != 0 ? porClave : Long.compare(idA, idB);
+    }
+}
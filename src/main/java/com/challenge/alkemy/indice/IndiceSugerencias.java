@@ -0,0 +1,313 @@
+package com.challenge.alkemy.indice;
+
+import com.challenge.alkemy.utility.TextoUtility;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Indice de prefijos para autocompletar. Las claves normalizadas van en un array ordenado por (clave, id):
+// las que empiezan con un prefijo forman un tramo contiguo que se ubica con dos busquedas binarias.
+// Sobre ese array, un arbol de segmentos guarda en cada nodo la posicion mas popular de su tramo;
+// los N mas populares del prefijo salen expandiendo nodos de mayor a menor popularidad, en O(N log n),
+// sin recorrer todas las claves del tramo aunque el prefijo sea una sola letra
+public class IndiceSugerencias {
+
+    private String[] claves = new String[16];
+    private long[] ids = new long[16];
+    private long[] popularidades = new long[16];
+    private int tamanio;
+    // Nodo i del arbol: posicion de la entrada mas popular de su tramo (-1 si no tiene). Las hojas van en [capacidad, 2 * capacidad)
+    private int[] mejores = new int[32];
+    private final Map<Long, String> textoPorId = new HashMap<>();
+    private final Map<Long, String> clavePorId = new HashMap<>();
+    // Se conserva aunque cambie el texto del id, y puede llegar antes que el texto
+    private final Map<Long, Long> popularidadPorId = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Carga inicial: ordena todo una sola vez en lugar de insertar de a una entrada
+    public void cargar(long[] nuevosIds, String[] nuevosTextos) {
+        String[] nuevasClaves = new String[nuevosIds.length];
+        Integer[] orden = new Integer[nuevosIds.length];
+        for (int i = 0; i < orden.length; i++) {
+            nuevasClaves[i] = clave(nuevosTextos[i]);
+            orden[i] = i;
+        }
+        Arrays.sort(orden, (a, b) -> comparar(nuevasClaves[a], nuevosIds[a], nuevasClaves[b], nuevosIds[b]));
+        lock.writeLock().lock();
+        try {
+            int capacidad = capacidadPara(orden.length);
+            claves = new String[capacidad];
+            ids = new long[capacidad];
+            popularidades = new long[capacidad];
+            textoPorId.clear();
+            clavePorId.clear();
+            for (int i = 0; i < orden.length; i++) {
+                claves[i] = nuevasClaves[orden[i]];
+                ids[i] = nuevosIds[orden[i]];
+                popularidades[i] = popularidadPorId.getOrDefault(ids[i], 0L);
+                textoPorId.put(ids[i], nuevosTextos[orden[i]]);
+                clavePorId.put(ids[i], claves[i]);
+            }
+            tamanio = orden.length;
+            armarArbol();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Agrega el texto del id, o lo reemplaza si ya estaba indexado
+    public void indexar(long id, String texto) {
+        String clave = clave(texto);
+        lock.writeLock().lock();
+        try {
+            quitar(id);
+            int posicion = -buscarPosicion(clave, id) - 1;
+            if (tamanio == claves.length) {
+                claves = Arrays.copyOf(claves, tamanio * 2);
+                ids = Arrays.copyOf(ids, tamanio * 2);
+                popularidades = Arrays.copyOf(popularidades, tamanio * 2);
+            }
+            System.arraycopy(claves, posicion, claves, posicion + 1, tamanio - posicion);
+            System.arraycopy(ids, posicion, ids, posicion + 1, tamanio - posicion);
+            System.arraycopy(popularidades, posicion, popularidades, posicion + 1, tamanio - posicion);
+            claves[posicion] = clave;
+            ids[posicion] = id;
+            popularidades[posicion] = popularidadPorId.getOrDefault(id, 0L);
+            tamanio++;
+            textoPorId.put(id, texto);
+            clavePorId.put(id, clave);
+            // Las posiciones desde la insercion se corren un lugar: el arbol se vuelve a armar, como el array, en O(n)
+            armarArbol();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void eliminar(long id) {
+        lock.writeLock().lock();
+        try {
+            quitar(id);
+            popularidadPorId.remove(id);
+            armarArbol();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Cambiar la popularidad no mueve la entrada: solo se actualiza el camino de su hoja a la raiz
+    public void popularidad(long id, long valor) {
+        lock.writeLock().lock();
+        try {
+            asignarPopularidad(id, valor);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void sumarPopularidad(long id, long delta) {
+        lock.writeLock().lock();
+        try {
+            asignarPopularidad(id, popularidadPorId.getOrDefault(id, 0L) + delta);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Carga inicial de popularidades: un solo armado del arbol para todas
+    public void popularidades(long[] nuevosIds, long[] valores) {
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < nuevosIds.length; i++) {
+                popularidadPorId.put(nuevosIds[i], valores[i]);
+            }
+            for (int i = 0; i < tamanio; i++) {
+                popularidades[i] = popularidadPorId.getOrDefault(ids[i], 0L);
+            }
+            armarArbol();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Hasta 'limite' entradas cuyo texto normalizado empieza con el prefijo, de mayor a menor popularidad;
+    // a igual popularidad, en orden alfabetico
+    public List<Sugerencia> sugerir(String prefijo, int limite) {
+        String normalizado = clave(prefijo);
+        if (normalizado.isEmpty() || limite <= 0) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            int desde = inicioDelPrefijo(normalizado);
+            int hasta = finDelPrefijo(normalizado, desde);
+            int capacidad = claves.length;
+            // Nodos pendientes, el de mejor entrada primero. Arrancan con los nodos que cubren exactamente [desde, hasta)
+            PriorityQueue<Integer> pendientes = new PriorityQueue<>((a, b) -> comparar(mejores[a], mejores[b]));
+            for (int izquierda = desde + capacidad, derecha = hasta + capacidad; izquierda < derecha; izquierda >>= 1, derecha >>= 1) {
+                if ((izquierda & 1) == 1) {
+                    agregarPendiente(pendientes, izquierda++);
+                }
+                if ((derecha & 1) == 1) {
+                    agregarPendiente(pendientes, --derecha);
+                }
+            }
+            List<Sugerencia> resultado = new ArrayList<>(Math.min(limite, hasta - desde));
+            while (!pendientes.isEmpty() && resultado.size() < limite) {
+                int nodo = pendientes.poll();
+                if (nodo >= capacidad) {
+                    int posicion = nodo - capacidad;
+                    resultado.add(new Sugerencia(ids[posicion], textoPorId.get(ids[posicion]), popularidades[posicion]));
+                } else {
+                    // El mejor del nodo es el de uno de sus hijos: ninguno de los pendientes le gana a ese hijo
+                    agregarPendiente(pendientes, 2 * nodo);
+                    agregarPendiente(pendientes, 2 * nodo + 1);
+                }
+            }
+            return resultado;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return tamanio;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void asignarPopularidad(long id, long valor) {
+        popularidadPorId.put(id, valor);
+        String clave = clavePorId.get(id);
+        if (clave == null) {
+            return;
+        }
+        int posicion = buscarPosicion(clave, id);
+        popularidades[posicion] = valor;
+        for (int nodo = (posicion + claves.length) >> 1; nodo >= 1; nodo >>= 1) {
+            mejores[nodo] = mejor(mejores[2 * nodo], mejores[2 * nodo + 1]);
+        }
+    }
+
+    private void quitar(long id) {
+        String anterior = clavePorId.remove(id);
+        if (anterior == null) {
+            return;
+        }
+        textoPorId.remove(id);
+        int posicion = buscarPosicion(anterior, id);
+        System.arraycopy(claves, posicion + 1, claves, posicion, tamanio - posicion - 1);
+        System.arraycopy(ids, posicion + 1, ids, posicion, tamanio - posicion - 1);
+        System.arraycopy(popularidades, posicion + 1, popularidades, posicion, tamanio - posicion - 1);
+        tamanio--;
+        claves[tamanio] = null;
+    }
+
+    private void armarArbol() {
+        int capacidad = claves.length;
+        if (mejores.length != 2 * capacidad) {
+            mejores = new int[2 * capacidad];
+        }
+        for (int i = 0; i < capacidad; i++) {
+            mejores[capacidad + i] = i < tamanio ? i : -1;
+        }
+        for (int nodo = capacidad - 1; nodo >= 1; nodo--) {
+            mejores[nodo] = mejor(mejores[2 * nodo], mejores[2 * nodo + 1]);
+        }
+    }
+
+    private void agregarPendiente(PriorityQueue<Integer> pendientes, int nodo) {
+        if (mejores[nodo] >= 0) {
+            pendientes.add(nodo);
+        }
+    }
+
+    private int mejor(int a, int b) {
+        if (a < 0) {
+            return b;
+        }
+        if (b < 0) {
+            return a;
+        }
+        return comparar(a, b) <= 0 ? a : b;
+    }
+
+    // Negativo si la posicion a va antes que b: mas popular, o igual de popular y antes en el orden alfabetico
+    private int comparar(int a, int b) {
+        int porPopularidad = Long.compare(popularidades[b], popularidades[a]);
+        return porPopularidad != 0 ? porPopularidad : Integer.compare(a, b);
+    }
+
+    // Primera posicion con clave >= prefijo
+    private int inicioDelPrefijo(String prefijo) {
+        int bajo = 0;
+        int alto = tamanio;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (claves[medio].compareTo(prefijo) < 0) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return bajo;
+    }
+
+    // Desde el inicio del tramo las claves empiezan con el prefijo hasta que dejan de hacerlo: primera que no
+    private int finDelPrefijo(String prefijo, int desde) {
+        int bajo = desde;
+        int alto = tamanio;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (claves[medio].startsWith(prefijo)) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return bajo;
+    }
+
+    // Busqueda binaria por (clave, id): la posicion si esta, o -(punto de insercion) - 1
+    private int buscarPosicion(String clave, long id) {
+        int bajo = 0;
+        int alto = tamanio - 1;
+        while (bajo <= alto) {
+            int medio = (bajo + alto) >>> 1;
+            int comparacion = comparar(claves[medio], ids[medio], clave, id);
+            if (comparacion < 0) {
+                bajo = medio + 1;
+            } else if (comparacion > 0) {
+                alto = medio - 1;
+            } else {
+                return medio;
+            }
+        }
+        return -(bajo + 1);
+    }
+
+    private static int comparar(String claveA, long idA, String claveB, long idB) {
+        int porClave = claveA.compareTo(claveB);
+        return porClave != 0 ? porClave : Long.compare(idA, idB);
+    }
+
+    // Misma normalizacion que el titulo unico: minusculas, sin tildes y con los espacios unidos
+    private static String clave(String texto) {
+        String clave = TextoUtility.normalizarTitulo(texto);
+        return clave == null ? "" : clave;
+    }
+
+    // Potencia de dos: el arbol de segmentos usa la misma capacidad que los arrays
+    private static int capacidadPara(int cantidad) {
+        return Math.max(16, Integer.highestOneBit(Math.max(1, cantidad - 1)) << 1);
+    }
+}
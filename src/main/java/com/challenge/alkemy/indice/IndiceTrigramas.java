@@ -0,0 +1,144 @@
+package com.challenge.alkemy.indice;
+
+import com.challenge.alkemy.utility.TextoUtility;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Indice invertido de trigramas para resolver busquedas por subcadena sin recorrer la tabla.
+// Cada trigrama apunta a los ids (ordenados) cuyos textos lo contienen
+public class IndiceTrigramas {
+
+    private static final int N = 3;
+
+    private final Map<Long, String> textos = new HashMap<>();
+    private final Map<Long, TreeSet<Long>> postings = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Agrega el texto del id, o lo reemplaza si ya estaba indexado
+    public void indexar(long id, String texto) {
+        String normalizado = TextoUtility.normalizar(texto);
+        lock.writeLock().lock();
+        try {
+            quitar(id);
+            textos.put(id, normalizado);
+            for (long trigrama : trigramas(normalizado)) {
+                postings.computeIfAbsent(trigrama, t -> new TreeSet<>()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void eliminar(long id) {
+        lock.writeLock().lock();
+        try {
+            quitar(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Devuelve todos los ids cuyo texto contiene la consulta, ordenados de menor a mayor
+    public NavigableSet<Long> buscar(String consulta) {
+        String normalizada = TextoUtility.normalizar(consulta);
+        lock.readLock().lock();
+        try {
+            if (normalizada.length() < N) {
+                // Con menos de tres caracteres no hay trigramas: recorremos los textos en memoria
+                return recorrer(normalizada);
+            }
+            List<TreeSet<Long>> listas = new ArrayList<>();
+            for (long trigrama : trigramas(normalizada)) {
+                TreeSet<Long> lista = postings.get(trigrama);
+                if (lista == null) {
+                    return new TreeSet<>();
+                }
+                listas.add(lista);
+            }
+            // Intersectamos arrancando por la lista mas corta
+            listas.sort(Comparator.comparingInt(Set::size));
+            TreeSet<Long> resultado = new TreeSet<>();
+            for (Long id : listas.get(0)) {
+                if (estaEnTodas(id, listas) && textos.get(id).contains(normalizada)) {
+                    // Los trigramas pueden aparecer desordenados, confirmamos la subcadena completa
+                    resultado.add(id);
+                }
+            }
+            return resultado;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contiene(long id) {
+        lock.readLock().lock();
+        try {
+            return textos.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return textos.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void quitar(long id) {
+        String anterior = textos.remove(id);
+        if (anterior == null) {
+            return;
+        }
+        for (long trigrama : trigramas(anterior)) {
+            TreeSet<Long> lista = postings.get(trigrama);
+            if (lista != null) {
+                lista.remove(id);
+                if (lista.isEmpty()) {
+                    postings.remove(trigrama);
+                }
+            }
+        }
+    }
+
+    private NavigableSet<Long> recorrer(String consulta) {
+        TreeSet<Long> resultado = new TreeSet<>();
+        textos.forEach((id, texto) -> {
+            if (texto.contains(consulta)) {
+                resultado.add(id);
+            }
+        });
+        return resultado;
+    }
+
+    private static boolean estaEnTodas(Long id, List<TreeSet<Long>> listas) {
+        for (int i = 1; i < listas.size(); i++) {
+            if (!listas.get(i).contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Empaquetamos los tres caracteres de cada trigrama en un long para no crear un String por trigrama
+    private static Set<Long> trigramas(String texto) {
+        Set<Long> resultado = new HashSet<>();
+        for (int i = 0; i + N <= texto.length(); i++) {
+            resultado.add(((long) texto.charAt(i) << 32) | ((long) texto.charAt(i + 1) << 16) | texto.charAt(i + 2));
+        }
+        return resultado;
+    }
+}
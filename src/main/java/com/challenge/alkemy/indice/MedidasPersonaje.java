@@ -0,0 +1,10 @@
+package com.challenge.alkemy.indice;
+
+// Proyeccion de edad y peso de cada personaje para cargar los indices de rango
+public interface MedidasPersonaje {
+    Long getId();
+
+    int getEdad();
+
+    double getPeso();
+}
@@ -0,0 +1,8 @@
+package com.challenge.alkemy.indice;
+
+// Proyeccion de cada fila de PERSONAJES_PELICULAS para cargar el grafo de co-apariciones
+public interface ParReparto {
+    Long getPeliculaId();
+
+    Long getPersonajeId();
+}
@@ -0,0 +1,8 @@
+package com.challenge.alkemy.indice;
+
+// Proyeccion (id, valor) para cargar la popularidad de las sugerencias al iniciar
+public interface Popularidad {
+    Long getId();
+
+    Long getValor();
+}
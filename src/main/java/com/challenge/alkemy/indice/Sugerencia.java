@@ -0,0 +1,13 @@
+package com.challenge.alkemy.indice;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Una completacion del indice de prefijos: el texto original (sin normalizar) y su popularidad
+@Data
+@AllArgsConstructor
+public class Sugerencia {
+    private long id;
+    private String texto;
+    private long popularidad;
+}
@@ -0,0 +1,15 @@
+package com.challenge.alkemy.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+// Una fila de una busqueda paginada junto con los valores de sus campos de orden (el id al final).
+// Con esos valores se arma el cursor de la pagina siguiente sin volver a leer la fila
+@Data
+@AllArgsConstructor
+public class FilaConOrden<T> {
+    private T fila;
+    private List<Object> valoresDeOrden;
+}
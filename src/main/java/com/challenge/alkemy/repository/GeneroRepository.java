@@ -1,12 +1,47 @@
 package com.challenge.alkemy.repository;
 
 import com.challenge.alkemy.entity.Genero;
+import com.challenge.alkemy.indice.EntradaIndice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface GeneroRepository extends JpaRepository<Genero, Long> {
-    Optional<Genero> findGeneroByNombreContainingIgnoreCase(String nombre);
+
+    // Control de duplicados sobre el indice unico de NOMBRE_NORMALIZADO (ver TextoUtility.normalizarTitulo)
+    boolean existsByNombreNormalizado(String nombreNormalizado);
+
+    // Detalle de generos: el entity graph trae las peliculas de cada genero con un JOIN FETCH
+    @EntityGraph("Genero.peliculas")
+    @QueryHints(@QueryHint(name = "hibernate.query.passDistinctThrough", value = "false"))
+    @Query("SELECT DISTINCT g FROM Genero g")
+    List<Genero> findAllConPeliculas();
+
+    @EntityGraph("Genero.peliculas")
+    Optional<Genero> findConPeliculasByGeneroId(Long generoId);
+
+    // Versiones de los generos y de sus peliculas, para el ETag de /genero sin cargar las colecciones
+    @Query("SELECT g.generoId, g.version, pe.peliculaId, pe.version FROM Genero g LEFT JOIN g.peliculas pe ORDER BY g.generoId, pe.peliculaId")
+    List<Object[]> findVersionesDetalle();
+
+    @Query("SELECT g.version, pe.peliculaId, pe.version FROM Genero g LEFT JOIN g.peliculas pe WHERE g.generoId = :generoId ORDER BY pe.peliculaId")
+    List<Object[]> findVersionesDetalleByGeneroId(@Param("generoId") Long generoId);
+
+    // Id y nombre de todos los generos para cargar las sugerencias al iniciar
+    @Query("SELECT g.generoId AS id, g.nombre AS texto FROM Genero g")
+    List<EntradaIndice> findEntradasIndice();
+
+    // DELETE directo por id, sin cargar la entidad ni sus peliculas
+    @Modifying(clearAutomatically = true)
+    @Query("DELETE FROM Genero g WHERE g.generoId = :generoId")
+    int eliminarPorId(@Param("generoId") Long generoId);
 }
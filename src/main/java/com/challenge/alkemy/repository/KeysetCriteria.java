@@ -0,0 +1,93 @@
+package com.challenge.alkemy.repository;
+
+import org.springframework.data.domain.Sort;
+
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Piezas de Criteria comunes a las busquedas paginadas por keyset de peliculas y personajes
+final class KeysetCriteria {
+
+    private KeysetCriteria() {
+    }
+
+    // ORDER BY (campo, ..., id) + LIMIT: con un indice sobre esas columnas la base corta en las primeras filas sin ordenar la tabla
+    static List<Order> ordenes(CriteriaBuilder cb, Root<?> raiz, Sort orden) {
+        return orden.stream()
+                .map(criterio -> criterio.isAscending()
+                        ? cb.asc(raiz.get(criterio.getProperty()))
+                        : cb.desc(raiz.get(criterio.getProperty())))
+                .collect(Collectors.toList());
+    }
+
+    // Columnas a seleccionar: las de la fila y despues las de los campos del orden, para armar el cursor con ellas
+    static List<Selection<?>> columnas(Root<?> raiz, Sort orden, Selection<?>... columnasDeFila) {
+
+        List<Selection<?>> columnas = new ArrayList<>(Arrays.asList(columnasDeFila));
+        orden.forEach(criterio -> columnas.add(raiz.get(criterio.getProperty())));
+        return columnas;
+    }
+
+    // Valores del orden de una fila leida con columnas(): las ultimas columnas del Tuple
+    static List<Object> valoresDeOrden(Tuple fila, int columnasDeFila) {
+
+        Object[] valores = fila.toArray();
+        // Arrays.asList admite NULL: una fila con el campo vacio tambien puede ser cursor
+        return Arrays.asList(Arrays.copyOfRange(valores, columnasDeFila, valores.length));
+    }
+
+    // Keyset lexicografico: (c1 > v1) OR (c1 = v1 AND c2 > v2) OR ... respetando la direccion de cada campo
+    @SuppressWarnings("unchecked")
+    static Predicate despuesDe(CriteriaBuilder cb, Root<?> raiz, Sort orden, List<Object> ultimosValores) {
+
+        List<Sort.Order> criterios = orden.toList();
+        List<Predicate> alternativas = new ArrayList<>();
+        List<Predicate> iguales = new ArrayList<>();
+        for (int i = 0; i < criterios.size(); i++) {
+            Sort.Order criterio = criterios.get(i);
+            Path<Comparable<Object>> campo = raiz.get(criterio.getProperty());
+            Object valor = ultimosValores.get(i);
+
+            List<Predicate> alternativa = new ArrayList<>(iguales);
+            alternativa.add(siguiente(cb, campo, valor, criterio.isAscending()));
+            alternativas.add(cb.and(alternativa.toArray(new Predicate[0])));
+            iguales.add(valor == null ? cb.isNull(campo) : cb.equal(campo, valor));
+        }
+        Predicate keyset = cb.or(alternativas.toArray(new Predicate[0]));
+
+        // Cota redundante sobre el primer campo para que la base pueda recorrer el indice como un rango
+        Sort.Order primero = criterios.get(0);
+        Object primerValor = ultimosValores.get(0);
+        if (primerValor == null) {
+            return keyset;
+        }
+        Path<Comparable<Object>> primerCampo = raiz.get(primero.getProperty());
+        Predicate rango = primero.isAscending()
+                ? cb.greaterThanOrEqualTo(primerCampo, (Comparable<Object>) primerValor)
+                : cb.or(cb.lessThanOrEqualTo(primerCampo, (Comparable<Object>) primerValor), cb.isNull(primerCampo));
+        return cb.and(rango, keyset);
+    }
+
+    // Los NULL se toman como el menor valor posible, igual que los ordena la base (primeros en ASC, ultimos en DESC)
+    @SuppressWarnings("unchecked")
+    private static Predicate siguiente(CriteriaBuilder cb, Expression<Comparable<Object>> campo, Object valor, boolean ascendente) {
+
+        if (valor == null) {
+            return ascendente ? cb.isNotNull(campo) : cb.disjunction();
+        }
+        Comparable<Object> comparable = (Comparable<Object>) valor;
+        return ascendente
+                ? cb.greaterThan(campo, comparable)
+                : cb.or(cb.lessThan(campo, comparable), cb.isNull(campo));
+    }
+}
@@ -1,18 +1,140 @@
 package com.challenge.alkemy.repository;
 
 import com.challenge.alkemy.entity.Pelicula;
+import com.challenge.alkemy.indice.EntradaIndice;
+import com.challenge.alkemy.indice.GeneroDePelicula;
+import com.challenge.alkemy.indice.ParReparto;
+import com.challenge.alkemy.indice.Popularidad;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface PeliculaRepository extends JpaRepository<Pelicula, Long> {
+public interface PeliculaRepository extends JpaRepository<Pelicula, Long>, PeliculaRepositoryCustom {
 
-    Optional<Pelicula> findByTituloContainingIgnoreCase(String titulo);
+    int FETCH_SIZE = 500;
 
-    List<Pelicula> findAllByOrderByTituloAsc();
+    // Control de duplicados sobre el indice unico de TITULO_NORMALIZADO (ver TextoUtility.normalizarTitulo)
+    boolean existsByTituloNormalizado(String tituloNormalizado);
 
-    List<Pelicula> findAllByOrderByTituloDesc();
+    boolean existsByTituloNormalizadoAndPeliculaIdNot(String tituloNormalizado, Long peliculaId);
+
+    @Query("SELECT p.tituloNormalizado FROM Pelicula p WHERE p.tituloNormalizado IN :titulosNormalizados")
+    List<String> findTitulosNormalizadosIn(@Param("titulosNormalizados") Collection<String> titulosNormalizados);
+
+    // Detalle de peliculas: el entity graph trae genero y personajes con un JOIN FETCH y evita el N+1 del mapper
+    @EntityGraph("Pelicula.detalle")
+    @QueryHints(@QueryHint(name = "hibernate.query.passDistinctThrough", value = "false"))
+    @Query("SELECT DISTINCT p FROM Pelicula p")
+    List<Pelicula> findAllConDetalle();
+
+    @EntityGraph("Pelicula.detalle")
+    Optional<Pelicula> findConDetalleByPeliculaId(Long peliculaId);
+
+    // Recorrido completo para la exportacion: los ids salen de a tramos por keyset (ID > desde) sobre la clave primaria,
+    // en lugar de un cursor sobre el JOIN del reparto donde cada pelicula ocupa tantas filas como personajes tenga
+    @Query("SELECT p.peliculaId FROM Pelicula p WHERE p.peliculaId > :desde ORDER BY p.peliculaId")
+    List<Long> findIdsDespuesDe(@Param("desde") Long desde, Pageable tramo);
+
+    // Detalle de un tramo de la exportacion: genero y personajes en el mismo JOIN, entidades de solo lectura
+    // (sin snapshot para el dirty checking). Cada pelicula llega con todo su reparto antes de vaciar el contexto
+    @EntityGraph("Pelicula.detalle")
+    @QueryHints({
+            @QueryHint(name = "hibernate.query.passDistinctThrough", value = "false"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+    })
+    @Query("SELECT DISTINCT p FROM Pelicula p WHERE p.peliculaId IN :peliculaIds ORDER BY p.peliculaId")
+    List<Pelicula> findConDetalleByPeliculaIdIn(@Param("peliculaIds") Collection<Long> peliculaIds);
+
+    // Versiones de la pelicula, su genero y su reparto (una fila por personaje) sin hidratar entidades: alcanza para el ETag del detalle
+    @Query("SELECT p.version, g.generoId, g.version, pe.personajeId, pe.version FROM Pelicula p LEFT JOIN p.genero g LEFT JOIN p.personajes pe"
+            + " WHERE p.peliculaId = :peliculaId ORDER BY pe.personajeId")
+    List<Object[]> findVersionesDetalleByPeliculaId(@Param("peliculaId") Long peliculaId);
+
+    // Altas y bajas del reparto de a una fila sobre la clave (PELICULA_ID, PERSONAJE_ID), sin cargar la coleccion entera
+    @Query("SELECT COUNT(p) > 0 FROM Pelicula p JOIN p.personajes pe WHERE p.peliculaId = :peliculaId AND pe.personajeId = :personajeId")
+    boolean existsPersonajeEnPelicula(@Param("peliculaId") Long peliculaId, @Param("personajeId") Long personajeId);
+
+    @Modifying
+    @Query(value = "INSERT INTO PERSONAJES_PELICULAS (PELICULA_ID, PERSONAJE_ID) VALUES (:peliculaId, :personajeId)", nativeQuery = true)
+    int agregarPersonaje(@Param("peliculaId") Long peliculaId, @Param("personajeId") Long personajeId);
+
+    @Modifying
+    @Query(value = "DELETE FROM PERSONAJES_PELICULAS WHERE PELICULA_ID = :peliculaId AND PERSONAJE_ID = :personajeId", nativeQuery = true)
+    int quitarPersonaje(@Param("peliculaId") Long peliculaId, @Param("personajeId") Long personajeId);
+
+    // Version en lote: un solo INSERT ... SELECT que agrega solo las filas que faltan en el reparto
+    @Modifying
+    @Query(value = "INSERT INTO PERSONAJES_PELICULAS (PELICULA_ID, PERSONAJE_ID) SELECT :peliculaId, pe.ID FROM PERSONAJE pe"
+            + " WHERE pe.ID IN (:personajesId) AND NOT EXISTS (SELECT 1 FROM PERSONAJES_PELICULAS pp"
+            + " WHERE pp.PELICULA_ID = :peliculaId AND pp.PERSONAJE_ID = pe.ID)", nativeQuery = true)
+    int agregarPersonajes(@Param("peliculaId") Long peliculaId, @Param("personajesId") Collection<Long> personajesId);
+
+    @Modifying
+    @Query(value = "DELETE FROM PERSONAJES_PELICULAS WHERE PELICULA_ID = :peliculaId AND PERSONAJE_ID IN (:personajesId)", nativeQuery = true)
+    int quitarPersonajes(@Param("peliculaId") Long peliculaId, @Param("personajesId") Collection<Long> personajesId);
+
+    // El SQL directo sobre la tabla intermedia no pasa por Hibernate: subimos la version a mano para que siga valiendo el bloqueo optimista.
+    // Limpia el contexto para que la lectura siguiente traiga el reparto nuevo
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Pelicula p SET p.version = COALESCE(p.version, 0) + 1 WHERE p.peliculaId = :peliculaId")
+    int incrementarVersion(@Param("peliculaId") Long peliculaId);
+
+    // Borrado de un personaje por SQL de conjuntos: nada de cargar sus peliculas ni el reparto de cada una.
+    // Los ids salen solo de la tabla intermedia y se usan para invalidar los detalles cacheados
+    @Query("SELECT pp.peliculaId FROM PersonajePelicula pp WHERE pp.personajeId = :personajeId")
+    List<Long> findPeliculaIdsByPersonajeId(@Param("personajeId") Long personajeId);
+
+    @Modifying
+    @Query(value = "UPDATE PELICULA SET VERSION = COALESCE(VERSION, 0) + 1"
+            + " WHERE ID IN (SELECT PELICULA_ID FROM PERSONAJES_PELICULAS WHERE PERSONAJE_ID = :personajeId)", nativeQuery = true)
+    int incrementarVersionDePeliculasConPersonaje(@Param("personajeId") Long personajeId);
+
+    @Modifying
+    @Query(value = "DELETE FROM PERSONAJES_PELICULAS WHERE PERSONAJE_ID = :personajeId", nativeQuery = true)
+    int quitarPersonajeDeTodasLasPeliculas(@Param("personajeId") Long personajeId);
+
+    // Borrado de un genero: sus peliculas quedan sin genero o pasan a otro con un unico UPDATE sobre IDX_PELICULA_GENERO
+    // VOTO no tiene FK a PELICULA: un volcado con votos a una pelicula recien borrada no puede fallar por ella
+    @Modifying
+    @Query(value = "DELETE FROM VOTO WHERE PELICULA_ID = :peliculaId", nativeQuery = true)
+    int eliminarVotos(@Param("peliculaId") Long peliculaId);
+
+    @Modifying
+    @Query(value = "UPDATE PELICULA SET genero_id = NULL, VERSION = COALESCE(VERSION, 0) + 1 WHERE genero_id = :generoId", nativeQuery = true)
+    int quitarGenero(@Param("generoId") Long generoId);
+
+    @Modifying
+    @Query(value = "UPDATE PELICULA SET genero_id = :nuevoGeneroId, VERSION = COALESCE(VERSION, 0) + 1 WHERE genero_id = :generoId", nativeQuery = true)
+    int reasignarGenero(@Param("generoId") Long generoId, @Param("nuevoGeneroId") Long nuevoGeneroId);
+
+    // Personajes que aparecen en alguna de las peliculas, leidos solo de la tabla intermedia
+    @Query("SELECT DISTINCT pp.personajeId FROM PersonajePelicula pp WHERE pp.peliculaId IN :peliculaIds")
+    List<Long> findPersonajeIdsByPeliculaIdIn(@Param("peliculaIds") Collection<Long> peliculaIds);
+
+    // Id y titulo de todas las peliculas para cargar el indice de busqueda al iniciar
+    @Query("SELECT p.peliculaId AS id, p.titulo AS texto FROM Pelicula p")
+    List<EntradaIndice> findEntradasIndice();
+
+    // Todas las filas de la tabla intermedia, sin pasar por PELICULA ni PERSONAJE, para armar el grafo de co-apariciones
+    @Query("SELECT pp.peliculaId AS peliculaId, pp.personajeId AS personajeId FROM PersonajePelicula pp")
+    List<ParReparto> findParesReparto();
+
+    // Votos de las peliculas votadas: la popularidad de sus titulos en las sugerencias
+    @Query("SELECT p.peliculaId AS id, p.cantidadVotos AS valor FROM Pelicula p WHERE p.cantidadVotos > 0")
+    List<Popularidad> findCantidadVotos();
+
+    // Genero de cada pelicula que tiene uno, para contar las peliculas de cada genero
+    @Query("SELECT p.peliculaId AS peliculaId, p.genero.generoId AS generoId FROM Pelicula p WHERE p.genero IS NOT NULL")
+    List<GeneroDePelicula> findGenerosDePeliculas();
 }
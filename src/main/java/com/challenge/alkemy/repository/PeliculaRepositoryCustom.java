@@ -0,0 +1,22 @@
+package com.challenge.alkemy.repository;
+
+import com.challenge.alkemy.calificacion.TotalVotos;
+import com.challenge.alkemy.entity.dto.peliculaDto.response.PeliculaBuscadaPorParametroResponseDto;
+import org.springframework.data.domain.Sort;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface PeliculaRepositoryCustom {
+
+    // Arma una unica consulta con los filtros recibidos (los null se ignoran), el orden y el limite de filas.
+    // peliculaIds son los candidatos que ya resolvio el indice de titulos; si eran demasiados para un IN llega
+    // en su lugar tituloContiene, el texto buscado, y se filtra por subcadena de TITULO_NORMALIZADO.
+    // El orden debe terminar en peliculaId para que sea total; ultimosValores son los valores de esos campos
+    // en la ultima pelicula entregada (null en la primera pagina). Cada fila trae sus propios valores del orden
+    List<FilaConOrden<PeliculaBuscadaPorParametroResponseDto>> buscarResumenes(Collection<Long> peliculaIds, String tituloContiene, Long generoId, Sort orden,
+                                                                               List<Object> ultimosValores, int filas);
+
+    // Suma los votos de cada pelicula a sus totales y recalcula CALIFICACION, todo en un unico batch JDBC de UPDATE
+    int[] acumularVotos(List<TotalVotos> totales);
+}
@@ -0,0 +1,95 @@
+package com.challenge.alkemy.repository;
+
+import com.challenge.alkemy.calificacion.TotalVotos;
+import com.challenge.alkemy.entity.Pelicula;
+import com.challenge.alkemy.entity.dto.peliculaDto.response.PeliculaBuscadaPorParametroResponseDto;
+import com.challenge.alkemy.utility.TextoUtility;
+import org.hibernate.Session;
+import org.springframework.data.domain.Sort;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class PeliculaRepositoryCustomImpl implements PeliculaRepositoryCustom {
+
+    // CALIFICACION va primero: asi usa los totales anteriores tanto en H2 como en MySQL (que asigna de izquierda a derecha)
+    private static final String ACUMULAR_VOTOS = "UPDATE PELICULA SET"
+            + " CALIFICACION = ROUND((COALESCE(SUMA_VOTOS, 0) + ?) * 1.0 / (COALESCE(CANTIDAD_VOTOS, 0) + ?)),"
+            + " SUMA_VOTOS = COALESCE(SUMA_VOTOS, 0) + ?,"
+            + " CANTIDAD_VOTOS = COALESCE(CANTIDAD_VOTOS, 0) + ?,"
+            + " VERSION = COALESCE(VERSION, 0) + 1"
+            + " WHERE ID = ?";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<FilaConOrden<PeliculaBuscadaPorParametroResponseDto>> buscarResumenes(Collection<Long> peliculaIds, String tituloContiene, Long generoId, Sort orden,
+                                                                                      List<Object> ultimosValores, int filas) {
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Pelicula> pelicula = query.from(Pelicula.class);
+        Path<Long> idPath = pelicula.get("peliculaId");
+
+        List<Predicate> filtros = new ArrayList<>();
+        if (peliculaIds != null) {
+            filtros.add(idPath.in(peliculaIds));
+        }
+        if (tituloContiene != null) {
+            filtros.add(cb.like(pelicula.get("tituloNormalizado"), TextoUtility.patronContiene(tituloContiene), TextoUtility.ESCAPE_LIKE));
+        }
+        if (generoId != null) {
+            // genero.generoId se resuelve con la FK de PELICULA, sin JOIN contra GENERO
+            filtros.add(cb.equal(pelicula.get("genero").get("generoId"), generoId));
+        }
+        if (ultimosValores != null) {
+            filtros.add(KeysetCriteria.despuesDe(cb, pelicula, orden, ultimosValores));
+        }
+
+        query.multiselect(KeysetCriteria.columnas(pelicula, orden,
+                        pelicula.get("titulo"), pelicula.get("imagen"), pelicula.get("fechaEstreno"), idPath))
+                .where(filtros.toArray(new Predicate[0]))
+                .orderBy(KeysetCriteria.ordenes(cb, pelicula, orden));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(filas)
+                .getResultList().stream()
+                .map(fila -> new FilaConOrden<>(
+                        new PeliculaBuscadaPorParametroResponseDto(fila.get(0, String.class), fila.get(1, String.class),
+                                fila.get(2, Date.class), fila.get(3, Long.class)),
+                        KeysetCriteria.valoresDeOrden(fila, 4)))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public int[] acumularVotos(List<TotalVotos> totales) {
+
+        // Un PreparedStatement con addBatch: una ida a la base por volcado, con un UPDATE (y un lock de fila) por pelicula votada
+        return entityManager.unwrap(Session.class).doReturningWork(conexion -> {
+            try (PreparedStatement update = conexion.prepareStatement(ACUMULAR_VOTOS)) {
+                for (TotalVotos total : totales) {
+                    update.setLong(1, total.getSuma());
+                    update.setLong(2, total.getCantidad());
+                    update.setLong(3, total.getSuma());
+                    update.setLong(4, total.getCantidad());
+                    update.setLong(5, total.getPeliculaId());
+                    update.addBatch();
+                }
+                return update.executeBatch();
+            }
+        });
+    }
+}
@@ -0,0 +1,17 @@
+package com.challenge.alkemy.repository;
+
+import com.challenge.alkemy.entity.PersonajeHistoria;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface PersonajeHistoriaRepository extends JpaRepository<PersonajeHistoria, Long> {
+
+    // DELETE directo por id; se llama despues de borrar el personaje que la referencia
+    @Modifying(clearAutomatically = true)
+    @Query("DELETE FROM PersonajeHistoria h WHERE h.historiaId = :historiaId")
+    int eliminarPorId(@Param("historiaId") long historiaId);
+}
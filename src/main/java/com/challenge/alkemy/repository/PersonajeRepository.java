@@ -1,19 +1,65 @@
 package com.challenge.alkemy.repository;
 
 import com.challenge.alkemy.entity.Personaje;
+import com.challenge.alkemy.entity.dto.personajeDto.response.PersonajeBuscadoPorParametroResponseDto;
+import com.challenge.alkemy.indice.EntradaIndice;
+import com.challenge.alkemy.indice.MedidasPersonaje;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface PersonajeRepository extends JpaRepository<Personaje, Long> {
+public interface PersonajeRepository extends JpaRepository<Personaje, Long>, PersonajeRepositoryCustom {
 
-    Optional<Personaje> findByNombreContainingIgnoreCase(String nombre);
+    String RESUMEN = "new com.challenge.alkemy.entity.dto.personajeDto.response.PersonajeBuscadoPorParametroResponseDto(p.nombre, p.imagen, p.personajeId)";
 
-    Optional<List<Personaje>> findByEdad(int edad);
+    // Control de duplicados sobre el indice de NOMBRE_NORMALIZADO (ver TextoUtility.normalizarTitulo)
+    boolean existsByNombreNormalizado(String nombreNormalizado);
 
-    Optional<List<Personaje>> findByPeso(Double peso);
+    // Detalle de personajes: el entity graph trae peliculas y sus generos con un JOIN FETCH y evita el N+1 del mapper.
+    // El listado no trae la historia; el detalle por id si, en el mismo JOIN
+    @EntityGraph("Personaje.listado")
+    @QueryHints(@QueryHint(name = "hibernate.query.passDistinctThrough", value = "false"))
+    @Query("SELECT DISTINCT p FROM Personaje p")
+    List<Personaje> findAllConDetalle();
 
+    @EntityGraph("Personaje.detalle")
+    Optional<Personaje> findConDetalleByPersonajeId(long personajeId);
+
+    // Versiones del personaje, sus peliculas y el genero de cada una, para el ETag del detalle
+    @Query("SELECT p.version, pe.peliculaId, pe.version, g.generoId, g.version FROM Personaje p LEFT JOIN p.peliculas pe LEFT JOIN pe.genero g"
+            + " WHERE p.personajeId = :personajeId ORDER BY pe.peliculaId")
+    List<Object[]> findVersionesDetalleByPersonajeId(@Param("personajeId") long personajeId);
+
+    // Id y nombre de todos los personajes para cargar el indice de busqueda al iniciar
+    @Query("SELECT p.personajeId AS id, p.nombre AS texto FROM Personaje p")
+    List<EntradaIndice> findEntradasIndice();
+
+    // Edad y peso de todos los personajes para cargar los indices de rango al iniciar
+    @Query("SELECT p.personajeId AS id, p.edad AS edad, p.peso AS peso FROM Personaje p")
+    List<MedidasPersonaje> findMedidas();
+
+    // Resumenes de los ids que ya resolvio un indice en memoria (nombres, edad o peso).
+    // Proyectan directo al DTO del listado, sin hidratar entidades ni cargar el contexto de persistencia
+    @Query("SELECT " + RESUMEN + " FROM Personaje p WHERE p.personajeId IN :personajeIds")
+    List<PersonajeBuscadoPorParametroResponseDto> findResumenesByPersonajeIdIn(@Param("personajeIds") Collection<Long> personajeIds, Sort sort);
+
+    // Id de la fila de historia, para borrarla junto con el personaje
+    @Query("SELECT p.historia.historiaId FROM Personaje p WHERE p.personajeId = :personajeId")
+    Optional<Long> findHistoriaIdByPersonajeId(@Param("personajeId") long personajeId);
+
+    // DELETE directo por id, sin cargar la entidad ni su coleccion de peliculas
+    @Modifying(clearAutomatically = true)
+    @Query("DELETE FROM Personaje p WHERE p.personajeId = :personajeId")
+    int eliminarPorId(@Param("personajeId") long personajeId);
 }
@@ -0,0 +1,19 @@
+package com.challenge.alkemy.repository;
+
+import com.challenge.alkemy.entity.dto.personajeDto.response.PersonajeBuscadoPorParametroResponseDto;
+import org.springframework.data.domain.Sort;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface PersonajeRepositoryCustom {
+
+    // Arma una unica consulta con los filtros recibidos (los null se ignoran), el orden y el limite de filas.
+    // personajeIds son los candidatos que ya resolvio el indice de nombres; si eran demasiados para un IN llega
+    // en su lugar nombreContiene, el texto buscado, y se filtra por subcadena del nombre. Los rangos incluyen sus extremos.
+    // El orden debe terminar en personajeId para que sea total; ultimosValores son los valores de esos campos
+    // en el ultimo personaje entregado (null en la primera pagina). Cada fila trae sus propios valores del orden
+    List<FilaConOrden<PersonajeBuscadoPorParametroResponseDto>> buscarResumenes(Collection<Long> personajeIds, String nombreContiene, Integer edadMin, Integer edadMax,
+                                                                                Double pesoMin, Double pesoMax, Long peliculaId, Sort orden,
+                                                                                List<Object> ultimosValores, int filas);
+}
@@ -0,0 +1,80 @@
+package com.challenge.alkemy.repository;
+
+import com.challenge.alkemy.entity.Personaje;
+import com.challenge.alkemy.entity.PersonajePelicula;
+import com.challenge.alkemy.entity.dto.personajeDto.response.PersonajeBuscadoPorParametroResponseDto;
+import com.challenge.alkemy.utility.TextoUtility;
+import org.springframework.data.domain.Sort;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class PersonajeRepositoryCustomImpl implements PersonajeRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<FilaConOrden<PersonajeBuscadoPorParametroResponseDto>> buscarResumenes(Collection<Long> personajeIds, String nombreContiene, Integer edadMin, Integer edadMax,
+                                                                                       Double pesoMin, Double pesoMax, Long peliculaId, Sort orden,
+                                                                                       List<Object> ultimosValores, int filas) {
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Personaje> personaje = query.from(Personaje.class);
+        Path<Long> idPath = personaje.get("personajeId");
+
+        List<Predicate> filtros = new ArrayList<>();
+        if (personajeIds != null) {
+            filtros.add(idPath.in(personajeIds));
+        }
+        if (nombreContiene != null) {
+            filtros.add(cb.like(personaje.get("nombreNormalizado"), TextoUtility.patronContiene(nombreContiene), TextoUtility.ESCAPE_LIKE));
+        }
+        // Los rangos usan los indices (EDAD, ID) y (PESO, ID)
+        if (edadMin != null) {
+            filtros.add(cb.greaterThanOrEqualTo(personaje.get("edad"), edadMin));
+        }
+        if (edadMax != null) {
+            filtros.add(cb.lessThanOrEqualTo(personaje.get("edad"), edadMax));
+        }
+        if (pesoMin != null) {
+            filtros.add(cb.greaterThanOrEqualTo(personaje.get("peso"), pesoMin));
+        }
+        if (pesoMax != null) {
+            filtros.add(cb.lessThanOrEqualTo(personaje.get("peso"), pesoMax));
+        }
+        if (peliculaId != null) {
+            // El reparto se lee solo de PERSONAJES_PELICULAS, por su clave (PELICULA_ID, PERSONAJE_ID), sin unir PELICULA.
+            // Cada par (pelicula, personaje) es unico: no hay filas repetidas
+            Root<PersonajePelicula> reparto = query.from(PersonajePelicula.class);
+            filtros.add(cb.equal(reparto.get("peliculaId"), peliculaId));
+            filtros.add(cb.equal(reparto.get("personajeId"), idPath));
+        }
+        if (ultimosValores != null) {
+            filtros.add(KeysetCriteria.despuesDe(cb, personaje, orden, ultimosValores));
+        }
+
+        query.multiselect(KeysetCriteria.columnas(personaje, orden, personaje.get("nombre"), personaje.get("imagen"), idPath))
+                .where(filtros.toArray(new Predicate[0]))
+                .orderBy(KeysetCriteria.ordenes(cb, personaje, orden));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(filas)
+                .getResultList().stream()
+                .map(fila -> new FilaConOrden<>(
+                        new PersonajeBuscadoPorParametroResponseDto(fila.get(0, String.class), fila.get(1, String.class), fila.get(2, Long.class)),
+                        KeysetCriteria.valoresDeOrden(fila, 3)))
+                .collect(Collectors.toList());
+    }
+}
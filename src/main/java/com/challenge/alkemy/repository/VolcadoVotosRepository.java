@@ -0,0 +1,14 @@
+package com.challenge.alkemy.repository;
+
+import com.challenge.alkemy.entity.VolcadoVotos;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface VolcadoVotosRepository extends JpaRepository<VolcadoVotos, Long> {
+
+    // 0 si todavia no hubo ningun volcado
+    default long findUltimoSegmento() {
+        return findById(VolcadoVotos.ID).map(VolcadoVotos::getUltimoSegmento).orElse(0L);
+    }
+}
@@ -0,0 +1,15 @@
+package com.challenge.alkemy.repository;
+
+import com.challenge.alkemy.entity.Voto;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface VotoRepository extends JpaRepository<Voto, Voto.Clave> {
+
+    // Votos anteriores de un volcado: trae de mas (todas las combinaciones) y el servicio se queda con los suyos
+    List<Voto> findByPeliculaIdInAndUsuarioIn(Collection<Long> peliculaIds, Collection<String> usuarios);
+}
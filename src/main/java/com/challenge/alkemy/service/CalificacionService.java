@@ -0,0 +1,15 @@
+package com.challenge.alkemy.service;
+
+import com.challenge.alkemy.entity.dto.peliculaDto.request.CalificarPeliculaRequestDto;
+import com.challenge.alkemy.error.pelicula.CalificacionInvalidaException;
+import com.challenge.alkemy.error.pelicula.PeliculaNotFoundException;
+
+import java.io.IOException;
+
+public interface CalificacionService {
+
+    // Un voto por usuario y pelicula: volver a votar reemplaza el voto anterior
+    void calificarPelicula(Long peliculaId, String usuario, CalificarPeliculaRequestDto calificacion) throws PeliculaNotFoundException, CalificacionInvalidaException, IOException;
+
+    void volcarCalificaciones() throws IOException;
+}
@@ -0,0 +1,139 @@
+package com.challenge.alkemy.service;
+
+import com.challenge.alkemy.cache.DetalleCache;
+import com.challenge.alkemy.calificacion.AcumuladorVotos;
+import com.challenge.alkemy.calificacion.LoteDeVotos;
+import com.challenge.alkemy.calificacion.TotalVotos;
+import com.challenge.alkemy.calificacion.VotoPendiente;
+import com.challenge.alkemy.entity.VolcadoVotos;
+import com.challenge.alkemy.entity.Voto;
+import com.challenge.alkemy.entity.dto.peliculaDto.request.CalificarPeliculaRequestDto;
+import com.challenge.alkemy.error.pelicula.CalificacionInvalidaException;
+import com.challenge.alkemy.error.pelicula.PeliculaNotFoundException;
+import com.challenge.alkemy.indice.IndiceCatalogo;
+import com.challenge.alkemy.repository.PeliculaRepository;
+import com.challenge.alkemy.repository.VolcadoVotosRepository;
+import com.challenge.alkemy.repository.VotoRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.transaction.Transactional;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@AllArgsConstructor
+public class CalificacionServiceImp implements CalificacionService {
+
+    private final AcumuladorVotos acumuladorVotos;
+    private final IndiceCatalogo indiceCatalogo;
+    private final PeliculaRepository peliculaRepository;
+    private final DetalleCache detalleCache;
+    private final VolcadoVotosRepository volcadoVotosRepository;
+    private final VotoRepository votoRepository;
+
+    @Override
+    public void calificarPelicula(Long peliculaId, String usuario, CalificarPeliculaRequestDto calificacion) throws PeliculaNotFoundException, CalificacionInvalidaException, IOException {
+
+        Integer valor = calificacion.getValor();
+        if (valor == null || valor < 1 || valor > 5) {
+            throw new CalificacionInvalidaException("LA CALIFICACION DEBE SER UN NUMERO DEL 1 AL 5");
+        }
+        // Ni SELECT ni UPDATE por voto: la existencia sale del indice en memoria y el voto queda en los pendientes y el log
+        if (!indiceCatalogo.existePelicula(peliculaId)) {
+            throw new PeliculaNotFoundException("NO SE ENCONTRO PELICULA CON ESE ID");
+        }
+        acumuladorVotos.registrar(peliculaId, usuario, valor);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${calificacion.volcado.intervalo-ms:5000}")
+    @Transactional
+    public void volcarCalificaciones() throws IOException {
+
+        LoteDeVotos lote = acumuladorVotos.tomarPendientes();
+        if (lote.getVotos().isEmpty() && lote.getSegmentos().isEmpty()) {
+            return;
+        }
+        List<TotalVotos> totales = new ArrayList<>();
+        // Los segmentos del log se borran solo si el UPDATE se confirma; si no, los votos vuelven a los pendientes
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    acumuladorVotos.devolver(lote);
+                    return;
+                }
+                // Los votantes nuevos confirmados suben los titulos en las sugerencias
+                totales.forEach(total -> indiceCatalogo.sumarVotos(total.getPeliculaId(), total.getCantidad()));
+                try {
+                    acumuladorVotos.confirmar(lote);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        // En la misma transaccion que los votos: si se cae antes de borrar los segmentos, el arranque no los vuelve a sumar
+        volcadoVotosRepository.save(new VolcadoVotos(VolcadoVotos.ID, lote.getUltimoSegmento()));
+        totales.addAll(reemplazarVotos(lote.getVotos()));
+        if (totales.isEmpty()) {
+            return;
+        }
+        peliculaRepository.acumularVotos(totales);
+
+        // Cambia la calificacion: el detalle de cada pelicula votada y el de los personajes de su reparto quedan viejos
+        List<Long> peliculaIds = totales.stream()
+                .map(TotalVotos::getPeliculaId)
+                .collect(Collectors.toList());
+        detalleCache.invalidarPeliculas(peliculaIds);
+        detalleCache.invalidarPersonajes(peliculaRepository.findPersonajeIdsByPeliculaIdIn(peliculaIds));
+    }
+
+    // Guarda el voto de cada (pelicula, usuario) en VOTO y devuelve cuanto cambian los totales de cada pelicula:
+    // un voto nuevo suma su valor y un votante; uno que reemplaza a otro suma solo la diferencia de valor
+    private List<TotalVotos> reemplazarVotos(List<VotoPendiente> votos) {
+
+        // Los votos a peliculas que se borraron desde que se emitieron se descartan
+        List<VotoPendiente> vigentes = votos.stream()
+                .filter(voto -> indiceCatalogo.existePelicula(voto.getPeliculaId()))
+                .collect(Collectors.toList());
+        if (vigentes.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Voto.Clave, Voto> anteriores = votoRepository.findByPeliculaIdInAndUsuarioIn(
+                        vigentes.stream().map(VotoPendiente::getPeliculaId).collect(Collectors.toSet()),
+                        vigentes.stream().map(VotoPendiente::getUsuario).collect(Collectors.toSet())).stream()
+                .collect(Collectors.toMap(voto -> new Voto.Clave(voto.getPeliculaId(), voto.getUsuario()), Function.identity()));
+
+        Map<Long, TotalVotos> totales = new TreeMap<>();
+        List<Voto> nuevos = new ArrayList<>();
+        for (VotoPendiente voto : vigentes) {
+            TotalVotos total = totales.computeIfAbsent(voto.getPeliculaId(), id -> new TotalVotos(id, 0, 0));
+            Voto anterior = anteriores.get(new Voto.Clave(voto.getPeliculaId(), voto.getUsuario()));
+            if (anterior == null) {
+                nuevos.add(new Voto(voto.getPeliculaId(), voto.getUsuario(), voto.getValor(), null));
+                total.setSuma(total.getSuma() + voto.getValor());
+                total.setCantidad(total.getCantidad() + 1);
+            } else {
+                total.setSuma(total.getSuma() + voto.getValor() - anterior.getValor());
+                // Entidad administrada: el UPDATE sale al confirmar la transaccion
+                anterior.setValor(voto.getValor());
+            }
+        }
+        votoRepository.saveAll(nuevos);
+        // Una pelicula cuyos votos se reemplazaron por el mismo valor no cambia: no hace falta tocarla ni invalidarla
+        return totales.values().stream()
+                .filter(total -> total.getSuma() != 0 || total.getCantidad() != 0)
+                .collect(Collectors.toList());
+    }
+}
@@ -12,9 +12,13 @@ import java.util.List;
 public interface GeneroService {
     List<GeneroResponseDto> getAllGeneros() throws GeneroNotFoundException;
 
+    String getEtagGeneros();
+
     CreateGeneroResponseDto saveGenero(CreateGeneroRequestDto genero) throws GeneroAlreadyInUseException, PeliculaNotFoundException, GeneroNotFoundException;
 
     GeneroResponseDto getGeneroById(Long generoId) throws GeneroNotFoundException;
 
-    void deleteGeneroById(Long generoId) throws GeneroNotFoundException;
+    String getEtagGenero(Long generoId) throws GeneroNotFoundException;
+
+    void deleteGeneroById(Long generoId, Long reasignarA) throws GeneroNotFoundException;
 }
@@ -1,5 +1,6 @@
 package com.challenge.alkemy.service;
 
+import com.challenge.alkemy.cache.DetalleCache;
 import com.challenge.alkemy.entity.Genero;
 import com.challenge.alkemy.entity.dto.generoDto.GeneroMapper;
 import com.challenge.alkemy.entity.dto.generoDto.request.CreateGeneroRequestDto;
@@ -7,36 +8,49 @@ import com.challenge.alkemy.entity.dto.generoDto.response.CreateGeneroResponseDt
 import com.challenge.alkemy.entity.dto.generoDto.response.GeneroResponseDto;
 import com.challenge.alkemy.error.genero.GeneroAlreadyInUseException;
 import com.challenge.alkemy.error.genero.GeneroNotFoundException;
+import com.challenge.alkemy.indice.IndiceCatalogo;
 import com.challenge.alkemy.repository.GeneroRepository;
+import com.challenge.alkemy.repository.PeliculaRepository;
+import com.challenge.alkemy.utility.EtagUtility;
+import com.challenge.alkemy.utility.TextoUtility;
 import lombok.AllArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import javax.transaction.Transactional;
 import java.util.List;
-import java.util.Optional;
 
 @Service
 @AllArgsConstructor
 public class GeneroServiceImp implements GeneroService {
 
     private final GeneroRepository generoRepository;
+    private final PeliculaRepository peliculaRepository;
     private final GeneroMapper generoMapper;
+    private final DetalleCache detalleCache;
+    private final IndiceCatalogo indiceCatalogo;
 
     @Override
     public List<GeneroResponseDto> getAllGeneros() {
 
-        List<Genero> generosDB = generoRepository.findAll();
+        List<Genero> generosDB = generoRepository.findAllConPeliculas();
         return generoMapper.generosToGenerosResponseDto(generosDB);
     }
 
+    @Override
+    public String getEtagGeneros() {
+
+        return EtagUtility.etag(generoRepository.findVersionesDetalle());
+    }
+
     @Override
     public CreateGeneroResponseDto saveGenero(CreateGeneroRequestDto generoRequest) throws GeneroAlreadyInUseException, GeneroNotFoundException {
 
         if (generoRequest.getNombre().isEmpty()) {
             throw new GeneroNotFoundException("EL GENERO DEBE CONTENER NOMBRE");
         }
-        Optional<Genero> generoDB = generoRepository.findGeneroByNombreContainingIgnoreCase(generoRequest.getNombre());
-
-        if (generoDB.isPresent()) {
+        // Nombre exacto normalizado: un LIKE por subcadena haria que "Accion" bloquee a "Acc"
+        if (generoRepository.existsByNombreNormalizado(TextoUtility.normalizarTitulo(generoRequest.getNombre()))) {
             throw new GeneroAlreadyInUseException("EL GENERO QUE DESEA CREAR YA EXISTE");
         }
 
@@ -45,22 +59,64 @@ public class GeneroServiceImp implements GeneroService {
                 .imagen(generoRequest.getImagen())
                 .build();
 
-        return generoMapper.generoToCreateGeneroResponseDto(generoRepository.save(generoToSave));
+        Genero generoGuardado;
+        try {
+            generoGuardado = generoRepository.save(generoToSave);
+        } catch (DataIntegrityViolationException dataIntegrityViolationException) {
+            // Un alta concurrente con el mismo nombre gano la carrera: la restriccion unica rechaza esta fila
+            throw new GeneroAlreadyInUseException("EL GENERO QUE DESEA CREAR YA EXISTE");
+        }
+        indiceCatalogo.indexarGenero(generoGuardado.getGeneroId(), generoGuardado.getNombre());
+        return generoMapper.generoToCreateGeneroResponseDto(generoGuardado);
     }
 
     @Override
     public GeneroResponseDto getGeneroById(Long generoId) throws GeneroNotFoundException {
 
-        Genero generoDB = generoRepository.findById(generoId)
-                .orElseThrow(()-> new GeneroNotFoundException("NO SE ENCONTRO GENERO CON ESE ID"));
-        return generoMapper.generoToGeneroResponseDto(generoDB);
+        // El detalle y su ETag salen de la misma lectura: la cache nunca guarda uno sin el otro
+        GeneroResponseDto detalle = detalleCache.genero(generoId, id -> generoRepository.findConPeliculasByGeneroId(id)
+                .map(genero -> {
+                    GeneroResponseDto dto = generoMapper.generoToGeneroResponseDto(genero);
+                    dto.setEtag(EtagUtility.etag(EtagUtility.versionesDetalle(genero)));
+                    return dto;
+                })
+                .orElse(null));
+        if (detalle == null) {
+            throw new GeneroNotFoundException("NO SE ENCONTRO GENERO CON ESE ID");
+        }
+        return detalle;
     }
 
     @Override
-    public void deleteGeneroById(Long generoId) throws GeneroNotFoundException {
+    public String getEtagGenero(Long generoId) throws GeneroNotFoundException {
 
-        Genero generoToDelete = generoRepository.findById(generoId)
-                .orElseThrow(() -> new GeneroNotFoundException("NO SE ENCONTRO GENERO A ELIMINAR CON ESE ID"));
-        generoRepository.delete(generoToDelete);
+        List<Object[]> versiones = generoRepository.findVersionesDetalleByGeneroId(generoId);
+        if (versiones.isEmpty()) {
+            throw new GeneroNotFoundException("NO SE ENCONTRO GENERO CON ESE ID");
+        }
+        return EtagUtility.etag(versiones);
+    }
+
+    @Override
+    @Transactional
+    public void deleteGeneroById(Long generoId, Long reasignarA) throws GeneroNotFoundException {
+
+        if (!generoRepository.existsById(generoId)) {
+            throw new GeneroNotFoundException("NO SE ENCONTRO GENERO A ELIMINAR CON ESE ID");
+        }
+        // Las peliculas del genero se mueven con un solo UPDATE: o quedan sin genero o pasan al indicado
+        if (reasignarA == null) {
+            peliculaRepository.quitarGenero(generoId);
+        } else {
+            if (reasignarA.equals(generoId) || !generoRepository.existsById(reasignarA)) {
+                throw new GeneroNotFoundException("NO SE ENCONTRO EL GENERO AL QUE REASIGNAR LAS PELICULAS");
+            }
+            peliculaRepository.reasignarGenero(generoId, reasignarA);
+        }
+        generoRepository.eliminarPorId(generoId);
+        indiceCatalogo.reasignarGenero(generoId, reasignarA);
+        indiceCatalogo.eliminarGenero(generoId);
+        // El genero aparece en el detalle de cada pelicula y de cada personaje de esas peliculas
+        detalleCache.invalidarTodo();
     }
 }
@@ -1,39 +1,53 @@
 package com.challenge.alkemy.service;
 
+import com.challenge.alkemy.entity.dto.peliculaDto.request.BuscarPeliculasRequestDto;
 import com.challenge.alkemy.entity.dto.peliculaDto.request.CreatePeliculaRequestDto;
+import com.challenge.alkemy.entity.dto.peliculaDto.request.PatchPeliculaRequestDto;
 import com.challenge.alkemy.entity.dto.peliculaDto.request.UpdatePeliculaRequestDto;
 import com.challenge.alkemy.entity.dto.peliculaDto.response.PeliculaConDetalleResponseDto;
 import com.challenge.alkemy.entity.dto.peliculaDto.response.PeliculaBuscadaPorParametroResponseDto;
+import com.challenge.alkemy.entity.dto.peliculaDto.response.ResultadoLoteResponseDto;
+import com.challenge.alkemy.entity.dto.paginaDto.response.PaginaResponseDto;
 import com.challenge.alkemy.error.genero.GeneroNotFoundException;
+import com.challenge.alkemy.error.pagina.CursorInvalidoException;
 import com.challenge.alkemy.error.pelicula.PeliculaAlreadyExistsException;
 import com.challenge.alkemy.error.pelicula.PeliculaBuscadaPorParametroIncorrectoException;
+import com.challenge.alkemy.error.pelicula.PeliculaModificadaException;
 import com.challenge.alkemy.error.pelicula.PeliculaNotFoundException;
 import com.challenge.alkemy.error.personaje.PersonajeNotFoundException;
 import com.challenge.alkemy.error.personaje.PersonajeNotFoundInPeliculaException;
 import com.challenge.alkemy.error.personaje.PersonajeYaEnUsoException;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 public interface PeliculaService {
     PeliculaConDetalleResponseDto createPelicula(CreatePeliculaRequestDto pelicula) throws PersonajeNotFoundException, PeliculaAlreadyExistsException, GeneroNotFoundException;
 
-    PeliculaConDetalleResponseDto getPeliculaById(Long peliculaId) throws PeliculaNotFoundException;
+    ResultadoLoteResponseDto crearPeliculasEnLote(List<CreatePeliculaRequestDto> peliculasRequest);
 
-    PeliculaBuscadaPorParametroResponseDto getPeliculaByTitulo(String titulo) throws PeliculaNotFoundException;
+    PeliculaConDetalleResponseDto getPeliculaById(Long peliculaId) throws PeliculaNotFoundException;
 
-    List<PeliculaBuscadaPorParametroResponseDto> getPeliculasSinParametros() throws PeliculaNotFoundException;
+    String getEtagPelicula(Long peliculaId) throws PeliculaNotFoundException;
 
     List<PeliculaConDetalleResponseDto> getAllPeliculas() throws PeliculaNotFoundException;
 
-    List<PeliculaBuscadaPorParametroResponseDto> getPeliculasByOrder(String orden) throws PeliculaNotFoundException, PeliculaBuscadaPorParametroIncorrectoException;
+    void exportarPeliculas(OutputStream salida) throws IOException;
 
-    List<PeliculaBuscadaPorParametroResponseDto> getPeliculasByGeneroId(Long generoId) throws GeneroNotFoundException;
+    PaginaResponseDto<PeliculaBuscadaPorParametroResponseDto> buscarPeliculas(BuscarPeliculasRequestDto busqueda) throws PeliculaNotFoundException, PeliculaBuscadaPorParametroIncorrectoException, GeneroNotFoundException, CursorInvalidoException;
 
     void deletePeliculaById(Long peliculaId) throws Exception;
 
     PeliculaConDetalleResponseDto updatePelicula(Long peliculaId, UpdatePeliculaRequestDto peliculaRequest) throws PeliculaNotFoundException, PersonajeNotFoundException, PeliculaAlreadyExistsException;
 
+    PeliculaConDetalleResponseDto patchPelicula(Long peliculaId, PatchPeliculaRequestDto peliculaRequest, String ifMatch) throws PeliculaNotFoundException, PersonajeNotFoundException, PeliculaAlreadyExistsException, PeliculaModificadaException;
+
     PeliculaConDetalleResponseDto addPersonajeToPelicula(Long idMovie, Long idCharacter) throws PeliculaNotFoundException, PersonajeNotFoundException, PersonajeYaEnUsoException;
 
     PeliculaConDetalleResponseDto deletePersonajeDePelicula(Long idMovie, Long idCharacter) throws PersonajeNotFoundException, PeliculaNotFoundException, PersonajeNotFoundInPeliculaException;
+
+    PeliculaConDetalleResponseDto addPersonajesToPelicula(Long idMovie, List<Long> personajesId) throws PeliculaNotFoundException, PersonajeNotFoundException;
+
+    PeliculaConDetalleResponseDto deletePersonajesDePelicula(Long idMovie, List<Long> personajesId) throws PeliculaNotFoundException, PersonajeNotFoundInPeliculaException;
 }
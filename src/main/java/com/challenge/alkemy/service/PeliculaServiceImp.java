@@ -1,31 +1,69 @@
 package com.challenge.alkemy.service;
 
+import com.challenge.alkemy.cache.DetalleCache;
 import com.challenge.alkemy.entity.Genero;
 import com.challenge.alkemy.entity.Pelicula;
 import com.challenge.alkemy.entity.Personaje;
 import com.challenge.alkemy.entity.dto.peliculaDto.PeliculaMapper;
+import com.challenge.alkemy.entity.dto.peliculaDto.request.BuscarPeliculasRequestDto;
 import com.challenge.alkemy.entity.dto.peliculaDto.request.CreatePeliculaRequestDto;
+import com.challenge.alkemy.entity.dto.peliculaDto.request.PatchPeliculaRequestDto;
 import com.challenge.alkemy.entity.dto.peliculaDto.request.UpdatePeliculaRequestDto;
+import com.challenge.alkemy.entity.dto.peliculaDto.response.ErrorEnLoteResponseDto;
 import com.challenge.alkemy.entity.dto.peliculaDto.response.PeliculaBuscadaPorParametroResponseDto;
+import com.challenge.alkemy.entity.dto.peliculaDto.response.ResultadoLoteResponseDto;
 import com.challenge.alkemy.entity.dto.peliculaDto.response.PeliculaConDetalleResponseDto;
+import com.challenge.alkemy.entity.dto.paginaDto.response.PaginaResponseDto;
 import com.challenge.alkemy.error.genero.GeneroNotFoundException;
+import com.challenge.alkemy.error.pagina.CursorInvalidoException;
 import com.challenge.alkemy.error.pelicula.PeliculaAlreadyExistsException;
 import com.challenge.alkemy.error.pelicula.PeliculaBuscadaPorParametroIncorrectoException;
+import com.challenge.alkemy.error.pelicula.PeliculaModificadaException;
 import com.challenge.alkemy.error.pelicula.PeliculaNotFoundException;
 import com.challenge.alkemy.error.personaje.PersonajeNotFoundException;
 import com.challenge.alkemy.error.personaje.PersonajeNotFoundInPeliculaException;
 import com.challenge.alkemy.error.personaje.PersonajeYaEnUsoException;
+import com.challenge.alkemy.indice.IndiceCatalogo;
+import com.challenge.alkemy.repository.FilaConOrden;
 import com.challenge.alkemy.repository.GeneroRepository;
 import com.challenge.alkemy.repository.PeliculaRepository;
 import com.challenge.alkemy.repository.PersonajeRepository;
+import com.challenge.alkemy.utility.EtagUtility;
+import com.challenge.alkemy.utility.PaginacionUtility;
+import com.challenge.alkemy.utility.TextoUtility;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.AllArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManager;
 import javax.transaction.Transactional;
+import javax.validation.ConstraintViolation;
 import javax.validation.Valid;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -36,42 +74,116 @@ public class PeliculaServiceImp implements PeliculaService{
     private final PersonajeRepository personajeRepository;
     private final GeneroRepository generoRepository;
     private final PeliculaMapper peliculaMapper;
+    private final IndiceCatalogo indiceCatalogo;
+    private final DetalleCache detalleCache;
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+    private final Validator validator;
+    private final PlatformTransactionManager transactionManager;
+
+    // Peliculas que se insertan antes de vaciar el contexto de persistencia en una carga por lote
+    private static final int TAMANIO_TRAMO = 500;
+
+    // Nombre que recibe la API (en minusculas) -> atributo de Pelicula
+    private static final Map<String, String> CAMPOS_ORDENABLES = Map.of(
+            "titulo", "titulo",
+            "fechaestreno", "fechaEstreno",
+            "calificacion", "calificacion");
+
+    // Tipo de cada atributo del orden, para leer sus valores del cursor
+    private static final Map<String, Class<?>> TIPOS_DE_ORDEN = Map.of(
+            "titulo", String.class,
+            "fechaEstreno", Date.class,
+            "calificacion", Integer.class,
+            "peliculaId", Long.class);
 
     @Override
     public List<PeliculaConDetalleResponseDto> getAllPeliculas() {
 
-        List<Pelicula> peliculasDB = peliculaRepository.findAll();
+        List<Pelicula> peliculasDB = peliculaRepository.findAllConDetalle();
         return peliculasDB.stream()
                 .map(peliculaMapper::peliculaToDetallePeliculaResponseDto)
                 .collect(Collectors.toList());
     }
 
     @Override
-    public List<PeliculaBuscadaPorParametroResponseDto> getPeliculasByOrder(String orden) throws PeliculaNotFoundException, PeliculaBuscadaPorParametroIncorrectoException {
-
-        if (orden.equals("ASC") || orden.equals("asc")) {
-            List<Pelicula> peliculasOrdenadas = peliculaRepository.findAllByOrderByTituloAsc();
-            if (peliculasOrdenadas.isEmpty()) {
-                throw new PeliculaNotFoundException("NO SE ENCONTRARON PELICULAS A ORDENAR");
+    @Transactional
+    public void exportarPeliculas(OutputStream salida) throws IOException {
+
+        ObjectWriter writer = objectMapper.writerFor(PeliculaConDetalleResponseDto.class);
+        Pageable tramo = PageRequest.of(0, PeliculaRepository.FETCH_SIZE);
+        List<Long> ids = peliculaRepository.findIdsDespuesDe(0L, tramo);
+        while (!ids.isEmpty()) {
+            for (Pelicula pelicula : peliculaRepository.findConDetalleByPeliculaIdIn(ids)) {
+                // Una linea JSON por pelicula (NDJSON): se mapea y se escribe sin juntar la lista completa
+                salida.write(writer.writeValueAsBytes(peliculaMapper.peliculaToDetallePeliculaResponseDto(pelicula)));
+                salida.write('\n');
             }
-            return peliculaMapper.peliculaToPeliculaBuscadaPorParametroResponseDto(peliculasOrdenadas);
+            // Cada tramo mandamos lo escrito y vaciamos el contexto de persistencia: sus peliculas ya estan completas
+            salida.flush();
+            entityManager.clear();
+            ids = peliculaRepository.findIdsDespuesDe(ids.get(ids.size() - 1), tramo);
         }
-        if (orden.equals("DESC") || orden.equals("desc")) {
-            List<Pelicula> peliculasOrdenadas = peliculaRepository.findAllByOrderByTituloDesc();
-            if (peliculasOrdenadas.isEmpty()) {
-                throw new PeliculaNotFoundException("NO SE ENCONTRARON PELICULAS A ORDENAR");
+    }
+
+    @Override
+    public PaginaResponseDto<PeliculaBuscadaPorParametroResponseDto> buscarPeliculas(BuscarPeliculasRequestDto busqueda) throws PeliculaNotFoundException, PeliculaBuscadaPorParametroIncorrectoException, GeneroNotFoundException, CursorInvalidoException {
+
+        Sort criterio = parsearOrden(busqueda.getOrden());
+
+        // El id cierra siempre el orden: desempata filas con el mismo valor y hace que el cursor sea univoco
+        Sort orden = criterio.and(Sort.by("peliculaId"));
+        int limite = PaginacionUtility.normalizarLimite(busqueda.getLimit());
+        // El cursor trae los valores del orden de la ultima pelicula entregada: no se vuelve a leer esa fila
+        List<Object> ultimosValores = PaginacionUtility.decodificarCursor(busqueda.getCursor(), orden, TIPOS_DE_ORDEN);
+        long cursorId = PaginacionUtility.ultimoId(ultimosValores);
+
+        // El filtro por titulo lo resuelve el indice de trigramas, la base solo recibe los ids candidatos
+        Collection<Long> candidatos = null;
+        String tituloContiene = null;
+        if (busqueda.getTitulo() != null) {
+            NavigableSet<Long> coincidencias = indiceCatalogo.buscarPeliculas(busqueda.getTitulo());
+            if (coincidencias.isEmpty() && cursorId == 0) {
+                throw new PeliculaNotFoundException("NO SE ENCONTRO PELICULA CON ESE TITULO");
+            }
+            candidatos = busqueda.getGeneroId() == null && criterio.isUnsorted()
+                    // Sin otros filtros ni orden la pagina sale directo del indice, ya ordenado por id
+                    ? coincidencias.tailSet(cursorId, false).stream().limit(limite + 1L).collect(Collectors.toList())
+                    : coincidencias;
+            if (candidatos.isEmpty()) {
+                return PaginacionUtility.armarPagina(Collections.emptyList(), limite, PeliculaBuscadaPorParametroResponseDto::getId, Function.identity());
+            }
+            if (candidatos.size() > PaginacionUtility.MAXIMO_CANDIDATOS) {
+                // Un titulo muy comun no se manda como un IN de miles de ids: la base filtra por subcadena del titulo normalizado
+                candidatos = null;
+                tituloContiene = busqueda.getTitulo();
             }
-            return peliculaMapper.peliculaToPeliculaBuscadaPorParametroResponseDto(peliculasOrdenadas);
         }
-        throw new PeliculaBuscadaPorParametroIncorrectoException("PARAMETRO DE ORDENAMIENTO INCORRECTO");
+
+        // Filtros, orden y limite viajan en una sola consulta; pedimos una fila de mas para saber si hay otra pagina
+        List<FilaConOrden<PeliculaBuscadaPorParametroResponseDto>> peliculas = peliculaRepository.buscarResumenes(
+                candidatos, tituloContiene, busqueda.getGeneroId(), orden, ultimosValores, limite + 1);
+        // El genero se filtra por PELICULA.genero_id en la misma consulta; solo si no vino nada averiguamos si el genero existe
+        if (peliculas.isEmpty() && busqueda.getGeneroId() != null && !generoRepository.existsById(busqueda.getGeneroId())) {
+            throw new GeneroNotFoundException("NO SE ENCONTRO GENERO CON ESE ID");
+        }
+        return PaginacionUtility.armarPaginaPorOrden(peliculas, limite, FilaConOrden::getValoresDeOrden, FilaConOrden::getFila);
     }
 
-    @Override
-    public List<PeliculaBuscadaPorParametroResponseDto> getPeliculasByGeneroId(Long generoId) throws GeneroNotFoundException {
+    // Traduce "campo[:asc|desc],..." al Sort de la entidad; solo se aceptan campos con indice para no ordenar la tabla entera
+    private Sort parsearOrden(String orden) throws PeliculaBuscadaPorParametroIncorrectoException {
 
-        Genero generoDB = generoRepository.findById(generoId)
-                .orElseThrow(()-> new GeneroNotFoundException("NO SE ENCONTRO GENERO CON ESE ID"));
-        return peliculaMapper.peliculaToPeliculaBuscadaPorParametroResponseDto(generoDB.getPeliculas());
+        if (orden == null || orden.isBlank()) {
+            return Sort.unsorted();
+        }
+        // Compatibilidad con el parametro anterior: ASC o DESC a secas ordena por titulo
+        Optional<Sort.Direction> soloDireccion = Sort.Direction.fromOptionalString(orden.trim());
+        if (soloDireccion.isPresent()) {
+            return Sort.by(soloDireccion.get(), "titulo");
+        }
+
+        return PaginacionUtility.parsearOrden(orden, CAMPOS_ORDENABLES)
+                .orElseThrow(() -> new PeliculaBuscadaPorParametroIncorrectoException("PARAMETRO DE ORDENAMIENTO INCORRECTO"));
     }
 
     @Override
@@ -80,100 +192,189 @@ public class PeliculaServiceImp implements PeliculaService{
 
         Pelicula peliculaDB = peliculaRepository.findById(peliculaId)
                 .orElseThrow(()-> new PeliculaNotFoundException("PELICULA NO ENCONTRADA"));
+        peliculaRepository.eliminarVotos(peliculaId);
         peliculaRepository.delete(peliculaDB);
+        indiceCatalogo.eliminarPelicula(peliculaId);
+        invalidarDetalles(peliculaDB);
     }
 
     @Override
     public PeliculaConDetalleResponseDto updatePelicula(@Valid Long peliculaId, UpdatePeliculaRequestDto peliculaRequest) throws PeliculaNotFoundException, PersonajeNotFoundException, PeliculaAlreadyExistsException {
 
-        if (peliculaRepository.findByTituloContainingIgnoreCase(peliculaRequest.getTitulo()).isPresent()) {
+        // La propia pelicula puede conservar su titulo
+        if (peliculaRepository.existsByTituloNormalizadoAndPeliculaIdNot(TextoUtility.normalizarTitulo(peliculaRequest.getTitulo()), peliculaId)) {
             throw new PeliculaAlreadyExistsException("EL TITULO SOLICITADO YA EXISTE");
         }
-        peliculaRepository.findById(peliculaId)
+        // Traemos genero y reparto actuales para invalidar tambien los detalles que dejan de mostrar esta pelicula
+        Pelicula peliculaDB = peliculaRepository.findConDetalleByPeliculaId(peliculaId)
                 .orElseThrow(()-> new PeliculaNotFoundException("NO SE ENCONTRO PELICULA CON ESE ID"));
 
-        List<Optional<Personaje>> listaDePersonajes = peliculaRequest.getPersonajesId().stream()
-                .map(personajeRepository::findById)
-                .collect(Collectors.toList());
-
-        for (Optional<Personaje> personaje: listaDePersonajes) {
-            if (personaje.isEmpty()) {
-                throw new PersonajeNotFoundException("NO SE ENCONTRO EL PERSONAJE");
-            }
-        }
+        Set<Personaje> listaDePersonajes = resolverPersonajes(peliculaRequest.getPersonajesId());
         Genero genero = generoRepository.findById(peliculaRequest.getGeneroId()).orElseThrow();
 
         Pelicula peliculaToUpdate = Pelicula.builder()
                 .peliculaId(peliculaId)
+                // Conservamos la version leida: sin ella el merge fallaria por bloqueo optimista
+                .version(peliculaDB.getVersion())
+                // Los votos y su promedio no vienen en el pedido: sin esto el PUT los dejaria en NULL y en 0
+                .sumaVotos(peliculaDB.getSumaVotos())
+                .cantidadVotos(peliculaDB.getCantidadVotos())
+                .calificacion(peliculaDB.getCalificacion())
                 .fechaEstreno(peliculaRequest.getFechaEstreno())
-                .calificacion(peliculaRequest.getCalificacion())
                 .imagen(peliculaRequest.getImagen())
                 .titulo(peliculaRequest.getTitulo())
-                .personajes(listaDePersonajes.stream()
-                        .map(Optional::get)
-                        .collect(Collectors.toList()))
+                .personajes(listaDePersonajes)
                 .genero(genero)
                 .build();
 
-        return peliculaMapper.peliculaToDetallePeliculaResponseDto(peliculaRepository.save(peliculaToUpdate));
+        Pelicula peliculaActualizada = guardarTituloUnico(peliculaToUpdate, "EL TITULO SOLICITADO YA EXISTE");
+        indexar(peliculaActualizada);
+        invalidarDetalles(peliculaDB);
+        invalidarDetalles(peliculaActualizada);
+        return peliculaMapper.peliculaToDetallePeliculaResponseDto(peliculaActualizada);
     }
 
     @Override
-    public PeliculaConDetalleResponseDto addPersonajeToPelicula(Long idMovie, Long idCharacter) throws PeliculaNotFoundException, PersonajeNotFoundException, PersonajeYaEnUsoException {
+    @Transactional
+    public PeliculaConDetalleResponseDto patchPelicula(Long peliculaId, PatchPeliculaRequestDto peliculaRequest, String ifMatch) throws PeliculaNotFoundException, PersonajeNotFoundException, PeliculaAlreadyExistsException, PeliculaModificadaException {
 
-        Personaje personajeDB = personajeRepository.findById(idCharacter)
-                .orElseThrow(()-> new PersonajeNotFoundException("NO SE ENCONTRO PERSONAJE CON ESE ID"));
-        Pelicula peliculaDB = peliculaRepository.findById(idMovie)
+        // Una sola lectura: la entidad queda administrada y el dirty checking escribe solo lo que cambio
+        Pelicula peliculaDB = peliculaRepository.findConDetalleByPeliculaId(peliculaId)
                 .orElseThrow(()-> new PeliculaNotFoundException("NO SE ENCONTRO PELICULA CON ESE ID"));
+        if (ifMatch != null && !EtagUtility.coincideFuerte(ifMatch, EtagUtility.etag(EtagUtility.versionesDetalle(peliculaDB)))) {
+            throw new PeliculaModificadaException("LA PELICULA FUE MODIFICADA DESDE LA ULTIMA LECTURA");
+        }
+        // Detalles que hay que invalidar con el genero y el reparto anteriores
+        Pelicula peliculaAnterior = Pelicula.builder()
+                .peliculaId(peliculaId)
+                .genero(peliculaDB.getGenero())
+                .personajes(new LinkedHashSet<>(peliculaDB.getPersonajes()))
+                .build();
 
-        List<Personaje> personajesParaGuardar = new ArrayList<>(peliculaDB.getPersonajes());
-        for (Personaje personaje : personajesParaGuardar) {
-            if (personaje.getPersonajeId() == idCharacter) {
-                throw new PersonajeYaEnUsoException("EL PERSONAJE QUE DESEA AGREGAR YA ESTA EN LA PELICULA");
+        String titulo = peliculaRequest.getTitulo();
+        if (titulo != null && !titulo.equals(peliculaDB.getTitulo())) {
+            if (peliculaRepository.existsByTituloNormalizadoAndPeliculaIdNot(TextoUtility.normalizarTitulo(titulo), peliculaId)) {
+                throw new PeliculaAlreadyExistsException("EL TITULO SOLICITADO YA EXISTE");
             }
+            peliculaDB.setTitulo(titulo);
+        }
+        if (peliculaRequest.getFechaEstreno() != null) {
+            peliculaDB.setFechaEstreno(peliculaRequest.getFechaEstreno());
+        }
+        if (peliculaRequest.getImagen() != null) {
+            peliculaDB.setImagen(peliculaRequest.getImagen());
         }
+        if (peliculaRequest.getGeneroId() != null) {
+            peliculaDB.setGenero(generoRepository.findById(peliculaRequest.getGeneroId()).orElseThrow());
+        }
+        if (peliculaRequest.getPersonajesId() != null) {
+            // Sobre el Set administrado: Hibernate solo inserta y borra las filas del reparto que difieren
+            Set<Personaje> reparto = resolverPersonajes(peliculaRequest.getPersonajesId());
+            peliculaDB.getPersonajes().retainAll(reparto);
+            peliculaDB.getPersonajes().addAll(reparto);
+        }
+        // Sin save: al cerrar la transaccion sale un UPDATE ... WHERE ID = ? AND VERSION = ? con las columnas modificadas.
+        // Si otro cambio se adelanto, ese UPDATE no toca filas y falla por bloqueo optimista
+        indexar(peliculaDB);
+        invalidarDetalles(peliculaAnterior);
+        invalidarDetalles(peliculaDB);
+        return peliculaMapper.peliculaToDetallePeliculaResponseDto(peliculaDB);
+    }
 
-        personajesParaGuardar.add(personajeDB);
-        peliculaDB.setPersonajes(personajesParaGuardar);
-        peliculaDB.setPeliculaId(idMovie);
+    @Override
+    @Transactional
+    public PeliculaConDetalleResponseDto addPersonajeToPelicula(Long idMovie, Long idCharacter) throws PeliculaNotFoundException, PersonajeNotFoundException, PersonajeYaEnUsoException {
 
-        return peliculaMapper.peliculaToDetallePeliculaResponseDto(peliculaRepository.save(peliculaDB));
+        if (!personajeRepository.existsById(idCharacter)) {
+            throw new PersonajeNotFoundException("NO SE ENCONTRO PERSONAJE CON ESE ID");
+        }
+        if (!peliculaRepository.existsById(idMovie)) {
+            throw new PeliculaNotFoundException("NO SE ENCONTRO PELICULA CON ESE ID");
+        }
+        // Busqueda por clave primaria de la tabla intermedia, no un recorrido del reparto
+        if (peliculaRepository.existsPersonajeEnPelicula(idMovie, idCharacter)) {
+            throw new PersonajeYaEnUsoException("EL PERSONAJE QUE DESEA AGREGAR YA ESTA EN LA PELICULA");
+        }
+        peliculaRepository.agregarPersonaje(idMovie, idCharacter);
+        indiceCatalogo.agregarAlReparto(idMovie, List.of(idCharacter));
+        return detalleConRepartoModificado(idMovie, List.of(idCharacter));
     }
 
     @Override
+    @Transactional
     public PeliculaConDetalleResponseDto deletePersonajeDePelicula(Long idMovie, Long idCharacter) throws PersonajeNotFoundException, PeliculaNotFoundException, PersonajeNotFoundInPeliculaException {
 
-        Personaje personajeToDelete = personajeRepository.findById(idCharacter)
-                .orElseThrow(()-> new PersonajeNotFoundException("NO SE ENCONTRO UN PERSONAJE CON ESE ID"));
-        Pelicula peliculaDB = peliculaRepository.findById(idMovie)
-                .orElseThrow(()-> new PeliculaNotFoundException("NO SE ENCONTRO PELICULA CON ESE ID"));
+        if (!personajeRepository.existsById(idCharacter)) {
+            throw new PersonajeNotFoundException("NO SE ENCONTRO UN PERSONAJE CON ESE ID");
+        }
+        if (!peliculaRepository.existsById(idMovie)) {
+            throw new PeliculaNotFoundException("NO SE ENCONTRO PELICULA CON ESE ID");
+        }
+        // Si el DELETE no toco ninguna fila, el personaje no estaba en el reparto
+        if (peliculaRepository.quitarPersonaje(idMovie, idCharacter) == 0) {
+            throw new PersonajeNotFoundInPeliculaException("NO SE ENCONTRO EL PERSONAJE A ELIMINAR EN ESTA PELICULA");
+        }
+        indiceCatalogo.quitarDelReparto(idMovie, List.of(idCharacter));
+        return detalleConRepartoModificado(idMovie, List.of(idCharacter));
+    }
 
-        List<Personaje> personajesInMovie = new ArrayList<>(peliculaDB.getPersonajes());
+    @Override
+    @Transactional
+    public PeliculaConDetalleResponseDto addPersonajesToPelicula(Long idMovie, List<Long> personajesId) throws PeliculaNotFoundException, PersonajeNotFoundException {
 
-        if (!personajesInMovie.contains(personajeToDelete)) {
-            throw new PersonajeNotFoundInPeliculaException("NO SE ENCONTRO EL PERSONAJE A ELIMINAR EN ESTA PELICULA");
+        if (!peliculaRepository.existsById(idMovie)) {
+            throw new PeliculaNotFoundException("NO SE ENCONTRO PELICULA CON ESE ID");
+        }
+        // Un IN para validar todos los ids y un INSERT ... SELECT para las filas que falten; los que ya estaban se ignoran
+        Set<Long> idsPedidos = resolverPersonajes(personajesId).stream()
+                .map(Personaje::getPersonajeId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (idsPedidos.isEmpty() || peliculaRepository.agregarPersonajes(idMovie, idsPedidos) == 0) {
+            return detalleDePelicula(idMovie);
+        }
+        indiceCatalogo.agregarAlReparto(idMovie, idsPedidos);
+        return detalleConRepartoModificado(idMovie, idsPedidos);
+    }
+
+    @Override
+    @Transactional
+    public PeliculaConDetalleResponseDto deletePersonajesDePelicula(Long idMovie, List<Long> personajesId) throws PeliculaNotFoundException, PersonajeNotFoundInPeliculaException {
+
+        if (!peliculaRepository.existsById(idMovie)) {
+            throw new PeliculaNotFoundException("NO SE ENCONTRO PELICULA CON ESE ID");
+        }
+        Set<Long> idsPedidos = new LinkedHashSet<>(personajesId);
+        // Un solo DELETE ... IN; si no borro ninguna fila, ninguno de los personajes estaba en el reparto
+        if (idsPedidos.isEmpty() || peliculaRepository.quitarPersonajes(idMovie, idsPedidos) == 0) {
+            throw new PersonajeNotFoundInPeliculaException("NINGUNO DE LOS PERSONAJES A ELIMINAR ESTA EN ESTA PELICULA");
         }
-        personajesInMovie.remove(personajeToDelete);
-        peliculaDB.setPersonajes(personajesInMovie);
+        indiceCatalogo.quitarDelReparto(idMovie, idsPedidos);
+        return detalleConRepartoModificado(idMovie, idsPedidos);
+    }
+
+    // Cambia el reparto: sube la version de la pelicula y el detalle de la pelicula y el de los personajes quedan viejos
+    private PeliculaConDetalleResponseDto detalleConRepartoModificado(Long idMovie, Collection<Long> personajesId) throws PeliculaNotFoundException {
+
+        peliculaRepository.incrementarVersion(idMovie);
+        detalleCache.invalidarPeliculas(List.of(idMovie));
+        detalleCache.invalidarPersonajes(personajesId);
+        return detalleDePelicula(idMovie);
+    }
+
+    private PeliculaConDetalleResponseDto detalleDePelicula(Long idMovie) throws PeliculaNotFoundException {
 
-        return peliculaMapper.peliculaToDetallePeliculaResponseDto(peliculaRepository.save(peliculaDB));
+        Pelicula peliculaDB = peliculaRepository.findConDetalleByPeliculaId(idMovie)
+                .orElseThrow(()-> new PeliculaNotFoundException("NO SE ENCONTRO PELICULA CON ESE ID"));
+        return peliculaMapper.peliculaToDetallePeliculaResponseDto(peliculaDB);
     }
 
     @Override
     public PeliculaConDetalleResponseDto createPelicula(@Valid CreatePeliculaRequestDto peliculaRequest) throws PeliculaAlreadyExistsException, PersonajeNotFoundException {
 
-        if (peliculaRepository.findByTituloContainingIgnoreCase(peliculaRequest.getTitulo()).isPresent()) {
+        if (peliculaRepository.existsByTituloNormalizado(TextoUtility.normalizarTitulo(peliculaRequest.getTitulo()))) {
             throw new PeliculaAlreadyExistsException("LA PELICULA YA EXISTE");
         }
-        List<Optional<Personaje>> listaDePersonajes = peliculaRequest.getPersonajesId().stream()
-                .map(personajeRepository::findById)
-                .collect(Collectors.toList());
-
-        for (Optional<Personaje> personaje: listaDePersonajes) {
-            if (personaje.isEmpty()) {
-                throw new PersonajeNotFoundException("NO SE ENCONTRO EL PERSONAJE");
-            }
-        }
+        Set<Personaje> listaDePersonajes = resolverPersonajes(peliculaRequest.getPersonajesId());
         Genero genero = generoRepository.findById(peliculaRequest.getGeneroId()).orElseThrow();
 
         Pelicula peliculaToSave = Pelicula.builder()
@@ -181,36 +382,231 @@ public class PeliculaServiceImp implements PeliculaService{
                 .calificacion(peliculaRequest.getCalificacion())
                 .imagen(peliculaRequest.getImagen())
                 .titulo(peliculaRequest.getTitulo())
-                .personajes(listaDePersonajes.stream()
-                        .map(Optional::get)
-                        .collect(Collectors.toList()))
+                .personajes(listaDePersonajes)
                 .genero(genero)
                 .build();
 
-        return peliculaMapper.peliculaToDetallePeliculaResponseDto(peliculaRepository.save(peliculaToSave));
+        Pelicula peliculaGuardada = guardarTituloUnico(peliculaToSave, "LA PELICULA YA EXISTE");
+        indexar(peliculaGuardada);
+        invalidarDetalles(peliculaGuardada);
+        return peliculaMapper.peliculaToDetallePeliculaResponseDto(peliculaGuardada);
     }
 
     @Override
-    public PeliculaConDetalleResponseDto getPeliculaById(Long peliculaId) throws PeliculaNotFoundException {
+    public ResultadoLoteResponseDto crearPeliculasEnLote(List<CreatePeliculaRequestDto> peliculasRequest) {
+
+        // Personajes y generos de todo el lote se buscan con un IN cada uno, no con un findById por item
+        Map<Long, Personaje> personajes = personajeRepository.findAllById(peliculasRequest.stream()
+                        .filter(request -> request.getPersonajesId() != null)
+                        .flatMap(request -> request.getPersonajesId().stream())
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toSet())).stream()
+                .collect(Collectors.toMap(Personaje::getPersonajeId, Function.identity()));
+        Map<Long, Genero> generos = generoRepository.findAllById(peliculasRequest.stream()
+                        .map(CreatePeliculaRequestDto::getGeneroId)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toSet())).stream()
+                .collect(Collectors.toMap(Genero::getGeneroId, Function.identity()));
+
+        // Los titulos ya guardados tambien con un solo IN sobre el indice unico
+        Set<String> titulosExistentes = new HashSet<>(peliculaRepository.findTitulosNormalizadosIn(peliculasRequest.stream()
+                .map(request -> TextoUtility.normalizarTitulo(request.getTitulo()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet())));
+
+        // Los items invalidos se informan y se saltean, el resto del lote se guarda igual
+        List<ErrorEnLoteResponseDto> errores = new ArrayList<>();
+        List<Integer> indicesValidos = new ArrayList<>();
+        Set<String> titulosDelLote = new HashSet<>();
+        for (int indice = 0; indice < peliculasRequest.size(); indice++) {
+            String error = validarItemDeLote(peliculasRequest.get(indice), personajes, generos, titulosExistentes, titulosDelLote);
+            if (error != null) {
+                errores.add(errorEnLote(indice, peliculasRequest.get(indice), error));
+            } else {
+                indicesValidos.add(indice);
+            }
+        }
 
-        Pelicula peliculaDB = peliculaRepository.findById(peliculaId)
-                .orElseThrow(()-> new PeliculaNotFoundException("NO SE ENCONTRO NINGUNA PELICULA CON ESE ID"));
-        return peliculaMapper.peliculaToDetallePeliculaResponseDto(peliculaDB);
+        // Cada tramo va en su propia transaccion. Si una restriccion de la base rechaza el tramo (otra alta con el mismo
+        // titulo que se adelanto a la verificacion, un personaje borrado mientras tanto) solo se revierte ese tramo,
+        // y sus items se reintentan de a uno para informar cuales fallaron
+        TransactionTemplate transaccion = new TransactionTemplate(transactionManager);
+        List<Long> creadas = new ArrayList<>();
+        for (int desde = 0; desde < indicesValidos.size(); desde += TAMANIO_TRAMO) {
+            List<Integer> tramo = indicesValidos.subList(desde, Math.min(desde + TAMANIO_TRAMO, indicesValidos.size()));
+            try {
+                creadas.addAll(transaccion.execute(status -> guardarTramo(tramo, peliculasRequest, personajes, generos)));
+            } catch (DataIntegrityViolationException dataIntegrityViolationException) {
+                for (Integer indice : tramo) {
+                    try {
+                        creadas.addAll(transaccion.execute(status -> guardarTramo(List.of(indice), peliculasRequest, personajes, generos)));
+                    } catch (DataIntegrityViolationException itemRechazado) {
+                        errores.add(errorEnLote(indice, peliculasRequest.get(indice), motivoDeRechazo(peliculasRequest.get(indice))));
+                    }
+                }
+            }
+        }
+        errores.sort(Comparator.comparingInt(ErrorEnLoteResponseDto::getIndice));
+        return ResultadoLoteResponseDto.builder()
+                .creadas(creadas)
+                .errores(errores)
+                .build();
+    }
+
+    // Con ids de secuencia Hibernate agrupa los INSERT de PELICULA y de la tabla intermedia en batches JDBC.
+    // Vaciamos el contexto despues de cada tramo para que la memoria no crezca con el tamanio del lote.
+    // Las peliculas se arman en cada intento: las de un tramo revertido ya tienen id asignado
+    private List<Long> guardarTramo(List<Integer> indices, List<CreatePeliculaRequestDto> peliculasRequest,
+                                    Map<Long, Personaje> personajes, Map<Long, Genero> generos) {
+
+        List<Pelicula> peliculas = indices.stream()
+                .map(peliculasRequest::get)
+                .map(peliculaRequest -> Pelicula.builder()
+                        .fechaEstreno(peliculaRequest.getFechaEstreno())
+                        .calificacion(peliculaRequest.getCalificacion())
+                        .imagen(peliculaRequest.getImagen())
+                        .titulo(peliculaRequest.getTitulo())
+                        .personajes(peliculaRequest.getPersonajesId().stream()
+                                .map(personajes::get)
+                                .collect(Collectors.toCollection(LinkedHashSet::new)))
+                        .genero(generos.get(peliculaRequest.getGeneroId()))
+                        .build())
+                .collect(Collectors.toList());
+        peliculaRepository.saveAllAndFlush(peliculas);
+        entityManager.clear();
+
+        List<Long> creadas = new ArrayList<>();
+        for (Pelicula pelicula : peliculas) {
+            creadas.add(pelicula.getPeliculaId());
+            indexar(pelicula);
+            invalidarDetalles(pelicula);
+        }
+        return creadas;
+    }
+
+    // Un item que la base rechazo solo: si su titulo ya esta guardado fue una alta concurrente
+    private String motivoDeRechazo(CreatePeliculaRequestDto peliculaRequest) {
+
+        String tituloNormalizado = TextoUtility.normalizarTitulo(peliculaRequest.getTitulo());
+        return peliculaRepository.findTitulosNormalizadosIn(Set.of(tituloNormalizado)).isEmpty()
+                ? "NO SE PUDO GUARDAR LA PELICULA"
+                : "LA PELICULA YA EXISTE";
+    }
+
+    private static ErrorEnLoteResponseDto errorEnLote(int indice, CreatePeliculaRequestDto peliculaRequest, String error) {
+        return ErrorEnLoteResponseDto.builder()
+                .indice(indice)
+                .titulo(peliculaRequest.getTitulo())
+                .error(error)
+                .build();
+    }
+
+    // Si otra alta con el mismo titulo se adelanta entre la verificacion y el INSERT, el indice unico la rechaza
+    private Pelicula guardarTituloUnico(Pelicula pelicula, String mensaje) throws PeliculaAlreadyExistsException {
+
+        try {
+            return peliculaRepository.save(pelicula);
+        } catch (DataIntegrityViolationException dataIntegrityViolationException) {
+            throw new PeliculaAlreadyExistsException(mensaje);
+        }
+    }
+
+    // Un solo IN para todo el reparto; si faltan ids los informamos todos juntos y no solo el primero
+    private Set<Personaje> resolverPersonajes(List<Long> personajesId) throws PersonajeNotFoundException {
+
+        Set<Long> idsPedidos = new LinkedHashSet<>(personajesId);
+        Map<Long, Personaje> encontrados = personajeRepository.findAllById(idsPedidos).stream()
+                .collect(Collectors.toMap(Personaje::getPersonajeId, Function.identity()));
+
+        Set<Long> faltantes = new TreeSet<>(idsPedidos);
+        faltantes.removeAll(encontrados.keySet());
+        if (!faltantes.isEmpty()) {
+            throw new PersonajeNotFoundException("NO SE ENCONTRARON LOS PERSONAJES CON ID " + faltantes);
+        }
+        // Respetamos el orden del pedido y descartamos ids repetidos
+        return idsPedidos.stream()
+                .map(encontrados::get)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    // Las mismas reglas que createPelicula, devolviendo el motivo en lugar de lanzar la excepcion.
+    // Un @Valid sobre la lista rechazaria el lote entero: cada item se valida aca con sus anotaciones
+    private String validarItemDeLote(CreatePeliculaRequestDto peliculaRequest, Map<Long, Personaje> personajes,
+                                     Map<Long, Genero> generos, Set<String> titulosExistentes, Set<String> titulosDelLote) {
+
+        if (peliculaRequest.getTitulo() == null || peliculaRequest.getTitulo().isBlank()) {
+            return "EL TITULO ES OBLIGATORIO";
+        }
+        Set<ConstraintViolation<CreatePeliculaRequestDto>> violaciones = validator.validate(peliculaRequest);
+        if (!violaciones.isEmpty()) {
+            return violaciones.stream()
+                    .map(violacion -> violacion.getPropertyPath() + ": " + violacion.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", ", "DATOS INVALIDOS: ", ""));
+        }
+        String tituloNormalizado = TextoUtility.normalizarTitulo(peliculaRequest.getTitulo());
+        if (titulosExistentes.contains(tituloNormalizado)) {
+            return "LA PELICULA YA EXISTE";
+        }
+        if (peliculaRequest.getPersonajesId() == null || !personajes.keySet().containsAll(peliculaRequest.getPersonajesId())) {
+            return "NO SE ENCONTRO EL PERSONAJE";
+        }
+        if (!generos.containsKey(peliculaRequest.getGeneroId())) {
+            return "NO SE ENCONTRO GENERO CON ESE ID";
+        }
+        if (!titulosDelLote.add(tituloNormalizado)) {
+            return "LA PELICULA ESTA REPETIDA EN EL LOTE";
+        }
+        return null;
     }
 
     @Override
-    public List<PeliculaBuscadaPorParametroResponseDto> getPeliculasSinParametros() {
+    public PeliculaConDetalleResponseDto getPeliculaById(Long peliculaId) throws PeliculaNotFoundException {
 
-        List<Pelicula> peliculas = peliculaRepository.findAll();
-        return peliculaMapper.peliculaToPeliculaBuscadaPorParametroResponseDto(peliculas);
+        // El detalle y su ETag salen de la misma lectura: la cache nunca guarda uno sin el otro
+        PeliculaConDetalleResponseDto detalle = detalleCache.pelicula(peliculaId, id -> peliculaRepository.findConDetalleByPeliculaId(id)
+                .map(pelicula -> {
+                    PeliculaConDetalleResponseDto dto = peliculaMapper.peliculaToDetallePeliculaResponseDto(pelicula);
+                    dto.setEtag(EtagUtility.etag(EtagUtility.versionesDetalle(pelicula)));
+                    return dto;
+                })
+                .orElse(null));
+        if (detalle == null) {
+            throw new PeliculaNotFoundException("NO SE ENCONTRO NINGUNA PELICULA CON ESE ID");
+        }
+        return detalle;
     }
 
     @Override
-    public PeliculaBuscadaPorParametroResponseDto getPeliculaByTitulo(String titulo) throws PeliculaNotFoundException {
-        Pelicula pelicula = peliculaRepository.findByTituloContainingIgnoreCase(titulo).orElseThrow(
-                () -> new PeliculaNotFoundException("NO SE ENCONTRO PELICULA CON ESE TITULO")
-        );
-        return peliculaMapper.peliculaToPeliculaBuscadaPorTituloDtoResponse(pelicula);
+    public String getEtagPelicula(Long peliculaId) throws PeliculaNotFoundException {
+
+        List<Object[]> versiones = peliculaRepository.findVersionesDetalleByPeliculaId(peliculaId);
+        if (versiones.isEmpty()) {
+            throw new PeliculaNotFoundException("NO SE ENCONTRO NINGUNA PELICULA CON ESE ID");
+        }
+        return EtagUtility.etag(versiones);
+    }
+
+    // Titulo, reparto y genero de la pelicula en los indices en memoria
+    private void indexar(Pelicula pelicula) {
+
+        indiceCatalogo.indexarPelicula(pelicula.getPeliculaId(), pelicula.getTitulo());
+        indiceCatalogo.asignarGenero(pelicula.getPeliculaId(), pelicula.getGenero() == null ? null : pelicula.getGenero().getGeneroId());
+        indiceCatalogo.indexarReparto(pelicula.getPeliculaId(), pelicula.getPersonajes().stream()
+                .map(Personaje::getPersonajeId)
+                .collect(Collectors.toList()));
+    }
+
+    // Detalles cacheados que muestran datos de esta pelicula: el suyo, el de su genero y el de cada personaje del reparto
+    private void invalidarDetalles(Pelicula pelicula) {
+
+        detalleCache.invalidarPeliculas(List.of(pelicula.getPeliculaId()));
+        if (pelicula.getGenero() != null) {
+            detalleCache.invalidarGenero(pelicula.getGenero().getGeneroId());
+        }
+        detalleCache.invalidarPersonajes(pelicula.getPersonajes().stream()
+                .map(Personaje::getPersonajeId)
+                .collect(Collectors.toList()));
     }
 
 }
@@ -1,10 +1,18 @@
 package com.challenge.alkemy.service;
 
+import com.challenge.alkemy.entity.dto.paginaDto.response.PaginaResponseDto;
+import com.challenge.alkemy.entity.dto.personajeDto.request.BuscarPersonajesRequestDto;
 import com.challenge.alkemy.entity.dto.personajeDto.request.CreateOrUpdatePersonajeRequestDto;
+import com.challenge.alkemy.entity.dto.personajeDto.request.PatchPersonajeRequestDto;
 import com.challenge.alkemy.entity.dto.personajeDto.response.PersonajeBuscadoPorParametroResponseDto;
 import com.challenge.alkemy.entity.dto.personajeDto.response.PersonajeConDetalleResponseDto;
+import com.challenge.alkemy.entity.dto.personajeDto.response.SeparacionResponseDto;
+import com.challenge.alkemy.error.pagina.CursorInvalidoException;
+import com.challenge.alkemy.error.personaje.PersonajeBuscadoPorParametroIncorrectoException;
+import com.challenge.alkemy.error.personaje.PersonajeModificadoException;
 import com.challenge.alkemy.error.personaje.PersonajeNotFoundException;
 import com.challenge.alkemy.error.personaje.PersonajeYaEnUsoException;
+import com.challenge.alkemy.error.personaje.PersonajesSinConexionException;
 
 
 import java.util.List;
@@ -18,17 +26,20 @@ public interface PersonajeService {
 
     PersonajeConDetalleResponseDto getPersonajeById(Long personajeId) throws PersonajeNotFoundException;
 
+    String getEtagPersonaje(Long personajeId) throws PersonajeNotFoundException;
+
     void deletePersonajeById(Long personajeId) throws Exception;
 
     PersonajeConDetalleResponseDto updatePersonaje(Long personajeId, CreateOrUpdatePersonajeRequestDto personajeRequest) throws PersonajeNotFoundException;
 
-    PersonajeBuscadoPorParametroResponseDto getPersonajeByNombre(String nombre) throws PersonajeNotFoundException;
-
-    List<PersonajeBuscadoPorParametroResponseDto> getPersonajeByEdad(int edad) throws PersonajeNotFoundException;
+    // Filtros combinables (nombre, edad, peso, pelicula), orden y pagina en una sola busqueda
+    PaginaResponseDto<PersonajeBuscadoPorParametroResponseDto> buscarPersonajes(BuscarPersonajesRequestDto busqueda) throws PersonajeNotFoundException, PersonajeBuscadoPorParametroIncorrectoException, CursorInvalidoException;
 
-    List<PersonajeBuscadoPorParametroResponseDto> getPersonajeByPeso(Double peso) throws PersonajeNotFoundException;
+    // Personajes que comparten al menos una pelicula con el indicado, paginados por id
+    PaginaResponseDto<PersonajeBuscadoPorParametroResponseDto> getCoprotagonistas(Long personajeId, String cursor, Integer limit) throws PersonajeNotFoundException, CursorInvalidoException;
 
-    List<PersonajeBuscadoPorParametroResponseDto> getPersonajes();
+    // Cadena mas corta de peliculas compartidas entre dos personajes
+    SeparacionResponseDto getSeparacion(Long origenId, Long destinoId) throws PersonajeNotFoundException, PersonajesSinConexionException;
 
-    List<PersonajeBuscadoPorParametroResponseDto> getPersonajesByPeliculaId(Long idMovie);
+    PersonajeConDetalleResponseDto patchPersonaje(Long personajeId, PatchPersonajeRequestDto personajeRequest, String ifMatch) throws PersonajeNotFoundException, PersonajeModificadoException;
 }
@@ -1,20 +1,46 @@
 package com.challenge.alkemy.service;
 
+import com.challenge.alkemy.cache.DetalleCache;
 import com.challenge.alkemy.entity.Pelicula;
 import com.challenge.alkemy.entity.Personaje;
+import com.challenge.alkemy.entity.dto.paginaDto.response.PaginaResponseDto;
+import com.challenge.alkemy.entity.dto.peliculaDto.response.PeliculaBuscadaPorParametroResponseDto;
 import com.challenge.alkemy.entity.dto.personajeDto.PersonajeMapper;
+import com.challenge.alkemy.entity.dto.personajeDto.request.BuscarPersonajesRequestDto;
 import com.challenge.alkemy.entity.dto.personajeDto.request.CreateOrUpdatePersonajeRequestDto;
+import com.challenge.alkemy.entity.dto.personajeDto.request.PatchPersonajeRequestDto;
 import com.challenge.alkemy.entity.dto.personajeDto.response.PersonajeBuscadoPorParametroResponseDto;
 import com.challenge.alkemy.entity.dto.personajeDto.response.PersonajeConDetalleResponseDto;
+import com.challenge.alkemy.entity.dto.personajeDto.response.SeparacionResponseDto;
+import com.challenge.alkemy.error.pagina.CursorInvalidoException;
+import com.challenge.alkemy.error.personaje.PersonajeBuscadoPorParametroIncorrectoException;
+import com.challenge.alkemy.error.personaje.PersonajeModificadoException;
 import com.challenge.alkemy.error.personaje.PersonajeNotFoundException;
 import com.challenge.alkemy.error.personaje.PersonajeYaEnUsoException;
+import com.challenge.alkemy.error.personaje.PersonajesSinConexionException;
+import com.challenge.alkemy.indice.IndiceCatalogo;
+import com.challenge.alkemy.repository.FilaConOrden;
 import com.challenge.alkemy.repository.PeliculaRepository;
+import com.challenge.alkemy.repository.PersonajeHistoriaRepository;
 import com.challenge.alkemy.repository.PersonajeRepository;
+import com.challenge.alkemy.utility.EtagUtility;
+import com.challenge.alkemy.utility.PaginacionUtility;
+import com.challenge.alkemy.utility.TextoUtility;
 import lombok.AllArgsConstructor;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
+import javax.transaction.Transactional;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @AllArgsConstructor
@@ -23,18 +49,35 @@ public class PersonajeServiceImp implements PersonajeService {
     private PersonajeRepository personajeRepository;
     private PersonajeMapper personajeMapper;
     private PeliculaRepository peliculaRepository;
+    private PersonajeHistoriaRepository personajeHistoriaRepository;
+    private IndiceCatalogo indiceCatalogo;
+    private DetalleCache detalleCache;
+
+    // Nombre que recibe la API (en minusculas) -> atributo de Personaje
+    private static final Map<String, String> CAMPOS_ORDENABLES = Map.of(
+            "nombre", "nombre",
+            "edad", "edad",
+            "peso", "peso");
+
+    // Tipo de cada atributo del orden, para leer sus valores del cursor
+    private static final Map<String, Class<?>> TIPOS_DE_ORDEN = Map.of(
+            "nombre", String.class,
+            "edad", Integer.class,
+            "peso", Double.class,
+            "personajeId", Long.class);
 
     @Override
     public List<PersonajeConDetalleResponseDto> getAllPersonajes() {
 
-        List<Personaje> personajes = personajeRepository.findAll();
+        List<Personaje> personajes = personajeRepository.findAllConDetalle();
         return personajeMapper.personajeToPersonajeConDetalleResponseDto(personajes);
     }
 
     @Override
     public PersonajeConDetalleResponseDto savePersonaje(CreateOrUpdatePersonajeRequestDto personajeRequest) throws PersonajeYaEnUsoException {
 
-        if (personajeRepository.findByNombreContainingIgnoreCase(personajeRequest.getNombre()).isPresent()) {
+        // Nombre exacto normalizado: el indice de trigramas encuentra subcadenas y "Ana" chocaria con "Anakin"
+        if (personajeRepository.existsByNombreNormalizado(TextoUtility.normalizarTitulo(personajeRequest.getNombre()))) {
             throw new PersonajeYaEnUsoException("EL PERSONAJE INDICADO YA EXISTE");
         }
         Personaje personajeToSave = Personaje.builder()
@@ -45,82 +88,266 @@ public class PersonajeServiceImp implements PersonajeService {
                 .historia(personajeRequest.getHistoria())
                 .peliculas(new ArrayList<>())
                 .build();
-        return personajeMapper.personajeToPersonajeConDetalleResponseDto(personajeRepository.save(personajeToSave));
+        Personaje personajeGuardado = personajeRepository.save(personajeToSave);
+        indiceCatalogo.indexarPersonaje(personajeGuardado.getPersonajeId(), personajeGuardado.getNombre());
+        indiceCatalogo.indexarMedidasPersonaje(personajeGuardado.getPersonajeId(), personajeGuardado.getEdad(), personajeGuardado.getPeso());
+        return personajeMapper.personajeToPersonajeConDetalleResponseDto(personajeGuardado);
     }
 
     @Override
     public PersonajeConDetalleResponseDto getPersonajeById(Long personajeId) throws PersonajeNotFoundException {
 
-        Personaje personajeDB = personajeRepository.findById(personajeId)
-                .orElseThrow(()-> new PersonajeNotFoundException("NO SE ENCONTRO PERSONAJE CON EL ID INDICADO"));
-        return personajeMapper.personajeToPersonajeConDetalleResponseDto(personajeDB);
+        // El detalle y su ETag salen de la misma lectura: la cache nunca guarda uno sin el otro
+        PersonajeConDetalleResponseDto detalle = detalleCache.personaje(personajeId, id -> personajeRepository.findConDetalleByPersonajeId(id)
+                .map(personaje -> {
+                    PersonajeConDetalleResponseDto dto = personajeMapper.personajeToPersonajeConDetalleResponseDto(personaje);
+                    dto.setEtag(EtagUtility.etag(EtagUtility.versionesDetalle(personaje)));
+                    return dto;
+                })
+                .orElse(null));
+        if (detalle == null) {
+            throw new PersonajeNotFoundException("NO SE ENCONTRO PERSONAJE CON EL ID INDICADO");
+        }
+        return detalle;
     }
 
     @Override
+    public String getEtagPersonaje(Long personajeId) throws PersonajeNotFoundException {
+
+        List<Object[]> versiones = personajeRepository.findVersionesDetalleByPersonajeId(personajeId);
+        if (versiones.isEmpty()) {
+            throw new PersonajeNotFoundException("NO SE ENCONTRO PERSONAJE CON EL ID INDICADO");
+        }
+        return EtagUtility.etag(versiones);
+    }
+
+    @Override
+    @Transactional
     public void deletePersonajeById(Long personajeId) throws PersonajeNotFoundException {
 
-        Personaje personajeDB = personajeRepository.findById(personajeId)
-                .orElseThrow(() -> new PersonajeNotFoundException("NO SE ENCONTRO UN PERSONAJE CON ESE ID"));
-        // Primero eliminamos el personaje de todas las peliculas
-        personajeDB.getPeliculas().forEach(pelicula -> pelicula.getPersonajes().remove(personajeDB));
-        personajeRepository.delete(personajeDB);
+        if (!personajeRepository.existsById(personajeId)) {
+            throw new PersonajeNotFoundException("NO SE ENCONTRO UN PERSONAJE CON ESE ID");
+        }
+        // Todo por SQL de conjuntos: el costo no depende de en cuantas peliculas aparece el personaje
+        List<Long> peliculaIds = peliculaRepository.findPeliculaIdsByPersonajeId(personajeId);
+        Optional<Long> historiaId = personajeRepository.findHistoriaIdByPersonajeId(personajeId);
+        peliculaRepository.incrementarVersionDePeliculasConPersonaje(personajeId);
+        peliculaRepository.quitarPersonajeDeTodasLasPeliculas(personajeId);
+        personajeRepository.eliminarPorId(personajeId);
+        // La historia va despues: la fila de PERSONAJE es la que la referencia
+        historiaId.ifPresent(personajeHistoriaRepository::eliminarPorId);
+        indiceCatalogo.eliminarPersonaje(personajeId);
+        detalleCache.invalidarPersonajes(List.of(personajeId));
+        detalleCache.invalidarPeliculas(peliculaIds);
     }
 
     @Override
+    @Transactional
     public PersonajeConDetalleResponseDto updatePersonaje(Long personajeId, CreateOrUpdatePersonajeRequestDto personajeRequest) throws PersonajeNotFoundException {
 
-        personajeRepository.findById(personajeId)
+        // Traemos sus peliculas para invalidar los detalles que muestran los datos del personaje
+        Personaje personajeDB = personajeRepository.findConDetalleByPersonajeId(personajeId)
                 .orElseThrow(()-> new PersonajeNotFoundException("NO SE ENCONTRO PERSONAJE A EDITAR CON ESE ID"));
 
-        Personaje personajeToUpdate = Personaje.builder()
-                .personajeId(personajeId)
-                .nombre(personajeRequest.getNombre())
-                .imagen(personajeRequest.getImagen())
-                .edad(personajeRequest.getEdad())
-                .peso(personajeRequest.getPeso())
-                .historia(personajeRequest.getHistoria())
-                // Iniciamos las peliculas como un Array vacio, para evitar el 'null'
-                .peliculas(new ArrayList<>())
-                .build();
-        return personajeMapper.personajeToPersonajeConDetalleResponseDto(personajeRepository.save(personajeToUpdate));
+        // Sobre la entidad administrada y sin save: el UPDATE lleva solo las columnas que cambiaron, y setHistoria
+        // reemplaza la fila de PERSONAJE_HISTORIA solo si el texto es distinto
+        personajeDB.setNombre(personajeRequest.getNombre());
+        personajeDB.setImagen(personajeRequest.getImagen());
+        personajeDB.setEdad(personajeRequest.getEdad());
+        personajeDB.setPeso(personajeRequest.getPeso());
+        personajeDB.setHistoria(personajeRequest.getHistoria());
+        indiceCatalogo.indexarPersonaje(personajeId, personajeDB.getNombre());
+        indiceCatalogo.indexarMedidasPersonaje(personajeId, personajeDB.getEdad(), personajeDB.getPeso());
+        invalidarDetalles(personajeDB);
+        return personajeMapper.personajeToPersonajeConDetalleResponseDto(personajeDB);
     }
 
     @Override
-    public List<PersonajeBuscadoPorParametroResponseDto> getPersonajes() {
+    @Transactional
+    public PersonajeConDetalleResponseDto patchPersonaje(Long personajeId, PatchPersonajeRequestDto personajeRequest, String ifMatch) throws PersonajeNotFoundException, PersonajeModificadoException {
 
-        List<Personaje> personajesDB = personajeRepository.findAll();
-        return personajeMapper.personajeToPersonajeBuscadoPorParametroResponseDto(personajesDB);
+        // Una sola lectura: la entidad queda administrada y el dirty checking escribe solo lo que cambio
+        Personaje personajeDB = personajeRepository.findConDetalleByPersonajeId(personajeId)
+                .orElseThrow(()-> new PersonajeNotFoundException("NO SE ENCONTRO PERSONAJE A EDITAR CON ESE ID"));
+        if (ifMatch != null && !EtagUtility.coincideFuerte(ifMatch, EtagUtility.etag(EtagUtility.versionesDetalle(personajeDB)))) {
+            throw new PersonajeModificadoException("EL PERSONAJE FUE MODIFICADO DESDE LA ULTIMA LECTURA");
+        }
+        if (personajeRequest.getNombre() != null) {
+            personajeDB.setNombre(personajeRequest.getNombre());
+        }
+        if (personajeRequest.getImagen() != null) {
+            personajeDB.setImagen(personajeRequest.getImagen());
+        }
+        if (personajeRequest.getEdad() != null) {
+            personajeDB.setEdad(personajeRequest.getEdad());
+        }
+        if (personajeRequest.getPeso() != null) {
+            personajeDB.setPeso(personajeRequest.getPeso());
+        }
+        if (personajeRequest.getHistoria() != null) {
+            personajeDB.setHistoria(personajeRequest.getHistoria());
+        }
+        // Sin save: al cerrar la transaccion sale un UPDATE ... WHERE ID = ? AND VERSION = ? con las columnas modificadas
+        indiceCatalogo.indexarPersonaje(personajeId, personajeDB.getNombre());
+        indiceCatalogo.indexarMedidasPersonaje(personajeId, personajeDB.getEdad(), personajeDB.getPeso());
+        invalidarDetalles(personajeDB);
+        return personajeMapper.personajeToPersonajeConDetalleResponseDto(personajeDB);
     }
 
     @Override
-    public List<PersonajeBuscadoPorParametroResponseDto> getPersonajesByPeliculaId(Long idMovie) {
+    public PaginaResponseDto<PersonajeBuscadoPorParametroResponseDto> buscarPersonajes(BuscarPersonajesRequestDto busqueda) throws PersonajeNotFoundException, PersonajeBuscadoPorParametroIncorrectoException, CursorInvalidoException {
 
-        Pelicula peliculaDB = peliculaRepository.findById(idMovie).orElseThrow();
-        return personajeMapper.personajeToPersonajeBuscadoPorParametroResponseDto(peliculaDB.getPersonajes());
+        Sort criterio = PaginacionUtility.parsearOrden(busqueda.getOrden(), CAMPOS_ORDENABLES)
+                .orElseThrow(() -> new PersonajeBuscadoPorParametroIncorrectoException("PARAMETRO DE ORDENAMIENTO INCORRECTO"));
+        // El id cierra siempre el orden: desempata filas con el mismo valor y hace que el cursor sea univoco
+        Sort orden = criterio.and(Sort.by("personajeId"));
+        int limite = PaginacionUtility.normalizarLimite(busqueda.getLimit());
+        // El cursor trae los valores del orden del ultimo personaje entregado: no se vuelve a leer esa fila
+        List<Object> ultimosValores = PaginacionUtility.decodificarCursor(busqueda.getCursor(), orden, TIPOS_DE_ORDEN);
+        long cursorId = PaginacionUtility.ultimoId(ultimosValores);
+        // Edad y peso exactos son un rango de un solo valor
+        Integer edadMin = busqueda.getEdad() != null ? busqueda.getEdad() : busqueda.getEdadMin();
+        Integer edadMax = busqueda.getEdad() != null ? busqueda.getEdad() : busqueda.getEdadMax();
+        Double pesoMin = busqueda.getPeso() != null ? busqueda.getPeso() : busqueda.getPesoMin();
+        Double pesoMax = busqueda.getPeso() != null ? busqueda.getPeso() : busqueda.getPesoMax();
+
+        // El filtro por nombre lo resuelve el indice de trigramas, la base solo recibe los ids candidatos
+        NavigableSet<Long> porNombre = null;
+        if (busqueda.getNombre() != null) {
+            porNombre = indiceCatalogo.buscarPersonajes(busqueda.getNombre());
+            if (porNombre.isEmpty()) {
+                if (cursorId == 0) {
+                    throw new PersonajeNotFoundException("NO SE ENCONTRO PERSONAJE CON EL NOMBRE INDICADO");
+                }
+                return PaginacionUtility.armarPagina(Collections.emptyList(), limite, PersonajeBuscadoPorParametroResponseDto::getId, Function.identity());
+            }
+        }
+        boolean hayRango = edadMin != null || edadMax != null || pesoMin != null || pesoMax != null;
+        if (busqueda.getIdMovie() == null && criterio.isUnsorted() && (porNombre != null || hayRango)) {
+            // Sin reparto ni orden la pagina sale directo de los indices en memoria, ya ordenados por id
+            return paginaDesdeIndices(porNombre, edadMin, edadMax, pesoMin, pesoMax, cursorId, limite);
+        }
+
+        // Un nombre muy comun no se manda como un IN de miles de ids: la base filtra por subcadena del nombre normalizado
+        boolean porSubcadena = porNombre != null && porNombre.size() > PaginacionUtility.MAXIMO_CANDIDATOS;
+
+        // Filtros, orden y limite viajan en una sola consulta; pedimos una fila de mas para saber si hay otra pagina
+        List<FilaConOrden<PersonajeBuscadoPorParametroResponseDto>> personajes = personajeRepository.buscarResumenes(
+                porSubcadena ? null : porNombre, porSubcadena ? busqueda.getNombre() : null, edadMin, edadMax, pesoMin, pesoMax, busqueda.getIdMovie(), orden, ultimosValores, limite + 1);
+        // El reparto se filtra en la misma consulta; solo si no vino nada averiguamos si la pelicula existe
+        if (personajes.isEmpty() && busqueda.getIdMovie() != null && !peliculaRepository.existsById(busqueda.getIdMovie())) {
+            throw new NoSuchElementException("NO SE ENCONTRO PELICULA CON ESE ID");
+        }
+        return PaginacionUtility.armarPaginaPorOrden(personajes, limite, FilaConOrden::getValoresDeOrden, FilaConOrden::getFila);
     }
 
-    @Override
-    public PersonajeBuscadoPorParametroResponseDto getPersonajeByNombre(String nombre) throws PersonajeNotFoundException {
+    private PaginaResponseDto<PersonajeBuscadoPorParametroResponseDto> paginaDesdeIndices(NavigableSet<Long> porNombre, Integer edadMin, Integer edadMax,
+                                                                                            Double pesoMin, Double pesoMax, long cursorId, int limite) {
 
-        Personaje personajeEncontrado = personajeRepository.findByNombreContainingIgnoreCase(nombre)
-                .orElseThrow(()-> new PersonajeNotFoundException("NO SE ENCONTRO PERSONAJE CON EL NOMBRE INDICADO"));
-        return personajeMapper.personajeToPersonajeBuscadoPorParametroResponseDto(personajeEncontrado);
+        // Cada rango sale de su indice ordenado ya como ids crecientes; un extremo sin valor queda abierto
+        long[] candidatos = null;
+        if (porNombre != null) {
+            candidatos = porNombre.tailSet(cursorId, false).stream().mapToLong(Long::longValue).toArray();
+        }
+        if (edadMin != null || edadMax != null) {
+            long[] porEdad = indiceCatalogo.buscarPersonajesPorEdad(
+                    edadMin == null ? Integer.MIN_VALUE : edadMin,
+                    edadMax == null ? Integer.MAX_VALUE : edadMax);
+            candidatos = candidatos == null ? porEdad : intersectar(candidatos, porEdad);
+        }
+        if (pesoMin != null || pesoMax != null) {
+            long[] porPeso = indiceCatalogo.buscarPersonajesPorPeso(
+                    pesoMin == null ? Double.NEGATIVE_INFINITY : pesoMin,
+                    pesoMax == null ? Double.POSITIVE_INFINITY : pesoMax);
+            candidatos = candidatos == null ? porPeso : intersectar(candidatos, porPeso);
+        }
+        return paginaDeIds(candidatos, cursorId, limite);
     }
 
     @Override
-    public List<PersonajeBuscadoPorParametroResponseDto> getPersonajeByEdad(int edad) throws PersonajeNotFoundException {
+    public PaginaResponseDto<PersonajeBuscadoPorParametroResponseDto> getCoprotagonistas(Long personajeId, String cursor, Integer limit) throws PersonajeNotFoundException, CursorInvalidoException {
 
-        List<Personaje> personajesDB = personajeRepository.findByEdad(edad)
-                .orElseThrow(()-> new PersonajeNotFoundException("NO SE ENCONTRO NINGUN PERSONAJE CON LA EDAD INDICADA"));
-        return personajeMapper.personajeToPersonajeBuscadoPorParametroResponseDto(personajesDB);
+        int limite = PaginacionUtility.normalizarLimite(limit);
+        long cursorId = PaginacionUtility.decodificarCursor(cursor);
+        if (!indiceCatalogo.existePersonaje(personajeId)) {
+            throw new PersonajeNotFoundException("NO SE ENCONTRO PERSONAJE CON ESE ID");
+        }
+        // Los vecinos salen del grafo en memoria; a la base solo van los ids de la pagina
+        return paginaDeIds(indiceCatalogo.buscarCoprotagonistas(personajeId), cursorId, limite);
     }
 
     @Override
-    public List<PersonajeBuscadoPorParametroResponseDto> getPersonajeByPeso(Double peso) throws PersonajeNotFoundException {
+    public SeparacionResponseDto getSeparacion(Long origenId, Long destinoId) throws PersonajeNotFoundException, PersonajesSinConexionException {
+
+        if (!indiceCatalogo.existePersonaje(origenId) || !indiceCatalogo.existePersonaje(destinoId)) {
+            throw new PersonajeNotFoundException("NO SE ENCONTRO PERSONAJE CON ESE ID");
+        }
+        // El BFS corre sobre el grafo en memoria; despues se buscan solo los resumenes de los nodos del camino
+        long[] camino = indiceCatalogo.buscarCamino(origenId, destinoId);
+        if (camino.length == 0) {
+            throw new PersonajesSinConexionException("NO HAY PELICULAS QUE CONECTEN A LOS PERSONAJES");
+        }
+        List<Long> personajeIds = new ArrayList<>();
+        List<Long> peliculaIds = new ArrayList<>();
+        for (int i = 0; i < camino.length; i++) {
+            (i % 2 == 0 ? personajeIds : peliculaIds).add(camino[i]);
+        }
+        Map<Long, PersonajeBuscadoPorParametroResponseDto> personajes = personajeRepository.findResumenesByPersonajeIdIn(personajeIds, Sort.by("personajeId")).stream()
+                .collect(Collectors.toMap(PersonajeBuscadoPorParametroResponseDto::getId, Function.identity()));
+        Map<Long, PeliculaBuscadaPorParametroResponseDto> peliculas = peliculaIds.isEmpty()
+                ? Collections.emptyMap()
+                : peliculaRepository.buscarResumenes(peliculaIds, null, null, Sort.by("peliculaId"), null, peliculaIds.size()).stream()
+                        .map(FilaConOrden::getFila)
+                        .collect(Collectors.toMap(PeliculaBuscadaPorParametroResponseDto::getId, Function.identity()));
+        return SeparacionResponseDto.builder()
+                .grados(peliculaIds.size())
+                .personajes(personajeIds.stream().map(personajes::get).collect(Collectors.toList()))
+                .peliculas(peliculaIds.stream().map(peliculas::get).collect(Collectors.toList()))
+                .build();
+    }
+
+    // Pagina sobre ids ya ordenados: arranca en el primer id mayor al cursor y a la base solo van esas filas
+    private PaginaResponseDto<PersonajeBuscadoPorParametroResponseDto> paginaDeIds(long[] candidatos, long cursorId, int limite) {
+
+        int desde = Arrays.binarySearch(candidatos, cursorId);
+        desde = desde >= 0 ? desde + 1 : -desde - 1;
+        int hasta = (int) Math.min(candidatos.length, desde + limite + 1L);
+        List<Long> idsDePagina = new ArrayList<>(hasta - desde);
+        for (int i = desde; i < hasta; i++) {
+            idsDePagina.add(candidatos[i]);
+        }
+        List<PersonajeBuscadoPorParametroResponseDto> personajesEncontrados = idsDePagina.isEmpty()
+                ? Collections.emptyList()
+                : personajeRepository.findResumenesByPersonajeIdIn(idsDePagina, Sort.by("personajeId"));
+        return PaginacionUtility.armarPagina(personajesEncontrados, limite, PersonajeBuscadoPorParametroResponseDto::getId, Function.identity());
+    }
+
+    // Interseccion de dos arrays de ids ordenados, avanzando en paralelo
+    private static long[] intersectar(long[] a, long[] b) {
+
+        long[] resultado = new long[Math.min(a.length, b.length)];
+        int cantidad = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                resultado[cantidad++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(resultado, cantidad);
+    }
+
+    // Detalles cacheados que muestran datos de este personaje: el suyo y el de cada pelicula en la que aparece
+    private void invalidarDetalles(Personaje personaje) {
 
-        List<Personaje> personajesDB = personajeRepository.findByPeso(peso)
-                .orElseThrow(()-> new PersonajeNotFoundException("NO SE ENCONTRO NINGUN PERSONAJE CON EL PESO INDICADO"));
-        return personajeMapper.personajeToPersonajeBuscadoPorParametroResponseDto(personajesDB);
+        detalleCache.invalidarPersonajes(List.of(personaje.getPersonajeId()));
+        detalleCache.invalidarPeliculas(personaje.getPeliculas().stream()
+                .map(Pelicula::getPeliculaId)
+                .collect(Collectors.toList()));
     }
 
 }
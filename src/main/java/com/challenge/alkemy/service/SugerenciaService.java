@@ -0,0 +1,8 @@
+package com.challenge.alkemy.service;
+
+import com.challenge.alkemy.entity.dto.sugerenciaDto.response.SugerenciasResponseDto;
+
+public interface SugerenciaService {
+
+    SugerenciasResponseDto sugerir(String prefijo, Integer limit);
+}
@@ -0,0 +1,43 @@
+package com.challenge.alkemy.service;
+
+import com.challenge.alkemy.entity.dto.sugerenciaDto.response.SugerenciaResponseDto;
+import com.challenge.alkemy.entity.dto.sugerenciaDto.response.SugerenciasResponseDto;
+import com.challenge.alkemy.indice.IndiceCatalogo;
+import com.challenge.alkemy.indice.Sugerencia;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Service
+@AllArgsConstructor
+public class SugerenciaServiceImp implements SugerenciaService {
+
+    private static final int LIMITE_POR_DEFECTO = 5;
+    private static final int LIMITE_MAXIMO = 20;
+
+    private final IndiceCatalogo indiceCatalogo;
+
+    @Override
+    public SugerenciasResponseDto sugerir(String prefijo, Integer limit) {
+
+        // Se llama en cada tecla: todo sale de los indices en memoria, sin consultas a la base
+        int limite = limit == null || limit < 1 ? LIMITE_POR_DEFECTO : Math.min(limit, LIMITE_MAXIMO);
+        return SugerenciasResponseDto.builder()
+                .peliculas(mapear(indiceCatalogo.sugerirPeliculas(prefijo, limite)))
+                .personajes(mapear(indiceCatalogo.sugerirPersonajes(prefijo, limite)))
+                .generos(mapear(indiceCatalogo.sugerirGeneros(prefijo, limite)))
+                .build();
+    }
+
+    private static List<SugerenciaResponseDto> mapear(List<Sugerencia> sugerencias) {
+
+        return sugerencias.stream()
+                .map(sugerencia -> SugerenciaResponseDto.builder()
+                        .id(sugerencia.getId())
+                        .texto(sugerencia.getTexto())
+                        .build())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,119 @@
+package com.challenge.alkemy.utility;
+
+import com.challenge.alkemy.entity.Genero;
+import com.challenge.alkemy.entity.Pelicula;
+import com.challenge.alkemy.entity.Personaje;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+public final class EtagUtility {
+
+    private EtagUtility() {
+    }
+
+    // ETag fuerte: hash de los ids y versiones de todo lo que muestra la respuesta.
+    // Cualquier UPDATE, alta o baja en esas filas cambia el hash
+    public static String etag(List<Object[]> versiones) {
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Object[] fila : versiones) {
+            for (Object valor : fila) {
+                digest.update(String.valueOf(valor).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '|');
+            }
+            digest.update((byte) '\n');
+        }
+        byte[] hash = Arrays.copyOf(digest.digest(), 16);
+        return "\"" + String.format("%032x", new BigInteger(1, hash)) + "\"";
+    }
+
+    // Mismas filas que PeliculaRepository.findVersionesDetalleByPeliculaId, armadas con la pelicula ya cargada con su detalle
+    public static List<Object[]> versionesDetalle(Pelicula pelicula) {
+
+        Genero genero = pelicula.getGenero();
+        Long generoId = genero == null ? null : genero.getGeneroId();
+        Long generoVersion = genero == null ? null : genero.getVersion();
+        List<Object[]> versiones = new ArrayList<>();
+        pelicula.getPersonajes().stream()
+                .sorted(Comparator.comparingLong(Personaje::getPersonajeId))
+                .forEach(personaje -> versiones.add(new Object[]{pelicula.getVersion(), generoId, generoVersion,
+                        personaje.getPersonajeId(), personaje.getVersion()}));
+        if (versiones.isEmpty()) {
+            versiones.add(new Object[]{pelicula.getVersion(), generoId, generoVersion, null, null});
+        }
+        return versiones;
+    }
+
+    // Mismas filas que GeneroRepository.findVersionesDetalleByGeneroId
+    public static List<Object[]> versionesDetalle(Genero genero) {
+
+        List<Object[]> versiones = new ArrayList<>();
+        genero.getPeliculas().stream()
+                .sorted(Comparator.comparing(Pelicula::getPeliculaId))
+                .forEach(pelicula -> versiones.add(new Object[]{genero.getVersion(), pelicula.getPeliculaId(), pelicula.getVersion()}));
+        if (versiones.isEmpty()) {
+            versiones.add(new Object[]{genero.getVersion(), null, null});
+        }
+        return versiones;
+    }
+
+    // Mismas filas que PersonajeRepository.findVersionesDetalleByPersonajeId
+    public static List<Object[]> versionesDetalle(Personaje personaje) {
+
+        List<Object[]> versiones = new ArrayList<>();
+        personaje.getPeliculas().stream()
+                .sorted(Comparator.comparing(Pelicula::getPeliculaId))
+                .forEach(pelicula -> versiones.add(new Object[]{personaje.getVersion(), pelicula.getPeliculaId(), pelicula.getVersion(),
+                        pelicula.getGenero() == null ? null : pelicula.getGenero().getGeneroId(),
+                        pelicula.getGenero() == null ? null : pelicula.getGenero().getVersion()}));
+        if (versiones.isEmpty()) {
+            versiones.add(new Object[]{personaje.getVersion(), null, null, null, null});
+        }
+        return versiones;
+    }
+
+    // If-None-Match compara de forma debil: acepta varias etiquetas separadas por coma, con o sin W/, o '*'
+    public static boolean coincide(String ifNoneMatch, String etag) {
+
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String etiqueta : ifNoneMatch.split(",")) {
+            String candidata = etiqueta.trim();
+            if (candidata.startsWith("W/")) {
+                candidata = candidata.substring(2);
+            }
+            if (candidata.equals("*") || candidata.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // If-Match compara de forma fuerte (RFC 7232): una etiqueta W/ nunca coincide, solo la identica o '*'
+    public static boolean coincideFuerte(String ifMatch, String etag) {
+
+        if (ifMatch == null) {
+            return false;
+        }
+        for (String etiqueta : ifMatch.split(",")) {
+            String candidata = etiqueta.trim();
+            if (candidata.equals("*") || candidata.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
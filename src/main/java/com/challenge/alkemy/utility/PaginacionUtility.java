@@ -0,0 +1,143 @@
+package com.challenge.alkemy.utility;
+
+import com.challenge.alkemy.entity.dto.paginaDto.response.PaginaResponseDto;
+import com.challenge.alkemy.error.pagina.CursorInvalidoException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+public final class PaginacionUtility {
+
+    public static final int LIMITE_POR_DEFECTO = 20;
+    public static final int LIMITE_MAXIMO = 100;
+    // Hasta cuantos ids de un indice en memoria viajan como IN (...); por encima la base filtra por su cuenta
+    public static final int MAXIMO_CANDIDATOS = 1000;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private PaginacionUtility() {
+    }
+
+    // Acotamos el limite pedido por el cliente para que ninguna pagina recorra mas de LIMITE_MAXIMO filas
+    public static int normalizarLimite(Integer limit) {
+        if (limit == null) {
+            return LIMITE_POR_DEFECTO;
+        }
+        return Math.max(1, Math.min(limit, LIMITE_MAXIMO));
+    }
+
+    // Pedimos una fila de mas para saber si existe una pagina siguiente sin tener que hacer un COUNT
+    public static Pageable pagina(int limite, Sort orden) {
+        return PageRequest.of(0, limite + 1, orden);
+    }
+
+    // Traduce "campo[:asc|desc],..." al Sort de la entidad con los campos permitidos (nombre en minusculas -> atributo).
+    // Vacio si un campo no esta permitido, se repite o trae una direccion invalida
+    public static Optional<Sort> parsearOrden(String orden, Map<String, String> camposOrdenables) {
+
+        if (orden == null || orden.isBlank()) {
+            return Optional.of(Sort.unsorted());
+        }
+        List<Sort.Order> criterios = new ArrayList<>();
+        for (String parte : orden.split(",")) {
+            String[] campoYDireccion = parte.trim().split(":", -1);
+            String campo = camposOrdenables.get(campoYDireccion[0].trim().toLowerCase(Locale.ROOT));
+            if (campo == null || campoYDireccion.length > 2
+                    || criterios.stream().anyMatch(criterio -> criterio.getProperty().equals(campo))) {
+                return Optional.empty();
+            }
+            Optional<Sort.Direction> direccion = campoYDireccion.length == 1
+                    ? Optional.of(Sort.Direction.ASC)
+                    : Sort.Direction.fromOptionalString(campoYDireccion[1].trim());
+            if (direccion.isEmpty()) {
+                return Optional.empty();
+            }
+            criterios.add(new Sort.Order(direccion.get(), campo));
+        }
+        return Optional.of(Sort.by(criterios));
+    }
+
+    // El cursor lleva los valores del orden de la ultima fila entregada, con su id al final, como un array JSON.
+    // La pagina siguiente arranca justo despues de esos valores aunque la fila se haya borrado o editado
+    public static String codificarCursor(List<Object> valoresDeOrden) {
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(JSON.writeValueAsBytes(valoresDeOrden));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static String codificarCursor(long id) {
+        return codificarCursor(List.of(id));
+    }
+
+    // Valores del cursor convertidos al tipo de cada campo del orden (tipos: atributo -> clase), o null en la primera pagina
+    public static List<Object> decodificarCursor(String cursor, Sort orden, Map<String, Class<?>> tipos) throws CursorInvalidoException {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        List<Sort.Order> criterios = orden.toList();
+        try {
+            JsonNode valores = JSON.readTree(Base64.getUrlDecoder().decode(cursor));
+            // Un cursor de otro orden no tiene la misma cantidad de valores
+            if (!valores.isArray() || valores.size() != criterios.size()) {
+                throw new CursorInvalidoException("EL CURSOR INGRESADO ES INCORRECTO");
+            }
+            List<Object> ultimosValores = new ArrayList<>(criterios.size());
+            for (int i = 0; i < criterios.size(); i++) {
+                ultimosValores.add(JSON.convertValue(valores.get(i), tipos.get(criterios.get(i).getProperty())));
+            }
+            Object id = ultimosValores.get(ultimosValores.size() - 1);
+            if (id == null || (Long) id < 0) {
+                throw new CursorInvalidoException("EL CURSOR INGRESADO ES INCORRECTO");
+            }
+            return ultimosValores;
+        } catch (IOException | IllegalArgumentException e) {
+            throw new CursorInvalidoException("EL CURSOR INGRESADO ES INCORRECTO");
+        }
+    }
+
+    // Devuelve el id de la ultima fila entregada, o 0 si el cliente pide la primera pagina
+    public static long decodificarCursor(String cursor) throws CursorInvalidoException {
+        return ultimoId(decodificarCursor(cursor, Sort.by("id"), Map.of("id", Long.class)));
+    }
+
+    // El id es el ultimo valor del cursor; 0 si no hay cursor
+    public static long ultimoId(List<Object> ultimosValores) {
+        return ultimosValores == null ? 0L : (Long) ultimosValores.get(ultimosValores.size() - 1);
+    }
+
+    // Recibe hasta 'limite + 1' filas: si sobra una, hay pagina siguiente y el cursor apunta a la ultima entregada
+    public static <E, T> PaginaResponseDto<T> armarPagina(List<E> filas, int limite, ToLongFunction<E> id, Function<E, T> mapper) {
+        return armarPaginaPorOrden(filas, limite, fila -> List.of(id.applyAsLong(fila)), mapper);
+    }
+
+    // Igual que armarPagina, con un cursor de varios valores de orden
+    public static <E, T> PaginaResponseDto<T> armarPaginaPorOrden(List<E> filas, int limite, Function<E, List<Object>> valoresDeOrden,
+                                                                   Function<E, T> mapper) {
+
+        boolean hayMas = filas.size() > limite;
+        List<E> filasDePagina = hayMas ? filas.subList(0, limite) : filas;
+
+        return PaginaResponseDto.<T>builder()
+                .contenido(filasDePagina.stream().map(mapper).collect(Collectors.toList()))
+                .next(hayMas ? codificarCursor(valoresDeOrden.apply(filasDePagina.get(limite - 1))) : null)
+                .build();
+    }
+}
@@ -0,0 +1,41 @@
+package com.challenge.alkemy.utility;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+public final class TextoUtility {
+
+    // Caracter de escape de los patrones LIKE que arma patronContiene
+    public static final char ESCAPE_LIKE = '\\';
+
+    private static final Pattern DIACRITICOS = Pattern.compile("\\p{M}+");
+    private static final Pattern ESPACIOS = Pattern.compile("\\s+");
+    private static final Pattern COMODINES = Pattern.compile("[\\\\%_]");
+
+    private TextoUtility() {
+    }
+
+    // Minusculas y sin tildes, para que "Señor" y "senor" se comparen igual
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String sinTildes = DIACRITICOS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return sinTildes.toLowerCase(Locale.ROOT);
+    }
+
+    // Clave de unicidad del titulo: ademas une los espacios repetidos y recorta los extremos,
+    // asi "Cars  2 " choca con "cars 2" pero no con "Cars"
+    public static String normalizarTitulo(String titulo) {
+        if (titulo == null) {
+            return null;
+        }
+        return ESPACIOS.matcher(normalizar(titulo)).replaceAll(" ").trim();
+    }
+
+    // Patron LIKE "%texto%" sobre una columna normalizada con normalizarTitulo; los comodines del texto se escapan
+    public static String patronContiene(String texto) {
+        return "%" + COMODINES.matcher(normalizarTitulo(texto)).replaceAll("\\\\$0") + "%";
+    }
+}
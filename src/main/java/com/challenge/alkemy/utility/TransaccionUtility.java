@@ -0,0 +1,25 @@
+package com.challenge.alkemy.utility;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public final class TransaccionUtility {
+
+    private TransaccionUtility() {
+    }
+
+    // Corre la accion cuando la transaccion en curso se confirma; si se revierte, no corre.
+    // Sin transaccion activa (el save ya confirmo la suya) corre en el momento
+    public static void despuesDelCommit(Runnable accion) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            accion.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                accion.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,79 @@
+package com.challenge.alkemy.cache;
+
+import com.challenge.alkemy.entity.dto.cacheDto.response.EstadisticasCacheResponseDto;
+import com.challenge.alkemy.entity.dto.generoDto.response.GeneroResponseDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DetalleCacheTest {
+
+    private DetalleCache detalleCache;
+
+    @BeforeEach
+    void setUp() {
+        detalleCache = new DetalleCache(100);
+    }
+
+    @Test
+    void estadisticasShouldCountHitsAndMisses() {
+
+        detalleCache.genero(1L, this::buildGenero);
+        detalleCache.genero(1L, this::buildGenero);
+        detalleCache.genero(2L, this::buildGenero);
+
+        EstadisticasCacheResponseDto generos = detalleCache.estadisticas().get("generos");
+        assertThat(generos.getAciertos()).isEqualTo(1);
+        assertThat(generos.getFallos()).isEqualTo(2);
+        assertThat(generos.getEntradas()).isEqualTo(2);
+        assertThat(detalleCache.estadisticas().get("peliculas").getFallos()).isZero();
+    }
+
+    @Test
+    void detalleInexistenteShouldNotBeCached() {
+
+        assertThat(detalleCache.genero(1L, id -> null)).isNull();
+
+        assertThat(detalleCache.genero(1L, this::buildGenero).getId()).isEqualTo(1L);
+        assertThat(detalleCache.estadisticas().get("generos").getFallos()).isEqualTo(2);
+    }
+
+    @Test
+    void invalidarGeneroShouldForceReload() {
+
+        GeneroResponseDto primero = detalleCache.genero(1L, this::buildGenero);
+        detalleCache.invalidarGenero(1L);
+
+        assertThat(detalleCache.genero(1L, this::buildGenero)).isNotSameAs(primero);
+    }
+
+    @Test
+    void invalidarInsideATransactionShouldWaitForTheCommit() {
+
+        GeneroResponseDto primero = detalleCache.genero(1L, this::buildGenero);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            detalleCache.invalidarGenero(1L);
+            // Antes del commit sigue la entrada: una recarga ahora leeria la fila vieja
+            assertThat(detalleCache.genero(1L, this::buildGenero)).isSameAs(primero);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            assertThat(detalleCache.genero(1L, this::buildGenero)).isNotSameAs(primero);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private GeneroResponseDto buildGenero(Long id) {
+        return GeneroResponseDto.builder()
+                .id(id)
+                .nombre("Accion")
+                .peliculas(List.of())
+                .build();
+    }
+}
@@ -0,0 +1,156 @@
+package com.challenge.alkemy.calificacion;
+
+import com.challenge.alkemy.repository.VolcadoVotosRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AcumuladorVotosTest {
+
+    @TempDir
+    Path directorio;
+
+    private final VolcadoVotosRepository volcadoVotosRepository = mock(VolcadoVotosRepository.class);
+
+    @Test
+    void tomarPendientesShouldKeepOneVotePerUsuarioAndPelicula() throws Exception {
+
+        AcumuladorVotos acumulador = new AcumuladorVotos(directorio.toString(), volcadoVotosRepository);
+        List<Thread> hilos = new ArrayList<>();
+        for (int h = 0; h < 4; h++) {
+            String usuario = "usuario" + h;
+            Thread hilo = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 250; i++) {
+                        acumulador.registrar(1L, usuario, 1 + i % 5);
+                        acumulador.registrar(2L, usuario, 1);
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            hilos.add(hilo);
+            hilo.start();
+        }
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+
+        LoteDeVotos lote = acumulador.tomarPendientes();
+
+        // 250 votos por usuario y pelicula, pero solo cuenta el ultimo de cada uno: 249 % 5 + 1 = 5
+        assertThat(lote.getVotos()).containsExactly(
+                new VotoPendiente(1L, "usuario0", 5), new VotoPendiente(1L, "usuario1", 5),
+                new VotoPendiente(1L, "usuario2", 5), new VotoPendiente(1L, "usuario3", 5),
+                new VotoPendiente(2L, "usuario0", 1), new VotoPendiente(2L, "usuario1", 1),
+                new VotoPendiente(2L, "usuario2", 1), new VotoPendiente(2L, "usuario3", 1));
+        assertThat(acumulador.tomarPendientes().getVotos()).isEmpty();
+        acumulador.cerrar();
+    }
+
+    @Test
+    void unconfirmedVotesShouldBeRecoveredFromTheLogAfterARestart() throws Exception {
+
+        AcumuladorVotos acumulador = new AcumuladorVotos(directorio.toString(), volcadoVotosRepository);
+        acumulador.registrar(1L, "ana", 5);
+        acumulador.registrar(1L, "ana", 3);
+        // Comas, saltos de linea y acentos en el usuario no cortan la linea del log
+        acumulador.registrar(1L, "josé,\nperez", 4);
+        // Se tomo el lote pero el volcado nunca se confirmo
+        acumulador.tomarPendientes();
+        acumulador.registrar(2L, "ana", 2);
+        acumulador.cerrar();
+
+        AcumuladorVotos reiniciado = new AcumuladorVotos(directorio.toString(), volcadoVotosRepository);
+        LoteDeVotos lote = reiniciado.tomarPendientes();
+
+        assertThat(lote.getVotos()).containsExactly(
+                new VotoPendiente(1L, "ana", 3), new VotoPendiente(1L, "josé,\nperez", 4), new VotoPendiente(2L, "ana", 2));
+        reiniciado.confirmar(lote);
+        reiniciado.cerrar();
+
+        // Confirmado el volcado, un nuevo arranque ya no tiene nada para recuperar
+        AcumuladorVotos otraVez = new AcumuladorVotos(directorio.toString(), volcadoVotosRepository);
+        assertThat(otraVez.tomarPendientes().getVotos()).isEmpty();
+        otraVez.cerrar();
+    }
+
+    @Test
+    void aLineCutByACrashShouldBeDiscarded() throws Exception {
+
+        // "YW5h" es "ana" en Base64: la segunda linea perdio el valor al caerse a mitad de escritura
+        Files.writeString(directorio.resolve("votos-1.log"), "1,YW5h,4\n2,YW5h,");
+
+        AcumuladorVotos acumulador = new AcumuladorVotos(directorio.toString(), volcadoVotosRepository);
+
+        assertThat(acumulador.tomarPendientes().getVotos()).containsExactly(new VotoPendiente(1L, "ana", 4));
+        acumulador.cerrar();
+    }
+
+    @Test
+    void devolverShouldKeepTheVotesAndTheirSegmentsForTheNextVolcado() throws Exception {
+
+        AcumuladorVotos acumulador = new AcumuladorVotos(directorio.toString(), volcadoVotosRepository);
+        acumulador.registrar(1L, "ana", 5);
+        acumulador.registrar(1L, "beto", 2);
+        LoteDeVotos fallido = acumulador.tomarPendientes();
+        // Ana vuelve a votar antes de que el volcado fallido devuelva su voto anterior
+        acumulador.registrar(1L, "ana", 1);
+        acumulador.devolver(fallido);
+
+        LoteDeVotos lote = acumulador.tomarPendientes();
+        acumulador.confirmar(lote);
+
+        assertThat(lote.getVotos()).containsExactly(new VotoPendiente(1L, "ana", 1), new VotoPendiente(1L, "beto", 2));
+        assertThat(lote.getSegmentos()).containsAll(fallido.getSegmentos());
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            // Solo queda el segmento abierto, vacio
+            assertThat(archivos.count()).isEqualTo(1);
+        }
+        acumulador.cerrar();
+    }
+
+    @Test
+    void segmentsAlreadyAppliedInTheDatabaseShouldNotBeCountedAgain() throws Exception {
+
+        AcumuladorVotos acumulador = new AcumuladorVotos(directorio.toString(), volcadoVotosRepository);
+        acumulador.registrar(1L, "ana", 5);
+        LoteDeVotos aplicado = acumulador.tomarPendientes();
+        acumulador.registrar(2L, "ana", 4);
+        // El UPDATE se confirmo pero la caida llego antes de borrar el segmento
+        acumulador.cerrar();
+        when(volcadoVotosRepository.findUltimoSegmento()).thenReturn(aplicado.getUltimoSegmento());
+
+        AcumuladorVotos reiniciado = new AcumuladorVotos(directorio.toString(), volcadoVotosRepository);
+        LoteDeVotos lote = reiniciado.tomarPendientes();
+
+        assertThat(lote.getVotos()).containsExactly(new VotoPendiente(2L, "ana", 4));
+        assertThat(lote.getSegmentos()).doesNotContainAnyElementsOf(aplicado.getSegmentos());
+        assertThat(Files.exists(aplicado.getSegmentos().get(0))).isFalse();
+        assertThat(lote.getUltimoSegmento()).isGreaterThan(aplicado.getUltimoSegmento());
+        reiniciado.cerrar();
+    }
+
+    @Test
+    void numberingShouldContinueAfterTheLastAppliedSegmentEvenWithoutFiles() throws Exception {
+
+        when(volcadoVotosRepository.findUltimoSegmento()).thenReturn(7L);
+
+        AcumuladorVotos acumulador = new AcumuladorVotos(directorio.toString(), volcadoVotosRepository);
+        acumulador.registrar(1L, "ana", 3);
+        LoteDeVotos lote = acumulador.tomarPendientes();
+
+        // Un segmento nuevo con numero 7 o menor se descartaria al arrancar como si ya estuviera en la base
+        assertThat(lote.getUltimoSegmento()).isEqualTo(8L);
+        acumulador.cerrar();
+    }
+}
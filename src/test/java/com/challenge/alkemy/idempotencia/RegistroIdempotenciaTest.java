@@ -0,0 +1,175 @@
+package com.challenge.alkemy.idempotencia;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RegistroIdempotenciaTest {
+
+    private RegistroIdempotencia registroIdempotencia;
+    private AtomicInteger ejecuciones;
+
+    @BeforeEach
+    void setUp() {
+        registroIdempotencia = new RegistroIdempotencia(60, 100, 5);
+        ejecuciones = new AtomicInteger();
+        autenticar("luke");
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void reintentoShouldReturnTheOriginalResponseWithoutExecutingAgain() {
+
+        ResponseEntity primera = registroIdempotencia.ejecutar("clave-1", "Ace Ventura", this::crear);
+        ResponseEntity reintento = registroIdempotencia.ejecutar("clave-1", "Ace Ventura", this::crear);
+
+        assertThat(reintento).isSameAs(primera);
+        assertThat(ejecuciones.get()).isEqualTo(1);
+    }
+
+    @Test
+    void sinClaveOrOtroUsuarioShouldExecuteAgain() {
+
+        registroIdempotencia.ejecutar(null, "Ace Ventura", this::crear);
+        registroIdempotencia.ejecutar(null, "Ace Ventura", this::crear);
+        registroIdempotencia.ejecutar("clave-1", "Ace Ventura", this::crear);
+        autenticar("otro");
+        registroIdempotencia.ejecutar("clave-1", "Ace Ventura", this::crear);
+
+        assertThat(ejecuciones.get()).isEqualTo(4);
+    }
+
+    @Test
+    void mismaClaveConOtraSolicitudShouldBeRejected() {
+
+        registroIdempotencia.ejecutar("clave-1", "Ace Ventura", this::crear);
+        ResponseEntity respuesta = registroIdempotencia.ejecutar("clave-1", "Mascara", this::crear);
+
+        assertThat(respuesta.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+        assertThat(ejecuciones.get()).isEqualTo(1);
+    }
+
+    @Test
+    void errorDelServidorShouldNotBeCached() {
+
+        registroIdempotencia.ejecutar("clave-1", "Ace Ventura", () -> {
+            ejecuciones.incrementAndGet();
+            return new ResponseEntity("ALGO SALIO MAL", HttpStatus.INTERNAL_SERVER_ERROR);
+        });
+        ResponseEntity reintento = registroIdempotencia.ejecutar("clave-1", "Ace Ventura", this::crear);
+
+        assertThat(reintento.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(ejecuciones.get()).isEqualTo(2);
+    }
+
+    @Test
+    void duplicadoConcurrenteShouldWaitForTheRequestInFlight() throws Exception {
+
+        CountDownLatch enCurso = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        CompletableFuture<ResponseEntity> primera = CompletableFuture.supplyAsync(() -> {
+            autenticar("luke");
+            return registroIdempotencia.ejecutar("clave-1", "Ace Ventura", () -> {
+                enCurso.countDown();
+                try {
+                    liberar.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return crear();
+            });
+        });
+        assertThat(enCurso.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<ResponseEntity> duplicada = CompletableFuture.supplyAsync(() -> {
+            autenticar("luke");
+            return registroIdempotencia.ejecutar("clave-1", "Ace Ventura", this::crear);
+        });
+
+        liberar.countDown();
+
+        assertThat(duplicada.get(5, TimeUnit.SECONDS)).isSameAs(primera.get(5, TimeUnit.SECONDS));
+        assertThat(ejecuciones.get()).isEqualTo(1);
+    }
+
+    @Test
+    void duplicadoShouldGetAConflictWhenTheRequestInFlightTakesTooLong() throws Exception {
+
+        RegistroIdempotencia conEsperaCorta = new RegistroIdempotencia(60, 100, 0);
+        CountDownLatch enCurso = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        CompletableFuture<ResponseEntity> primera = CompletableFuture.supplyAsync(() -> {
+            autenticar("luke");
+            return conEsperaCorta.ejecutar("clave-1", "Ace Ventura", () -> {
+                enCurso.countDown();
+                try {
+                    liberar.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return crear();
+            });
+        });
+        assertThat(enCurso.await(5, TimeUnit.SECONDS)).isTrue();
+
+        ResponseEntity duplicada = conEsperaCorta.ejecutar("clave-1", "Ace Ventura", this::crear);
+        liberar.countDown();
+
+        assertThat(duplicada.getStatusCode()).isEqualTo(HttpStatus.CONFLICT);
+        assertThat(primera.get(5, TimeUnit.SECONDS).getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(ejecuciones.get()).isEqualTo(1);
+    }
+
+    @Test
+    void duplicadoShouldExecuteAgainWhenTheRequestInFlightFails() throws Exception {
+
+        CountDownLatch enCurso = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        CompletableFuture<ResponseEntity> primera = CompletableFuture.supplyAsync(() -> {
+            autenticar("luke");
+            return registroIdempotencia.ejecutar("clave-1", "Ace Ventura", () -> {
+                enCurso.countDown();
+                try {
+                    liberar.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("fallo la primera");
+            });
+        });
+        assertThat(enCurso.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<ResponseEntity> duplicada = CompletableFuture.supplyAsync(() -> {
+            autenticar("luke");
+            return registroIdempotencia.ejecutar("clave-1", "Ace Ventura", this::crear);
+        });
+
+        liberar.countDown();
+
+        // La excepcion de la primera no le llega al duplicado como CompletionException: el duplicado hace el alta
+        assertThat(duplicada.get(5, TimeUnit.SECONDS).getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(primera).failsWithin(5, TimeUnit.SECONDS);
+        assertThat(ejecuciones.get()).isEqualTo(1);
+    }
+
+    private ResponseEntity crear() {
+        return ResponseEntity.ok("CREADA " + ejecuciones.incrementAndGet());
+    }
+
+    private static void autenticar(String usuario) {
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken(usuario, null));
+    }
+}
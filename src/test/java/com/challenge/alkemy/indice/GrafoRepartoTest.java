@@ -0,0 +1,162 @@
+package com.challenge.alkemy.indice;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GrafoRepartoTest {
+
+    private GrafoReparto grafo;
+
+    @BeforeEach
+    void setUp() {
+        grafo = new GrafoReparto();
+    }
+
+    @Test
+    void coprotagonistasShouldJoinEveryCastOnceWithoutTheCharacterItself() {
+
+        // Pelicula 100: personajes 1, 2, 3. Pelicula 200: personajes 1, 3, 4. Pelicula 300: personajes 5, 6
+        grafo.cargar(new long[]{100, 100, 100, 200, 200, 200, 300, 300},
+                new long[]{1, 2, 3, 1, 3, 4, 5, 6});
+
+        assertThat(grafo.coprotagonistas(1L)).containsExactly(2L, 3L, 4L);
+        assertThat(grafo.coprotagonistas(4L)).containsExactly(1L, 3L);
+        assertThat(grafo.coprotagonistas(6L)).containsExactly(5L);
+        assertThat(grafo.coprotagonistas(99L)).isEmpty();
+        assertThat(grafo.reparto(200L)).containsExactlyInAnyOrder(1L, 3L, 4L);
+        assertThat(grafo.cantidadDePeliculas(1L)).isEqualTo(2);
+        assertThat(grafo.cantidadDePeliculas(99L)).isZero();
+    }
+
+    @Test
+    void caminoShouldFollowTheFewestPeliculas() {
+
+        // Cadena larga 1-2-3-4-5 por las peliculas 10..13 y un atajo 1-7-5 por las peliculas 20 y 21
+        grafo.cargar(new long[]{10, 10, 11, 11, 12, 12, 13, 13, 20, 20, 21, 21},
+                new long[]{1, 2, 2, 3, 3, 4, 4, 5, 1, 7, 7, 5});
+
+        assertThat(grafo.camino(1L, 5L)).containsExactly(1L, 20L, 7L, 21L, 5L);
+        assertThat(grafo.camino(5L, 1L)).containsExactly(5L, 21L, 7L, 20L, 1L);
+        assertThat(grafo.camino(2L, 3L)).containsExactly(2L, 11L, 3L);
+        assertThat(grafo.camino(3L, 3L)).containsExactly(3L);
+    }
+
+    @Test
+    void caminoBetweenUnconnectedOrUnknownCharactersShouldBeEmpty() {
+
+        grafo.cargar(new long[]{10, 10, 20, 20}, new long[]{1, 2, 3, 4});
+
+        assertThat(grafo.camino(1L, 4L)).isEmpty();
+        assertThat(grafo.camino(1L, 99L)).isEmpty();
+    }
+
+    @Test
+    void castChangesShouldUpdateBothSidesOfTheGraph() {
+
+        grafo.cargar(new long[]{10, 10}, new long[]{1, 2});
+
+        grafo.agregarAlReparto(10L, new long[]{3L, 3L});
+        grafo.reemplazarReparto(20L, new long[]{3L, 4L});
+        assertThat(grafo.coprotagonistas(3L)).containsExactly(1L, 2L, 4L);
+        assertThat(grafo.camino(1L, 4L)).containsExactly(1L, 10L, 3L, 20L, 4L);
+
+        grafo.quitarDelReparto(10L, new long[]{3L, 99L});
+        assertThat(grafo.coprotagonistas(1L)).containsExactly(2L);
+        assertThat(grafo.camino(1L, 4L)).isEmpty();
+
+        grafo.reemplazarReparto(10L, new long[]{1L, 4L});
+        assertThat(grafo.coprotagonistas(2L)).isEmpty();
+        assertThat(grafo.coprotagonistas(4L)).containsExactly(1L, 3L);
+
+        grafo.eliminarPersonaje(4L);
+        grafo.eliminarPelicula(20L);
+        assertThat(grafo.coprotagonistas(1L)).isEmpty();
+        assertThat(grafo.coprotagonistas(3L)).isEmpty();
+    }
+
+    @Test
+    void manyWritesShouldCompactAndMatchAPlainAdjacencyModel() {
+
+        Random random = new Random(42);
+        Map<Long, Set<Long>> repartos = new HashMap<>();
+        // Suficientes escrituras para pasar varias veces el umbral de compactacion
+        for (int i = 0; i < 5000; i++) {
+            long pelicula = 1000 + random.nextInt(400);
+            long[] reparto = new long[random.nextInt(4)];
+            Set<Long> modelo = new HashSet<>();
+            for (int j = 0; j < reparto.length; j++) {
+                reparto[j] = random.nextInt(600);
+                modelo.add(reparto[j]);
+            }
+            if (random.nextInt(10) == 0) {
+                long personaje = random.nextInt(600);
+                grafo.eliminarPersonaje(personaje);
+                repartos.values().forEach(elenco -> elenco.remove(personaje));
+            } else {
+                grafo.reemplazarReparto(pelicula, reparto);
+                repartos.put(pelicula, modelo);
+            }
+        }
+
+        for (long personaje = 0; personaje < 600; personaje += 7) {
+            assertThat(grafo.coprotagonistas(personaje)).containsExactly(coprotagonistasEsperados(repartos, personaje));
+            for (long otro = 3; otro < 600; otro += 61) {
+                long[] camino = grafo.camino(personaje, otro);
+                assertThat(camino.length).isEqualTo(largoEsperado(repartos, personaje, otro));
+                if (camino.length > 1) {
+                    assertThat(camino[0]).isEqualTo(personaje);
+                    assertThat(camino[camino.length - 1]).isEqualTo(otro);
+                    for (int i = 1; i < camino.length; i += 2) {
+                        assertThat(repartos.get(camino[i])).contains(camino[i - 1], camino[i + 1]);
+                    }
+                }
+            }
+        }
+    }
+
+    private static long[] coprotagonistasEsperados(Map<Long, Set<Long>> repartos, long personaje) {
+        TreeSet<Long> esperados = new TreeSet<>();
+        repartos.values().stream()
+                .filter(elenco -> elenco.contains(personaje))
+                .forEach(esperados::addAll);
+        esperados.remove(personaje);
+        return esperados.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // BFS simple sobre el modelo: largo del array [personaje, pelicula, ..., personaje], 0 si no hay camino
+    private static int largoEsperado(Map<Long, Set<Long>> repartos, long origen, long destino) {
+        if (origen == destino) {
+            return 1;
+        }
+        Map<Long, Integer> distancias = new HashMap<>(Map.of(origen, 0));
+        Deque<Long> cola = new ArrayDeque<>(List.of(origen));
+        while (!cola.isEmpty()) {
+            long actual = cola.poll();
+            List<Long> vecinos = new ArrayList<>();
+            repartos.values().stream().filter(elenco -> elenco.contains(actual)).forEach(vecinos::addAll);
+            for (long vecino : vecinos) {
+                if (!distancias.containsKey(vecino)) {
+                    distancias.put(vecino, distancias.get(actual) + 1);
+                    if (vecino == destino) {
+                        return 2 * distancias.get(vecino) + 1;
+                    }
+                    cola.add(vecino);
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,77 @@
+package com.challenge.alkemy.indice;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndiceRangoTest {
+
+    private IndiceRango indice;
+
+    @BeforeEach
+    void setUp() {
+        indice = new IndiceRango();
+    }
+
+    @Test
+    void buscarShouldReturnTheIdsInsideTheRangeSortedById() {
+
+        indice.indexar(5L, IndiceRango.clave(30));
+        indice.indexar(1L, IndiceRango.clave(45));
+        indice.indexar(3L, IndiceRango.clave(30));
+        indice.indexar(2L, IndiceRango.clave(18));
+
+        assertThat(indice.buscar(IndiceRango.clave(30), IndiceRango.clave(45))).containsExactly(1L, 3L, 5L);
+        assertThat(indice.buscar(IndiceRango.clave(30), IndiceRango.clave(30))).containsExactly(3L, 5L);
+        assertThat(indice.buscar(IndiceRango.clave(46), IndiceRango.clave(100))).isEmpty();
+        assertThat(indice.buscar(IndiceRango.clave(45), IndiceRango.clave(30))).isEmpty();
+    }
+
+    @Test
+    void indexarAgainShouldReplaceTheClaveAndEliminarShouldRemoveIt() {
+
+        indice.indexar(1L, IndiceRango.clave(20));
+        indice.indexar(2L, IndiceRango.clave(20));
+        indice.indexar(1L, IndiceRango.clave(60));
+        indice.eliminar(2L);
+        indice.eliminar(9L);
+
+        assertThat(indice.buscar(IndiceRango.clave(0), IndiceRango.clave(50))).isEmpty();
+        assertThat(indice.buscar(IndiceRango.clave(60), IndiceRango.clave(60))).containsExactly(1L);
+        assertThat(indice.size()).isEqualTo(1);
+    }
+
+    @Test
+    void clavesOfDecimalesShouldKeepTheirOrder() {
+
+        double[] valores = {-12.5, -0.0, 0.0, 0.1, 69.5, 70.2, 89.9, Double.POSITIVE_INFINITY};
+        for (int i = 0; i < valores.length; i++) {
+            indice.indexar(i + 1, IndiceRango.clave(valores[i]));
+        }
+
+        assertThat(indice.buscar(IndiceRango.clave(-1.0), IndiceRango.clave(0.0))).containsExactly(2L, 3L);
+        assertThat(indice.buscar(IndiceRango.clave(69.5), IndiceRango.clave(89.9))).containsExactly(5L, 6L, 7L);
+        assertThat(indice.buscar(IndiceRango.clave(Double.NEGATIVE_INFINITY), IndiceRango.clave(0.05))).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    void cargarShouldSortOnceAndKeepAcceptingWrites() {
+
+        int cantidad = 1000;
+        long[] ids = new long[cantidad];
+        long[] claves = new long[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            ids[i] = i + 1;
+            claves[i] = IndiceRango.clave((i * 37) % 100);
+        }
+        indice.cargar(ids, claves);
+        indice.indexar(cantidad + 1, IndiceRango.clave(0));
+
+        long[] ceros = indice.buscar(IndiceRango.clave(0), IndiceRango.clave(0));
+        assertThat(ceros).hasSize(11);
+        assertThat(ceros[0]).isEqualTo(1L);
+        assertThat(ceros[10]).isEqualTo(cantidad + 1L);
+        assertThat(indice.buscar(IndiceRango.clave(0), IndiceRango.clave(99))).hasSize(cantidad + 1);
+    }
+}
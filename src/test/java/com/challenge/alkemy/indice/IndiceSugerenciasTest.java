@@ -0,0 +1,114 @@
+package com.challenge.alkemy.indice;
+
+import com.challenge.alkemy.utility.TextoUtility;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndiceSugerenciasTest {
+
+    private IndiceSugerencias indice;
+
+    @BeforeEach
+    void setUp() {
+        indice = new IndiceSugerencias();
+    }
+
+    @Test
+    void sugerirShouldRankByPopularityAndThenAlphabetically() {
+
+        indice.cargar(new long[]{1, 2, 3, 4, 5}, new String[]{"Star Wars", "Stargate", "Starship Troopers", "Shrek", "Cars"});
+        indice.popularidades(new long[]{1, 3}, new long[]{10, 40});
+
+        assertThat(textos(indice.sugerir("star", 5))).containsExactly("Starship Troopers", "Star Wars", "Stargate");
+        assertThat(textos(indice.sugerir("star", 2))).containsExactly("Starship Troopers", "Star Wars");
+        assertThat(textos(indice.sugerir("s", 10))).containsExactly("Starship Troopers", "Star Wars", "Shrek", "Stargate");
+        assertThat(indice.sugerir("x", 5)).isEmpty();
+        assertThat(indice.sugerir("", 5)).isEmpty();
+    }
+
+    @Test
+    void sugerirShouldIgnoreCaseAccentsAndRepeatedSpaces() {
+
+        indice.indexar(1L, "El Señor de los Anillos");
+        indice.indexar(2L, "Él");
+
+        assertThat(textos(indice.sugerir("EL  SENOR", 5))).containsExactly("El Señor de los Anillos");
+        assertThat(textos(indice.sugerir("el", 5))).containsExactly("Él", "El Señor de los Anillos");
+    }
+
+    @Test
+    void renamingShouldKeepThePopularityAndEliminarShouldForgetIt() {
+
+        indice.indexar(1L, "Toy Story");
+        indice.indexar(2L, "Tron");
+        indice.sumarPopularidad(1L, 3);
+        indice.sumarPopularidad(2L, 2);
+
+        indice.indexar(1L, "Toy Story 2");
+        assertThat(textos(indice.sugerir("t", 5))).containsExactly("Toy Story 2", "Tron");
+        assertThat(indice.sugerir("toy story", 5).get(0).getPopularidad()).isEqualTo(3L);
+
+        indice.eliminar(1L);
+        indice.indexar(1L, "Toy Story");
+        assertThat(textos(indice.sugerir("t", 5))).containsExactly("Tron", "Toy Story");
+        assertThat(indice.size()).isEqualTo(2);
+    }
+
+    @Test
+    void manyWritesShouldMatchAPlainSortModel() {
+
+        Random random = new Random(7);
+        Map<Long, String> textos = new HashMap<>();
+        Map<Long, Long> popularidades = new HashMap<>();
+        // Suficientes altas para que los arrays crezcan varias veces
+        for (int i = 0; i < 3000; i++) {
+            long id = random.nextInt(800);
+            int operacion = random.nextInt(10);
+            if (operacion < 5) {
+                String texto = textoAlAzar(random);
+                indice.indexar(id, texto);
+                textos.put(id, texto);
+            } else if (operacion < 9) {
+                long valor = random.nextInt(50);
+                indice.popularidad(id, valor);
+                popularidades.put(id, valor);
+            } else {
+                indice.eliminar(id);
+                textos.remove(id);
+                popularidades.remove(id);
+            }
+        }
+
+        for (String prefijo : List.of("a", "b", "ab", "ba", "abc", "c", "cab")) {
+            List<Long> esperados = textos.keySet().stream()
+                    .filter(id -> TextoUtility.normalizarTitulo(textos.get(id)).startsWith(prefijo))
+                    .sorted(Comparator.<Long>comparingLong(id -> -popularidades.getOrDefault(id, 0L))
+                            .thenComparing(id -> TextoUtility.normalizarTitulo(textos.get(id)))
+                            .thenComparing(id -> id))
+                    .limit(10)
+                    .collect(Collectors.toList());
+            assertThat(indice.sugerir(prefijo, 10).stream().map(Sugerencia::getId)).containsExactlyElementsOf(esperados);
+        }
+    }
+
+    private static String textoAlAzar(Random random) {
+        StringBuilder texto = new StringBuilder();
+        for (int i = 0, largo = 1 + random.nextInt(5); i < largo; i++) {
+            texto.append((char) ('a' + random.nextInt(3)));
+        }
+        return texto.toString();
+    }
+
+    private static List<String> textos(List<Sugerencia> sugerencias) {
+        return sugerencias.stream().map(Sugerencia::getTexto).collect(Collectors.toList());
+    }
+}
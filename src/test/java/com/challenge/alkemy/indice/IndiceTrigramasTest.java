@@ -0,0 +1,66 @@
+package com.challenge.alkemy.indice;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndiceTrigramasTest {
+
+    private IndiceTrigramas indice;
+
+    @BeforeEach
+    void setUp() {
+        indice = new IndiceTrigramas();
+        indice.indexar(1L, "El Señor de los Anillos");
+        indice.indexar(2L, "El Rey Leon");
+        indice.indexar(3L, "Anillos de Fuego");
+    }
+
+    @Test
+    void buscarShouldReturnEveryMatchOrderedById() {
+
+        assertThat(indice.buscar("ANILLOS")).containsExactly(1L, 3L);
+    }
+
+    @Test
+    void buscarShouldIgnoreCaseAndAccents() {
+
+        assertThat(indice.buscar("senor de")).containsExactly(1L);
+    }
+
+    @Test
+    void buscarShouldVerifyTheWholeSubstring() {
+
+        // "abc bcd" tiene los trigramas "abc" y "bcd", pero no contiene "abcd"
+        indice.indexar(4L, "abc bcd");
+        assertThat(indice.buscar("abcd")).isEmpty();
+        assertThat(indice.buscar("abc b")).containsExactly(4L);
+    }
+
+    @Test
+    void buscarWithShortQueryShouldScanTexts() {
+
+        assertThat(indice.buscar("ey")).containsExactly(2L);
+        assertThat(indice.buscar("")).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test
+    void indexarShouldReplacePreviousText() {
+
+        indice.indexar(2L, "Toy Story");
+
+        assertThat(indice.buscar("rey")).isEmpty();
+        assertThat(indice.buscar("story")).containsExactly(2L);
+        assertThat(indice.size()).isEqualTo(3);
+    }
+
+    @Test
+    void eliminarShouldRemoveFromPostings() {
+
+        indice.eliminar(1L);
+
+        assertThat(indice.buscar("anillos")).containsExactly(3L);
+        assertThat(indice.size()).isEqualTo(2);
+    }
+}
@@ -1,14 +1,19 @@
 package com.challenge.alkemy.repository;
 
 import com.challenge.alkemy.entity.Genero;
+import com.challenge.alkemy.indice.EntradaIndice;
+import com.challenge.alkemy.utility.TextoUtility;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
 @SpringBootTest
 class GeneroRepositoryTest {
@@ -24,20 +29,21 @@ class GeneroRepositoryTest {
     void tearDown() { generoRepository.deleteAll(); }
 
     @Test
-    void findOneByNombre() {
+    void existsByNombreNormalizadoShouldMatchOnlyTheWholeName() {
 
         generoRepository.save(genereteGenero());
-        Optional<Genero> expected = generoRepository.findGeneroByNombreContainingIgnoreCase(NOMBRE).stream().findFirst();
-        assertThat(expected).isNotEmpty().isPresent();
-        assertThat(expected.get().getNombre()).isEqualTo(NOMBRE);
-        assertThat(expected.get().getImagen()).isEqualTo(IMAGEN);
+        assertThat(generoRepository.existsByNombreNormalizado(TextoUtility.normalizarTitulo(" TERROR "))).isTrue();
+        // Un prefijo del nombre no es un duplicado
+        assertThat(generoRepository.existsByNombreNormalizado(TextoUtility.normalizarTitulo("Terr"))).isFalse();
+        assertThat(generoRepository.existsByNombreNormalizado(TextoUtility.normalizarTitulo(GENERO_ERRONEO))).isFalse();
     }
 
     @Test
-    void findByNonExistingGenero() {
+    void savingADuplicatedNombreNormalizadoShouldFail() {
 
-        Optional<Genero> expected = generoRepository.findGeneroByNombreContainingIgnoreCase(GENERO_ERRONEO);
-        assertThat(expected).isEmpty().isNotPresent();
+        generoRepository.save(genereteGenero());
+        assertThatExceptionOfType(DataIntegrityViolationException.class)
+                .isThrownBy(() -> generoRepository.save(Genero.builder().nombre("Térror").imagen(IMAGEN).build()));
     }
 
     @Test
@@ -49,6 +55,16 @@ class GeneroRepositoryTest {
         assertThat(expected.get().getGeneroId()).isEqualTo(savedGenero.getGeneroId());
     }
 
+    @Test
+    void findEntradasIndice() {
+
+        Genero savedGenero = generoRepository.save(genereteGenero());
+        List<EntradaIndice> expected = generoRepository.findEntradasIndice();
+        assertThat(expected).hasSize(1);
+        assertThat(expected.get(0).getId()).isEqualTo(savedGenero.getGeneroId());
+        assertThat(expected.get(0).getTexto()).isEqualTo(NOMBRE);
+    }
+
     private Genero genereteGenero() {
         return Genero.builder()
                 .nombre(NOMBRE)
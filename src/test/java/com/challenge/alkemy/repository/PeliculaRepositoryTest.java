@@ -1,18 +1,40 @@
 package com.challenge.alkemy.repository;
 
+import com.challenge.alkemy.calificacion.TotalVotos;
 import com.challenge.alkemy.entity.Genero;
 import com.challenge.alkemy.entity.Pelicula;
 import com.challenge.alkemy.entity.Personaje;
+import com.challenge.alkemy.entity.dto.peliculaDto.response.PeliculaBuscadaPorParametroResponseDto;
+import com.challenge.alkemy.indice.EntradaIndice;
+import com.challenge.alkemy.indice.GeneroDePelicula;
+import com.challenge.alkemy.indice.ParReparto;
+import com.challenge.alkemy.indice.Popularidad;
+import com.challenge.alkemy.service.PeliculaService;
+import com.challenge.alkemy.utility.EtagUtility;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.Hibernate;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 
+import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
 @SpringBootTest
 class PeliculaRepositoryTest {
@@ -25,11 +47,19 @@ class PeliculaRepositoryTest {
     GeneroRepository generoRepository;
     @Autowired
     PersonajeRepository personajeRepository;
+    @Autowired
+    EntityManager entityManager;
+    @Autowired
+    PeliculaService peliculaService;
+    @Autowired
+    ObjectMapper objectMapper;
 
     private final String TITULO1 = "WoLF OF waLLStreet";
     private final String IMAGEN1 = "http://google.com/fotosdegatitos.jpg";
     private final String TITULO2 = "eL sEñoR de Los AnilLos";
     private final String IMAGEN2 = "http://google.com/asdasdasd.jpg";
+    private final Sort POR_ID = Sort.by("peliculaId");
+    private final Sort POR_TITULO = Sort.by("titulo").and(POR_ID);
 
     @AfterEach
     void tearDown() {
@@ -39,56 +69,410 @@ class PeliculaRepositoryTest {
     }
 
     @Test
-    void findByTitulo() {
+    void existsByTituloNormalizado() {
+
+        Pelicula pelicula = peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
+        peliculaRepository.save(generatePelicula(TITULO2, IMAGEN2));
+
+        assertThat(pelicula.getTituloNormalizado()).isEqualTo("wolf of wallstreet");
+        assertThat(peliculaRepository.existsByTituloNormalizado("el senor de los anillos")).isTrue();
+        // Un titulo que contiene a otro no es el mismo titulo
+        assertThat(peliculaRepository.existsByTituloNormalizado("wolf")).isFalse();
+        assertThat(peliculaRepository.existsByTituloNormalizadoAndPeliculaIdNot("wolf of wallstreet", pelicula.getPeliculaId())).isFalse();
+        assertThat(peliculaRepository.findTitulosNormalizadosIn(List.of("wolf of wallstreet", "titanic"))).containsExactly("wolf of wallstreet");
+    }
+
+    @Test
+    void existsByTituloNormalizadoNotFound() {
+
+        assertThat(peliculaRepository.existsByTituloNormalizado("wolf of wallstreet")).isFalse();
+    }
+
+    @Test
+    void saveWithTheSameNormalizedTituloShouldViolateTheUniqueIndex() {
 
         peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
+
+        assertThatExceptionOfType(DataIntegrityViolationException.class)
+                .isThrownBy(() -> peliculaRepository.save(generatePelicula("  Wolf of   WALLSTREET ", IMAGEN2)));
+    }
+
+    @Test
+    void buscarResumenesOrdenadosPorTituloShouldStartAfterCursor() {
+
+        Pelicula primera = peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
         peliculaRepository.save(generatePelicula(TITULO2, IMAGEN2));
-        Optional<Pelicula> expected = peliculaRepository.findByTituloContainingIgnoreCase(TITULO1);
 
+        List<PeliculaBuscadaPorParametroResponseDto> expected = filas(peliculaRepository.buscarResumenes(
+                null, null, null, POR_TITULO, List.of(primera.getTitulo(), primera.getPeliculaId()), 10));
+
+        assertThat(expected).hasSize(1);
+        assertThat(expected.get(0).getTitulo()).isEqualTo(TITULO2);
+    }
+
+    @Test
+    void buscarResumenesSinOrdenShouldReturnBoundedPageById() {
+
+        Pelicula primera = peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
+        Pelicula segunda = peliculaRepository.save(generatePelicula(TITULO2, IMAGEN2));
 
+        List<PeliculaBuscadaPorParametroResponseDto> expected = filas(peliculaRepository.buscarResumenes(null, null, null, POR_ID, null, 1));
+        List<PeliculaBuscadaPorParametroResponseDto> siguiente = filas(peliculaRepository.buscarResumenes(null, null, null, POR_ID, List.of(primera.getPeliculaId()), 1));
 
-        assertThat(expected).isNotEmpty().isPresent();
-        assertThat(expected.get().getTitulo()).isEqualTo(TITULO1);
-        assertThat(expected.get().getImagen()).isEqualTo(IMAGEN1);
+        assertThat(expected).hasSize(1);
+        assertThat(expected.get(0).getId()).isEqualTo(primera.getPeliculaId());
+        assertThat(expected.get(0).getImagen()).isEqualTo(IMAGEN1);
+        assertThat(siguiente.get(0).getId()).isEqualTo(segunda.getPeliculaId());
     }
 
     @Test
-    void findByTituloNotFound() {
+    void buscarResumenesShouldRestrictToCandidateIds() {
 
-        Optional<Pelicula> expected = peliculaRepository.findByTituloContainingIgnoreCase(TITULO1);
-        assertThat(expected).isNotPresent().isEmpty();
+        Pelicula pelicula = peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
+        peliculaRepository.save(generatePelicula(TITULO2, IMAGEN2));
+
+        List<PeliculaBuscadaPorParametroResponseDto> expected = filas(peliculaRepository.buscarResumenes(
+                List.of(pelicula.getPeliculaId()), null, null, POR_ID, null, 10));
+
+        assertThat(expected).hasSize(1);
+        assertThat(expected.get(0).getTitulo()).isEqualTo(TITULO1);
+        assertThat(expected.get(0).getId()).isEqualTo(pelicula.getPeliculaId());
     }
 
     @Test
-    void findAllByOrderByTituloAsc() {
+    void buscarResumenesByTituloContieneShouldMatchTheNormalizedTitle() {
 
         peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
+        Pelicula anillos = peliculaRepository.save(generatePelicula(TITULO2, IMAGEN2));
+
+        List<PeliculaBuscadaPorParametroResponseDto> expected = filas(peliculaRepository.buscarResumenes(null, "SENOR  de", null, POR_ID, null, 10));
+
+        assertThat(expected).extracting(PeliculaBuscadaPorParametroResponseDto::getId).containsExactly(anillos.getPeliculaId());
+        // Los comodines del texto buscado se comparan literalmente
+        assertThat(peliculaRepository.buscarResumenes(null, "%", null, POR_ID, null, 10)).isEmpty();
+        assertThat(peliculaRepository.buscarResumenes(null, "w_lf", null, POR_ID, null, 10)).isEmpty();
+    }
+
+    @Test
+    void findEntradasIndice() {
+
+        Pelicula pelicula = peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
+
+        List<EntradaIndice> expected = peliculaRepository.findEntradasIndice();
+
+        assertThat(expected).hasSize(1);
+        assertThat(expected.get(0).getId()).isEqualTo(pelicula.getPeliculaId());
+        assertThat(expected.get(0).getTexto()).isEqualTo(TITULO1);
+    }
+
+    @Test
+    void findParesRepartoShouldReturnEveryRowOfTheJoinTable() {
+
+        Pelicula pelicula = peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
+
+        List<ParReparto> expected = peliculaRepository.findParesReparto();
+
+        assertThat(expected).hasSize(2);
+        assertThat(expected).allMatch(par -> par.getPeliculaId().equals(pelicula.getPeliculaId()));
+        assertThat(expected).extracting(ParReparto::getPersonajeId)
+                .containsExactlyInAnyOrderElementsOf(pelicula.getPersonajes().stream().map(Personaje::getPersonajeId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void findCantidadVotosAndGenerosShouldFeedTheSuggestionPopularity() {
+
+        Pelicula votada = generatePelicula(TITULO1, IMAGEN1);
+        votada.setCantidadVotos(3L);
+        peliculaRepository.save(votada);
+        Pelicula sinVotos = peliculaRepository.save(generatePelicula(TITULO2, IMAGEN2));
+
+        List<Popularidad> votos = peliculaRepository.findCantidadVotos();
+        List<GeneroDePelicula> generos = peliculaRepository.findGenerosDePeliculas();
+
+        assertThat(votos).hasSize(1);
+        assertThat(votos.get(0).getId()).isEqualTo(votada.getPeliculaId());
+        assertThat(votos.get(0).getValor()).isEqualTo(3L);
+        assertThat(generos).extracting(GeneroDePelicula::getPeliculaId)
+                .containsExactlyInAnyOrder(votada.getPeliculaId(), sinVotos.getPeliculaId());
+        assertThat(generos).extracting(GeneroDePelicula::getGeneroId)
+                .containsExactlyInAnyOrder(votada.getGenero().getGeneroId(), sinVotos.getGenero().getGeneroId());
+    }
+
+    @Test
+    void buscarResumenesShouldCombineGeneroAndOrden() {
+
+        Pelicula lobo = generatePelicula(TITULO1, IMAGEN1);
+        Pelicula anillos = generatePelicula(TITULO2, IMAGEN2);
+        anillos.setGenero(lobo.getGenero());
+        peliculaRepository.save(lobo);
+        peliculaRepository.save(anillos);
+        Pelicula otroGenero = peliculaRepository.save(generatePelicula("Ace Ventura", IMAGEN1));
+
+        List<PeliculaBuscadaPorParametroResponseDto> expected = filas(peliculaRepository.buscarResumenes(
+                null, null, lobo.getGenero().getGeneroId(), Sort.by(Sort.Direction.DESC, "titulo").and(POR_ID), null, 10));
+
+        assertThat(expected).hasSize(2);
+        assertThat(expected.get(0).getTitulo()).isEqualTo(TITULO2);
+        assertThat(expected.get(1).getTitulo()).isEqualTo(TITULO1);
+        assertThat(expected).noneMatch(resumen -> resumen.getId().equals(otroGenero.getPeliculaId()));
+    }
+
+    @Test
+    void buscarResumenesPorFechaDescShouldKeepMoviesWithoutFechaLast() {
+
+        Pelicula vieja = generatePelicula(TITULO1, IMAGEN1);
+        vieja.setFechaEstreno(new Date(0));
+        Pelicula sinFecha = generatePelicula(TITULO2, IMAGEN2);
+        sinFecha.setFechaEstreno(null);
+        peliculaRepository.save(sinFecha);
+        peliculaRepository.save(vieja);
+        Pelicula nueva = peliculaRepository.save(generatePelicula("Ace Ventura", IMAGEN1));
+        Sort porFechaDesc = Sort.by(Sort.Direction.DESC, "fechaEstreno").and(POR_ID);
+
+        List<FilaConOrden<PeliculaBuscadaPorParametroResponseDto>> primera = peliculaRepository.buscarResumenes(null, null, null, porFechaDesc, null, 2);
+        List<Object> ultimosValores = primera.get(1).getValoresDeOrden();
+        List<PeliculaBuscadaPorParametroResponseDto> siguiente = filas(peliculaRepository.buscarResumenes(null, null, null, porFechaDesc, ultimosValores, 2));
+
+        assertThat(filas(primera)).extracting(PeliculaBuscadaPorParametroResponseDto::getTitulo).containsExactly(nueva.getTitulo(), TITULO1);
+        assertThat(siguiente).extracting(PeliculaBuscadaPorParametroResponseDto::getTitulo).containsExactly(TITULO2);
+    }
+
+    @Test
+    void buscarResumenesShouldReturnTheSortValuesOfEachRow() {
+
+        Pelicula pelicula = peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
+        Sort orden = Sort.by(Sort.Direction.DESC, "calificacion").and(POR_TITULO);
+
+        List<FilaConOrden<PeliculaBuscadaPorParametroResponseDto>> expected = peliculaRepository.buscarResumenes(null, null, null, orden, null, 10);
+
+        assertThat(expected).hasSize(1);
+        assertThat(expected.get(0).getValoresDeOrden()).containsExactly(3, TITULO1, pelicula.getPeliculaId());
+        assertThat(expected.get(0).getFila().getTitulo()).isEqualTo(TITULO1);
+    }
+
+    @Test
+    void findVersionesDetalleShouldChangeWhenACastMemberIsUpdated() {
+
+        Pelicula pelicula = peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
+        List<Object[]> antes = peliculaRepository.findVersionesDetalleByPeliculaId(pelicula.getPeliculaId());
+
+        Personaje personaje = personajeRepository.findById(pelicula.getPersonajes().iterator().next().getPersonajeId()).orElseThrow();
+        personaje.setNombre("Nombre editado");
+        personajeRepository.save(personaje);
+        List<Object[]> despues = peliculaRepository.findVersionesDetalleByPeliculaId(pelicula.getPeliculaId());
+
+        // Una fila por personaje del reparto, y la version del personaje editado subio
+        assertThat(antes).hasSize(2);
+        assertThat(EtagUtility.etag(despues)).isNotEqualTo(EtagUtility.etag(antes));
+        assertThat(peliculaRepository.findVersionesDetalleByPeliculaId(pelicula.getPeliculaId() + 100)).isEmpty();
+    }
+
+    @Test
+    void versionesDetalleEnMemoriaShouldHashLikeTheQuery() {
+
+        Pelicula pelicula = peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
+        Pelicula conDetalle = peliculaRepository.findConDetalleByPeliculaId(pelicula.getPeliculaId()).orElseThrow();
+
+        // El PATCH valida el If-Match con la entidad ya cargada: tiene que dar el mismo ETag que el GET
+        assertThat(EtagUtility.etag(EtagUtility.versionesDetalle(conDetalle)))
+                .isEqualTo(EtagUtility.etag(peliculaRepository.findVersionesDetalleByPeliculaId(pelicula.getPeliculaId())));
+    }
+
+    @Test
+    @Transactional
+    void findIdsDespuesDeAndConDetalleShouldReturnEachPeliculaOnceWithItsCast() {
+
+        Pelicula primera = peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
         peliculaRepository.save(generatePelicula(TITULO2, IMAGEN2));
+        peliculaRepository.save(generatePelicula("Ace Ventura", IMAGEN1));
 
-        List<Pelicula> expected = peliculaRepository.findAllByOrderByTituloAsc();
+        List<Long> ids = peliculaRepository.findIdsDespuesDe(primera.getPeliculaId(), PageRequest.of(0, 10));
+        entityManager.clear();
+        List<Pelicula> expected = peliculaRepository.findConDetalleByPeliculaIdIn(ids);
 
-        assertThat(expected.get(0).getTitulo()).isEqualTo(TITULO1);
-        assertThat(expected.get(0).getImagen()).isEqualTo(IMAGEN1);
+        assertThat(ids).hasSize(2);
+        assertThat(expected).extracting(pelicula -> pelicula.getTitulo() + "/" + pelicula.getGenero().getNombre())
+                .containsExactly(TITULO2 + "/Accion " + TITULO2, "Ace Ventura/Accion Ace Ventura");
+        assertThat(expected).allMatch(pelicula -> pelicula.getPersonajes().size() == 2);
+    }
+
+    @Test
+    void exportarPeliculasShouldKeepTheWholeCastAcrossTramos() throws Exception {
+
+        // Mas peliculas que un tramo, cada una con varios personajes: el corte entre tramos no puede partir un reparto
+        Genero genero = generoRepository.save(Genero.builder().nombre("Accion").build());
+        List<Personaje> elenco = personajeRepository.saveAll(List.of(
+                Personaje.builder().nombre("Roberto Carlos").edad(30).peso(65).build(),
+                Personaje.builder().nombre("Diego Maradona").edad(60).peso(80).build(),
+                Personaje.builder().nombre("Carlos Tevez").edad(35).peso(75).build()));
+        List<Pelicula> peliculas = new ArrayList<>();
+        for (int i = 0; i < PeliculaRepository.FETCH_SIZE + 20; i++) {
+            peliculas.add(Pelicula.builder()
+                    .titulo("Pelicula " + i)
+                    .calificacion(3)
+                    .genero(genero)
+                    .personajes(new LinkedHashSet<>(elenco.subList(0, 2 + i % 2)))
+                    .build());
+        }
+        peliculaRepository.saveAll(peliculas);
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+
+        peliculaService.exportarPeliculas(salida);
+
+        String[] lineas = salida.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lineas).hasSize(PeliculaRepository.FETCH_SIZE + 20);
+        for (int i = 0; i < lineas.length; i++) {
+            JsonNode pelicula = objectMapper.readTree(lineas[i]);
+            assertThat(pelicula.get("titulo").asText()).isEqualTo("Pelicula " + i);
+            assertThat(pelicula.get("personajes")).hasSize(2 + i % 2);
+        }
     }
 
+    @Test
+    @Transactional
+    void agregarYQuitarPersonajeShouldTouchOnlyOneRowOfTheCast() {
+
+        Pelicula pelicula = peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
+        Personaje nuevo = personajeRepository.save(Personaje.builder()
+                .nombre("Personaje nuevo")
+                .imagen("http://imagenDePersonaje3.jpg")
+                .build());
+        Long peliculaId = pelicula.getPeliculaId();
+        Long versionInicial = pelicula.getVersion();
+        entityManager.flush();
+
+        assertThat(peliculaRepository.existsPersonajeEnPelicula(peliculaId, nuevo.getPersonajeId())).isFalse();
+        assertThat(peliculaRepository.agregarPersonaje(peliculaId, nuevo.getPersonajeId())).isEqualTo(1);
+        peliculaRepository.incrementarVersion(peliculaId);
+
+        Pelicula conNuevo = peliculaRepository.findConDetalleByPeliculaId(peliculaId).orElseThrow();
+        assertThat(conNuevo.getPersonajes()).hasSize(3);
+        assertThat(conNuevo.getVersion()).isEqualTo(versionInicial + 1);
+        assertThat(peliculaRepository.existsPersonajeEnPelicula(peliculaId, nuevo.getPersonajeId())).isTrue();
+
+        assertThat(peliculaRepository.quitarPersonaje(peliculaId, nuevo.getPersonajeId())).isEqualTo(1);
+        // Ya no esta en el reparto: el segundo DELETE no encuentra la fila
+        assertThat(peliculaRepository.quitarPersonaje(peliculaId, nuevo.getPersonajeId())).isZero();
+        entityManager.clear();
+        assertThat(peliculaRepository.findConDetalleByPeliculaId(peliculaId).orElseThrow().getPersonajes()).hasSize(2);
+    }
 
     @Test
-    void findAllByOrderByTituloDesc() {
+    @Transactional
+    void agregarPersonajesShouldOnlyInsertTheMissingRows() {
+
+        Pelicula pelicula = peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
+        Long yaEnReparto = pelicula.getPersonajes().iterator().next().getPersonajeId();
+        Personaje nuevo = personajeRepository.save(Personaje.builder()
+                .nombre("Personaje nuevo")
+                .imagen("http://imagenDePersonaje3.jpg")
+                .build());
+        entityManager.flush();
+
+        // Un id ya presente, uno nuevo y uno inexistente: solo entra la fila nueva
+        assertThat(peliculaRepository.agregarPersonajes(pelicula.getPeliculaId(),
+                List.of(yaEnReparto, nuevo.getPersonajeId(), nuevo.getPersonajeId() + 1000))).isEqualTo(1);
+        entityManager.clear();
+        assertThat(peliculaRepository.findConDetalleByPeliculaId(pelicula.getPeliculaId()).orElseThrow().getPersonajes()).hasSize(3);
+
+        assertThat(peliculaRepository.quitarPersonajes(pelicula.getPeliculaId(), List.of(yaEnReparto, nuevo.getPersonajeId()))).isEqualTo(2);
+        entityManager.clear();
+        assertThat(peliculaRepository.findConDetalleByPeliculaId(pelicula.getPeliculaId()).orElseThrow().getPersonajes()).hasSize(1);
+    }
+
+    @Test
+    @Transactional
+    void borrarPersonajeShouldRemoveItsCastRowsAndBumpTheVersions() {
+
+        Pelicula pelicula = peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
+        Long personajeId = pelicula.getPersonajes().iterator().next().getPersonajeId();
+        Long versionInicial = pelicula.getVersion();
+        entityManager.flush();
+
+        assertThat(peliculaRepository.findPeliculaIdsByPersonajeId(personajeId)).containsExactly(pelicula.getPeliculaId());
+        assertThat(peliculaRepository.findPersonajeIdsByPeliculaIdIn(List.of(pelicula.getPeliculaId())))
+                .containsExactlyInAnyOrderElementsOf(pelicula.getPersonajes().stream().map(Personaje::getPersonajeId).collect(Collectors.toList()));
+        assertThat(peliculaRepository.incrementarVersionDePeliculasConPersonaje(personajeId)).isEqualTo(1);
+        assertThat(peliculaRepository.quitarPersonajeDeTodasLasPeliculas(personajeId)).isEqualTo(1);
+        assertThat(personajeRepository.eliminarPorId(personajeId)).isEqualTo(1);
+
+        Pelicula peliculaDB = peliculaRepository.findConDetalleByPeliculaId(pelicula.getPeliculaId()).orElseThrow();
+        assertThat(peliculaDB.getPersonajes()).hasSize(1);
+        assertThat(peliculaDB.getVersion()).isEqualTo(versionInicial + 1);
+        assertThat(personajeRepository.existsById(personajeId)).isFalse();
+    }
+
+    @Test
+    @Transactional
+    void quitarGeneroShouldLeaveItsPeliculasWithoutGenero() {
+
+        Pelicula pelicula = peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
+        Long generoId = pelicula.getGenero().getGeneroId();
+        entityManager.flush();
+
+        assertThat(peliculaRepository.quitarGenero(generoId)).isEqualTo(1);
+        assertThat(generoRepository.eliminarPorId(generoId)).isEqualTo(1);
+
+        assertThat(peliculaRepository.findConDetalleByPeliculaId(pelicula.getPeliculaId()).orElseThrow().getGenero()).isNull();
+    }
+
+    @Test
+    @Transactional
+    void acumularVotosShouldAddToTheTotalsAndRecomputeTheCalificacion() {
+
+        Pelicula pelicula = peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
+        Long versionInicial = pelicula.getVersion();
+        entityManager.flush();
+
+        peliculaRepository.acumularVotos(List.of(new TotalVotos(pelicula.getPeliculaId(), 9, 2)));
+        // Segundo volcado: el promedio usa los totales acumulados, (9 + 5) / (2 + 3) = 2.8
+        peliculaRepository.acumularVotos(List.of(new TotalVotos(pelicula.getPeliculaId(), 5, 3)));
+        entityManager.clear();
+
+        Pelicula peliculaDB = peliculaRepository.findById(pelicula.getPeliculaId()).orElseThrow();
+        assertThat(peliculaDB.getSumaVotos()).isEqualTo(14);
+        assertThat(peliculaDB.getCantidadVotos()).isEqualTo(5);
+        assertThat(peliculaDB.getCalificacion()).isEqualTo(3);
+        assertThat(peliculaDB.getVersion()).isEqualTo(versionInicial + 2);
+    }
+
+    @Test
+    void findAllConDetalleShouldFetchGeneroAndPersonajes() {
 
         peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
         peliculaRepository.save(generatePelicula(TITULO2, IMAGEN2));
 
-        List<Pelicula> expected = peliculaRepository.findAllByOrderByTituloDesc();
-        assertThat(expected.get(0).getTitulo()).isEqualTo(TITULO2);
-        assertThat(expected.get(0).getImagen()).isEqualTo(IMAGEN2);
+        List<Pelicula> expected = peliculaRepository.findAllConDetalle();
+
+        // Sin sesion abierta, solo las asociaciones del entity graph quedan inicializadas
+        assertThat(expected).hasSize(2);
+        assertThat(expected).allMatch(pelicula -> Hibernate.isInitialized(pelicula.getGenero())
+                && Hibernate.isInitialized(pelicula.getPersonajes()));
+        assertThat(expected.get(0).getPersonajes()).hasSize(2);
     }
 
+    @Test
+    void findConDetalleByPeliculaIdShouldFetchGeneroAndPersonajes() {
+
+        Pelicula pelicula = peliculaRepository.save(generatePelicula(TITULO1, IMAGEN1));
 
+        Optional<Pelicula> expected = peliculaRepository.findConDetalleByPeliculaId(pelicula.getPeliculaId());
+
+        assertThat(expected).isPresent();
+        assertThat(Hibernate.isInitialized(expected.get().getGenero())).isTrue();
+        assertThat(Hibernate.isInitialized(expected.get().getPersonajes())).isTrue();
+        assertThat(expected.get().getGenero().getNombre()).isEqualTo("Accion " + TITULO1);
+    }
+
+    private static <T> List<T> filas(List<FilaConOrden<T>> filasConOrden) {
+        return filasConOrden.stream().map(FilaConOrden::getFila).collect(Collectors.toList());
+    }
 
     private Pelicula generatePelicula(String titulo, String imagen) {
         Genero genero = generoRepository.save(
+                // Un genero por pelicula: el nombre normalizado del genero es unico
                 Genero.builder()
-                        .nombre("Accion")
+                        .nombre("Accion " + titulo)
                         .imagen("https://imagenDePruebaEnGenero")
                         .build());
         Personaje personaje1 = personajeRepository.save(Personaje.builder()
@@ -111,7 +495,7 @@ class PeliculaRepositoryTest {
                 .calificacion(3)
                 .fechaEstreno(new Date())
                 .genero(genero)
-                .personajes(List.of(personaje1,personaje2))
+                .personajes(new LinkedHashSet<>(List.of(personaje1,personaje2)))
                 .build();
     }
 }
\ No newline at end of file
@@ -1,15 +1,29 @@
 package com.challenge.alkemy.repository;
 
+import com.challenge.alkemy.entity.Pelicula;
 import com.challenge.alkemy.entity.Personaje;
+import com.challenge.alkemy.entity.dto.personajeDto.request.CreateOrUpdatePersonajeRequestDto;
+import com.challenge.alkemy.entity.dto.personajeDto.response.PersonajeBuscadoPorParametroResponseDto;
+import com.challenge.alkemy.indice.EntradaIndice;
+import com.challenge.alkemy.indice.MedidasPersonaje;
+import com.challenge.alkemy.service.PersonajeService;
+import com.challenge.alkemy.utility.TextoUtility;
+import org.hibernate.LazyInitializationException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
 
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
 @SpringBootTest
 class PersonajeRepositoryTest {
@@ -17,6 +31,17 @@ class PersonajeRepositoryTest {
     @Autowired
     private PersonajeRepository personajeRepository;
 
+    @Autowired
+    private PeliculaRepository peliculaRepository;
+
+    @Autowired
+    private PersonajeHistoriaRepository personajeHistoriaRepository;
+
+    @Autowired
+    private PersonajeService personajeService;
+
+    private final Sort POR_NOMBRE = Sort.by("nombre").and(Sort.by("personajeId"));
+
     Personaje personaje1 = Personaje.builder()
             .nombre("Antonio Banderas")
             .edad(45)
@@ -35,61 +60,226 @@ class PersonajeRepositoryTest {
 
     @AfterEach
     void tearDown() {
+        peliculaRepository.deleteAll();
         personajeRepository.deleteAll();
     }
 
     @Test
-    void findByNombreIgnoreCase() {
+    void existsByNombreNormalizadoShouldMatchOnlyTheWholeName() {
+
+        generatePersonajes();
+        assertThat(personajeRepository.existsByNombreNormalizado(TextoUtility.normalizarTitulo("  ANTONIO   Banderas"))).isTrue();
+        // Un prefijo o una subcadena del nombre no es un duplicado
+        assertThat(personajeRepository.existsByNombreNormalizado(TextoUtility.normalizarTitulo("Antonio"))).isFalse();
+        assertThat(personajeRepository.existsByNombreNormalizado(TextoUtility.normalizarTitulo("Banderas"))).isFalse();
+    }
+
+    @Test
+    void findConDetalleShouldFetchHistoriaButListadoShouldNot() {
+
+        generatePersonajes();
+        Optional<Personaje> detalle = personajeRepository.findConDetalleByPersonajeId(personaje1.getPersonajeId());
+        assertThat(detalle).isPresent();
+        assertThat(detalle.get().getHistoria()).isEqualTo("Nacido en Málaga");
+
+        // Fuera de la sesion, la historia del listado sigue sin cargar
+        Personaje delListado = personajeRepository.findAllConDetalle().get(0);
+        assertThatExceptionOfType(LazyInitializationException.class).isThrownBy(delListado::getHistoria);
+    }
+
+    @Test
+    void updatingHistoriaShouldReplaceItsRowAndBumpVersion() {
+
+        generatePersonajes();
+        Personaje actualizado = personajeRepository.save(Personaje.builder()
+                .personajeId(personaje1.getPersonajeId())
+                .version(personaje1.getVersion())
+                .nombre(personaje1.getNombre())
+                .edad(personaje1.getEdad())
+                .peso(personaje1.getPeso())
+                .imagen(personaje1.getImagen())
+                .historia("Nacido en Málaga, actor en Hollywood")
+                .build());
+
+        assertThat(actualizado.getVersion()).isGreaterThan(personaje1.getVersion());
+        assertThat(personajeRepository.findConDetalleByPersonajeId(personaje1.getPersonajeId()).get().getHistoria())
+                .isEqualTo("Nacido en Málaga, actor en Hollywood");
+        // La fila anterior la borra orphanRemoval: queda una historia por personaje
+        assertThat(personajeHistoriaRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    void updatePersonajeShouldKeepTheHistoriaRowWhenItsTextDidNotChange() throws Exception {
+
+        generatePersonajes();
+        long personajeId = personaje1.getPersonajeId();
+        Long historiaId = personajeRepository.findHistoriaIdByPersonajeId(personajeId).orElseThrow();
+
+        // PUT con la misma historia y otra edad: la fila de PERSONAJE_HISTORIA no se borra ni se vuelve a insertar
+        personajeService.updatePersonaje(personajeId, CreateOrUpdatePersonajeRequestDto.builder()
+                .nombre(personaje1.getNombre())
+                .imagen(personaje1.getImagen())
+                .edad(46)
+                .peso(personaje1.getPeso())
+                .historia("Nacido en Málaga")
+                .build());
+        assertThat(personajeRepository.findHistoriaIdByPersonajeId(personajeId)).contains(historiaId);
+        assertThat(personajeRepository.findById(personajeId).orElseThrow().getEdad()).isEqualTo(46);
+
+        // Con otro texto si se reemplaza, y la fila anterior se borra
+        personajeService.updatePersonaje(personajeId, CreateOrUpdatePersonajeRequestDto.builder()
+                .nombre(personaje1.getNombre())
+                .imagen(personaje1.getImagen())
+                .edad(46)
+                .peso(personaje1.getPeso())
+                .historia("Nacido en Málaga, actor en Hollywood")
+                .build());
+        assertThat(personajeRepository.findHistoriaIdByPersonajeId(personajeId)).isPresent().get().isNotEqualTo(historiaId);
+        assertThat(personajeHistoriaRepository.existsById(historiaId)).isFalse();
+        assertThat(personajeRepository.findConDetalleByPersonajeId(personajeId).orElseThrow().getHistoria())
+                .isEqualTo("Nacido en Málaga, actor en Hollywood");
+    }
+
+    @Test
+    void findMedidasShouldProjectIdEdadAndPeso() {
+
+        generatePersonajes();
+        List<MedidasPersonaje> expected = personajeRepository.findMedidas();
+        assertThat(expected).hasSize(2);
+        MedidasPersonaje medidas = expected.stream()
+                .filter(medida -> medida.getId().equals(personaje2.getPersonajeId()))
+                .findFirst().orElseThrow();
+        assertThat(medidas.getEdad()).isEqualTo(personaje2.getEdad());
+        assertThat(medidas.getPeso()).isEqualTo(personaje2.getPeso());
+    }
+
+    @Test
+    void findResumenesByPersonajeIdInShouldReturnOnlyRequestedIds() {
 
         generatePersonajes();
-        Optional<Personaje> expected = personajeRepository.findByNombreContainingIgnoreCase("AnToNiO BanDEraS");
-        assertThat(expected).isPresent().isNotEmpty();
-        assertThat(expected.get().getEdad()).isEqualTo(personaje1.getEdad());
-        assertThat(expected.get().getPeso()).isEqualTo(personaje1.getPeso());
-        assertThat(expected.get().getHistoria()).isEqualTo(personaje1.getHistoria());
+        List<PersonajeBuscadoPorParametroResponseDto> expected = personajeRepository.findResumenesByPersonajeIdIn(
+                List.of(personaje2.getPersonajeId()), Sort.by("personajeId"));
+        assertThat(expected).hasSize(1);
+        assertThat(expected.get(0).getNombre()).isEqualTo(personaje2.getNombre());
     }
 
     @Test
-    void findByNombreIgnoreCaseNotPresent() {
+    void buscarResumenesShouldCombinePeliculaRangoAndOrden() {
+
+        generatePersonajes();
+        Personaje joven = personajeRepository.save(Personaje.builder().nombre("Carlos Tevez").edad(35).peso(75).build());
+        Personaje fueraDelReparto = personajeRepository.save(Personaje.builder().nombre("Martin Palermo").edad(45).peso(85).build());
+        Pelicula pelicula = peliculaRepository.save(Pelicula.builder()
+                .titulo("Boca Juniors 3D")
+                .calificacion(3)
+                .personajes(new LinkedHashSet<>(List.of(personaje1, personaje2, joven)))
+                .build());
+
+        List<PersonajeBuscadoPorParametroResponseDto> expected = filas(personajeRepository.buscarResumenes(null, null, 40, 50, null, null,
+                pelicula.getPeliculaId(), Sort.by(Sort.Direction.DESC, "nombre").and(Sort.by("personajeId")), null, 10));
+
+        assertThat(expected).hasSize(2);
+        assertThat(expected.get(0).getNombre()).isEqualTo(personaje2.getNombre());
+        assertThat(expected.get(1).getNombre()).isEqualTo(personaje1.getNombre());
+        assertThat(expected).noneMatch(resumen -> resumen.getId().equals(fueraDelReparto.getPersonajeId()));
+    }
+
+    @Test
+    void buscarResumenesDelRepartoShouldPageByIdAndSkipOtherMovies() {
+
+        generatePersonajes();
+        Personaje deOtraPelicula = personajeRepository.save(Personaje.builder().nombre("Carlos Tevez").edad(35).peso(75).build());
+        Pelicula pelicula = peliculaRepository.save(Pelicula.builder()
+                .titulo("Boca Juniors 3D")
+                .calificacion(3)
+                .personajes(new LinkedHashSet<>(List.of(personaje1, personaje2)))
+                .build());
+        peliculaRepository.save(Pelicula.builder()
+                .titulo("Apache")
+                .calificacion(4)
+                .personajes(new LinkedHashSet<>(List.of(personaje1, deOtraPelicula)))
+                .build());
+        Sort porId = Sort.by("personajeId");
 
-        Optional<Personaje> expected = personajeRepository.findByNombreContainingIgnoreCase("AnToNiO BanDEraS");
-        assertThat(expected).isEmpty().isNotPresent();
+        List<PersonajeBuscadoPorParametroResponseDto> primera = filas(personajeRepository.buscarResumenes(null, null, null, null, null, null,
+                pelicula.getPeliculaId(), porId, null, 1));
+        List<PersonajeBuscadoPorParametroResponseDto> segunda = filas(personajeRepository.buscarResumenes(null, null, null, null, null, null,
+                pelicula.getPeliculaId(), porId, List.of(primera.get(0).getId()), 10));
+
+        assertThat(primera).hasSize(1);
+        assertThat(primera.get(0).getId()).isEqualTo(personaje1.getPersonajeId());
+        assertThat(segunda).hasSize(1);
+        assertThat(segunda.get(0).getId()).isEqualTo(personaje2.getPersonajeId());
+        assertThat(segunda.get(0).getImagen()).isEqualTo(personaje2.getImagen());
     }
 
     @Test
-    void findByEdad() {
+    void buscarResumenesOrdenadosPorNombreShouldStartAfterCursor() {
 
         generatePersonajes();
-        Optional<List<Personaje>> expected = personajeRepository.findByEdad(45);
-        assertThat(expected).isPresent().isNotEmpty();
-        assertThat(expected.get().get(0).getEdad()).isEqualTo(personaje1.getEdad());
-        assertThat(expected.get().get(0).getNombre()).isEqualTo(personaje1.getNombre());
-        assertThat(expected.get().get(1).getEdad()).isEqualTo(personaje2.getEdad());
-        assertThat(expected.get().get(1).getNombre()).isEqualTo(personaje2.getNombre());
+        personajeRepository.save(Personaje.builder().nombre("Zapata").edad(45).peso(120).build());
+
+        List<FilaConOrden<PersonajeBuscadoPorParametroResponseDto>> primera = personajeRepository.buscarResumenes(null, null, null, null, null, 100.0,
+                null, POR_NOMBRE, null, 1);
+        List<Object> ultimosValores = primera.get(0).getValoresDeOrden();
+        List<PersonajeBuscadoPorParametroResponseDto> expected = filas(personajeRepository.buscarResumenes(null, null, null, null, null, 100.0,
+                null, POR_NOMBRE, ultimosValores, 10));
+
+        assertThat(ultimosValores).containsExactly(personaje1.getNombre(), personaje1.getPersonajeId());
+        assertThat(expected).hasSize(1);
+        assertThat(expected.get(0).getId()).isEqualTo(personaje2.getPersonajeId());
     }
 
     @Test
-    void findByEdadNotPresent() {
+    void buscarResumenesShouldRestrictToCandidateIds() {
+
+        generatePersonajes();
+        List<PersonajeBuscadoPorParametroResponseDto> expected = filas(personajeRepository.buscarResumenes(List.of(personaje1.getPersonajeId()), null,
+                null, null, 60.0, 80.0, null, Sort.by("personajeId"), null, 10));
 
-        Optional<List<Personaje>> expected = personajeRepository.findByEdad(9999);
-        assertThat(expected.get()).isEmpty();
+        assertThat(expected).hasSize(1);
+        assertThat(expected.get(0).getNombre()).isEqualTo(personaje1.getNombre());
     }
 
     @Test
-    void findByPeso() {
+    void buscarResumenesByNombreContieneShouldMatchTheNormalizedName() {
 
         generatePersonajes();
-        Optional<List<Personaje>> expected = personajeRepository.findByPeso(89.9);
-        assertThat(expected).isPresent().isNotEmpty();
-        assertThat(expected.get().get(0).getPeso()).isEqualTo(personaje2.getPeso());
-        assertThat(expected.get().get(0).getNombre()).isEqualTo(personaje2.getNombre());
+        personajeRepository.save(Personaje.builder().nombre("Román Palermo").edad(45).peso(85).build());
+
+        List<PersonajeBuscadoPorParametroResponseDto> expected = filas(personajeRepository.buscarResumenes(null, "ROMAN", null, null, null, null,
+                null, POR_NOMBRE, null, 10));
+
+        assertThat(expected).extracting(PersonajeBuscadoPorParametroResponseDto::getNombre).containsExactlyInAnyOrder("Román Palermo", personaje2.getNombre());
+        assertThat(personajeRepository.buscarResumenes(null, "r%n", null, null, null, null, null, POR_NOMBRE, null, 10)).isEmpty();
     }
 
     @Test
-    void findByPesoNotFound() {
+    void personajeShouldStayInTheSetWhenItIsSavedAndEdited() {
+
+        Set<Personaje> reparto = new HashSet<>();
+        reparto.add(personaje1);
+        personajeRepository.save(personaje1);
+        personaje1.setNombre("Otro nombre");
+        personaje1.setEdad(50);
+
+        assertThat(reparto).contains(personaje1);
+        assertThat(personaje1).isEqualTo(personajeRepository.findById(personaje1.getPersonajeId()).orElseThrow());
+        assertThat(Personaje.builder().nombre("Sin id").build()).isNotEqualTo(Personaje.builder().nombre("Sin id").build());
+    }
+
+    @Test
+    void findEntradasIndice() {
+
+        generatePersonajes();
+        List<EntradaIndice> expected = personajeRepository.findEntradasIndice();
+        assertThat(expected).hasSize(2);
+        assertThat(expected).anyMatch(entrada -> entrada.getId().equals(personaje1.getPersonajeId())
+                && entrada.getTexto().equals(personaje1.getNombre()));
+    }
 
-        Optional<List<Personaje>> expected = personajeRepository.findByPeso(999.9);
-        assertThat(expected.get()).isEmpty();
+    private static <T> List<T> filas(List<FilaConOrden<T>> filasConOrden) {
+        return filasConOrden.stream().map(FilaConOrden::getFila).collect(Collectors.toList());
     }
 
     private void generatePersonajes() {
@@ -0,0 +1,63 @@
+package com.challenge.alkemy.repository;
+
+import com.challenge.alkemy.entity.Voto;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.transaction.Transactional;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class VotoRepositoryTest {
+
+    @Autowired
+    private VotoRepository votoRepository;
+
+    @Autowired
+    private PeliculaRepository peliculaRepository;
+
+    @AfterEach
+    void tearDown() {
+        votoRepository.deleteAll();
+    }
+
+    @Test
+    void saveAllShouldInsertNewVotesAndKeepOnePerUsuarioAndPelicula() {
+
+        votoRepository.saveAll(List.of(new Voto(1L, "ana", 4, null), new Voto(1L, "beto", 2, null), new Voto(2L, "ana", 5, null)));
+
+        Voto anterior = votoRepository.findById(new Voto.Clave(1L, "ana")).orElseThrow();
+        anterior.setValor(1);
+        votoRepository.save(anterior);
+
+        assertThat(votoRepository.count()).isEqualTo(3);
+        assertThat(votoRepository.findById(new Voto.Clave(1L, "ana")).orElseThrow().getValor()).isEqualTo(1);
+    }
+
+    @Test
+    void findByPeliculaIdInAndUsuarioInShouldReturnTheEarlierVotes() {
+
+        votoRepository.saveAll(List.of(new Voto(1L, "ana", 4, null), new Voto(1L, "beto", 2, null), new Voto(2L, "carla", 5, null)));
+
+        List<Voto> expected = votoRepository.findByPeliculaIdInAndUsuarioIn(Set.of(1L, 3L), Set.of("ana", "carla"));
+
+        assertThat(expected).extracting(Voto::getUsuario).containsExactly("ana");
+        assertThat(expected.get(0).getValor()).isEqualTo(4);
+    }
+
+    @Test
+    @Transactional
+    void eliminarVotosShouldDeleteOnlyTheVotesOfThePelicula() {
+
+        votoRepository.saveAll(List.of(new Voto(1L, "ana", 4, null), new Voto(1L, "beto", 2, null), new Voto(2L, "ana", 5, null)));
+        votoRepository.flush();
+
+        assertThat(peliculaRepository.eliminarVotos(1L)).isEqualTo(2);
+        assertThat(votoRepository.findAll()).extracting(Voto::getPeliculaId).containsExactly(2L);
+    }
+}
@@ -0,0 +1,191 @@
+package com.challenge.alkemy.service;
+
+import com.challenge.alkemy.cache.DetalleCache;
+import com.challenge.alkemy.calificacion.AcumuladorVotos;
+import com.challenge.alkemy.calificacion.LoteDeVotos;
+import com.challenge.alkemy.calificacion.TotalVotos;
+import com.challenge.alkemy.calificacion.VotoPendiente;
+import com.challenge.alkemy.entity.VolcadoVotos;
+import com.challenge.alkemy.entity.Voto;
+import com.challenge.alkemy.entity.dto.peliculaDto.request.CalificarPeliculaRequestDto;
+import com.challenge.alkemy.error.pelicula.CalificacionInvalidaException;
+import com.challenge.alkemy.error.pelicula.PeliculaNotFoundException;
+import com.challenge.alkemy.indice.IndiceCatalogo;
+import com.challenge.alkemy.repository.PeliculaRepository;
+import com.challenge.alkemy.repository.VolcadoVotosRepository;
+import com.challenge.alkemy.repository.VotoRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CalificacionServiceImpTest {
+
+    @Mock
+    private AcumuladorVotos acumuladorVotos;
+
+    @Mock
+    private PeliculaRepository peliculaRepository;
+
+    @Spy
+    private IndiceCatalogo indiceCatalogo = new IndiceCatalogo();
+
+    @Spy
+    private DetalleCache detalleCache = new DetalleCache(100);
+
+    @Mock
+    private VolcadoVotosRepository volcadoVotosRepository;
+
+    @Mock
+    private VotoRepository votoRepository;
+
+    @InjectMocks
+    private CalificacionServiceImp calificacionServiceImp;
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void calificarPeliculaShouldOnlyTouchTheCounters() throws Exception {
+
+        indiceCatalogo.indexarPelicula(1L, "Ace Ventura");
+
+        calificacionServiceImp.calificarPelicula(1L, "ana", CalificarPeliculaRequestDto.builder().valor(4).build());
+
+        verify(acumuladorVotos, times(1)).registrar(1L, "ana", 4);
+        verifyNoInteractions(peliculaRepository);
+    }
+
+    @Test
+    void calificarPeliculaOutOfRangeShouldThrowException() {
+
+        assertThatExceptionOfType(CalificacionInvalidaException.class)
+                .isThrownBy(() -> calificacionServiceImp.calificarPelicula(1L, "ana", CalificarPeliculaRequestDto.builder().valor(6).build()));
+        assertThatExceptionOfType(CalificacionInvalidaException.class)
+                .isThrownBy(() -> calificacionServiceImp.calificarPelicula(1L, "ana", new CalificarPeliculaRequestDto()));
+    }
+
+    @Test
+    void calificarPeliculaNotFoundShouldThrowException() {
+
+        assertThatExceptionOfType(PeliculaNotFoundException.class)
+                .isThrownBy(() -> calificacionServiceImp.calificarPelicula(9L, "ana", CalificarPeliculaRequestDto.builder().valor(3).build()));
+    }
+
+    @Test
+    void volcarCalificacionesShouldConfirmTheLogOnlyAfterCommit() throws Exception {
+
+        indiceCatalogo.indexarPelicula(1L, "Ace Ventura");
+        LoteDeVotos lote = new LoteDeVotos(List.of(new VotoPendiente(1L, "ana", 4), new VotoPendiente(1L, "beto", 5)),
+                List.of(Path.of("votos-1.log")), 1L);
+        when(acumuladorVotos.tomarPendientes()).thenReturn(lote);
+        when(votoRepository.findByPeliculaIdInAndUsuarioIn(Set.of(1L), Set.of("ana", "beto"))).thenReturn(List.of());
+        when(peliculaRepository.findPersonajeIdsByPeliculaIdIn(List.of(1L))).thenReturn(List.of(7L));
+        TransactionSynchronizationManager.initSynchronization();
+
+        calificacionServiceImp.volcarCalificaciones();
+
+        verify(votoRepository, times(1)).saveAll(List.of(new Voto(1L, "ana", 4, null), new Voto(1L, "beto", 5, null)));
+        verify(peliculaRepository, times(1)).acumularVotos(List.of(new TotalVotos(1L, 9, 2)));
+        verify(volcadoVotosRepository, times(1)).save(new VolcadoVotos(VolcadoVotos.ID, 1L));
+        verify(detalleCache, times(1)).invalidarPeliculas(List.of(1L));
+        verify(detalleCache, times(1)).invalidarPersonajes(List.of(7L));
+        verify(acumuladorVotos, never()).confirmar(any());
+
+        for (TransactionSynchronization sincronizacion : TransactionSynchronizationManager.getSynchronizations()) {
+            sincronizacion.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        verify(acumuladorVotos, times(1)).confirmar(lote);
+        verify(acumuladorVotos, never()).devolver(any());
+        // Recien confirmados, los votos cuentan para la popularidad del titulo
+        verify(indiceCatalogo, times(1)).sumarVotos(1L, 2L);
+    }
+
+    @Test
+    void volcarCalificacionesShouldReplaceTheEarlierVoteOfTheSameUsuario() throws Exception {
+
+        indiceCatalogo.indexarPelicula(1L, "Ace Ventura");
+        Voto anterior = new Voto(1L, "ana", 2, 0L);
+        LoteDeVotos lote = new LoteDeVotos(List.of(new VotoPendiente(1L, "ana", 5), new VotoPendiente(1L, "beto", 3)),
+                List.of(Path.of("votos-2.log")), 2L);
+        when(acumuladorVotos.tomarPendientes()).thenReturn(lote);
+        when(votoRepository.findByPeliculaIdInAndUsuarioIn(Set.of(1L), Set.of("ana", "beto"))).thenReturn(List.of(anterior));
+        TransactionSynchronizationManager.initSynchronization();
+
+        calificacionServiceImp.volcarCalificaciones();
+
+        // Ana pasa de 2 a 5 (+3) sin sumar un votante; Beto vota por primera vez (+3, un votante)
+        verify(peliculaRepository, times(1)).acumularVotos(List.of(new TotalVotos(1L, 6, 1)));
+        verify(votoRepository, times(1)).saveAll(List.of(new Voto(1L, "beto", 3, null)));
+        assertThat(anterior.getValor()).isEqualTo(5);
+    }
+
+    @Test
+    void volcarCalificacionesWithTheSameVoteAgainShouldNotTouchThePelicula() throws Exception {
+
+        indiceCatalogo.indexarPelicula(1L, "Ace Ventura");
+        LoteDeVotos lote = new LoteDeVotos(List.of(new VotoPendiente(1L, "ana", 4)), List.of(Path.of("votos-3.log")), 3L);
+        when(acumuladorVotos.tomarPendientes()).thenReturn(lote);
+        when(votoRepository.findByPeliculaIdInAndUsuarioIn(Set.of(1L), Set.of("ana"))).thenReturn(List.of(new Voto(1L, "ana", 4, 0L)));
+        TransactionSynchronizationManager.initSynchronization();
+
+        calificacionServiceImp.volcarCalificaciones();
+
+        // El segmento igual queda registrado como aplicado
+        verify(volcadoVotosRepository, times(1)).save(new VolcadoVotos(VolcadoVotos.ID, 3L));
+        verify(peliculaRepository, never()).acumularVotos(anyList());
+        verify(detalleCache, never()).invalidarPeliculas(anyList());
+    }
+
+    @Test
+    void volcarCalificacionesShouldDropVotesForDeletedPeliculas() throws Exception {
+
+        // La pelicula 9 se borro despues de recibir el voto: ya no esta en el indice
+        LoteDeVotos lote = new LoteDeVotos(List.of(new VotoPendiente(9L, "ana", 4)), List.of(Path.of("votos-4.log")), 4L);
+        when(acumuladorVotos.tomarPendientes()).thenReturn(lote);
+        TransactionSynchronizationManager.initSynchronization();
+
+        calificacionServiceImp.volcarCalificaciones();
+
+        verify(volcadoVotosRepository, times(1)).save(new VolcadoVotos(VolcadoVotos.ID, 4L));
+        verifyNoInteractions(votoRepository, peliculaRepository);
+    }
+
+    @Test
+    void volcarCalificacionesRolledBackShouldGiveTheVotesBack() throws Exception {
+
+        indiceCatalogo.indexarPelicula(1L, "Ace Ventura");
+        LoteDeVotos lote = new LoteDeVotos(List.of(new VotoPendiente(1L, "ana", 4)), List.of(Path.of("votos-1.log")), 1L);
+        when(acumuladorVotos.tomarPendientes()).thenReturn(lote);
+        when(peliculaRepository.acumularVotos(anyList())).thenThrow(new IllegalStateException("sin conexion"));
+        TransactionSynchronizationManager.initSynchronization();
+
+        assertThatExceptionOfType(IllegalStateException.class)
+                .isThrownBy(() -> calificacionServiceImp.volcarCalificaciones());
+        for (TransactionSynchronization sincronizacion : TransactionSynchronizationManager.getSynchronizations()) {
+            sincronizacion.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+
+        verify(acumuladorVotos, times(1)).devolver(lote);
+        verify(acumuladorVotos, never()).confirmar(any());
+        verify(indiceCatalogo, never()).sumarVotos(anyLong(), anyLong());
+    }
+}
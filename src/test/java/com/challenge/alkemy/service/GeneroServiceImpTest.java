@@ -1,5 +1,6 @@
 package com.challenge.alkemy.service;
 
+import com.challenge.alkemy.cache.DetalleCache;
 import com.challenge.alkemy.entity.Genero;
 import com.challenge.alkemy.entity.dto.generoDto.GeneroMapper;
 import com.challenge.alkemy.entity.dto.generoDto.request.CreateGeneroRequestDto;
@@ -7,14 +8,19 @@ import com.challenge.alkemy.entity.dto.generoDto.response.CreateGeneroResponseDt
 import com.challenge.alkemy.entity.dto.generoDto.response.GeneroResponseDto;
 import com.challenge.alkemy.error.genero.GeneroAlreadyInUseException;
 import com.challenge.alkemy.error.genero.GeneroNotFoundException;
+import com.challenge.alkemy.indice.IndiceCatalogo;
+import com.challenge.alkemy.indice.Sugerencia;
 import com.challenge.alkemy.repository.GeneroRepository;
+import com.challenge.alkemy.repository.PeliculaRepository;
+import com.challenge.alkemy.utility.EtagUtility;
+import com.challenge.alkemy.utility.TextoUtility;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
 
 import java.util.Collections;
 import java.util.List;
@@ -34,9 +40,18 @@ class GeneroServiceImpTest {
     @Mock
     private GeneroRepository generoRepository;
 
+    @Mock
+    private PeliculaRepository peliculaRepository;
+
     @Spy
     private GeneroMapper generoMapper = new GeneroMapper();
 
+    @Spy
+    private DetalleCache detalleCache = new DetalleCache(100);
+
+    @Spy
+    private IndiceCatalogo indiceCatalogo;
+
     @InjectMocks
     private GeneroServiceImp generoServiceImp;
 
@@ -45,13 +60,13 @@ class GeneroServiceImpTest {
     void canGetAllGeneros() {
 
         // Given
-        when(generoRepository.findAll()).thenReturn(Collections.singletonList(buildGenero()));
+        when(generoRepository.findAllConPeliculas()).thenReturn(Collections.singletonList(buildGenero()));
 
         // When (Aqui estamos haciendo el test)
         List<GeneroResponseDto> response = generoServiceImp.getAllGeneros();
 
-        // Chequeamos cuantas veces llamamos al metodo generoRepository.findAll()
-        verify(generoRepository, times(1)).findAll();
+        // Chequeamos cuantas veces llamamos al metodo generoRepository.findAllConPeliculas()
+        verify(generoRepository, times(1)).findAllConPeliculas();
 
         assertAll(
                 () -> assertThat(response).isNotNull(),
@@ -64,13 +79,13 @@ class GeneroServiceImpTest {
     void canGetAllGenerosShoudReturnEmptyList() {
 
         // Given
-        when(generoRepository.findAll()).thenReturn(Collections.emptyList());
+        when(generoRepository.findAllConPeliculas()).thenReturn(Collections.emptyList());
 
         // When (Aqui estamos haciendo el test)
         List<GeneroResponseDto> response = generoServiceImp.getAllGeneros();
 
         // Then
-        verify(generoRepository, times(1)).findAll();
+        verify(generoRepository, times(1)).findAllConPeliculas();
 
         assertThat(response).isNotNull().isEqualTo(Collections.emptyList());
     }
@@ -79,7 +94,7 @@ class GeneroServiceImpTest {
     void canSaveGenero() throws GeneroAlreadyInUseException, GeneroNotFoundException {
 
         // Aqui mockeamos que el usuario a crear no existe en la DB
-        when(generoRepository.findGeneroByNombreContainingIgnoreCase(any())).thenReturn(Optional.empty());
+        when(generoRepository.existsByNombreNormalizado(any())).thenReturn(false);
 
         // Aqui mockeamos el genero que va a devolver el repository
         when(generoRepository.save(any())).thenReturn(buildGenero());
@@ -92,6 +107,7 @@ class GeneroServiceImpTest {
 
         // Then
         verify(generoRepository, times(1)).save(any());
+        verify(indiceCatalogo, times(1)).indexarGenero(1L, NOMBRE);
 
         assertAll(
                 () -> assertThat(response).isNotNull(),
@@ -110,7 +126,7 @@ class GeneroServiceImpTest {
         request.setNombre("");
 
         // Then
-        verify(generoRepository, times(0)).findAll();
+        verify(generoRepository, times(0)).findAllConPeliculas();
 
         assertThatExceptionOfType(GeneroNotFoundException.class)
                 .isThrownBy(() -> generoServiceImp.saveGenero(request));
@@ -120,31 +136,45 @@ class GeneroServiceImpTest {
     void saveGeneroAlreadyExistsShouldThrowException() throws GeneroAlreadyInUseException, GeneroNotFoundException {
 
         // Aqui mockeamos que el usuario a crear no existe en la DB
-        when(generoRepository.findGeneroByNombreContainingIgnoreCase(any())).thenReturn(Optional.of(buildGenero()));
+        when(generoRepository.existsByNombreNormalizado(TextoUtility.normalizarTitulo(NOMBRE))).thenReturn(true);
 
         // Aqui creamos el Dto que vamos a mandar al servicio
         CreateGeneroRequestDto request = buildCreateGeneroRequestDto();
 
         // Then
-        verify(generoRepository, times(0)).findAll();
+        verify(generoRepository, times(0)).findAllConPeliculas();
 
         assertThatExceptionOfType(GeneroAlreadyInUseException.class)
                 .isThrownBy(() -> generoServiceImp.saveGenero(request));
     }
 
+    @Test
+    void saveGeneroLosingAConcurrentInsertShouldThrowException() {
+
+        // Aqui mockeamos que otra alta con el mismo nombre entra entre el control y el INSERT
+        when(generoRepository.existsByNombreNormalizado(any())).thenReturn(false);
+        when(generoRepository.save(any())).thenThrow(new DataIntegrityViolationException("UK_GENERO_NOMBRE_NORMALIZADO"));
+
+        CreateGeneroRequestDto request = buildCreateGeneroRequestDto();
+
+        assertThatExceptionOfType(GeneroAlreadyInUseException.class)
+                .isThrownBy(() -> generoServiceImp.saveGenero(request));
+        verify(indiceCatalogo, times(0)).indexarGenero(anyLong(), any());
+    }
+
     @Test
     void canFindGeneroById() throws GeneroNotFoundException {
 
         Long id = 1L;
         Genero genero = buildGenero();
 
-        when(generoRepository.findById(any())).thenReturn(Optional.of(genero));
+        when(generoRepository.findConPeliculasByGeneroId(any())).thenReturn(Optional.of(genero));
 
         // When
         GeneroResponseDto response = generoServiceImp.getGeneroById(id);
 
         // Then
-        verify(generoRepository, times(1)).findById(id);
+        verify(generoRepository, times(1)).findConPeliculasByGeneroId(id);
 
         assertAll(
                 () -> assertThat(response).isNotNull(),
@@ -155,19 +185,59 @@ class GeneroServiceImpTest {
         );
     }
 
+    @Test
+    void getGeneroByIdShouldBeServedFromCache() throws GeneroNotFoundException {
+
+        Genero genero = buildGenero();
+
+        // Given
+        when(generoRepository.findConPeliculasByGeneroId(any())).thenReturn(Optional.of(genero));
+
+        // When
+        GeneroResponseDto primera = generoServiceImp.getGeneroById(genero.getGeneroId());
+        GeneroResponseDto segunda = generoServiceImp.getGeneroById(genero.getGeneroId());
+
+        // Then
+        assertThat(segunda).isSameAs(primera);
+        verify(generoRepository, times(1)).findConPeliculasByGeneroId(genero.getGeneroId());
+    }
+
     @Test
     void generoByIdNotFoundShouldThrowException() throws GeneroNotFoundException {
 
         Long id = 1L;
 
         // Given
-        when(generoRepository.findById(any())).thenReturn(Optional.empty());
+        when(generoRepository.findConPeliculasByGeneroId(any())).thenReturn(Optional.empty());
 
         // Then
         assertThatExceptionOfType(GeneroNotFoundException.class)
                 .isThrownBy(() -> generoServiceImp.getGeneroById(id));
 
-        verify(generoRepository, times(1)).findById(id);
+        verify(generoRepository, times(1)).findConPeliculasByGeneroId(id);
+    }
+
+    @Test
+    void getEtagGenerosShouldNotLoadTheGeneros() {
+
+        // Given
+        when(generoRepository.findVersionesDetalle()).thenReturn(Collections.emptyList());
+
+        // When
+        String etag = generoServiceImp.getEtagGeneros();
+
+        // Then
+        assertThat(etag).isEqualTo(EtagUtility.etag(Collections.emptyList()));
+        verify(generoRepository, never()).findAllConPeliculas();
+    }
+
+    @Test
+    void getEtagGeneroNotFoundShouldThrowException() {
+
+        when(generoRepository.findVersionesDetalleByGeneroId(any())).thenReturn(Collections.emptyList());
+
+        assertThatExceptionOfType(GeneroNotFoundException.class)
+                .isThrownBy(() -> generoServiceImp.getEtagGenero(1L));
     }
 
     @Test
@@ -176,26 +246,62 @@ class GeneroServiceImpTest {
         Genero genero = buildGenero();
 
         // Given
-        when(generoRepository.findById(any())).thenReturn(Optional.of(genero));
+        when(generoRepository.existsById(any())).thenReturn(true);
 
         // When
-        generoServiceImp.deleteGeneroById(genero.getGeneroId());
-        ArgumentCaptor<Genero> generoArgumentCaptor =
-                ArgumentCaptor.forClass(Genero.class);
+        generoServiceImp.deleteGeneroById(genero.getGeneroId(), null);
+
+        // Then: sus peliculas quedan sin genero con un UPDATE y el genero se borra sin cargarlo
+        verify(peliculaRepository, times(1)).quitarGenero(genero.getGeneroId());
+        verify(peliculaRepository, never()).reasignarGenero(anyLong(), anyLong());
+        verify(generoRepository, times(1)).eliminarPorId(genero.getGeneroId());
+        verify(generoRepository, never()).findById(any());
+        verify(detalleCache, times(1)).invalidarTodo();
+    }
 
-        // Then
-        verify(generoRepository).delete(generoArgumentCaptor.capture());
-        assertThat(generoArgumentCaptor.getValue()).isEqualTo(genero);
+    @Test
+    void deleteGeneroByIdShouldMoveItsPeliculasToAnotherGenero() throws GeneroNotFoundException {
+
+        // Given
+        when(generoRepository.existsById(any())).thenReturn(true);
+        indiceCatalogo.indexarGenero(1L, "Accion");
+        indiceCatalogo.indexarGenero(2L, "Aventura");
+        indiceCatalogo.asignarGenero(10L, 1L);
+        indiceCatalogo.asignarGenero(11L, 1L);
+        indiceCatalogo.asignarGenero(12L, 2L);
+
+        // When
+        generoServiceImp.deleteGeneroById(1L, 2L);
+
+        // Then: en las sugerencias el genero desaparece y sus peliculas cuentan para el nuevo
+        verify(peliculaRepository, times(1)).reasignarGenero(1L, 2L);
+        verify(peliculaRepository, never()).quitarGenero(anyLong());
+        verify(generoRepository, times(1)).eliminarPorId(1L);
+        List<Sugerencia> sugerencias = indiceCatalogo.sugerirGeneros("a", 5);
+        assertThat(sugerencias.size()).isEqualTo(1);
+        assertThat(sugerencias.get(0).getTexto()).isEqualTo("Aventura");
+        assertThat(sugerencias.get(0).getPopularidad()).isEqualTo(3L);
+    }
+
+    @Test
+    void deleteGeneroByIdWithUnknownTargetShouldThrowException() {
+
+        when(generoRepository.existsById(1L)).thenReturn(true);
+        when(generoRepository.existsById(2L)).thenReturn(false);
+
+        assertThatExceptionOfType(GeneroNotFoundException.class)
+                .isThrownBy(() -> generoServiceImp.deleteGeneroById(1L, 2L));
+        verify(generoRepository, never()).eliminarPorId(anyLong());
     }
 
     @Test
     void generoToDeleteNotFoundById() {
 
         // Given
-        when(generoRepository.findById(any())).thenReturn(Optional.empty());
+        when(generoRepository.existsById(any())).thenReturn(false);
 
         assertThatExceptionOfType(GeneroNotFoundException.class)
-                .isThrownBy(() -> generoServiceImp.deleteGeneroById(1L));
+                .isThrownBy(() -> generoServiceImp.deleteGeneroById(1L, null));
     }
 
 
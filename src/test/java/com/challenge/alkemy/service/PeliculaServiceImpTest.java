@@ -1,22 +1,34 @@
 package com.challenge.alkemy.service;
 
+import com.challenge.alkemy.cache.DetalleCache;
 import com.challenge.alkemy.entity.Genero;
 import com.challenge.alkemy.entity.Pelicula;
 import com.challenge.alkemy.entity.Personaje;
 import com.challenge.alkemy.entity.dto.peliculaDto.PeliculaMapper;
+import com.challenge.alkemy.entity.dto.peliculaDto.request.BuscarPeliculasRequestDto;
 import com.challenge.alkemy.entity.dto.peliculaDto.request.CreatePeliculaRequestDto;
+import com.challenge.alkemy.entity.dto.peliculaDto.request.PatchPeliculaRequestDto;
 import com.challenge.alkemy.entity.dto.peliculaDto.response.PeliculaBuscadaPorParametroResponseDto;
 import com.challenge.alkemy.entity.dto.peliculaDto.response.PeliculaConDetalleResponseDto;
+import com.challenge.alkemy.entity.dto.peliculaDto.response.ResultadoLoteResponseDto;
+import com.challenge.alkemy.entity.dto.paginaDto.response.PaginaResponseDto;
 import com.challenge.alkemy.error.genero.GeneroNotFoundException;
+import com.challenge.alkemy.error.pagina.CursorInvalidoException;
 import com.challenge.alkemy.error.pelicula.PeliculaAlreadyExistsException;
 import com.challenge.alkemy.error.pelicula.PeliculaBuscadaPorParametroIncorrectoException;
+import com.challenge.alkemy.error.pelicula.PeliculaModificadaException;
 import com.challenge.alkemy.error.pelicula.PeliculaNotFoundException;
 import com.challenge.alkemy.error.personaje.PersonajeNotFoundException;
 import com.challenge.alkemy.error.personaje.PersonajeNotFoundInPeliculaException;
 import com.challenge.alkemy.error.personaje.PersonajeYaEnUsoException;
+import com.challenge.alkemy.indice.IndiceCatalogo;
+import com.challenge.alkemy.repository.FilaConOrden;
 import com.challenge.alkemy.repository.GeneroRepository;
 import com.challenge.alkemy.repository.PeliculaRepository;
 import com.challenge.alkemy.repository.PersonajeRepository;
+import com.challenge.alkemy.utility.EtagUtility;
+import com.challenge.alkemy.utility.PaginacionUtility;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -25,9 +37,21 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
@@ -37,6 +61,7 @@ import static org.mockito.Mockito.*;
 class PeliculaServiceImpTest {
 
     private final String IMAGEN = "https://imagendeprueba.com.ar";
+    private final Sort POR_ID = Sort.by("peliculaId");
 
     @Mock
     private PeliculaRepository peliculaRepository;
@@ -50,6 +75,24 @@ class PeliculaServiceImpTest {
     @Spy
     private PeliculaMapper peliculaMapper;
 
+    @Spy
+    private IndiceCatalogo indiceCatalogo;
+
+    @Spy
+    private DetalleCache detalleCache = new DetalleCache(100);
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Spy
+    private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @InjectMocks
     private PeliculaServiceImp peliculaServiceImp;
 
@@ -58,7 +101,7 @@ class PeliculaServiceImpTest {
     void getAllPeliculas() {
 
         // Given
-        when(peliculaRepository.findAll()).thenReturn(buildPelicula());
+        when(peliculaRepository.findAllConDetalle()).thenReturn(buildPelicula());
 
         // When
         List<PeliculaConDetalleResponseDto> response = peliculaServiceImp.getAllPeliculas();
@@ -67,14 +110,14 @@ class PeliculaServiceImpTest {
         assertThat(response).isNotNull();
         assertThat(response.isEmpty()).isFalse();
         assertThat(response.get(0).getId()).isEqualTo(buildPelicula().get(0).getPeliculaId());
-        verify(peliculaRepository, times(1)).findAll();
+        verify(peliculaRepository, times(1)).findAllConDetalle();
     }
 
     @Test
     void canGetAllPeliculasShouldReturnEmptyList() {
 
         // Given
-        when(peliculaRepository.findAll()).thenReturn(Collections.emptyList());
+        when(peliculaRepository.findAllConDetalle()).thenReturn(Collections.emptyList());
 
         // When
         List<PeliculaConDetalleResponseDto> response = peliculaServiceImp.getAllPeliculas();
@@ -82,107 +125,276 @@ class PeliculaServiceImpTest {
         // Then
         assertThat(response).isNotNull();
         assertThat(response.isEmpty()).isTrue();
-        verify(peliculaRepository, times(1)).findAll();
+        verify(peliculaRepository, times(1)).findAllConDetalle();
     }
 
     @Test
-    void canGetPeliculasByOrderAsc() throws PeliculaBuscadaPorParametroIncorrectoException, PeliculaNotFoundException {
+    void exportarPeliculasShouldWriteOneJsonLinePerPelicula() throws Exception {
+
+        List<Pelicula> peliculas = buildPelicula();
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
 
         // Given
-        when(peliculaRepository.findAllByOrderByTituloAsc())
-                .thenReturn(Collections.singletonList(buildPelicula().get(0)));
+        when(peliculaRepository.findIdsDespuesDe(eq(0L), any(Pageable.class))).thenReturn(List.of(1L, 2L));
+        when(peliculaRepository.findIdsDespuesDe(eq(2L), any(Pageable.class))).thenReturn(Collections.emptyList());
+        when(peliculaRepository.findConDetalleByPeliculaIdIn(List.of(1L, 2L))).thenReturn(peliculas);
 
         // When
-        List<PeliculaBuscadaPorParametroResponseDto> response = peliculaServiceImp.getPeliculasByOrder("ASC");
+        peliculaServiceImp.exportarPeliculas(salida);
 
         // Then
-        verify(peliculaRepository, times(1)).findAllByOrderByTituloAsc();
-        assertThat(response).isNotNull();
-        assertThat(response.isEmpty()).isFalse();
-        assertThat(response.get(0).getTitulo()).isEqualTo(buildPelicula().get(0).getTitulo());
+        String[] lineas = salida.toString(StandardCharsets.UTF_8).split("\n");
+        assertThat(lineas.length).isEqualTo(peliculas.size());
+        assertThat(objectMapper.readTree(lineas[0]).get("titulo").asText()).isEqualTo(peliculas.get(0).getTitulo());
+        assertThat(objectMapper.readTree(lineas[1]).get("id").asLong()).isEqualTo(peliculas.get(1).getPeliculaId());
+        verify(peliculaRepository, never()).findAllConDetalle();
+        verify(entityManager, times(1)).clear();
     }
 
     @Test
-    void peliculaByOrderAscNotFoundShouldThrowException() {
+    void canBuscarPeliculasSinParametros() throws Exception {
+
+        List<Pelicula> peliculas = buildPelicula();
 
         // Given
-        when(peliculaRepository.findAllByOrderByTituloAsc()).thenReturn(Collections.emptyList());
+        List<PeliculaBuscadaPorParametroResponseDto> resumenes = peliculaMapper.peliculaToPeliculaBuscadaPorParametroResponseDto(peliculas);
+        when(peliculaRepository.buscarResumenes(isNull(), isNull(), isNull(), any(Sort.class), isNull(), anyInt())).thenReturn(porId(resumenes));
+
+        // When
+        PaginaResponseDto<PeliculaBuscadaPorParametroResponseDto> response = peliculaServiceImp.buscarPeliculas(BuscarPeliculasRequestDto.builder().build());
 
         // Then
-        assertThatExceptionOfType(PeliculaNotFoundException.class)
-                .isThrownBy(() -> peliculaServiceImp.getPeliculasByOrder("ASC"));
-        verify(peliculaRepository, times(1)).findAllByOrderByTituloAsc();
+        verify(peliculaRepository, times(1)).buscarResumenes(null, null, null, POR_ID, null, PaginacionUtility.LIMITE_POR_DEFECTO + 1);
+        verifyNoInteractions(generoRepository);
+        assertThat(response.getContenido()).isEqualTo(resumenes);
+        assertThat(response.getNext()).isNull();
+    }
+
+    @Test
+    void buscarPeliculasShouldReturnNextCursorWhenThereAreMoreRows() throws Exception {
+
+        List<Pelicula> peliculas = buildPelicula();
+
+        // Pedimos una pelicula por pagina y el repositorio devuelve dos: hay pagina siguiente
+        List<PeliculaBuscadaPorParametroResponseDto> resumenes = peliculaMapper.peliculaToPeliculaBuscadaPorParametroResponseDto(peliculas);
+        when(peliculaRepository.buscarResumenes(isNull(), isNull(), isNull(), any(Sort.class), isNull(), anyInt())).thenReturn(porId(resumenes));
+
+        PaginaResponseDto<PeliculaBuscadaPorParametroResponseDto> response = peliculaServiceImp.buscarPeliculas(
+                BuscarPeliculasRequestDto.builder().limit(1).build());
+
+        verify(peliculaRepository, times(1)).buscarResumenes(null, null, null, POR_ID, null, 2);
+        assertThat(response.getContenido().size()).isEqualTo(1);
+        assertThat(response.getNext()).isEqualTo(PaginacionUtility.codificarCursor(peliculas.get(0).getPeliculaId()));
     }
 
     @Test
-    void canGetPeliculasByOrderDesc() throws PeliculaBuscadaPorParametroIncorrectoException, PeliculaNotFoundException {
+    void canBuscarPeliculasCombinandoGeneroYOrden() throws Exception {
+
+        List<Pelicula> peliculas = buildPelicula();
 
         // Given
-        when(peliculaRepository.findAllByOrderByTituloDesc())
-                .thenReturn(Collections.singletonList(buildPelicula().get(1)));
+        List<PeliculaBuscadaPorParametroResponseDto> resumenes = peliculaMapper.peliculaToPeliculaBuscadaPorParametroResponseDto(peliculas);
+        when(peliculaRepository.buscarResumenes(isNull(), isNull(), anyLong(), any(Sort.class), isNull(), anyInt())).thenReturn(porId(resumenes));
 
         // When
-        List<PeliculaBuscadaPorParametroResponseDto> response = peliculaServiceImp.getPeliculasByOrder("DESC");
+        PaginaResponseDto<PeliculaBuscadaPorParametroResponseDto> response = peliculaServiceImp.buscarPeliculas(
+                BuscarPeliculasRequestDto.builder().generoId(1L).orden("asc").build());
 
         // Then
-        verify(peliculaRepository, times(1)).findAllByOrderByTituloDesc();
-        assertThat(response).isNotNull();
-        assertThat(response.isEmpty()).isFalse();
-        assertThat(response.get(0).getTitulo()).isEqualTo(buildPelicula().get(1).getTitulo());
+        // Si la pagina trae peliculas el genero existe: no hace falta consultarlo aparte
+        verifyNoInteractions(generoRepository);
+        verify(peliculaRepository, times(1)).buscarResumenes(null, null, 1L, Sort.by(Sort.Direction.ASC, "titulo").and(POR_ID), null, PaginacionUtility.LIMITE_POR_DEFECTO + 1);
+        assertThat(response.getContenido().get(0).getTitulo()).isEqualTo(peliculas.get(0).getTitulo());
+        assertThat(response.getContenido().get(1).getTitulo()).isEqualTo(peliculas.get(1).getTitulo());
     }
 
     @Test
-    void peliculaByOrderDescNotFoundShouldThrowException() {
+    void buscarPeliculasOrdenDescWithCursorShouldStartAfterLastTitulo() throws Exception {
+
+        Pelicula ultimaEntregada = buildPelicula().get(0);
 
         // Given
-        when(peliculaRepository.findAllByOrderByTituloDesc()).thenReturn(Collections.emptyList());
+        List<Object> ultimosValores = List.of(ultimaEntregada.getTitulo(), ultimaEntregada.getPeliculaId());
+        List<PeliculaBuscadaPorParametroResponseDto> resumenes = Collections.singletonList(peliculaMapper.peliculaToPeliculaBuscadaPorTituloDtoResponse(buildPelicula().get(1)));
+        when(peliculaRepository.buscarResumenes(isNull(), isNull(), isNull(), any(Sort.class), anyList(), anyInt())).thenReturn(porId(resumenes));
 
-        // Then
-        assertThatExceptionOfType(PeliculaNotFoundException.class)
-                .isThrownBy(() -> peliculaServiceImp.getPeliculasByOrder("DESC"));
-        verify(peliculaRepository, times(1)).findAllByOrderByTituloDesc();
+        // When
+        PaginaResponseDto<PeliculaBuscadaPorParametroResponseDto> response = peliculaServiceImp.buscarPeliculas(BuscarPeliculasRequestDto.builder()
+                .orden("DESC")
+                .cursor(PaginacionUtility.codificarCursor(ultimosValores))
+                .build());
+
+        // Then: los valores salen del cursor, sin leer de nuevo la ultima pelicula entregada
+        Sort orden = Sort.by(Sort.Direction.DESC, "titulo").and(POR_ID);
+        verify(peliculaRepository, times(1)).buscarResumenes(null, null, null, orden, ultimosValores, PaginacionUtility.LIMITE_POR_DEFECTO + 1);
+        verify(peliculaRepository, never()).findById(anyLong());
+        assertThat(response.getContenido().get(0).getTitulo()).isEqualTo(buildPelicula().get(1).getTitulo());
     }
 
     @Test
-    void peliculaByOrderWithWrongParameterShouldThrowException() {
+    void buscarPeliculasNextCursorShouldCarryTheSortValuesOfTheLastRow() throws Exception {
 
-        assertThatExceptionOfType(PeliculaBuscadaPorParametroIncorrectoException.class)
-                .isThrownBy(() -> peliculaServiceImp.getPeliculasByOrder("ASCS"));
-        verify(peliculaRepository, times(0)).findAllByOrderByTituloDesc();
-        verify(peliculaRepository, times(0)).findAllByOrderByTituloAsc();
+        List<PeliculaBuscadaPorParametroResponseDto> resumenes = peliculaMapper.peliculaToPeliculaBuscadaPorParametroResponseDto(buildPelicula());
+        Date fecha = new Date(1_000_000_000_000L);
+        Sort orden = Sort.by(Sort.Order.desc("fechaEstreno"), Sort.Order.asc("calificacion"), Sort.Order.asc("peliculaId"));
+
+        // Given
+        when(peliculaRepository.buscarResumenes(isNull(), isNull(), isNull(), any(Sort.class), any(), anyInt())).thenReturn(List.of(
+                new FilaConOrden<>(resumenes.get(0), List.of(fecha, 4, resumenes.get(0).getId())),
+                new FilaConOrden<>(resumenes.get(1), Arrays.asList(null, 3, resumenes.get(1).getId()))));
+
+        // When
+        PaginaResponseDto<PeliculaBuscadaPorParametroResponseDto> primera = peliculaServiceImp.buscarPeliculas(BuscarPeliculasRequestDto.builder()
+                .orden("fechaEstreno:desc,calificacion")
+                .limit(1)
+                .build());
+        peliculaServiceImp.buscarPeliculas(BuscarPeliculasRequestDto.builder()
+                .orden("fechaEstreno:desc,calificacion")
+                .limit(1)
+                .cursor(primera.getNext())
+                .build());
+
+        // Then: la segunda pagina arranca despues de los valores que tenia la fila al entregarla, con sus tipos
+        verify(peliculaRepository, times(1)).buscarResumenes(null, null, null, orden, List.of(fecha, 4, resumenes.get(0).getId()), 2);
     }
 
     @Test
-    void canGetPeliculasByGeneroId() throws GeneroNotFoundException {
+    void buscarPeliculasShouldCombineSeveralSortFields() throws Exception {
 
-        List<Pelicula> peliculas = buildPelicula();
-        Genero genero = buildGenero();
-        genero.setPeliculas(peliculas);
+        // Given
+        when(peliculaRepository.buscarResumenes(isNull(), isNull(), isNull(), any(Sort.class), isNull(), anyInt())).thenReturn(Collections.emptyList());
+
+        // When
+        peliculaServiceImp.buscarPeliculas(BuscarPeliculasRequestDto.builder().orden("fechaEstreno:desc, CALIFICACION").limit(20).build());
+
+        // Then
+        Sort orden = Sort.by(Sort.Order.desc("fechaEstreno"), Sort.Order.asc("calificacion"), Sort.Order.asc("peliculaId"));
+        verify(peliculaRepository, times(1)).buscarResumenes(null, null, null, orden, null, 21);
+    }
+
+    @Test
+    void buscarPeliculasSinOrdenWithCursorShouldStartAfterTheId() throws Exception {
 
         // Given
-        when(generoRepository.findById(anyLong())).thenReturn(Optional.of(genero));
+        when(peliculaRepository.buscarResumenes(isNull(), isNull(), isNull(), any(Sort.class), anyList(), anyInt())).thenReturn(Collections.emptyList());
 
         // When
-        List<PeliculaBuscadaPorParametroResponseDto> response = peliculaServiceImp.getPeliculasByGeneroId(1L);
+        peliculaServiceImp.buscarPeliculas(BuscarPeliculasRequestDto.builder().cursor(PaginacionUtility.codificarCursor(5L)).build());
 
         // Then
-        assertThat(response.get(0).getTitulo()).isEqualTo(genero.getPeliculas().get(0).getTitulo());
-        assertThat(response.get(0).getTitulo()).isEqualTo(genero.getPeliculas().get(0).getTitulo());
-        assertThat(response).isNotNull();
-        assertThat(response.isEmpty()).isFalse();
-        verify(generoRepository, times(1)).findById(anyLong());
+        verify(peliculaRepository, times(1)).buscarResumenes(null, null, null, POR_ID, List.of(5L), PaginacionUtility.LIMITE_POR_DEFECTO + 1);
+    }
+
+    @Test
+    void buscarPeliculasWithCursorOfAnotherOrdenShouldThrowException() {
+
+        // Un cursor de la busqueda sin orden solo trae el id, le falta el titulo
+        assertThatExceptionOfType(CursorInvalidoException.class)
+                .isThrownBy(() -> peliculaServiceImp.buscarPeliculas(BuscarPeliculasRequestDto.builder()
+                        .orden("DESC")
+                        .cursor(PaginacionUtility.codificarCursor(99L))
+                        .build()));
+        assertThatExceptionOfType(CursorInvalidoException.class)
+                .isThrownBy(() -> peliculaServiceImp.buscarPeliculas(BuscarPeliculasRequestDto.builder()
+                        .orden("fechaEstreno")
+                        .cursor(PaginacionUtility.codificarCursor(List.of("no es una fecha", 99L)))
+                        .build()));
+        verifyNoInteractions(peliculaRepository);
+    }
+
+    @Test
+    void buscarPeliculasWithWrongCursorShouldThrowException() {
+
+        assertThatExceptionOfType(CursorInvalidoException.class)
+                .isThrownBy(() -> peliculaServiceImp.buscarPeliculas(BuscarPeliculasRequestDto.builder().cursor("no-es-un-cursor").build()));
     }
 
     @Test
-    void getPeliculasByGeneroIdNotFoundThrowException() {
+    void buscarPeliculasWithWrongOrdenShouldThrowException() {
+
+        assertThatExceptionOfType(PeliculaBuscadaPorParametroIncorrectoException.class)
+                .isThrownBy(() -> peliculaServiceImp.buscarPeliculas(BuscarPeliculasRequestDto.builder().orden("ASCS").build()));
+        verifyNoInteractions(peliculaRepository);
+    }
+
+    @Test
+    void buscarPeliculasWithWrongSortFieldShouldThrowException() {
+
+        assertThatExceptionOfType(PeliculaBuscadaPorParametroIncorrectoException.class)
+                .isThrownBy(() -> peliculaServiceImp.buscarPeliculas(BuscarPeliculasRequestDto.builder().orden("imagen:asc").build()));
+        assertThatExceptionOfType(PeliculaBuscadaPorParametroIncorrectoException.class)
+                .isThrownBy(() -> peliculaServiceImp.buscarPeliculas(BuscarPeliculasRequestDto.builder().orden("titulo:arriba").build()));
+        assertThatExceptionOfType(PeliculaBuscadaPorParametroIncorrectoException.class)
+                .isThrownBy(() -> peliculaServiceImp.buscarPeliculas(BuscarPeliculasRequestDto.builder().orden("titulo,titulo:desc").build()));
+        verifyNoInteractions(peliculaRepository);
+    }
+
+    @Test
+    void buscarPeliculasByGeneroNotFoundShouldThrowException() {
 
         // Given
-        when(generoRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(peliculaRepository.buscarResumenes(isNull(), isNull(), anyLong(), any(Sort.class), isNull(), anyInt())).thenReturn(Collections.emptyList());
+        when(generoRepository.existsById(anyLong())).thenReturn(false);
 
         // Then
         assertThatExceptionOfType(GeneroNotFoundException.class)
-                .isThrownBy(() -> peliculaServiceImp.getPeliculasByGeneroId(anyLong()));
-        verify(generoRepository, times(1)).findById(anyLong());
+                .isThrownBy(() -> peliculaServiceImp.buscarPeliculas(BuscarPeliculasRequestDto.builder().generoId(1L).build()));
+        verify(generoRepository, times(1)).existsById(anyLong());
+    }
+
+    @Test
+    void canBuscarPeliculasByTitulo() throws Exception {
+
+        Pelicula pelicula = buildPelicula().get(0);
+        indiceCatalogo.indexarPelicula(pelicula.getPeliculaId(), pelicula.getTitulo());
+        List<PeliculaBuscadaPorParametroResponseDto> resumenes = List.of(peliculaMapper.peliculaToPeliculaBuscadaPorTituloDtoResponse(pelicula));
+        when(peliculaRepository.buscarResumenes(anyCollection(), isNull(), isNull(), any(Sort.class), isNull(), anyInt())).thenReturn(porId(resumenes));
+
+        PaginaResponseDto<PeliculaBuscadaPorParametroResponseDto> response = peliculaServiceImp.buscarPeliculas(
+                BuscarPeliculasRequestDto.builder().titulo("ace vent").build());
+
+        // Solo los ids que resolvio el indice llegan a la consulta
+        verify(peliculaRepository, times(1)).buscarResumenes(List.of(pelicula.getPeliculaId()), null, null, POR_ID, null, PaginacionUtility.LIMITE_POR_DEFECTO + 1);
+
+        assertThat(response.getContenido().get(0)).isEqualTo(peliculaMapper.peliculaToPeliculaBuscadaPorTituloDtoResponse(pelicula));
+    }
+
+    @Test
+    void buscarPeliculasByTituloYGeneroShouldSendEveryCandidateToTheQuery() throws Exception {
+
+        List<Pelicula> peliculas = buildPelicula();
+        peliculas.forEach(pelicula -> indiceCatalogo.indexarPelicula(pelicula.getPeliculaId(), pelicula.getTitulo()));
+        when(generoRepository.existsById(anyLong())).thenReturn(true);
+        when(peliculaRepository.buscarResumenes(anyCollection(), isNull(), anyLong(), any(Sort.class), isNull(), anyInt())).thenReturn(Collections.emptyList());
+
+        // Con el filtro de genero la pagina no se puede cortar en memoria: viajan todos los candidatos
+        peliculaServiceImp.buscarPeliculas(BuscarPeliculasRequestDto.builder().titulo("a").generoId(1L).limit(1).build());
+
+        NavigableSet<Long> candidatos = indiceCatalogo.buscarPeliculas("a");
+        verify(peliculaRepository, times(1)).buscarResumenes(candidatos, null, 1L, POR_ID, null, 2);
+    }
+
+    @Test
+    void buscarPeliculasByTituloWithTooManyCandidatesShouldFilterBySubstringInTheQuery() throws Exception {
+
+        for (long id = 1; id <= PaginacionUtility.MAXIMO_CANDIDATOS + 1; id++) {
+            indiceCatalogo.indexarPelicula(id, "Saga " + id);
+        }
+        when(generoRepository.existsById(anyLong())).thenReturn(true);
+        when(peliculaRepository.buscarResumenes(isNull(), anyString(), anyLong(), any(Sort.class), isNull(), anyInt())).thenReturn(Collections.emptyList());
+
+        peliculaServiceImp.buscarPeliculas(BuscarPeliculasRequestDto.builder().titulo("saga").generoId(1L).limit(1).build());
+
+        // Pasado el maximo de candidatos no viaja el IN: la base filtra por subcadena del titulo
+        verify(peliculaRepository, times(1)).buscarResumenes(null, "saga", 1L, POR_ID, null, 2);
+    }
+
+    @Test
+    void buscarPeliculasByTituloNotFoundShouldThrowException() {
+
+        assertThatExceptionOfType(PeliculaNotFoundException.class)
+                .isThrownBy(() -> peliculaServiceImp.buscarPeliculas(BuscarPeliculasRequestDto.builder().titulo("Ace Ventura").build()));
+        verifyNoInteractions(peliculaRepository);
     }
 
     @Test
@@ -201,6 +413,27 @@ class PeliculaServiceImpTest {
         // Then
         verify(peliculaRepository).delete(peliculaArgumentCaptor.capture());
         assertThat(peliculaArgumentCaptor.getValue()).isEqualTo(peliculas.get(0));
+        verify(peliculaRepository, times(1)).eliminarVotos(peliculas.get(0).getPeliculaId());
+        verify(indiceCatalogo, times(1)).eliminarPelicula(peliculas.get(0).getPeliculaId());
+    }
+
+    @Test
+    void deletePeliculaByIdShouldLeaveTheIndexAloneUntilTheCommit() throws PeliculaNotFoundException {
+
+        Pelicula pelicula = buildPelicula().get(0);
+        indiceCatalogo.indexarPelicula(pelicula.getPeliculaId(), pelicula.getTitulo());
+        when(peliculaRepository.findById(anyLong())).thenReturn(Optional.of(pelicula));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            peliculaServiceImp.deletePeliculaById(pelicula.getPeliculaId());
+            // Si la transaccion se revierte nunca llega el afterCommit y la pelicula sigue indexada
+            assertThat(indiceCatalogo.existePelicula(pelicula.getPeliculaId())).isTrue();
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            assertThat(indiceCatalogo.existePelicula(pelicula.getPeliculaId())).isFalse();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
     }
 
     @Test
@@ -224,8 +457,8 @@ class PeliculaServiceImpTest {
         Genero genero = buildGenero();
 
         // Given
-        when(peliculaRepository.findById(anyLong())).thenReturn(Optional.of(buildPelicula().get(0)));
-        when(personajeRepository.findById(anyLong())).thenReturn(Optional.ofNullable(personaje));
+        when(peliculaRepository.findConDetalleByPeliculaId(anyLong())).thenReturn(Optional.of(buildPelicula().get(0)));
+        when(personajeRepository.findAllById(anySet())).thenReturn(List.of(personaje));
         when(generoRepository.findById(anyLong())).thenReturn(Optional.ofNullable(genero));
         when(peliculaRepository.save(any())).thenReturn(pelicula);
 
@@ -233,8 +466,10 @@ class PeliculaServiceImpTest {
         PeliculaConDetalleResponseDto response = peliculaServiceImp.updatePelicula(1L, peliculaMapper.peliculaToPeliculaRequestDto(pelicula));
 
         // Then
-        verify(peliculaRepository, times(1)).findById(1L);
+        verify(peliculaRepository, times(1)).findConDetalleByPeliculaId(1L);
         verify(peliculaRepository, times(1)).save(any());
+        verify(detalleCache, times(2)).invalidarPeliculas(List.of(pelicula.getPeliculaId()));
+        verify(detalleCache, times(2)).invalidarGenero(pelicula.getGenero().getGeneroId());
         assertThat(response.getTitulo()).isEqualTo("Titulo editado");
     }
 
@@ -243,9 +478,10 @@ class PeliculaServiceImpTest {
 
         Pelicula pelicula = buildPelicula().get(0);
 
-        when(peliculaRepository.findByTituloContainingIgnoreCase(anyString())).thenReturn(Optional.ofNullable(buildPelicula().get(0)));
+        when(peliculaRepository.existsByTituloNormalizadoAndPeliculaIdNot("ace ventura", 1L)).thenReturn(true);
         assertThatExceptionOfType(PeliculaAlreadyExistsException.class)
                 .isThrownBy(() -> peliculaServiceImp.updatePelicula(1L, peliculaMapper.peliculaToPeliculaRequestDto(pelicula)));
+        verify(peliculaRepository, never()).save(any());
     }
 
     @Test
@@ -254,36 +490,86 @@ class PeliculaServiceImpTest {
         Pelicula pelicula = buildPelicula().get(0);
 
         // Given
-        when(peliculaRepository.findById(anyLong())).thenReturn(Optional.of(buildPelicula().get(0)));
-        when(personajeRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(peliculaRepository.findConDetalleByPeliculaId(anyLong())).thenReturn(Optional.of(buildPelicula().get(0)));
+        when(personajeRepository.findAllById(anySet())).thenReturn(List.of());
 
         assertThatExceptionOfType(PersonajeNotFoundException.class)
                 .isThrownBy(() -> peliculaServiceImp.updatePelicula(1L, peliculaMapper.peliculaToPeliculaRequestDto(pelicula)));
     }
 
+    @Test
+    void patchPeliculaShouldOnlyChangeTheGivenFieldsWithoutSave() throws Exception {
+
+        Pelicula pelicula = buildPelicula().get(0);
+        pelicula.setPersonajes(new LinkedHashSet<>(pelicula.getPersonajes()));
+        PatchPeliculaRequestDto patch = PatchPeliculaRequestDto.builder()
+                .titulo("Titulo editado")
+                .imagen("https://otraimagen.com.ar")
+                .build();
+
+        // Given
+        when(peliculaRepository.findConDetalleByPeliculaId(anyLong())).thenReturn(Optional.of(pelicula));
+
+        // When
+        PeliculaConDetalleResponseDto response = peliculaServiceImp.patchPelicula(1L, patch, null);
+
+        // Then: ni merge ni lecturas de reparto o genero que no se pidieron cambiar
+        verify(peliculaRepository, never()).save(any());
+        verify(personajeRepository, never()).findAllById(any());
+        verify(generoRepository, never()).findById(anyLong());
+        verify(indiceCatalogo, times(1)).indexarPelicula(1L, "Titulo editado");
+        assertThat(response.getTitulo()).isEqualTo("Titulo editado");
+        assertThat(response.getImagen()).isEqualTo("https://otraimagen.com.ar");
+        assertThat(response.getFechaEstreno()).isEqualTo(pelicula.getFechaEstreno());
+        assertThat(response.getPersonajes().size()).isEqualTo(1);
+    }
+
+    @Test
+    void patchPeliculaWithStaleIfMatchShouldThrowException() {
+
+        Pelicula pelicula = buildPelicula().get(0);
+        pelicula.setVersion(1L);
+        when(peliculaRepository.findConDetalleByPeliculaId(anyLong())).thenReturn(Optional.of(pelicula));
+
+        assertThatExceptionOfType(PeliculaModificadaException.class)
+                .isThrownBy(() -> peliculaServiceImp.patchPelicula(1L, PatchPeliculaRequestDto.builder().titulo("Otro").build(), "\"viejo\""));
+        assertThat(pelicula.getTitulo()).isEqualTo("Ace Ventura");
+    }
+
     @Test
     void canAddPersonajeToPelicula() throws PersonajeYaEnUsoException, PersonajeNotFoundException, PeliculaNotFoundException {
 
         Personaje personaje = buildPersonaje();
         personaje.setPersonajeId(99L);
         Pelicula pelicula = buildPelicula().get(0);
+        Set<Personaje> reparto = new LinkedHashSet<>(pelicula.getPersonajes());
+        reparto.add(personaje);
+        pelicula.setPersonajes(reparto);
 
-        when(personajeRepository.findById(anyLong())).thenReturn(Optional.of(personaje));
-        when(peliculaRepository.findById(anyLong())).thenReturn(Optional.of(pelicula));
-        when(peliculaRepository.save(any())).thenReturn(pelicula);
+        when(personajeRepository.existsById(anyLong())).thenReturn(true);
+        when(peliculaRepository.existsById(anyLong())).thenReturn(true);
+        when(peliculaRepository.existsPersonajeEnPelicula(anyLong(), anyLong())).thenReturn(false);
+        when(peliculaRepository.findConDetalleByPeliculaId(anyLong())).thenReturn(Optional.of(pelicula));
 
         PeliculaConDetalleResponseDto response = peliculaServiceImp.addPersonajeToPelicula(1L, 99L);
 
-        verify(personajeRepository, times(1)).findById(99L);
-        verify(peliculaRepository, times(1)).findById(1L);
-        verify(peliculaRepository, times(1)).save(any());
+        // Una sola fila nueva en la tabla intermedia: el reparto no se reescribe con un save
+        verify(peliculaRepository, times(1)).agregarPersonaje(1L, 99L);
+        verify(peliculaRepository, times(1)).incrementarVersion(1L);
+        verify(peliculaRepository, never()).save(any());
+        verify(personajeRepository, never()).findById(anyLong());
+        // El personaje ahora aparece en la pelicula: su detalle cacheado tambien queda viejo
+        verify(detalleCache, times(1)).invalidarPeliculas(List.of(1L));
+        verify(detalleCache, times(1)).invalidarPersonajes(List.of(99L));
         assertThat(response.getPersonajes().get(1).getId()).isEqualTo(personaje.getPersonajeId());
+        // Y el grafo de co-apariciones ya lo conecta con el resto del reparto
+        verify(indiceCatalogo, times(1)).agregarAlReparto(1L, List.of(99L));
     }
 
     @Test
     void addPersonajeToPeliculaPersonajeNotFound() {
 
-        when(personajeRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(personajeRepository.existsById(anyLong())).thenReturn(false);
 
         assertThatExceptionOfType(PersonajeNotFoundException.class)
                 .isThrownBy(() -> peliculaServiceImp.addPersonajeToPelicula(1L, 1L));
@@ -292,9 +578,8 @@ class PeliculaServiceImpTest {
     @Test
     void addPersonajeToPeliculaNotFound() {
 
-        Personaje personaje = buildPersonaje();
-        when(personajeRepository.findById(anyLong())).thenReturn(Optional.of(personaje));
-        when(peliculaRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(personajeRepository.existsById(anyLong())).thenReturn(true);
+        when(peliculaRepository.existsById(anyLong())).thenReturn(false);
 
         assertThatExceptionOfType(PeliculaNotFoundException.class)
                 .isThrownBy(() -> peliculaServiceImp.addPersonajeToPelicula(1L, 1L));
@@ -303,19 +588,19 @@ class PeliculaServiceImpTest {
     @Test
     void addPersonajeToPeliculaPersonajeAlreadyExists() {
 
-        Personaje personaje = buildPersonaje();
-        Pelicula pelicula = buildPelicula().get(0);
-        when(personajeRepository.findById(anyLong())).thenReturn(Optional.of(personaje));
-        when(peliculaRepository.findById(anyLong())).thenReturn(Optional.of(pelicula));
+        when(personajeRepository.existsById(anyLong())).thenReturn(true);
+        when(peliculaRepository.existsById(anyLong())).thenReturn(true);
+        when(peliculaRepository.existsPersonajeEnPelicula(anyLong(), anyLong())).thenReturn(true);
 
         assertThatExceptionOfType(PersonajeYaEnUsoException.class)
                 .isThrownBy(() -> peliculaServiceImp.addPersonajeToPelicula(1L, 1L));
+        verify(peliculaRepository, never()).agregarPersonaje(anyLong(), anyLong());
     }
 
     @Test
     void deletePersonajeDePeliculaPersonajeNotFound() {
 
-        when(personajeRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(personajeRepository.existsById(anyLong())).thenReturn(false);
 
         assertThatExceptionOfType(PersonajeNotFoundException.class)
                 .isThrownBy(() -> peliculaServiceImp.deletePersonajeDePelicula(1L, 1L));
@@ -324,9 +609,8 @@ class PeliculaServiceImpTest {
     @Test
     void deletePersonajeDePeliculaNotFoundInDatabase() {
 
-        Personaje personaje = buildPersonaje();
-        when(personajeRepository.findById(anyLong())).thenReturn(Optional.of(personaje));
-        when(peliculaRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(personajeRepository.existsById(anyLong())).thenReturn(true);
+        when(peliculaRepository.existsById(anyLong())).thenReturn(false);
 
         assertThatExceptionOfType(PeliculaNotFoundException.class)
                 .isThrownBy(() -> peliculaServiceImp.deletePersonajeDePelicula(1L, 1L));
@@ -335,49 +619,93 @@ class PeliculaServiceImpTest {
     @Test
     void deletePersonajeDePeliculaNotFoundInMovie() {
 
-        Personaje personaje = buildPersonaje();
-        personaje.setPersonajeId(99L);
-        Pelicula pelicula = buildPelicula().get(0);
-        when(personajeRepository.findById(anyLong())).thenReturn(Optional.of(personaje));
-        when(peliculaRepository.findById(anyLong())).thenReturn(Optional.of(pelicula));
+        when(personajeRepository.existsById(anyLong())).thenReturn(true);
+        when(peliculaRepository.existsById(anyLong())).thenReturn(true);
+        when(peliculaRepository.quitarPersonaje(anyLong(), anyLong())).thenReturn(0);
 
         assertThatExceptionOfType(PersonajeNotFoundInPeliculaException.class)
-                .isThrownBy(() -> peliculaServiceImp.deletePersonajeDePelicula(1L, 1L));
+                .isThrownBy(() -> peliculaServiceImp.deletePersonajeDePelicula(1L, 99L));
+        verify(peliculaRepository, never()).incrementarVersion(anyLong());
     }
 
     @Test
     void canDeletePersonajeDePelicula() throws PersonajeNotFoundInPeliculaException, PersonajeNotFoundException, PeliculaNotFoundException {
 
-        Personaje personaje = buildPersonaje();
         Pelicula pelicula = buildPelicula().get(0);
-        when(personajeRepository.findById(anyLong())).thenReturn(Optional.of(personaje));
-        when(peliculaRepository.findById(anyLong())).thenReturn(Optional.of(pelicula));
-        when(peliculaRepository.save(any())).thenReturn(pelicula);
+        pelicula.setPersonajes(new LinkedHashSet<>());
+        when(personajeRepository.existsById(anyLong())).thenReturn(true);
+        when(peliculaRepository.existsById(anyLong())).thenReturn(true);
+        when(peliculaRepository.quitarPersonaje(anyLong(), anyLong())).thenReturn(1);
+        when(peliculaRepository.findConDetalleByPeliculaId(anyLong())).thenReturn(Optional.of(pelicula));
 
         PeliculaConDetalleResponseDto response = peliculaServiceImp.deletePersonajeDePelicula(1L, 1L);
 
-        verify(personajeRepository, times(1)).findById(anyLong());
-        verify(peliculaRepository, times(1)).findById(anyLong());
-        verify(peliculaRepository, times(1)).save(any());
+        verify(peliculaRepository, times(1)).quitarPersonaje(1L, 1L);
+        verify(peliculaRepository, times(1)).incrementarVersion(1L);
+        verify(peliculaRepository, never()).save(any());
         assertThat(response.getPersonajes().isEmpty()).isTrue();
     }
 
+    @Test
+    void addPersonajesToPeliculaShouldInsertTheWholeBatchWithOneStatement() throws PeliculaNotFoundException, PersonajeNotFoundException {
+
+        Personaje personaje = buildPersonaje();
+        Personaje otro = buildPersonaje();
+        otro.setPersonajeId(2L);
+        otro.setNombre("Otro");
+        Pelicula pelicula = buildPelicula().get(0);
+        when(peliculaRepository.existsById(anyLong())).thenReturn(true);
+        when(personajeRepository.findAllById(anySet())).thenReturn(List.of(personaje, otro));
+        when(peliculaRepository.agregarPersonajes(anyLong(), anySet())).thenReturn(1);
+        when(peliculaRepository.findConDetalleByPeliculaId(anyLong())).thenReturn(Optional.of(pelicula));
+
+        peliculaServiceImp.addPersonajesToPelicula(1L, List.of(1L, 2L, 2L));
+
+        verify(peliculaRepository, times(1)).agregarPersonajes(1L, Set.of(1L, 2L));
+        verify(peliculaRepository, times(1)).incrementarVersion(1L);
+        verify(peliculaRepository, times(1)).findConDetalleByPeliculaId(1L);
+        verify(detalleCache, times(1)).invalidarPersonajes(Set.of(1L, 2L));
+    }
+
+    @Test
+    void addPersonajesToPeliculaWithUnknownIdsShouldNotInsertAnything() {
+
+        when(peliculaRepository.existsById(anyLong())).thenReturn(true);
+        when(personajeRepository.findAllById(anySet())).thenReturn(List.of(buildPersonaje()));
+
+        assertThatExceptionOfType(PersonajeNotFoundException.class)
+                .isThrownBy(() -> peliculaServiceImp.addPersonajesToPelicula(1L, List.of(1L, 5L)))
+                .withMessage("NO SE ENCONTRARON LOS PERSONAJES CON ID [5]");
+        verify(peliculaRepository, never()).agregarPersonajes(anyLong(), anySet());
+    }
+
+    @Test
+    void deletePersonajesDePeliculaWithoutMatchingRowsShouldThrowException() {
+
+        when(peliculaRepository.existsById(anyLong())).thenReturn(true);
+        when(peliculaRepository.quitarPersonajes(anyLong(), anySet())).thenReturn(0);
+
+        assertThatExceptionOfType(PersonajeNotFoundInPeliculaException.class)
+                .isThrownBy(() -> peliculaServiceImp.deletePersonajesDePelicula(1L, List.of(7L, 8L)));
+        verify(peliculaRepository, never()).incrementarVersion(anyLong());
+    }
+
     @Test
     void canCreatePelicula() throws PersonajeNotFoundException, PeliculaAlreadyExistsException {
 
         Pelicula pelicula = buildPelicula().get(0);
         Personaje personaje = buildPersonaje();
         Genero genero = buildGenero();
-        when(peliculaRepository.findByTituloContainingIgnoreCase(anyString())).thenReturn(Optional.empty());
         when(peliculaRepository.save(any())).thenReturn(pelicula);
-        when(personajeRepository.findById(anyLong())).thenReturn(Optional.of(personaje));
+        when(personajeRepository.findAllById(anySet())).thenReturn(List.of(personaje));
         when(generoRepository.findById(anyLong())).thenReturn(Optional.of(genero));
 
         CreatePeliculaRequestDto peliculaMappeadaParaGuardar = peliculaMapper.peliculaToCreatePeliculaRequestDto(pelicula);
         peliculaServiceImp.createPelicula(peliculaMappeadaParaGuardar);
 
-        verify(peliculaRepository, times(1)).findByTituloContainingIgnoreCase(anyString());
+        verify(peliculaRepository, times(1)).existsByTituloNormalizado("ace ventura");
         verify(peliculaRepository, times(1)).save(any());
+        verify(indiceCatalogo, times(1)).indexarPelicula(pelicula.getPeliculaId(), pelicula.getTitulo());
         verify(generoRepository, times(1)).findById(genero.getGeneroId());
     }
 
@@ -385,95 +713,280 @@ class PeliculaServiceImpTest {
     void createPeliculaAlreadyExists() {
 
         Pelicula pelicula = buildPelicula().get(0);
-        when(peliculaRepository.findByTituloContainingIgnoreCase(anyString())).thenReturn(Optional.of(pelicula));
+        when(peliculaRepository.existsByTituloNormalizado("ace ventura")).thenReturn(true);
 
         assertThatExceptionOfType(PeliculaAlreadyExistsException.class)
                 .isThrownBy(() -> peliculaServiceImp.createPelicula(peliculaMapper.peliculaToCreatePeliculaRequestDto(pelicula)));
     }
 
+    @Test
+    void createPeliculaWithTituloContainingAnotherShouldNotBeADuplicate() throws Exception {
+
+        // "Cars" ya existe: "Cars 2" contiene ese titulo pero es otra pelicula
+        indiceCatalogo.indexarPelicula(5L, "Cars");
+        Personaje personaje = buildPersonaje();
+        CreatePeliculaRequestDto request = buildCreateRequest("  Cárs   2 ", personaje.getPersonajeId());
+        when(personajeRepository.findAllById(anySet())).thenReturn(List.of(personaje));
+        when(generoRepository.findById(anyLong())).thenReturn(Optional.of(buildGenero()));
+        when(peliculaRepository.save(any())).thenAnswer(invocation -> {
+            Pelicula pelicula = invocation.getArgument(0);
+            pelicula.setPeliculaId(6L);
+            return pelicula;
+        });
+
+        peliculaServiceImp.createPelicula(request);
+
+        verify(peliculaRepository, times(1)).existsByTituloNormalizado("cars 2");
+        verify(peliculaRepository, times(1)).save(argThat(pelicula -> pelicula.getTituloNormalizado().equals("cars 2")));
+    }
+
+    @Test
+    void createPeliculaLosingTheRaceForTheTituloShouldThrowException() {
+
+        Pelicula pelicula = buildPelicula().get(0);
+        when(personajeRepository.findAllById(anySet())).thenReturn(List.of(buildPersonaje()));
+        when(generoRepository.findById(anyLong())).thenReturn(Optional.of(buildGenero()));
+        // Otra alta guardo el mismo titulo despues de la verificacion: el indice unico rechaza el INSERT
+        when(peliculaRepository.save(any())).thenThrow(new DataIntegrityViolationException("UK_PELICULA_TITULO_NORMALIZADO"));
+
+        assertThatExceptionOfType(PeliculaAlreadyExistsException.class)
+                .isThrownBy(() -> peliculaServiceImp.createPelicula(peliculaMapper.peliculaToCreatePeliculaRequestDto(pelicula)));
+        verify(indiceCatalogo, never()).indexarPelicula(anyLong(), anyString());
+    }
+
     @Test
     void createPeliculaPersonajeNotFound() {
 
         Pelicula pelicula = buildPelicula().get(0);
-        when(peliculaRepository.findByTituloContainingIgnoreCase(anyString())).thenReturn(Optional.empty());
-        when(personajeRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(personajeRepository.findAllById(anySet())).thenReturn(List.of());
 
         assertThatExceptionOfType(PersonajeNotFoundException.class)
                 .isThrownBy(() -> peliculaServiceImp.createPelicula(peliculaMapper.peliculaToCreatePeliculaRequestDto(pelicula)));
     }
 
+    @Test
+    void createPeliculaShouldReportEveryMissingPersonajeWithOneQuery() {
+
+        Personaje personaje = buildPersonaje();
+        CreatePeliculaRequestDto request = buildCreateRequest("Titanic", personaje.getPersonajeId());
+        request.setPersonajesId(List.of(7L, personaje.getPersonajeId(), 3L, 7L));
+        when(personajeRepository.findAllById(anySet())).thenReturn(List.of(personaje));
+
+        assertThatExceptionOfType(PersonajeNotFoundException.class)
+                .isThrownBy(() -> peliculaServiceImp.createPelicula(request))
+                .withMessage("NO SE ENCONTRARON LOS PERSONAJES CON ID [3, 7]");
+        verify(personajeRepository, times(1)).findAllById(Set.of(7L, personaje.getPersonajeId(), 3L));
+        verify(personajeRepository, never()).findById(anyLong());
+    }
+
     @Test
     void createPeliculaGeneroNotFound() {
 
         Pelicula pelicula = buildPelicula().get(0);
         Personaje personaje = buildPersonaje();
 
-        when(peliculaRepository.findByTituloContainingIgnoreCase(anyString())).thenReturn(Optional.empty());
-        when(personajeRepository.findById(anyLong())).thenReturn(Optional.of(personaje));
+        when(personajeRepository.findAllById(anySet())).thenReturn(List.of(personaje));
         when(generoRepository.findById(anyLong())).thenReturn(Optional.empty());
 
         assertThatExceptionOfType(NoSuchElementException.class)
                 .isThrownBy(() -> peliculaServiceImp.createPelicula(peliculaMapper.peliculaToCreatePeliculaRequestDto(pelicula)));
     }
 
+    @Test
+    void crearPeliculasEnLoteShouldSaveValidItemsAndReportTheRest() {
+
+        Pelicula existente = buildPelicula().get(0);
+        List<CreatePeliculaRequestDto> lote = List.of(
+                buildCreateRequest("Titanic", 1L),
+                buildCreateRequest(existente.getTitulo(), 1L),
+                buildCreateRequest("Matrix", 99L),
+                buildCreateRequest("TITANIC", 1L));
+
+        // Given
+        when(personajeRepository.findAllById(anySet())).thenReturn(List.of(buildPersonaje()));
+        when(generoRepository.findAllById(anySet())).thenReturn(List.of(buildGenero()));
+        when(peliculaRepository.findTitulosNormalizadosIn(anySet())).thenReturn(List.of("ace ventura"));
+        when(peliculaRepository.saveAllAndFlush(anyList())).thenAnswer(invocation -> {
+            List<Pelicula> peliculas = invocation.getArgument(0);
+            peliculas.forEach(pelicula -> pelicula.setPeliculaId(10L));
+            return peliculas;
+        });
+
+        // When
+        ResultadoLoteResponseDto response = peliculaServiceImp.crearPeliculasEnLote(lote);
+
+        // Then
+        // Un solo IN para personajes y otro para generos, y un solo saveAll para todo el lote
+        verify(personajeRepository, never()).findById(anyLong());
+        verify(peliculaRepository, times(1)).findTitulosNormalizadosIn(Set.of("titanic", "ace ventura", "matrix"));
+        verify(peliculaRepository, times(1)).saveAllAndFlush(anyList());
+        verify(transactionManager, times(1)).commit(any());
+        assertThat(response.getCreadas()).isEqualTo(List.of(10L));
+        assertThat(response.getErrores().size()).isEqualTo(3);
+        assertThat(response.getErrores().get(0).getIndice()).isEqualTo(1);
+        assertThat(response.getErrores().get(0).getError()).isEqualTo("LA PELICULA YA EXISTE");
+        assertThat(response.getErrores().get(1).getError()).isEqualTo("NO SE ENCONTRO EL PERSONAJE");
+        assertThat(response.getErrores().get(2).getError()).isEqualTo("LA PELICULA ESTA REPETIDA EN EL LOTE");
+        assertThat(indiceCatalogo.buscarPeliculas("titanic").contains(10L)).isTrue();
+    }
+
+    @Test
+    void crearPeliculasEnLoteShouldReportTheConstraintsOfEachItem() {
+
+        CreatePeliculaRequestDto sinImagen = buildCreateRequest("Matrix", 1L);
+        sinImagen.setImagen(" ");
+        CreatePeliculaRequestDto fueraDeRango = buildCreateRequest("Shrek", 1L);
+        fueraDeRango.setCalificacion(9);
+        List<CreatePeliculaRequestDto> lote = List.of(buildCreateRequest("Titanic", 1L), sinImagen, fueraDeRango);
+
+        // Given
+        when(personajeRepository.findAllById(anySet())).thenReturn(List.of(buildPersonaje()));
+        when(generoRepository.findAllById(anySet())).thenReturn(List.of(buildGenero()));
+        when(peliculaRepository.saveAllAndFlush(anyList())).thenAnswer(invocation -> {
+            List<Pelicula> peliculas = invocation.getArgument(0);
+            peliculas.forEach(pelicula -> pelicula.setPeliculaId(10L));
+            return peliculas;
+        });
+
+        // When
+        ResultadoLoteResponseDto response = peliculaServiceImp.crearPeliculasEnLote(lote);
+
+        // Then
+        // Solo Titanic llega a la base: los otros dos se informan sin revertir el lote
+        ArgumentCaptor<List<Pelicula>> guardadas = ArgumentCaptor.forClass(List.class);
+        verify(peliculaRepository, times(1)).saveAllAndFlush(guardadas.capture());
+        assertThat(guardadas.getValue().size()).isEqualTo(1);
+        assertThat(response.getErrores().size()).isEqualTo(2);
+        assertThat(response.getErrores().get(0).getIndice()).isEqualTo(1);
+        assertThat(response.getErrores().get(0).getError()).startsWith("DATOS INVALIDOS: imagen");
+        assertThat(response.getErrores().get(1).getIndice()).isEqualTo(2);
+        assertThat(response.getErrores().get(1).getError()).startsWith("DATOS INVALIDOS: calificacion");
+    }
+
+    @Test
+    void crearPeliculasEnLoteRejectedByTheUniqueIndexShouldOnlyReportTheDuplicate() {
+
+        List<CreatePeliculaRequestDto> lote = List.of(buildCreateRequest("Titanic", 1L), buildCreateRequest("Matrix", 1L));
+
+        // Given
+        when(personajeRepository.findAllById(anySet())).thenReturn(List.of(buildPersonaje()));
+        when(generoRepository.findAllById(anySet())).thenReturn(List.of(buildGenero()));
+        // Otra alta guarda Titanic entre la verificacion del lote y el INSERT
+        when(peliculaRepository.findTitulosNormalizadosIn(anySet())).thenReturn(List.of(), List.of("titanic"));
+        when(peliculaRepository.saveAllAndFlush(anyList())).thenAnswer(invocation -> {
+            List<Pelicula> peliculas = invocation.getArgument(0);
+            if (peliculas.stream().anyMatch(pelicula -> pelicula.getTitulo().equals("Titanic"))) {
+                throw new DataIntegrityViolationException("UK_PELICULA_TITULO_NORMALIZADO");
+            }
+            peliculas.forEach(pelicula -> pelicula.setPeliculaId(20L));
+            return peliculas;
+        });
+
+        // When
+        ResultadoLoteResponseDto response = peliculaServiceImp.crearPeliculasEnLote(lote);
+
+        // Then
+        // El tramo se revierte y sus items se reintentan de a uno
+        verify(peliculaRepository, times(3)).saveAllAndFlush(anyList());
+        verify(transactionManager, times(2)).rollback(any());
+        assertThat(response.getCreadas()).isEqualTo(List.of(20L));
+        assertThat(response.getErrores().size()).isEqualTo(1);
+        assertThat(response.getErrores().get(0).getIndice()).isEqualTo(0);
+        assertThat(response.getErrores().get(0).getError()).isEqualTo("LA PELICULA YA EXISTE");
+        assertThat(indiceCatalogo.existePelicula(20L)).isTrue();
+    }
+
     @Test
     void canGetPeliculaById() throws PeliculaNotFoundException {
 
         Pelicula pelicula = buildPelicula().get(0);
 
         // Given
-        when(peliculaRepository.findById(anyLong())).thenReturn(Optional.of(pelicula));
+        when(peliculaRepository.findConDetalleByPeliculaId(anyLong())).thenReturn(Optional.of(pelicula));
 
         // When
         PeliculaConDetalleResponseDto repsonse = peliculaServiceImp.getPeliculaById(1L);
 
         // Then
-        verify(peliculaRepository, times(1)).findById(anyLong());
+        verify(peliculaRepository, times(1)).findConDetalleByPeliculaId(anyLong());
         assertThat(repsonse).isNotNull();
         assertThat(repsonse).isEqualTo(peliculaMapper.peliculaToDetallePeliculaResponseDto(pelicula));
     }
 
     @Test
-    void getPeliculaByIdNotFoundShouldThrowException() {
+    void getPeliculaByIdShouldBeServedFromCacheUntilInvalidated() throws PeliculaNotFoundException {
 
-        when(peliculaRepository.findById(anyLong())).thenReturn(Optional.empty());
+        Pelicula pelicula = buildPelicula().get(0);
 
-        assertThatExceptionOfType(PeliculaNotFoundException.class)
-                .isThrownBy(() -> peliculaServiceImp.getPeliculaById(anyLong()));
+        // Given
+        when(peliculaRepository.findConDetalleByPeliculaId(anyLong())).thenReturn(Optional.of(pelicula));
+
+        // When
+        PeliculaConDetalleResponseDto primera = peliculaServiceImp.getPeliculaById(1L);
+        PeliculaConDetalleResponseDto segunda = peliculaServiceImp.getPeliculaById(1L);
+        detalleCache.invalidarPeliculas(List.of(1L));
+        peliculaServiceImp.getPeliculaById(1L);
+
+        // Then
+        assertThat(segunda).isSameAs(primera);
+        verify(peliculaRepository, times(2)).findConDetalleByPeliculaId(1L);
     }
 
     @Test
-    void getPeliculasSinParametros() {
-        List<Pelicula> peliculas = buildPelicula();
+    void getPeliculaByIdFromCacheShouldKeepTheEtagOfTheCachedDetail() throws PeliculaNotFoundException {
+
+        Pelicula pelicula = buildPelicula().get(0);
+        pelicula.setVersion(1L);
+        String etagCacheado = EtagUtility.etag(EtagUtility.versionesDetalle(pelicula));
 
-        when(peliculaRepository.findAll()).thenReturn(peliculas);
+        // Given
+        when(peliculaRepository.findConDetalleByPeliculaId(anyLong())).thenReturn(Optional.of(pelicula));
+        peliculaServiceImp.getPeliculaById(1L);
+        // Una edicion cambia la version en la base antes de que llegue la invalidacion
+        pelicula.setVersion(2L);
 
-        List<PeliculaBuscadaPorParametroResponseDto> response = peliculaServiceImp.getPeliculasSinParametros();
+        // When
+        PeliculaConDetalleResponseDto response = peliculaServiceImp.getPeliculaById(1L);
 
-        verify(peliculaRepository, times(1)).findAll();
-        assertThat(response).isEqualTo(peliculaMapper.peliculaToPeliculaBuscadaPorParametroResponseDto(peliculas));
-        assertThat(response).isNotNull();
+        // Then: el detalle viejo sale con su propio ETag, no con el de la version nueva
+        assertThat(response.getEtag()).isEqualTo(etagCacheado);
+        assertThat(response.getEtag()).isNotEqualTo(EtagUtility.etag(EtagUtility.versionesDetalle(pelicula)));
     }
 
     @Test
-    void canGetPeliculaByTitulo() throws PeliculaNotFoundException {
+    void getEtagPeliculaShouldHashVersionsWithoutLoadingTheDetail() throws PeliculaNotFoundException {
 
-        Pelicula pelicula = buildPelicula().get(0);
-        when(peliculaRepository.findByTituloContainingIgnoreCase(anyString())).thenReturn(Optional.of(pelicula));
+        List<Object[]> versiones = new ArrayList<>();
+        versiones.add(new Object[]{0L, 1L, 0L, 1L, 0L});
+
+        // Given
+        when(peliculaRepository.findVersionesDetalleByPeliculaId(anyLong())).thenReturn(versiones);
 
-        PeliculaBuscadaPorParametroResponseDto response = peliculaServiceImp.getPeliculaByTitulo("Ace Ventura");
+        // When
+        String etag = peliculaServiceImp.getEtagPelicula(1L);
 
-        assertThat(response).isEqualTo(peliculaMapper.peliculaToPeliculaBuscadaPorTituloDtoResponse(pelicula));
+        // Then
+        assertThat(etag).isEqualTo(EtagUtility.etag(versiones));
+        assertThat(etag).startsWith("\"");
+        verify(peliculaRepository, never()).findConDetalleByPeliculaId(anyLong());
     }
 
     @Test
-    void getPeliculaByTituloShouldThrowException() {
+    void getEtagPeliculaNotFoundShouldThrowException() {
 
-        when(peliculaRepository.findByTituloContainingIgnoreCase(anyString())).thenReturn(Optional.empty());
+        when(peliculaRepository.findVersionesDetalleByPeliculaId(anyLong())).thenReturn(Collections.emptyList());
 
         assertThatExceptionOfType(PeliculaNotFoundException.class)
-                .isThrownBy(() -> peliculaServiceImp.getPeliculaByTitulo(anyString()));
+                .isThrownBy(() -> peliculaServiceImp.getEtagPelicula(1L));
+    }
+
+    @Test
+    void getPeliculaByIdNotFoundShouldThrowException() {
+
+        when(peliculaRepository.findConDetalleByPeliculaId(anyLong())).thenReturn(Optional.empty());
 
+        assertThatExceptionOfType(PeliculaNotFoundException.class)
+                .isThrownBy(() -> peliculaServiceImp.getPeliculaById(1L));
     }
 
     private List<Pelicula> buildPelicula() {
@@ -483,7 +996,7 @@ class PeliculaServiceImpTest {
                 .imagen(IMAGEN)
                 .calificacion(5)
                 .fechaEstreno(Date.from(Instant.now()))
-                .personajes(List.of(buildPersonaje()))
+                .personajes(Set.of(buildPersonaje()))
                 .genero(buildGenero())
                 .build();
 
@@ -493,13 +1006,31 @@ class PeliculaServiceImpTest {
                 .imagen(IMAGEN)
                 .calificacion(5)
                 .fechaEstreno(Date.from(Instant.now()))
-                .personajes(List.of(buildPersonaje()))
+                .personajes(Set.of(buildPersonaje()))
                 .genero(buildGenero())
                 .build();
 
         return List.of(pelicula1, pelicula2);
     }
 
+    // Filas ordenadas solo por id: el cursor de cada una es su id
+    private static List<FilaConOrden<PeliculaBuscadaPorParametroResponseDto>> porId(List<PeliculaBuscadaPorParametroResponseDto> resumenes) {
+        return resumenes.stream()
+                .map(resumen -> new FilaConOrden<>(resumen, List.<Object>of(resumen.getId())))
+                .collect(Collectors.toList());
+    }
+
+    private CreatePeliculaRequestDto buildCreateRequest(String titulo, Long personajeId) {
+        return CreatePeliculaRequestDto.builder()
+                .titulo(titulo)
+                .imagen(IMAGEN)
+                .calificacion(4)
+                .fechaEstreno(Date.from(Instant.now()))
+                .personajesId(List.of(personajeId))
+                .generoId(1L)
+                .build();
+    }
+
     private Genero buildGenero() {
         return Genero.builder()
                 .generoId(1L)
@@ -1,25 +1,41 @@
 package com.challenge.alkemy.service;
 
 import com.challenge.alkemy.entity.Pelicula;
+import com.challenge.alkemy.cache.DetalleCache;
 import com.challenge.alkemy.entity.Personaje;
+import com.challenge.alkemy.entity.dto.paginaDto.response.PaginaResponseDto;
+import com.challenge.alkemy.entity.dto.peliculaDto.response.PeliculaBuscadaPorParametroResponseDto;
 import com.challenge.alkemy.entity.dto.personajeDto.PersonajeMapper;
+import com.challenge.alkemy.entity.dto.personajeDto.request.BuscarPersonajesRequestDto;
 import com.challenge.alkemy.entity.dto.personajeDto.request.CreateOrUpdatePersonajeRequestDto;
+import com.challenge.alkemy.entity.dto.personajeDto.request.PatchPersonajeRequestDto;
 import com.challenge.alkemy.entity.dto.personajeDto.response.PersonajeBuscadoPorParametroResponseDto;
 import com.challenge.alkemy.entity.dto.personajeDto.response.PersonajeConDetalleResponseDto;
+import com.challenge.alkemy.entity.dto.personajeDto.response.SeparacionResponseDto;
+import com.challenge.alkemy.error.pagina.CursorInvalidoException;
+import com.challenge.alkemy.error.personaje.PersonajeBuscadoPorParametroIncorrectoException;
+import com.challenge.alkemy.error.personaje.PersonajeModificadoException;
 import com.challenge.alkemy.error.personaje.PersonajeNotFoundException;
 import com.challenge.alkemy.error.personaje.PersonajeYaEnUsoException;
+import com.challenge.alkemy.error.personaje.PersonajesSinConexionException;
+import com.challenge.alkemy.indice.IndiceCatalogo;
+import com.challenge.alkemy.repository.FilaConOrden;
 import com.challenge.alkemy.repository.PeliculaRepository;
+import com.challenge.alkemy.repository.PersonajeHistoriaRepository;
 import com.challenge.alkemy.repository.PersonajeRepository;
+import com.challenge.alkemy.utility.EtagUtility;
+import com.challenge.alkemy.utility.PaginacionUtility;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Sort;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
@@ -42,9 +58,18 @@ class PersonajeServiceImpTest {
     @Mock
     private PeliculaRepository peliculaRepository;
 
+    @Mock
+    private PersonajeHistoriaRepository personajeHistoriaRepository;
+
     @Spy
     private PersonajeMapper personajeMapper;
 
+    @Spy
+    private IndiceCatalogo indiceCatalogo;
+
+    @Spy
+    private DetalleCache detalleCache = new DetalleCache(100);
+
     @InjectMocks
     private PersonajeServiceImp personajeServiceImp;
 
@@ -52,30 +77,32 @@ class PersonajeServiceImpTest {
     void canGetAllPersonajes() {
 
         // Given
-        when(personajeRepository.findAll()).thenReturn(Collections.singletonList(buildPersonaje()));
+        when(personajeRepository.findAllConDetalle()).thenReturn(Collections.singletonList(buildPersonaje()));
 
         // When
         List<PersonajeConDetalleResponseDto> response = personajeServiceImp.getAllPersonajes();
 
         // Then
-        verify(personajeRepository, times(1)).findAll();
+        verify(personajeRepository, times(1)).findAllConDetalle();
 
         assertThat(response).isNotNull();
         assertThat(response.isEmpty()).isFalse();
         assertThat(response.get(0).getId().equals(buildPersonaje().getPersonajeId())).isTrue();
+        // La historia solo viaja en el detalle
+        assertThat(response.get(0).getHistoria()).isNull();
     }
 
     @Test
     void canGetAllPersonajesReturningEmptyList() {
 
         // Given
-        when(personajeRepository.findAll()).thenReturn(Collections.emptyList());
+        when(personajeRepository.findAllConDetalle()).thenReturn(Collections.emptyList());
 
         // When
         List<PersonajeConDetalleResponseDto> response = personajeServiceImp.getAllPersonajes();
 
         // Then
-        verify(personajeRepository, times(1)).findAll();
+        verify(personajeRepository, times(1)).findAllConDetalle();
 
         assertThat(response.isEmpty()).isTrue();
         assertThat(response).isNotNull();
@@ -85,7 +112,6 @@ class PersonajeServiceImpTest {
     void canSavePersonaje() throws PersonajeYaEnUsoException {
 
         // Given
-        when(personajeRepository.findByNombreContainingIgnoreCase(anyString())).thenReturn(Optional.empty());
         when(personajeRepository.save(any())).thenReturn(buildPersonaje());
 
         // When
@@ -95,6 +121,8 @@ class PersonajeServiceImpTest {
 
         // Then
         verify(personajeRepository, times(1)).save(any());
+        verify(indiceCatalogo, times(1)).indexarPersonaje(1L, NOMBRE);
+        assertThat(indiceCatalogo.buscarPersonajes(NOMBRE).contains(1L)).isTrue();
 
         assertAll(
                 () -> assertThat(response).isEqualTo(personajeMapper.personajeToPersonajeConDetalleResponseDto(buildPersonaje())),
@@ -113,17 +141,39 @@ class PersonajeServiceImpTest {
     void savePersonajeAlreadyExistsShouldReturnException() {
 
         // Given
-        when(personajeRepository.findByNombreContainingIgnoreCase(anyString()))
-                .thenReturn(Optional.of(buildPersonaje()));
+        when(personajeRepository.existsByNombreNormalizado("carlos")).thenReturn(true);
 
         // When
         CreateOrUpdatePersonajeRequestDto request = buildPersonajeRequestDto();
+        request.setNombre("  CÁRLOS ");
 
         // Then
-        verify(personajeRepository, times(0)).save(buildPersonaje());
-
         assertThatExceptionOfType(PersonajeYaEnUsoException.class)
                 .isThrownBy(() -> personajeServiceImp.savePersonaje(request));
+        verify(personajeRepository, times(0)).save(any());
+    }
+
+    @Test
+    void savePersonajeWhoseNameIsPrefixOfAnotherShouldSave() throws PersonajeYaEnUsoException {
+
+        // Given
+        // "Car" es subcadena de "Carlos": el indice de trigramas lo encuentra, pero no es el mismo personaje
+        indiceCatalogo.indexarPersonaje(id, NOMBRE);
+        when(personajeRepository.existsByNombreNormalizado("car")).thenReturn(false);
+        when(personajeRepository.save(any())).thenAnswer(invocation -> {
+            Personaje personaje = invocation.getArgument(0);
+            personaje.setPersonajeId(2L);
+            return personaje;
+        });
+
+        // When
+        CreateOrUpdatePersonajeRequestDto request = buildPersonajeRequestDto();
+        request.setNombre("Car");
+        PersonajeConDetalleResponseDto response = personajeServiceImp.savePersonaje(request);
+
+        // Then
+        verify(personajeRepository, times(1)).save(any());
+        assertThat(response.getNombre()).isEqualTo("Car");
     }
 
     @Test
@@ -132,13 +182,13 @@ class PersonajeServiceImpTest {
         Personaje personaje = buildPersonaje();
 
         // Given
-        when(personajeRepository.findById(anyLong())).thenReturn(Optional.of(personaje));
+        when(personajeRepository.findConDetalleByPersonajeId(anyLong())).thenReturn(Optional.of(personaje));
 
         // When
         PersonajeConDetalleResponseDto response = personajeServiceImp.getPersonajeById(id);
 
         // Then
-        verify(personajeRepository, times(1)).findById(id);
+        verify(personajeRepository, times(1)).findConDetalleByPersonajeId(id);
 
         assertAll(
                 () -> assertThat(response).isNotNull(),
@@ -158,13 +208,38 @@ class PersonajeServiceImpTest {
     void persoajeByIdNotFoundShouldThrowException() {
 
         // Given
-        when(personajeRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(personajeRepository.findConDetalleByPersonajeId(anyLong())).thenReturn(Optional.empty());
 
         // Then
         assertThatExceptionOfType(PersonajeNotFoundException.class)
                 .isThrownBy(() -> personajeServiceImp.getPersonajeById(id));
 
-        verify(personajeRepository, times(1)).findById(id);
+        verify(personajeRepository, times(1)).findConDetalleByPersonajeId(id);
+    }
+
+    @Test
+    void getEtagPersonajeShouldChangeWithAnyVersion() throws PersonajeNotFoundException {
+
+        List<Object[]> versiones = new ArrayList<>();
+        versiones.add(new Object[]{0L, 1L, 0L, 1L, 0L});
+        List<Object[]> peliculaEditada = new ArrayList<>();
+        peliculaEditada.add(new Object[]{0L, 1L, 1L, 1L, 0L});
+
+        // Given
+        when(personajeRepository.findVersionesDetalleByPersonajeId(anyLong())).thenReturn(versiones, peliculaEditada);
+
+        // Then
+        assertThat(personajeServiceImp.getEtagPersonaje(1L)).isNotEqualTo(personajeServiceImp.getEtagPersonaje(1L));
+        verify(personajeRepository, never()).findConDetalleByPersonajeId(anyLong());
+    }
+
+    @Test
+    void getEtagPersonajeNotFoundShouldThrowException() {
+
+        when(personajeRepository.findVersionesDetalleByPersonajeId(anyLong())).thenReturn(Collections.emptyList());
+
+        assertThatExceptionOfType(PersonajeNotFoundException.class)
+                .isThrownBy(() -> personajeServiceImp.getEtagPersonaje(1L));
     }
 
     @Test
@@ -173,16 +248,31 @@ class PersonajeServiceImpTest {
         Personaje personaje = buildPersonaje();
 
         // Given
-        when(personajeRepository.findById(anyLong())).thenReturn(Optional.of(personaje));
+        when(personajeRepository.existsById(anyLong())).thenReturn(true);
+        when(peliculaRepository.findPeliculaIdsByPersonajeId(anyLong())).thenReturn(List.of(4L, 5L));
+        when(personajeRepository.findHistoriaIdByPersonajeId(anyLong())).thenReturn(Optional.of(9L));
 
         // When
         personajeServiceImp.deletePersonajeById(personaje.getPersonajeId());
-        ArgumentCaptor<Personaje> generoArgumentCaptor =
-                ArgumentCaptor.forClass(Personaje.class);
 
-        // Then
-        verify(personajeRepository).delete(generoArgumentCaptor.capture());
-        assertThat(generoArgumentCaptor.getValue()).isEqualTo(personaje);
+        // Then: ni el personaje ni sus peliculas se cargan, todo sale en sentencias de conjunto
+        verify(peliculaRepository, times(1)).incrementarVersionDePeliculasConPersonaje(personaje.getPersonajeId());
+        verify(peliculaRepository, times(1)).quitarPersonajeDeTodasLasPeliculas(personaje.getPersonajeId());
+        verify(personajeRepository, times(1)).eliminarPorId(personaje.getPersonajeId());
+        verify(personajeRepository, never()).findById(anyLong());
+        verify(personajeHistoriaRepository, times(1)).eliminarPorId(9L);
+        verify(indiceCatalogo, times(1)).eliminarPersonaje(personaje.getPersonajeId());
+        verify(detalleCache, times(1)).invalidarPeliculas(List.of(4L, 5L));
+    }
+
+    @Test
+    void deletePersonajeByIdNotFoundShouldThrowException() {
+
+        when(personajeRepository.existsById(anyLong())).thenReturn(false);
+
+        assertThatExceptionOfType(PersonajeNotFoundException.class)
+                .isThrownBy(() -> personajeServiceImp.deletePersonajeById(1L));
+        verify(peliculaRepository, never()).quitarPersonajeDeTodasLasPeliculas(anyLong());
     }
 
     @Test
@@ -195,15 +285,15 @@ class PersonajeServiceImpTest {
         personajeToUpdate.setHistoria("Historia editada");
 
         // Given
-        when(personajeRepository.findById(anyLong())).thenReturn(Optional.of(personaje));
-        when(personajeRepository.save(any())).thenReturn(personaje);
+        when(personajeRepository.findConDetalleByPersonajeId(anyLong())).thenReturn(Optional.of(personaje));
 
         // When
         PersonajeConDetalleResponseDto response = personajeServiceImp.updatePersonaje(id, personajeToUpdate);
 
-        // Then
-        verify(personajeRepository, times(1)).findById(id);
-        verify(personajeRepository, times(1)).save(personaje);
+        // Then: la entidad administrada se escribe al cerrar la transaccion, sin merge
+        verify(personajeRepository, times(1)).findConDetalleByPersonajeId(id);
+        verify(personajeRepository, never()).save(any());
+        verify(detalleCache, times(1)).invalidarPersonajes(List.of(personaje.getPersonajeId()));
 
         assertAll(
                 () -> assertThat(response).isEqualTo(personajeMapper.personajeToPersonajeConDetalleResponseDto(personaje)),
@@ -217,48 +307,129 @@ class PersonajeServiceImpTest {
     void updatePersonajeNotFoundByIdShouldThrowException() {
 
         // Given
-        when(personajeRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(personajeRepository.findConDetalleByPersonajeId(anyLong())).thenReturn(Optional.empty());
 
         // Then
         assertThatExceptionOfType(PersonajeNotFoundException.class)
                 .isThrownBy(() -> personajeServiceImp.getPersonajeById(id));
 
-        verify(personajeRepository, times(1)).findById(id);
+        verify(personajeRepository, times(1)).findConDetalleByPersonajeId(id);
+    }
+
+    @Test
+    void patchPersonajeShouldOnlyChangeTheGivenFieldsWithoutSave() throws PersonajeNotFoundException, PersonajeModificadoException {
+
+        Personaje personaje = buildPersonaje();
+        personaje.setVersion(3L);
+        String etag = EtagUtility.etag(EtagUtility.versionesDetalle(personaje));
+        PatchPersonajeRequestDto patch = PatchPersonajeRequestDto.builder().historia("Historia editada").build();
+
+        // Given
+        when(personajeRepository.findConDetalleByPersonajeId(anyLong())).thenReturn(Optional.of(personaje));
+
+        // When
+        PersonajeConDetalleResponseDto response = personajeServiceImp.patchPersonaje(1L, patch, etag);
+
+        // Then: la entidad administrada se escribe al cerrar la transaccion, sin merge
+        verify(personajeRepository, never()).save(any());
+        verify(detalleCache, times(1)).invalidarPersonajes(List.of(1L));
+        assertAll(
+                () -> assertThat(response.getHistoria()).isEqualTo("Historia editada"),
+                () -> assertThat(response.getNombre()).isEqualTo(NOMBRE),
+                () -> assertThat(response.getEdad()).isEqualTo(EDAD)
+        );
+    }
+
+    @Test
+    void patchPersonajeWithStaleIfMatchShouldThrowException() {
+
+        Personaje personaje = buildPersonaje();
+        personaje.setVersion(3L);
+        String etagViejo = EtagUtility.etag(List.<Object[]>of(new Object[]{2L, null, null, null, null}));
+        when(personajeRepository.findConDetalleByPersonajeId(anyLong())).thenReturn(Optional.of(personaje));
+
+        assertThatExceptionOfType(PersonajeModificadoException.class)
+                .isThrownBy(() -> personajeServiceImp.patchPersonaje(1L, PatchPersonajeRequestDto.builder().nombre("Otro").build(), etagViejo));
+        assertThat(personaje.getNombre()).isEqualTo(NOMBRE);
+    }
+
+    @Test
+    void patchPersonajeWithWeakIfMatchShouldThrowException() {
+
+        Personaje personaje = buildPersonaje();
+        personaje.setVersion(3L);
+        String etag = EtagUtility.etag(EtagUtility.versionesDetalle(personaje));
+        when(personajeRepository.findConDetalleByPersonajeId(anyLong())).thenReturn(Optional.of(personaje));
+
+        // If-Match usa la comparacion fuerte: la misma etiqueta marcada como debil no alcanza
+        assertThatExceptionOfType(PersonajeModificadoException.class)
+                .isThrownBy(() -> personajeServiceImp.patchPersonaje(1L, PatchPersonajeRequestDto.builder().nombre("Otro").build(), "W/" + etag));
+        assertThat(personaje.getNombre()).isEqualTo(NOMBRE);
     }
 
     @Test
-    void canGetAllPersonajesWithParameters() {
+    void canGetAllPersonajesWithParameters() throws Exception {
 
         // Given
-        when(personajeRepository.findAll()).thenReturn(Collections.singletonList(buildPersonaje()));
+        List<PersonajeBuscadoPorParametroResponseDto> resumenes = Collections.singletonList(personajeMapper.personajeToPersonajeBuscadoPorParametroResponseDto(buildPersonaje()));
+        when(personajeRepository.buscarResumenes(any(), any(), any(), any(), any(), any(), any(), any(Sort.class), any(), anyInt())).thenReturn(porId(resumenes));
 
         // When
-        List<PersonajeBuscadoPorParametroResponseDto> response = personajeServiceImp.getPersonajes();
+        PaginaResponseDto<PersonajeBuscadoPorParametroResponseDto> response = personajeServiceImp.buscarPersonajes(new BuscarPersonajesRequestDto());
 
         // Then
-        verify(personajeRepository, times(1)).findAll();
+        verify(personajeRepository, times(1)).buscarResumenes(null, null, null, null, null, null, null,
+                Sort.by("personajeId"), null, PaginacionUtility.LIMITE_POR_DEFECTO + 1);
 
         assertAll(
                 () -> assertThat(response).isNotNull(),
-                () -> assertThat(response.isEmpty()).isFalse()
+                () -> assertThat(response.getContenido().isEmpty()).isFalse(),
+                () -> assertThat(response.getNext()).isNull()
         );
     }
 
     @Test
-    void getPersonajesByPeliculaId() {
+    void getPersonajesShouldContinueFromCursor() throws Exception {
+
+        Personaje siguiente = buildPersonaje();
+        siguiente.setPersonajeId(8L);
 
         // Given
-        when(peliculaRepository.findById(anyLong())).thenReturn(Optional.of(buildPelicula()));
+        List<PersonajeBuscadoPorParametroResponseDto> resumenes = personajeMapper.personajeToPersonajeBuscadoPorParametroResponseDto(List.of(buildPersonaje(), siguiente));
+        when(personajeRepository.buscarResumenes(any(), any(), any(), any(), any(), any(), any(), any(Sort.class), any(), anyInt())).thenReturn(porId(resumenes));
 
         // When
-        List<PersonajeBuscadoPorParametroResponseDto> response = personajeServiceImp.getPersonajesByPeliculaId(1L);
+        PaginaResponseDto<PersonajeBuscadoPorParametroResponseDto> response = personajeServiceImp.buscarPersonajes(BuscarPersonajesRequestDto.builder()
+                .cursor(PaginacionUtility.codificarCursor(5L))
+                .limit(1)
+                .build());
 
         // Then
-        verify(peliculaRepository, times(1)).findById(anyLong());
+        verify(personajeRepository, times(1)).buscarResumenes(null, null, null, null, null, null, null,
+                Sort.by("personajeId"), List.of(5L), 2);
 
         assertAll(
-                () -> assertThat(response.get(0).getNombre()).isEqualTo(buildPersonaje().getNombre()),
-                () -> assertThat(response.get(0).getImagen()).isEqualTo(buildPersonaje().getImagen())
+                () -> assertThat(response.getContenido().size()).isEqualTo(1),
+                () -> assertThat(response.getNext()).isEqualTo(PaginacionUtility.codificarCursor(id))
+        );
+    }
+
+    @Test
+    void getPersonajesByPeliculaId() throws Exception {
+
+        // Given
+        List<PersonajeBuscadoPorParametroResponseDto> resumenes = personajeMapper.personajeToPersonajeBuscadoPorParametroResponseDto(new ArrayList<>(buildPelicula().getPersonajes()));
+        when(personajeRepository.buscarResumenes(any(), any(), any(), any(), any(), any(), anyLong(), any(Sort.class), any(), anyInt())).thenReturn(porId(resumenes));
+
+        // When
+        PaginaResponseDto<PersonajeBuscadoPorParametroResponseDto> response = personajeServiceImp.buscarPersonajes(BuscarPersonajesRequestDto.builder().idMovie(1L).build());
+
+        // Then: con resultados no hace falta consultar si la pelicula existe
+        verify(peliculaRepository, never()).existsById(anyLong());
+
+        assertAll(
+                () -> assertThat(response.getContenido().get(0).getNombre()).isEqualTo(buildPersonaje().getNombre()),
+                () -> assertThat(response.getContenido().get(0).getImagen()).isEqualTo(buildPersonaje().getImagen())
         );
     }
 
@@ -266,110 +437,320 @@ class PersonajeServiceImpTest {
     void personajesByPeliculaIdNotFoundShouldThrowException() {
 
         // Given
-        when(peliculaRepository.findById(anyLong())).thenReturn(Optional.empty());
+        when(personajeRepository.buscarResumenes(any(), any(), any(), any(), any(), any(), anyLong(), any(Sort.class), any(), anyInt())).thenReturn(Collections.emptyList());
+        when(peliculaRepository.existsById(anyLong())).thenReturn(false);
 
         // Then
         assertThatExceptionOfType(NoSuchElementException.class)
-                .isThrownBy(() -> personajeServiceImp.getPersonajesByPeliculaId(id));
+                .isThrownBy(() -> personajeServiceImp.buscarPersonajes(BuscarPersonajesRequestDto.builder().idMovie(id).build()));
 
-        verify(peliculaRepository, times(1)).findById(id);
+        verify(peliculaRepository, times(1)).existsById(id);
     }
 
     @Test
-    void getPersonajeByNombre() throws PersonajeNotFoundException {
+    void getPersonajeByNombre() throws Exception {
 
         Personaje personaje = buildPersonaje();
 
         // Given
-        when(personajeRepository.findByNombreContainingIgnoreCase(anyString())).thenReturn(Optional.of(personaje));
+        indiceCatalogo.indexarPersonaje(personaje.getPersonajeId(), personaje.getNombre());
+        List<PersonajeBuscadoPorParametroResponseDto> resumenes = List.of(personajeMapper.personajeToPersonajeBuscadoPorParametroResponseDto(personaje));
+        when(personajeRepository.findResumenesByPersonajeIdIn(anyCollection(), any(Sort.class))).thenReturn(resumenes);
 
         // When
-        PersonajeBuscadoPorParametroResponseDto response = personajeServiceImp.getPersonajeByNombre(anyString());
+        PaginaResponseDto<PersonajeBuscadoPorParametroResponseDto> response = personajeServiceImp.buscarPersonajes(BuscarPersonajesRequestDto.builder().nombre(NOMBRE).build());
 
         // Then
         assertAll(
                 () -> assertThat(response).isNotNull(),
-                () -> assertThat(response).isEqualTo(personajeMapper.personajeToPersonajeBuscadoPorParametroResponseDto(personaje)),
-                () -> assertThat(response.getNombre()).isEqualTo(personaje.getNombre()),
-                () -> assertThat(response.getImagen()).isEqualTo(personaje.getImagen())
+                () -> assertThat(response.getContenido().get(0)).isEqualTo(personajeMapper.personajeToPersonajeBuscadoPorParametroResponseDto(personaje)),
+                () -> assertThat(response.getContenido().get(0).getNombre()).isEqualTo(personaje.getNombre()),
+                () -> assertThat(response.getContenido().get(0).getImagen()).isEqualTo(personaje.getImagen())
         );
-        verify(personajeRepository, times(1)).findByNombreContainingIgnoreCase(anyString());
+        verify(personajeRepository, times(1)).findResumenesByPersonajeIdIn(List.of(personaje.getPersonajeId()), Sort.by("personajeId"));
     }
 
     @Test
     void personajeByNombreNotFoundShouldThrowException() {
 
         // Given
-        when(personajeRepository.findByNombreContainingIgnoreCase(anyString())).thenReturn(Optional.empty());
 
         // Then
         assertThatExceptionOfType(PersonajeNotFoundException.class)
-                .isThrownBy(() -> personajeServiceImp.getPersonajeByNombre(anyString()));
-        verify(personajeRepository, times(1)).findByNombreContainingIgnoreCase(anyString());
+                .isThrownBy(() -> personajeServiceImp.buscarPersonajes(BuscarPersonajesRequestDto.builder().nombre(NOMBRE).build()));
+        verifyNoInteractions(personajeRepository);
+    }
+
+    @Test
+    void nombreWithPeliculaRangoAndOrdenShouldGoToASingleQuery() throws Exception {
+
+        // Given
+        indiceCatalogo.indexarPersonaje(id, NOMBRE);
+        when(personajeRepository.buscarResumenes(any(), any(), any(), any(), any(), any(), any(), any(Sort.class), any(), anyInt())).thenReturn(Collections.emptyList());
+        when(peliculaRepository.existsById(3L)).thenReturn(true);
+
+        // When
+        PaginaResponseDto<PersonajeBuscadoPorParametroResponseDto> response = personajeServiceImp.buscarPersonajes(BuscarPersonajesRequestDto.builder()
+                .nombre(NOMBRE)
+                .edadMin(EDAD - 5)
+                .peso(PESO)
+                .idMovie(3L)
+                .orden("edad:desc")
+                .build());
+
+        // Then: los candidatos del indice de nombres, los rangos, el reparto y el orden viajan en la misma consulta
+        verify(personajeRepository, times(1)).buscarResumenes(Set.of(id), null, EDAD - 5, null, PESO, PESO, 3L,
+                Sort.by(Sort.Direction.DESC, "edad").and(Sort.by("personajeId")), null, PaginacionUtility.LIMITE_POR_DEFECTO + 1);
+        verify(personajeRepository, never()).findResumenesByPersonajeIdIn(anyCollection(), any(Sort.class));
+        assertThat(response.getContenido().isEmpty()).isTrue();
+    }
+
+    @Test
+    void nombreWithTooManyCandidatesShouldFilterBySubstringInTheQuery() throws Exception {
+
+        // Given
+        for (long personajeId = 1; personajeId <= PaginacionUtility.MAXIMO_CANDIDATOS + 1; personajeId++) {
+            indiceCatalogo.indexarPersonaje(personajeId, NOMBRE + " " + personajeId);
+        }
+        when(personajeRepository.buscarResumenes(any(), any(), any(), any(), any(), any(), any(), any(Sort.class), any(), anyInt())).thenReturn(Collections.emptyList());
+
+        // When
+        personajeServiceImp.buscarPersonajes(BuscarPersonajesRequestDto.builder().nombre(NOMBRE).orden("edad").build());
+
+        // Then: pasado el maximo de candidatos no viaja el IN, la base filtra por subcadena del nombre
+        verify(personajeRepository, times(1)).buscarResumenes(null, NOMBRE, null, null, null, null, null,
+                Sort.by("edad").and(Sort.by("personajeId")), null, PaginacionUtility.LIMITE_POR_DEFECTO + 1);
+    }
+
+    @Test
+    void sortedSearchShouldResumeFromTheValuesOfTheCursor() throws Exception {
+
+        Sort orden = Sort.by("nombre").and(Sort.by("personajeId"));
+
+        // Given
+        when(personajeRepository.buscarResumenes(any(), any(), any(), any(), any(), any(), any(), any(Sort.class), any(), anyInt())).thenReturn(Collections.emptyList());
+
+        // When
+        personajeServiceImp.buscarPersonajes(BuscarPersonajesRequestDto.builder()
+                .orden("nombre")
+                .cursor(PaginacionUtility.codificarCursor(List.of(NOMBRE, 5L)))
+                .build());
+
+        // Then
+        verify(personajeRepository, times(1)).buscarResumenes(null, null, null, null, null, null, null,
+                orden, List.of(NOMBRE, 5L), PaginacionUtility.LIMITE_POR_DEFECTO + 1);
     }
 
     @Test
-    void getPersonajeByEdad() throws PersonajeNotFoundException {
+    void sortedSearchWithCursorOfAnotherOrdenShouldThrowException() {
+
+        // Un cursor sin orden solo trae el id, le falta el peso
+        assertThatExceptionOfType(CursorInvalidoException.class)
+                .isThrownBy(() -> personajeServiceImp.buscarPersonajes(BuscarPersonajesRequestDto.builder()
+                        .orden("peso:asc")
+                        .cursor(PaginacionUtility.codificarCursor(5L))
+                        .build()));
+        verifyNoInteractions(personajeRepository);
+    }
+
+    @Test
+    void buscarPersonajesWithWrongOrdenShouldThrowException() {
+
+        // Then
+        assertThatExceptionOfType(PersonajeBuscadoPorParametroIncorrectoException.class)
+                .isThrownBy(() -> personajeServiceImp.buscarPersonajes(BuscarPersonajesRequestDto.builder().orden("historia").build()));
+        assertThatExceptionOfType(PersonajeBuscadoPorParametroIncorrectoException.class)
+                .isThrownBy(() -> personajeServiceImp.buscarPersonajes(BuscarPersonajesRequestDto.builder().orden("edad:arriba").build()));
+        verifyNoInteractions(personajeRepository);
+    }
+
+    @Test
+    void getPersonajesPorRangoDeEdad() throws Exception {
 
         Personaje personaje = buildPersonaje();
+        indiceCatalogo.indexarMedidasPersonaje(personaje.getPersonajeId(), EDAD, PESO);
+        indiceCatalogo.indexarMedidasPersonaje(2L, EDAD + 20, PESO);
 
         // Given
-        when(personajeRepository.findByEdad(anyInt())).thenReturn(Optional.of(Collections.singletonList(personaje)));
+        List<PersonajeBuscadoPorParametroResponseDto> resumenes = Collections.singletonList(personajeMapper.personajeToPersonajeBuscadoPorParametroResponseDto(personaje));
+        when(personajeRepository.findResumenesByPersonajeIdIn(List.of(1L), Sort.by("personajeId"))).thenReturn(resumenes);
 
         // When
-        List<PersonajeBuscadoPorParametroResponseDto> response = personajeServiceImp.getPersonajeByEdad(personaje.getEdad());
+        PaginaResponseDto<PersonajeBuscadoPorParametroResponseDto> response = personajeServiceImp.buscarPersonajes(BuscarPersonajesRequestDto.builder()
+                .edadMin(EDAD - 5)
+                .edadMax(EDAD + 5)
+                .build());
 
         // Then
         assertAll(
                 () -> assertThat(response).isNotNull(),
-                () -> assertThat(response.get(0)).isEqualTo(personajeMapper.personajeToPersonajeBuscadoPorParametroResponseDto(personaje)),
-                () -> assertThat(response.isEmpty()).isFalse()
+                () -> assertThat(response.getContenido().get(0)).isEqualTo(personajeMapper.personajeToPersonajeBuscadoPorParametroResponseDto(personaje)),
+                () -> assertThat(response.getNext()).isNull()
         );
     }
 
     @Test
-    void personajeByEdadNotFoundShouldThrowException() {
+    void personajesPorRangoWithoutResultsShouldReturnEmptyPageWithoutQuery() throws Exception {
 
-        // Given
-        when(personajeRepository.findByEdad(anyInt())).thenReturn(Optional.empty());
+        indiceCatalogo.indexarMedidasPersonaje(1L, EDAD, PESO);
+
+        // When
+        PaginaResponseDto<PersonajeBuscadoPorParametroResponseDto> response = personajeServiceImp.buscarPersonajes(BuscarPersonajesRequestDto.builder().edadMin(EDAD + 1).build());
 
         // Then
-        assertThatExceptionOfType(PersonajeNotFoundException.class)
-                .isThrownBy(() -> personajeServiceImp.getPersonajeByEdad(anyInt()));
-        verify(personajeRepository, times(1)).findByEdad(anyInt());
+        assertThat(response.getContenido().isEmpty()).isTrue();
+        assertThat(response.getNext()).isNull();
+        verifyNoInteractions(personajeRepository);
+    }
+
+    @Test
+    void personajesPorNombreEdadYPesoShouldIntersectAndPageAfterTheCursor() throws Exception {
+
+        // Ids 1 a 7: los pares pesan de mas, el 1 es muy joven y el 7 tiene otro nombre
+        for (long id = 1; id <= 7; id++) {
+            indiceCatalogo.indexarPersonaje(id, id == 7 ? "Mariana" : NOMBRE);
+            indiceCatalogo.indexarMedidasPersonaje(id, id == 1 ? 10 : EDAD, id % 2 == 0 ? PESO + 50 : PESO);
+        }
+        when(personajeRepository.findResumenesByPersonajeIdIn(anyList(), any(Sort.class))).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+            return ids.stream()
+                    .map(id -> new PersonajeBuscadoPorParametroResponseDto(NOMBRE, IMAGEN, id))
+                    .collect(Collectors.toList());
+        });
+        BuscarPersonajesRequestDto busqueda = BuscarPersonajesRequestDto.builder()
+                .nombre(NOMBRE)
+                .edad(EDAD)
+                .pesoMax(PESO)
+                .limit(1)
+                .build();
+
+        // When
+        PaginaResponseDto<PersonajeBuscadoPorParametroResponseDto> primera = personajeServiceImp.buscarPersonajes(busqueda);
+        busqueda.setCursor(primera.getNext());
+        PaginaResponseDto<PersonajeBuscadoPorParametroResponseDto> segunda = personajeServiceImp.buscarPersonajes(busqueda);
+
+        // Then: solo 3 y 5 cumplen los tres filtros
+        verify(personajeRepository, times(1)).findResumenesByPersonajeIdIn(List.of(3L, 5L), Sort.by("personajeId"));
+        verify(personajeRepository, times(1)).findResumenesByPersonajeIdIn(List.of(5L), Sort.by("personajeId"));
+        verify(personajeRepository, never()).buscarResumenes(any(), any(), any(), any(), any(), any(), any(), any(Sort.class), any(), anyInt());
+        assertThat(primera.getContenido().get(0).getId()).isEqualTo(3L);
+        assertThat(segunda.getContenido().get(0).getId()).isEqualTo(5L);
+        assertThat(segunda.getNext()).isNull();
     }
 
     @Test
-    void getPersonajeByPeso() throws PersonajeNotFoundException {
+    void personajesPorRangoShouldFollowWritesAndDeletes() throws Exception {
 
         Personaje personaje = buildPersonaje();
+        when(personajeRepository.save(any())).thenReturn(personaje);
+        when(personajeRepository.existsById(anyLong())).thenReturn(true);
+        personajeServiceImp.savePersonaje(buildPersonajeRequestDto());
 
-        // Given
-        when(personajeRepository.findByPeso(anyDouble()))
-                .thenReturn(Optional.of(Collections.singletonList(personaje)));
+        assertThat(indiceCatalogo.buscarPersonajesPorPeso(PESO, PESO)).isEqualTo(new long[]{1L});
+
+        personajeServiceImp.deletePersonajeById(1L);
+
+        assertThat(indiceCatalogo.buscarPersonajesPorEdad(EDAD, EDAD)).isEqualTo(new long[0]);
+    }
+
+    @Test
+    void getCoprotagonistasShouldPageTheNeighboursOfTheGraph() throws Exception {
+
+        // Given: 1 comparte la pelicula 10 con 2 y 3 y la pelicula 20 con 4; 5 no trabaja con 1
+        indiceCatalogo.indexarPersonaje(id, NOMBRE);
+        indiceCatalogo.indexarReparto(10L, List.of(1L, 2L, 3L));
+        indiceCatalogo.indexarReparto(20L, List.of(1L, 4L));
+        indiceCatalogo.indexarReparto(30L, List.of(4L, 5L));
+        when(personajeRepository.findResumenesByPersonajeIdIn(anyList(), any(Sort.class))).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+            return ids.stream()
+                    .map(id -> new PersonajeBuscadoPorParametroResponseDto(NOMBRE, IMAGEN, id))
+                    .collect(Collectors.toList());
+        });
+
+        // When
+        PaginaResponseDto<PersonajeBuscadoPorParametroResponseDto> primera = personajeServiceImp.getCoprotagonistas(id, null, 2);
+        PaginaResponseDto<PersonajeBuscadoPorParametroResponseDto> segunda = personajeServiceImp.getCoprotagonistas(id, primera.getNext(), 2);
+
+        // Then
+        verify(personajeRepository, times(1)).findResumenesByPersonajeIdIn(List.of(2L, 3L, 4L), Sort.by("personajeId"));
+        verify(personajeRepository, times(1)).findResumenesByPersonajeIdIn(List.of(4L), Sort.by("personajeId"));
+        assertThat(primera.getContenido().size()).isEqualTo(2);
+        assertThat(primera.getNext()).isEqualTo(PaginacionUtility.codificarCursor(3L));
+        assertThat(segunda.getContenido().get(0).getId()).isEqualTo(4L);
+        assertThat(segunda.getNext()).isNull();
+    }
+
+    @Test
+    void getCoprotagonistasOfMissingPersonajeShouldThrowException() {
+
+        // Then
+        assertThatExceptionOfType(PersonajeNotFoundException.class)
+                .isThrownBy(() -> personajeServiceImp.getCoprotagonistas(id, null, null));
+        verifyNoInteractions(personajeRepository);
+    }
+
+    @Test
+    void getSeparacionShouldListCharactersAndPeliculasAlongTheShortestPath() throws Exception {
+
+        // Given: 1 y 3 solo se conectan a traves de 2
+        indiceCatalogo.indexarPersonaje(1L, NOMBRE);
+        indiceCatalogo.indexarPersonaje(2L, "Mariana");
+        indiceCatalogo.indexarPersonaje(3L, "Roberto");
+        indiceCatalogo.indexarReparto(10L, List.of(1L, 2L));
+        indiceCatalogo.indexarReparto(20L, List.of(2L, 3L));
+        when(personajeRepository.findResumenesByPersonajeIdIn(List.of(1L, 2L, 3L), Sort.by("personajeId"))).thenReturn(List.of(
+                new PersonajeBuscadoPorParametroResponseDto("Roberto", IMAGEN, 3L),
+                new PersonajeBuscadoPorParametroResponseDto(NOMBRE, IMAGEN, 1L),
+                new PersonajeBuscadoPorParametroResponseDto("Mariana", IMAGEN, 2L)));
+        when(peliculaRepository.buscarResumenes(List.of(10L, 20L), null, null, Sort.by("peliculaId"), null, 2)).thenReturn(List.of(
+                new FilaConOrden<>(PeliculaBuscadaPorParametroResponseDto.builder().id(20L).titulo("Segunda").build(), List.of(20L)),
+                new FilaConOrden<>(PeliculaBuscadaPorParametroResponseDto.builder().id(10L).titulo("Primera").build(), List.of(10L))));
 
         // When
-        List<PersonajeBuscadoPorParametroResponseDto> response = personajeServiceImp.getPersonajeByPeso(personaje.getPeso());
+        SeparacionResponseDto response = personajeServiceImp.getSeparacion(1L, 3L);
 
         // Then
         assertAll(
-                () -> assertThat(response).isNotNull(),
-                () -> assertThat(response.isEmpty()).isFalse(),
-                () -> assertThat(response.get(0)).isEqualTo(personajeMapper.personajeToPersonajeBuscadoPorParametroResponseDto(personaje)),
-                () -> assertThat(response.get(0).getImagen()).isEqualTo(personaje.getImagen())
+                () -> assertThat(response.getGrados()).isEqualTo(2),
+                () -> assertThat(response.getPersonajes().get(0).getNombre()).isEqualTo(NOMBRE),
+                () -> assertThat(response.getPersonajes().get(1).getNombre()).isEqualTo("Mariana"),
+                () -> assertThat(response.getPersonajes().get(2).getNombre()).isEqualTo("Roberto"),
+                () -> assertThat(response.getPeliculas().get(0).getTitulo()).isEqualTo("Primera"),
+                () -> assertThat(response.getPeliculas().get(1).getTitulo()).isEqualTo("Segunda")
         );
     }
 
     @Test
-    void personajeByPesoNotFoundShouldThrowException() {
+    void getSeparacionWithoutSharedPeliculasShouldThrowException() {
 
         // Given
-        when(personajeRepository.findByPeso(anyDouble())).thenReturn(Optional.empty());
+        indiceCatalogo.indexarPersonaje(1L, NOMBRE);
+        indiceCatalogo.indexarPersonaje(2L, "Mariana");
+        indiceCatalogo.indexarReparto(10L, List.of(1L));
 
         // Then
+        assertThatExceptionOfType(PersonajesSinConexionException.class)
+                .isThrownBy(() -> personajeServiceImp.getSeparacion(1L, 2L));
         assertThatExceptionOfType(PersonajeNotFoundException.class)
-                .isThrownBy(() -> personajeServiceImp.getPersonajeByPeso(anyDouble()));
-        verify(personajeRepository, times(1)).findByPeso(anyDouble());
+                .isThrownBy(() -> personajeServiceImp.getSeparacion(1L, 9L));
+        verifyNoInteractions(personajeRepository);
+    }
+
+    @Test
+    void buscarPersonajesWithWrongCursorShouldThrowException() {
+
+        // Then
+        assertThatExceptionOfType(CursorInvalidoException.class)
+                .isThrownBy(() -> personajeServiceImp.buscarPersonajes(BuscarPersonajesRequestDto.builder().peso(PESO).cursor("%%%").build()));
+        verifyNoInteractions(personajeRepository);
+    }
+
+    // Filas ordenadas solo por id: el cursor de cada una es su id
+    private static List<FilaConOrden<PersonajeBuscadoPorParametroResponseDto>> porId(List<PersonajeBuscadoPorParametroResponseDto> resumenes) {
+        return resumenes.stream()
+                .map(resumen -> new FilaConOrden<>(resumen, List.<Object>of(resumen.getId())))
+                .collect(Collectors.toList());
     }
 
     private Personaje buildPersonaje() {
@@ -400,7 +781,7 @@ class PersonajeServiceImpTest {
                 .titulo("Ace Ventura")
                 .fechaEstreno(Date.from(Instant.now()))
                 .imagen("imagen.jpg")
-                .personajes(Collections.singletonList(buildPersonaje()))
+                .personajes(Collections.singleton(buildPersonaje()))
                 .build();
     }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package com.challenge.alkemy.service;
+
+import com.challenge.alkemy.entity.dto.sugerenciaDto.response.SugerenciasResponseDto;
+import com.challenge.alkemy.indice.IndiceCatalogo;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SugerenciaServiceImpTest {
+
+    @Spy
+    private IndiceCatalogo indiceCatalogo;
+
+    @InjectMocks
+    private SugerenciaServiceImp sugerenciaServiceImp;
+
+    @Test
+    void sugerirShouldRankEachListByPopularity() {
+
+        // Given: Aladdin tiene votos, Alicia aparece en dos peliculas y Animacion tiene una pelicula
+        indiceCatalogo.indexarPelicula(1L, "Aladdin");
+        indiceCatalogo.indexarPelicula(2L, "Alicia en el pais de las maravillas");
+        indiceCatalogo.sumarVotos(1L, 4);
+        indiceCatalogo.indexarPersonaje(10L, "Alicia");
+        indiceCatalogo.indexarPersonaje(11L, "Abu");
+        indiceCatalogo.indexarReparto(2L, List.of(10L));
+        indiceCatalogo.indexarReparto(3L, List.of(10L, 11L));
+        indiceCatalogo.indexarGenero(20L, "Animacion");
+        indiceCatalogo.indexarGenero(21L, "Accion");
+        indiceCatalogo.asignarGenero(1L, 20L);
+
+        // When
+        SugerenciasResponseDto response = sugerenciaServiceImp.sugerir("a", null);
+
+        // Then
+        assertAll(
+                () -> assertThat(response.getPeliculas().get(0).getTexto()).isEqualTo("Aladdin"),
+                () -> assertThat(response.getPersonajes().get(0).getId()).isEqualTo(10L),
+                () -> assertThat(response.getPersonajes().get(1).getId()).isEqualTo(11L),
+                () -> assertThat(response.getGeneros().get(0).getTexto()).isEqualTo("Animacion"),
+                () -> assertThat(response.getGeneros().size()).isEqualTo(2)
+        );
+    }
+
+    @Test
+    void sugerirShouldCapTheLimit() {
+
+        for (long id = 1; id <= 30; id++) {
+            indiceCatalogo.indexarPersonaje(id, "Personaje " + id);
+        }
+
+        assertThat(sugerenciaServiceImp.sugerir("pers", 100).getPersonajes().size()).isEqualTo(20);
+        assertThat(sugerenciaServiceImp.sugerir("pers", 0).getPersonajes().size()).isEqualTo(5);
+        verify(indiceCatalogo, times(2)).sugerirPeliculas(eq("pers"), anyInt());
+    }
+}